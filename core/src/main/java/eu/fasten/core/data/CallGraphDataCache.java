@@ -0,0 +1,261 @@
+package eu.fasten.core.data;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import eu.fasten.core.data.KnowledgeBase.CallGraphData;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+/**
+ * A least-recently-used cache of decoded {@linkplain CallGraphData call-graph data}, indexed by
+ * revision index and bounded by the sum of the {@linkplain CallGraphData#size sizes} of the cached
+ * entries (i.e., by the size of the corresponding database entries, which is a proxy for the memory
+ * occupied by the compressed graphs).
+ *
+ * <p>
+ * Revisions can be {@linkplain #pin(long) pinned}: pinned revisions are never evicted (but their size
+ * is accounted for in the budget). The cache keeps track of hits, misses and evictions.
+ *
+ * <p>
+ * Unpinned entries are kept in a map in access order (least recently used first), and the data of
+ * pinned revisions in a separate map, so that evicting an entry just removes the first entry of the
+ * access-ordered map, and all operations take constant (amortized) time.
+ *
+ * <p>
+ * All methods are thread-safe.
+ */
+public class CallGraphDataCache {
+	/**
+	 * The system property that can be used to set the default budget, in bytes, of the cache of a
+	 * {@link KnowledgeBase}.
+	 */
+	public static final String BUDGET_PROPERTY = CallGraphDataCache.class.getName() + ".budget";
+
+	/** The cached data of unpinned revisions, in access order (least recently used first). */
+	private final Long2ObjectLinkedOpenHashMap<CallGraphData> cache = new Long2ObjectLinkedOpenHashMap<>();
+	/** The cached data of pinned revisions. */
+	private final Long2ObjectOpenHashMap<CallGraphData> pinnedCache = new Long2ObjectOpenHashMap<>();
+	/** The revision indices that must not be evicted. */
+	private final LongOpenHashSet pinned = new LongOpenHashSet();
+	/** The maximum sum of the sizes of the cached entries. */
+	private long budget;
+	/** The sum of the sizes of the cached entries. */
+	private long usedBytes;
+	/** The number of lookups that found an entry. */
+	private long hits;
+	/** The number of lookups that did not find an entry. */
+	private long misses;
+	/** The number of evicted entries. */
+	private long evictions;
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param budget the maximum sum of the sizes of the cached entries, in bytes.
+	 */
+	public CallGraphDataCache(final long budget) {
+		if (budget < 0) throw new IllegalArgumentException("Negative budget: " + budget);
+		this.budget = budget;
+	}
+
+	/**
+	 * Returns the default budget: the value of the system property {@link #BUDGET_PROPERTY}, if set, or
+	 * a quarter of the maximum heap size.
+	 *
+	 * @return the default budget, in bytes.
+	 */
+	public static long defaultBudget() {
+		final String budget = System.getProperty(BUDGET_PROPERTY);
+		return budget != null ? Long.parseLong(budget) : Runtime.getRuntime().maxMemory() / 4;
+	}
+
+	/**
+	 * Returns the data associated with a revision, updating the hit/miss counters and the access
+	 * order.
+	 *
+	 * @param index a revision index.
+	 * @return the cached data, or <code>null</code> if the data of the revision is not cached.
+	 */
+	public synchronized CallGraphData get(final long index) {
+		CallGraphData callGraphData = cache.getAndMoveToLast(index);
+		if (callGraphData == null) callGraphData = pinnedCache.get(index);
+		if (callGraphData == null) misses++;
+		else hits++;
+		return callGraphData;
+	}
+
+	/**
+	 * Returns the data associated with a revision without updating counters or the access order.
+	 *
+	 * @param index a revision index.
+	 * @return the cached data, or <code>null</code> if the data of the revision is not cached.
+	 */
+	public synchronized CallGraphData peek(final long index) {
+		final CallGraphData callGraphData = cache.get(index);
+		return callGraphData != null ? callGraphData : pinnedCache.get(index);
+	}
+
+	/**
+	 * Caches the data of a revision, evicting least recently used, unpinned entries until the cache
+	 * fits its budget. Data larger than the budget is not cached, unless the revision is pinned.
+	 *
+	 * @param index a revision index.
+	 * @param callGraphData the data of the revision.
+	 */
+	public synchronized void put(final long index, final CallGraphData callGraphData) {
+		final boolean isPinned = pinned.contains(index);
+		if (callGraphData.size > budget && !isPinned) return;
+		remove(index);
+		if (isPinned) pinnedCache.put(index, callGraphData);
+		else cache.putAndMoveToLast(index, callGraphData);
+		usedBytes += callGraphData.size;
+		evict();
+	}
+
+	/**
+	 * Removes the data of a revision from the cache.
+	 *
+	 * @param index a revision index.
+	 */
+	public synchronized void remove(final long index) {
+		CallGraphData old = cache.remove(index);
+		if (old == null) old = pinnedCache.remove(index);
+		if (old != null) usedBytes -= old.size;
+	}
+
+	/** Removes all entries (pinned or not) from the cache; pinned revisions stay pinned. */
+	public synchronized void clear() {
+		cache.clear();
+		pinnedCache.clear();
+		usedBytes = 0;
+	}
+
+	/** Evicts least recently used, unpinned entries until the cache fits its budget. */
+	private void evict() {
+		while (usedBytes > budget && !cache.isEmpty()) {
+			usedBytes -= cache.removeFirst().size;
+			evictions++;
+		}
+	}
+
+	/**
+	 * Pins a revision: its data, once cached, will not be evicted.
+	 *
+	 * @param index a revision index.
+	 */
+	public synchronized void pin(final long index) {
+		if (!pinned.add(index)) return;
+		final CallGraphData callGraphData = cache.remove(index);
+		if (callGraphData != null) pinnedCache.put(index, callGraphData);
+	}
+
+	/**
+	 * Unpins a revision, possibly causing evictions.
+	 *
+	 * @param index a revision index.
+	 */
+	public synchronized void unpin(final long index) {
+		if (!pinned.remove(index)) return;
+		final CallGraphData callGraphData = pinnedCache.remove(index);
+		// A revision that has just been unpinned is the most recently used one
+		if (callGraphData != null) cache.putAndMoveToLast(index, callGraphData);
+		evict();
+	}
+
+	/**
+	 * Returns whether a revision is pinned.
+	 *
+	 * @param index a revision index.
+	 * @return true if <code>index</code> is pinned.
+	 */
+	public synchronized boolean isPinned(final long index) {
+		return pinned.contains(index);
+	}
+
+	/**
+	 * Sets the budget, possibly causing evictions.
+	 *
+	 * @param budget the new maximum sum of the sizes of the cached entries, in bytes.
+	 */
+	public synchronized void budget(final long budget) {
+		if (budget < 0) throw new IllegalArgumentException("Negative budget: " + budget);
+		this.budget = budget;
+		evict();
+	}
+
+	/**
+	 * Returns the budget.
+	 *
+	 * @return the maximum sum of the sizes of the cached entries, in bytes.
+	 */
+	public synchronized long budget() {
+		return budget;
+	}
+
+	/**
+	 * Returns the sum of the sizes of the cached entries.
+	 *
+	 * @return the sum of the sizes of the cached entries, in bytes.
+	 */
+	public synchronized long usedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * Returns the number of cached entries.
+	 *
+	 * @return the number of cached entries.
+	 */
+	public synchronized int size() {
+		return cache.size() + pinnedCache.size();
+	}
+
+	/**
+	 * Returns the number of lookups that found an entry.
+	 *
+	 * @return the number of hits.
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that did not find an entry.
+	 *
+	 * @return the number of misses.
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of evicted entries.
+	 *
+	 * @return the number of evictions.
+	 */
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "[entries=" + size() + ", pinned=" + pinned.size() + ", bytes=" + usedBytes + "/" + budget + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+	}
+}
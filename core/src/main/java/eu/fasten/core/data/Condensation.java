@@ -0,0 +1,269 @@
+package eu.fasten.core.data;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import it.unimi.dsi.webgraph.ImmutableGraph;
+import it.unimi.dsi.webgraph.LazyIntIterator;
+import it.unimi.dsi.webgraph.algo.StronglyConnectedComponents;
+
+/**
+ * The condensation of a call graph, that is, the assignment of each node (LID) to its strongly
+ * connected component, and the directed acyclic graph whose nodes are the components and whose arcs
+ * connect components containing adjacent nodes.
+ *
+ * <p>
+ * Since all nodes in a component are mutually reachable, visits can proceed component by component,
+ * without scanning the arcs within each component. Note that external nodes have no outgoing arcs,
+ * so they always form singleton components, and the components of internal nodes contain only
+ * internal nodes.
+ *
+ * <p>
+ * Instances are stored in the database after the compressed graphs; see
+ * {@link #write(DataOutput)} and {@link #read(ByteBuffer)}, which use a layout of fixed-width
+ * arrays, or {@link #write(Kryo, Output)} and {@link #read(Kryo, Input)}.
+ */
+public class Condensation {
+	/** Maps each LID to its component. */
+	public final int[] component;
+	/** The successors of component <var>c</var> are <code>successors[successorOffset[c]..successorOffset[c + 1])</code>. */
+	private final int[] successorOffset;
+	/** The concatenated successor lists of the components. */
+	private final int[] successors;
+	/** The predecessors of component <var>c</var> are <code>predecessors[predecessorOffset[c]..predecessorOffset[c + 1])</code>. */
+	private final int[] predecessorOffset;
+	/** The concatenated predecessor lists of the components. */
+	private final int[] predecessors;
+	/** The members of component <var>c</var> are <code>members[memberOffset[c]..memberOffset[c + 1])</code>. */
+	private final int[] memberOffset;
+	/** The concatenated member lists of the components, in increasing LID order. */
+	private final int[] members;
+
+	private Condensation(final int[] component, final int[] successorOffset, final int[] successors, final int[] predecessorOffset, final int[] predecessors) {
+		this.component = component;
+		this.successorOffset = successorOffset;
+		this.successors = successors;
+		this.predecessorOffset = predecessorOffset;
+		this.predecessors = predecessors;
+		final int numComponents = successorOffset.length - 1;
+		// Counting sort of LIDs by component
+		memberOffset = new int[numComponents + 1];
+		for (final int c : component) memberOffset[c + 1]++;
+		for (int c = 0; c < numComponents; c++) memberOffset[c + 1] += memberOffset[c];
+		members = new int[component.length];
+		final int[] pos = new int[numComponents];
+		for (int x = 0; x < component.length; x++) members[memberOffset[component[x]] + pos[component[x]]++] = x;
+	}
+
+	private Condensation(final int[][] arrays) {
+		component = arrays[0];
+		successorOffset = arrays[1];
+		successors = arrays[2];
+		predecessorOffset = arrays[3];
+		predecessors = arrays[4];
+		memberOffset = arrays[5];
+		members = arrays[6];
+	}
+
+	/**
+	 * Computes the condensation of a graph.
+	 *
+	 * @param graph a graph.
+	 * @return the condensation of <code>graph</code>.
+	 */
+	public static Condensation compute(final ImmutableGraph graph) {
+		final StronglyConnectedComponents scc = StronglyConnectedComponents.compute(graph, false, null);
+		final int[] component = scc.component;
+		final int numComponents = scc.numberOfComponents;
+		// Arcs between distinct components, as pairs packed in a long
+		final LongArrayList arcs = new LongArrayList();
+		final int n = graph.numNodes();
+		for (int x = 0; x < n; x++) {
+			final LazyIntIterator iterator = graph.successors(x);
+			for (int s; (s = iterator.nextInt()) != -1;)
+				if (component[x] != component[s]) arcs.add((long)component[x] << 32 | component[s]);
+		}
+		final long[] a = arcs.toLongArray();
+		final int[][] dag = csr(a, numComponents, false);
+		final int[][] transpose = csr(a, numComponents, true);
+		return new Condensation(component, dag[0], dag[1], transpose[0], transpose[1]);
+	}
+
+	/**
+	 * Builds a duplicate-free compressed sparse row representation of a list of arcs.
+	 *
+	 * @param arcs arcs, as source/target pairs packed in a long; the array will be sorted.
+	 * @param n the number of nodes.
+	 * @param transpose whether to build the representation of the transpose.
+	 * @return an array containing offsets and concatenated adjacency lists.
+	 */
+	private static int[][] csr(final long[] arcs, final int n, final boolean transpose) {
+		if (transpose) for (int i = 0; i < arcs.length; i++) arcs[i] = arcs[i] << 32 | arcs[i] >>> 32;
+		LongArrays.quickSort(arcs);
+		final int[] offset = new int[n + 1];
+		final int[] adjacency = new int[arcs.length];
+		int m = 0;
+		for (int i = 0; i < arcs.length; i++) {
+			if (i > 0 && arcs[i] == arcs[i - 1]) continue;
+			offset[(int)(arcs[i] >>> 32) + 1]++;
+			adjacency[m++] = (int)arcs[i];
+		}
+		for (int c = 0; c < n; c++) offset[c + 1] += offset[c];
+		return new int[][] { offset, Arrays.copyOf(adjacency, m) };
+	}
+
+	/**
+	 * Returns the number of components.
+	 *
+	 * @return the number of components.
+	 */
+	public int numComponents() {
+		return successorOffset.length - 1;
+	}
+
+	/**
+	 * Returns the number of successors of a component in the condensation.
+	 *
+	 * @param c a component.
+	 * @return the number of successors of <code>c</code>.
+	 */
+	public int outdegree(final int c) {
+		return successorOffset[c + 1] - successorOffset[c];
+	}
+
+	/**
+	 * Returns a successor of a component in the condensation.
+	 *
+	 * @param c a component.
+	 * @param i the index of the successor, smaller than {@link #outdegree(int) outdegree(c)}.
+	 * @return the <code>i</code>-th successor of <code>c</code>.
+	 */
+	public int successor(final int c, final int i) {
+		return successors[successorOffset[c] + i];
+	}
+
+	/**
+	 * Returns the number of predecessors of a component in the condensation.
+	 *
+	 * @param c a component.
+	 * @return the number of predecessors of <code>c</code>.
+	 */
+	public int indegree(final int c) {
+		return predecessorOffset[c + 1] - predecessorOffset[c];
+	}
+
+	/**
+	 * Returns a predecessor of a component in the condensation.
+	 *
+	 * @param c a component.
+	 * @param i the index of the predecessor, smaller than {@link #indegree(int) indegree(c)}.
+	 * @return the <code>i</code>-th predecessor of <code>c</code>.
+	 */
+	public int predecessor(final int c, final int i) {
+		return predecessors[predecessorOffset[c] + i];
+	}
+
+	/**
+	 * Returns the number of nodes in a component.
+	 *
+	 * @param c a component.
+	 * @return the number of nodes in <code>c</code>.
+	 */
+	public int size(final int c) {
+		return memberOffset[c + 1] - memberOffset[c];
+	}
+
+	/**
+	 * Returns a node of a component.
+	 *
+	 * @param c a component.
+	 * @param i the index of the node, smaller than {@link #size(int) size(c)}.
+	 * @return the LID of the <code>i</code>-th node of <code>c</code>, in increasing LID order.
+	 */
+	public int member(final int c, final int i) {
+		return members[memberOffset[c] + i];
+	}
+
+	/**
+	 * Serializes this condensation.
+	 *
+	 * @param kryo a {@link Kryo} instance with <code>int[]</code> registered.
+	 * @param output the output.
+	 */
+	public void write(final Kryo kryo, final Output output) {
+		kryo.writeObject(output, component);
+		kryo.writeObject(output, successorOffset);
+		kryo.writeObject(output, successors);
+		kryo.writeObject(output, predecessorOffset);
+		kryo.writeObject(output, predecessors);
+	}
+
+	/**
+	 * Writes this condensation in the layout read by {@link #read(ByteBuffer)}: each array, including
+	 * the member lists, is written as its length followed by its elements.
+	 *
+	 * @param output a data output.
+	 */
+	public void write(final DataOutput output) throws IOException {
+		for (final int[] array : new int[][] { component, successorOffset, successors, predecessorOffset, predecessors, memberOffset, members }) {
+			output.writeInt(array.length);
+			for (final int x : array) output.writeInt(x);
+		}
+	}
+
+	/**
+	 * Reads a condensation written by {@link #write(DataOutput)}, starting at the current position of
+	 * a buffer; on return, the position of the buffer will be just after the condensation.
+	 *
+	 * @param buffer a buffer.
+	 * @return the condensation.
+	 */
+	public static Condensation read(final ByteBuffer buffer) {
+		final int[][] arrays = new int[7][];
+		for (int i = 0; i < arrays.length; i++) {
+			arrays[i] = new int[buffer.getInt()];
+			buffer.asIntBuffer().get(arrays[i]);
+			buffer.position(buffer.position() + arrays[i].length * Integer.BYTES);
+		}
+		return new Condensation(arrays);
+	}
+
+	/**
+	 * Deserializes a condensation written by {@link #write(Kryo, Output)}.
+	 *
+	 * @param kryo a {@link Kryo} instance with <code>int[]</code> registered.
+	 * @param input the input.
+	 * @return the condensation, or <code>null</code> if <code>input</code> is exhausted (i.e., the
+	 *         data was written before condensations were stored).
+	 */
+	public static Condensation read(final Kryo kryo, final Input input) {
+		if (input.end()) return null;
+		return new Condensation(kryo.readObject(input, int[].class), kryo.readObject(input, int[].class), kryo.readObject(input, int[].class), kryo.readObject(input, int[].class), kryo.readObject(input, int[].class));
+	}
+}
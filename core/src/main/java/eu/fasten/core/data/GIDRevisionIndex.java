@@ -0,0 +1,362 @@
+package eu.fasten.core.data;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.MergeOperator;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.StringAppendOperator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+import com.google.common.primitives.Longs;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongIterators;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+/**
+ * An index mapping GIDs to sorted lists of revision indices, stored in a column family of a RocksDB
+ * instance.
+ *
+ * <p>
+ * Each list is stored as a single value, keyed by the GID, containing the number of revisions
+ * followed by the gaps between consecutive revision indices (the first gap being the first
+ * revision index) in variable-length 7-bit encoding. Lists are fetched from the database only when
+ * needed, and they are decoded lazily by the iterator returned by {@link #revisions(long)}, so that
+ * no boxing or intermediate collection is necessary.
+ *
+ * <p>
+ * Revisions are {@linkplain #add(WriteBatch, long, long) added} without reading the list: the
+ * one-element list of the new revision is appended to the value by the {@linkplain #MERGE_OPERATOR
+ * merge operator} of the column family, which must be set when opening the database. Thus, a
+ * value is in general a sequence of lists separated by a delimiter byte, which are merged when
+ * the value is read. The GIDs whose value has been appended to are remembered, and
+ * {@link #compact()} rewrites their values as single lists, so that each value is rewritten once per
+ * compaction rather than once per added revision.
+ *
+ * <p>
+ * Instances are thread-safe, but {@link #compact()} must not be called concurrently with additions.
+ */
+public class GIDRevisionIndex {
+	/** The delimiter inserted by {@link #MERGE_OPERATOR} between merged values. */
+	private static final char DELIMITER = 0;
+	/**
+	 * The merge operator that must be set in the options of the column family of an index: it
+	 * concatenates values, separating them with a delimiter byte.
+	 */
+	public static final MergeOperator MERGE_OPERATOR;
+	/**
+	 * The number of GIDs whose value has been appended to after which {@link KnowledgeBase}
+	 * {@linkplain #compact() compacts} an index.
+	 */
+	public static final int COMPACTION_THRESHOLD = 1 << 20;
+
+	static {
+		RocksDB.loadLibrary();
+		MERGE_OPERATOR = new StringAppendOperator(DELIMITER);
+	}
+
+	/** The database. */
+	private final RocksDB db;
+	/** The column family containing the lists. */
+	private final ColumnFamilyHandle handle;
+	/** The GIDs whose value has been appended to since the last compaction. */
+	private final LongOpenHashSet touched = new LongOpenHashSet();
+
+	/**
+	 * Creates an index.
+	 *
+	 * @param db the database.
+	 * @param handle the column family containing the lists; it must use {@link #MERGE_OPERATOR}.
+	 */
+	public GIDRevisionIndex(final RocksDB db, final ColumnFamilyHandle handle) {
+		this.db = db;
+		this.handle = handle;
+	}
+
+	/**
+	 * Returns the revisions associated with a GID.
+	 *
+	 * @param gid a GID.
+	 * @return an iterator returning in increasing order the revision indices associated with
+	 *         <code>gid</code>.
+	 */
+	public LongIterator revisions(final long gid) {
+		final byte[] value = get(gid);
+		return value == null ? LongIterators.EMPTY_ITERATOR : decode(value);
+	}
+
+	/**
+	 * Returns whether a revision is associated with a GID. The list of the GID is fetched with a single
+	 * point lookup, and it is decoded only up to the first revision index not smaller than
+	 * <code>index</code>.
+	 *
+	 * @param gid a GID.
+	 * @param index a revision index.
+	 * @return true if <code>index</code> is associated with <code>gid</code>.
+	 */
+	public boolean contains(final long gid, final long index) {
+		final byte[] value = get(gid);
+		if (value == null) return false;
+		// Each of the (usually one) lists in the value is sorted
+		for (int start = 0; start < value.length; start = end(value, start) + 1) {
+			for (final LongIterator revisions = decode(value, start); revisions.hasNext();) {
+				final long revision = revisions.nextLong();
+				if (revision == index) return true;
+				if (revision > index) break;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether a GID has no associated revisions.
+	 *
+	 * @param gid a GID.
+	 * @return true if no revision is associated with <code>gid</code>.
+	 */
+	public boolean isEmpty(final long gid) {
+		return get(gid) == null;
+	}
+
+	/**
+	 * Adds to a write batch the association of a revision with a GID. Associating a revision that is
+	 * already associated with the GID has no effect.
+	 *
+	 * @param batch a write batch.
+	 * @param gid a GID.
+	 * @param index a revision index.
+	 */
+	public void add(final WriteBatch batch, final long gid, final long index) throws RocksDBException {
+		batch.merge(handle, Longs.toByteArray(gid), encode(new long[] { index }));
+		synchronized (touched) {
+			touched.add(gid);
+		}
+	}
+
+	/**
+	 * Adds to a write batch the removal of the association of a revision with a GID. Differently
+	 * from {@link #add(WriteBatch, long, long)}, the list of the GID is read and rewritten, so
+	 * removals should be used only when revisions are replaced. If the batch also
+	 * {@linkplain #add(WriteBatch, long, long) adds} associations with the GID, they must be added
+	 * after the removal.
+	 *
+	 * @param batch a write batch.
+	 * @param gid a GID.
+	 * @param index a revision index.
+	 */
+	public void remove(final WriteBatch batch, final long gid, final long index) throws RocksDBException {
+		final byte[] value = get(gid);
+		if (value == null) return;
+		final LongArrayList revisions = new LongArrayList();
+		for (final LongIterator i = decode(value); i.hasNext();) {
+			final long revision = i.nextLong();
+			if (revision != index) revisions.add(revision);
+		}
+		if (revisions.isEmpty()) batch.delete(handle, Longs.toByteArray(gid));
+		else batch.put(handle, Longs.toByteArray(gid), encode(revisions.toLongArray()));
+	}
+
+	/**
+	 * Associates a revision with a GID.
+	 *
+	 * @param gid a GID.
+	 * @param index a revision index.
+	 * @see #add(WriteBatch, long, long)
+	 */
+	public void add(final long gid, final long index) {
+		try (final WriteBatch batch = new WriteBatch(); final WriteOptions writeOptions = new WriteOptions()) {
+			add(batch, gid, index);
+			db.write(writeOptions, batch);
+		} catch (final RocksDBException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Returns the number of GIDs whose value has been appended to since the last compaction.
+	 *
+	 * @return the number of GIDs that the next {@linkplain #compact() compaction} will examine.
+	 */
+	public int touched() {
+		synchronized (touched) {
+			return touched.size();
+		}
+	}
+
+	/**
+	 * Rewrites as single lists the values that have been appended to since the last compaction.
+	 */
+	public void compact() {
+		final long[] gids;
+		synchronized (touched) {
+			gids = touched.toLongArray();
+			touched.clear();
+		}
+		try (final WriteBatch batch = new WriteBatch(); final WriteOptions writeOptions = new WriteOptions()) {
+			for (final long gid : gids) {
+				final byte[] value = get(gid);
+				if (value == null || end(value, 0) == value.length) continue;
+				batch.put(handle, Longs.toByteArray(gid), encode(LongIterators.unwrap(decode(value))));
+				if (batch.count() >= 1024) {
+					db.write(writeOptions, batch);
+					batch.clear();
+				}
+			}
+			db.write(writeOptions, batch);
+		} catch (final RocksDBException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private byte[] get(final long gid) {
+		try {
+			return db.get(handle, Longs.toByteArray(gid));
+		} catch (final RocksDBException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Encodes a list of revision indices.
+	 *
+	 * @param revisions a sorted array of distinct revision indices.
+	 * @return the encoded list.
+	 */
+	public static byte[] encode(final long[] revisions) {
+		final byte[] buffer = new byte[10 * (revisions.length + 1)];
+		int pos = writeLong(buffer, 0, revisions.length);
+		long prev = 0;
+		for (final long r : revisions) {
+			pos = writeLong(buffer, pos, r - prev);
+			prev = r;
+		}
+		return Arrays.copyOf(buffer, pos);
+	}
+
+	/**
+	 * Returns an iterator on the revision indices of a value, that is, of a list encoded by
+	 * {@link #encode(long[])} or of a sequence of such lists separated by a delimiter byte (as
+	 * produced by {@link #MERGE_OPERATOR}). A single list is decoded lazily; a sequence of lists is
+	 * merged eagerly.
+	 *
+	 * @param value a value.
+	 * @return an iterator returning in increasing order the distinct revision indices of the value.
+	 */
+	public static LongIterator decode(final byte[] value) {
+		int end = end(value, 0);
+		if (end == value.length) return decode(value, 0);
+		final LongArrayList revisions = new LongArrayList();
+		for (int start = 0;; start = end + 1, end = end(value, start)) {
+			for (final LongIterator i = decode(value, start); i.hasNext();) revisions.add(i.nextLong());
+			if (end == value.length) break;
+		}
+		final long[] a = revisions.elements();
+		int n = revisions.size();
+		// Merged lists are usually already in increasing order, as revisions are added in increasing order
+		boolean sorted = true;
+		for (int i = 1; i < n && sorted; i++) sorted = a[i - 1] < a[i];
+		if (!sorted) {
+			LongArrays.quickSort(a, 0, n);
+			int k = 0;
+			for (int i = 0; i < n; i++) if (k == 0 || a[k - 1] != a[i]) a[k++] = a[i];
+			n = k;
+		}
+		return LongIterators.wrap(a, 0, n);
+	}
+
+	/**
+	 * Returns the end of an encoded list.
+	 *
+	 * @param value a value.
+	 * @param pos the starting position of a list encoded by {@link #encode(long[])}.
+	 * @return the position following the end of the list.
+	 */
+	private static int end(final byte[] value, int pos) {
+		long count = 0;
+		for (int shift = 0;; shift += 7) {
+			final byte b = value[pos++];
+			count |= (b & 0x7FL) << shift;
+			if (b >= 0) break;
+		}
+		while (count-- != 0) while (value[pos++] < 0);
+		return pos;
+	}
+
+	/**
+	 * Returns an iterator decoding lazily a list encoded by {@link #encode(long[])}.
+	 *
+	 * @param value a value.
+	 * @param start the starting position of the list in <code>value</code>.
+	 * @return an iterator on the revision indices of the list.
+	 */
+	private static LongIterator decode(final byte[] value, final int start) {
+		return new LongIterator() {
+			private int pos = start;
+			private long remaining = -1;
+			private long prev;
+
+			private void init() {
+				remaining = readLong();
+			}
+
+			private long readLong() {
+				long result = 0;
+				for (int shift = 0;; shift += 7) {
+					final byte b = value[pos++];
+					result |= (b & 0x7FL) << shift;
+					if (b >= 0) return result;
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				if (remaining == -1) init();
+				return remaining != 0;
+			}
+
+			@Override
+			public long nextLong() {
+				if (!hasNext()) throw new NoSuchElementException();
+				remaining--;
+				return prev += readLong();
+			}
+		};
+	}
+
+	/**
+	 * Writes a long in variable-length 7-bit encoding (least significant group first, continuation
+	 * bit set on all groups but the last).
+	 */
+	private static int writeLong(final byte[] buffer, int pos, long x) {
+		while ((x & ~0x7FL) != 0) {
+			buffer[pos++] = (byte)(x & 0x7F | 0x80);
+			x >>>= 7;
+		}
+		buffer[pos++] = (byte)x;
+		return pos;
+	}
+}
@@ -18,21 +18,36 @@ package eu.fasten.core.data;
  * limitations under the License.
  */
 
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongPredicate;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.rocksdb.ColumnFamilyDescriptor;
@@ -40,19 +55,23 @@ import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.ColumnFamilyOptions;
 import org.rocksdb.CompressionType;
 import org.rocksdb.DBOptions;
+import org.rocksdb.Options;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.ByteBufferOutput;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.serializers.FieldSerializer;
 import com.esotericsoftware.kryo.serializers.JavaSerializer;
 import com.google.common.primitives.Longs;
 
+import eu.fasten.core.data.graphdb.GIDIndex;
 import eu.fasten.core.index.BVGraphSerializer;
+import eu.fasten.core.index.DirectBVGraph;
 import it.unimi.dsi.bits.LongArrayBitVector;
 import it.unimi.dsi.fastutil.HashCommon;
 import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
@@ -61,24 +80,31 @@ import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntArrays;
 import it.unimi.dsi.fastutil.io.BinIO;
 import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+import it.unimi.dsi.fastutil.longs.Long2IntFunction;
 import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import it.unimi.dsi.fastutil.longs.LongCollection;
 import it.unimi.dsi.fastutil.longs.LongIterator;
-import it.unimi.dsi.fastutil.longs.LongIterators;
 import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongList;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
-import it.unimi.dsi.fastutil.longs.LongSets;
 import it.unimi.dsi.fastutil.objects.AbstractObjectCollection;
+import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayFIFOQueue;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectIterator;
 import it.unimi.dsi.fastutil.objects.ObjectLinkedOpenHashSet;
 import it.unimi.dsi.fastutil.objects.ObjectList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 import it.unimi.dsi.io.InputBitStream;
 import it.unimi.dsi.io.NullInputStream;
 import it.unimi.dsi.lang.MutableString;
@@ -102,6 +128,9 @@ import it.unimi.dsi.webgraph.Transform;
  *         to its internal nodes, and LIDs from <var>a</var> (inclusive) to <var>a</var>+<var>b</var> (exclusive) correspond to its external nodes;
  *       <li>for internal nodes only: through the JSON identifier, that is the integer used to identify that node within the JSON object that represents that call graph.
  *   </ul>
+ *
+ *   <p>Visits ({@link #reaches(Node)}, {@link #coreaches(Node)} and their variants) can be run concurrently
+ *   by any number of threads; they are mutually exclusive only with {@link #add(RevisionCallGraph, long)}.
  */
 public class KnowledgeBase implements Serializable, Closeable {
 	private static final long serialVersionUID = 1L;
@@ -109,6 +138,8 @@ public class KnowledgeBase implements Serializable, Closeable {
 
 	public static final byte[] URI2GID = "URI2GID".getBytes();
 	public static final byte[] GID2URI = "GID2URI".getBytes();
+	public static final byte[] APPEARS_IN = "APPEARS_IN".getBytes();
+	public static final byte[] CALLED_BY = "CALLED_BY".getBytes();
 
 	public static long signature(final long gid, final long index) {
 		if (index > 1L << 24) throw new IndexOutOfBoundsException("Index too large: " + index);
@@ -200,13 +231,26 @@ public class KnowledgeBase implements Serializable, Closeable {
 	 * Maps each GID to a list of revisions (identified by their revision index)
 	 * in which the GID appears as an internal node.
 	 */
-	protected final Long2ObjectMap<LongSet> GIDAppearsIn;
+	protected transient GIDRevisionIndex appearsInIndex;
 
 	/**
 	 * Maps each GID to a list of revisions (identified by their revision index)
 	 * in which the GID appears as an external node.
 	 */
-	protected final Long2ObjectMap<LongSet> GIDCalledBy;
+	protected transient GIDRevisionIndex calledByIndex;
+
+	/**
+	 * The in-memory version of {@link #appearsInIndex} serialized by previous versions, which is
+	 * migrated to the database by {@link #getInstance(String, String, boolean)}; always
+	 * <code>null</code> after migration.
+	 */
+	private Long2ObjectMap<LongSet> GIDAppearsIn;
+
+	/**
+	 * The in-memory version of {@link #calledByIndex} serialized by previous versions; see
+	 * {@link #GIDAppearsIn}.
+	 */
+	private Long2ObjectMap<LongSet> GIDCalledBy;
 
 	/** Maps revision indices to the corresponding call graph. */
 	public final Long2ObjectOpenHashMap<CallGraph> callGraphs;
@@ -217,8 +261,39 @@ public class KnowledgeBase implements Serializable, Closeable {
 	/** The knowledged base is read-only. */
 	private boolean readOnly;
 
-	/** The {@link Kryo} object used to serialize data to the database. */
-	private transient Kryo kryo;
+	/**
+	 * The {@link Kryo} objects used to serialize data to the database; {@link Kryo} instances are not
+	 * thread-safe, so each thread gets its own.
+	 */
+	private transient ThreadLocal<Kryo> kryo;
+
+	/**
+	 * A lock guarding the maps of the knowledge base: visits acquire the read lock (so that any number
+	 * of them can proceed in parallel), whereas {@link #add(RevisionCallGraph, long)} acquires the
+	 * write lock.
+	 */
+	private transient ReentrantReadWriteLock lock;
+
+	/** The cache of decoded call-graph data. */
+	private transient CallGraphDataCache callGraphDataCache;
+
+	/** The cache of the results of reachability and coreachability visits. */
+	private transient ReachabilityCache reachabilityCache;
+
+	/** The maximum number of entries of {@link #uriCache}. */
+	private static final int URI_CACHE_SIZE = 1 << 16;
+
+	/**
+	 * An LRU cache mapping the string representation of recently added generic URIs (e.g., those of
+	 * JDK methods, which are called by most revisions) to their GIDs.
+	 */
+	private transient Object2LongLinkedOpenHashMap<String> uriCache;
+
+	/**
+	 * A map from product and version (see {@link #productVersion(String, String)}) to revision
+	 * indices, rebuilt from {@link #callGraphs} when the metadata are loaded.
+	 */
+	private transient Object2LongOpenHashMap<String> productVersion2Index;
 
 	/**
 	 * The pathname of the file containing the metadata of this knowledge base.
@@ -237,6 +312,12 @@ public class KnowledgeBase implements Serializable, Closeable {
 	 * {@link #gid2uriFamilyHandle}).
 	 */
 	private transient ColumnFamilyHandle uri2gidFamilyHandle;
+	/** The handle for the column family backing {@link #appearsInIndex}. */
+	private transient ColumnFamilyHandle appearsInFamilyHandle;
+	/** The handle for the column family backing {@link #calledByIndex}. */
+	private transient ColumnFamilyHandle calledByFamilyHandle;
+	/** The native resources of the storage profile used to open {@link #callGraphDB}, if any. */
+	private transient StorageProfile.Resources storageResources;
 
 	/** The next GID available. */
 	private long nextGID;
@@ -265,35 +346,188 @@ public class KnowledgeBase implements Serializable, Closeable {
 
 	/** Instances of this class contain the data relative to a call graph that are stored in the database. */
 	public static final class CallGraphData implements DirectedGraph {
-		/** The call graph. */
+		/**
+		 * A magic number marking the beginning of database entries written by
+		 * {@link #write(FastByteArrayOutputStream, BVGraph, BVGraph, Properties, Properties, long[], Condensation)},
+		 * which are entirely made of fixed-width fields (entries starting with
+		 * {@link DirectBVGraph#MAGIC} store part of the data using {@link Kryo}).
+		 */
+		public static final long MAGIC = 0xFA57E4D1BEC7B0A2L;
+		/**
+		 * The call graph; since {@link ImmutableGraph} instances are not thread-safe, it is never
+		 * accessed directly, but through a {@linkplain ImmutableGraph#copy() lightweight copy} per call.
+		 */
 		private final ImmutableGraph graph;
-		/** The transpose graph. */
+		/** The transpose graph, accessed through lightweight copies as {@link #graph}. */
 		private final ImmutableGraph transpose;
-		/** Properties (in the sense of {@link ImmutableGraph}) of the call graph. */
-		public final Properties graphProperties;
-		/** Properties (in the sense of {@link ImmutableGraph}) of the transpose graph. */
-		public final Properties transposeProperties;
+		/**
+		 * Properties (in the sense of {@link ImmutableGraph}) of the call graph and of the transpose
+		 * graph, or <code>null</code> if they have not been decoded from {@link #buffer} yet.
+		 */
+		private volatile Properties[] properties;
+		/** The database entry containing the encoded properties, if they are decoded lazily. */
+		private final byte[] buffer;
+		/** The offset of the encoded properties in {@link #buffer}. */
+		private final int propertiesOffset;
 		/** Maps LIDs to GIDs. */
 		public final long[] LID2GID;
-		/** Inverse to {@link #LID2GID}: maps GIDs to LIDs. */
-		public final Long2IntOpenHashMap GID2LID;
+		/** Inverse to {@link #LID2GID}: maps GIDs to LIDs, returning -1 on missing GIDs. */
+		public final Long2IntFunction GID2LID;
 		/** A cached copy of the set of external nodes (TODO: immutable? slower but safer). */
 		private final LongOpenHashSet externalNodes;
+		/**
+		 * The condensation of the call graph, or <code>null</code> if it was not stored with the call
+		 * graph.
+		 */
+		public final Condensation condensation;
 		/** The size in bytes of the RocksDB entry. */
 		public final int size;
 
-		public CallGraphData(final ImmutableGraph graph, final ImmutableGraph transpose, final Properties graphProperties, final Properties transposeProperties, final long[] LID2GID, final Long2IntOpenHashMap GID2LID, final int nInternal, final int size) {
+		public CallGraphData(final ImmutableGraph graph, final ImmutableGraph transpose, final Properties graphProperties, final Properties transposeProperties, final long[] LID2GID, final Long2IntFunction GID2LID, final int nInternal, final int size) {
+			this(graph, transpose, graphProperties, transposeProperties, LID2GID, GID2LID, null, nInternal, size);
+		}
+
+		public CallGraphData(final ImmutableGraph graph, final ImmutableGraph transpose, final Properties graphProperties, final Properties transposeProperties, final long[] LID2GID, final Long2IntFunction GID2LID, final Condensation condensation, final int nInternal, final int size) {
+			this(graph, transpose, new Properties[] { graphProperties, transposeProperties }, null, 0, LID2GID, GID2LID, condensation, nInternal, size);
+		}
+
+		private CallGraphData(final ImmutableGraph graph, final ImmutableGraph transpose, final Properties[] properties, final byte[] buffer, final int propertiesOffset, final long[] LID2GID, final Long2IntFunction GID2LID, final Condensation condensation, final int nInternal, final int size) {
 			super();
 			this.graph = graph;
 			this.transpose = transpose;
-			this.graphProperties = graphProperties;
-			this.transposeProperties = transposeProperties;
+			this.properties = properties;
+			this.buffer = buffer;
+			this.propertiesOffset = propertiesOffset;
 			this.LID2GID = LID2GID;
 			this.GID2LID = GID2LID;
+			this.condensation = condensation;
 			this.externalNodes = new LongOpenHashSet(Arrays.copyOfRange(LID2GID, nInternal, LID2GID.length));
 			this.size = size;
 		}
 
+		/**
+		 * Writes call-graph data in the format read by {@link #read(byte[], Kryo, int)}.
+		 *
+		 * <p>
+		 * All data are written in fixed-width layouts that can be used in place when reading: the graphs
+		 * (see {@link DirectBVGraph}), {@link #LID2GID}, a {@link GIDIndex} inverting it and the
+		 * condensation (see {@link Condensation#write(DataOutput)}). The properties, which are not needed
+		 * by visits, are written last, and decoded only on demand.
+		 *
+		 * @param fbaos the stream to which the data will be appended.
+		 * @param graph the compressed call graph, loaded in memory.
+		 * @param transpose the compressed transpose, loaded in memory.
+		 * @param graphProperties the properties of the call graph.
+		 * @param transposeProperties the properties of the transpose.
+		 * @param LID2GID the map from LIDs to GIDs.
+		 * @param condensation the condensation of the call graph.
+		 */
+		public static void write(final FastByteArrayOutputStream fbaos, final BVGraph graph, final BVGraph transpose, final Properties graphProperties, final Properties transposeProperties, final long[] LID2GID, final Condensation condensation) throws IOException {
+			final DataOutputStream dos = new DataOutputStream(fbaos);
+			dos.writeLong(MAGIC);
+			DirectBVGraph.write(graph, dos);
+			DirectBVGraph.write(transpose, dos);
+			dos.writeInt(LID2GID.length);
+			for (final long gid : LID2GID) dos.writeLong(gid);
+			GIDIndex.build(LID2GID).write(dos);
+			condensation.write(dos);
+			for (final Properties properties : new Properties[] { graphProperties, transposeProperties }) {
+				final Set<String> keys = properties.stringPropertyNames();
+				dos.writeInt(keys.size());
+				for (final String key : keys) {
+					dos.writeUTF(key);
+					dos.writeUTF(properties.getProperty(key));
+				}
+			}
+			dos.flush();
+		}
+
+		/**
+		 * Decodes call-graph data stored in the database.
+		 *
+		 * <p>
+		 * If the data was written by {@link #write(FastByteArrayOutputStream, BVGraph, BVGraph,
+		 * Properties, Properties, long[], Condensation)}, the returned graphs and {@link #GID2LID} are
+		 * backed directly by <code>buffer</code> (see {@link DirectBVGraph} and {@link GIDIndex}), and the
+		 * remaining fixed-width data are copied in bulk, so decoding costs just a few offset lookups.
+		 * Data in the previous formats, partially or entirely serialized with {@link Kryo}, are decoded
+		 * with <code>kryo</code>.
+		 *
+		 * @param buffer the database entry, which must not be modified afterwards.
+		 * @param kryo a {@link Kryo} instance, used only for data in the previous formats.
+		 * @param nInternal the number of internal nodes.
+		 * @return the decoded data.
+		 */
+		public static CallGraphData read(final byte[] buffer, final Kryo kryo, final int nInternal) {
+			final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+			final long magic = buffer.length >= Long.BYTES ? byteBuffer.getLong(0) : 0;
+			final ImmutableGraph[] graphs;
+			final Properties[] properties;
+			final long[] LID2GID;
+			final Input input;
+			if (magic == MAGIC || magic == DirectBVGraph.MAGIC) {
+				byteBuffer.position(Long.BYTES);
+				graphs = new ImmutableGraph[] { DirectBVGraph.read(byteBuffer), DirectBVGraph.read(byteBuffer) };
+				// A single bulk copy, as LID2GID is accessed as an array
+				LID2GID = new long[byteBuffer.getInt()];
+				byteBuffer.asLongBuffer().get(LID2GID);
+				byteBuffer.position(byteBuffer.position() + LID2GID.length * Long.BYTES);
+				if (magic == MAGIC) {
+					final GIDIndex GID2LID = GIDIndex.read(byteBuffer, LID2GID);
+					final Condensation condensation = Condensation.read(byteBuffer);
+					return new CallGraphData(graphs[0], graphs[1], null, buffer, byteBuffer.position(), LID2GID, GID2LID, condensation, nInternal, buffer.length);
+				}
+				input = new Input(buffer, byteBuffer.position(), buffer.length - byteBuffer.position());
+				properties = new Properties[] { kryo.readObject(input, Properties.class), kryo.readObject(input, Properties.class) };
+			} else {
+				input = new Input(buffer);
+				graphs = new ImmutableGraph[] { kryo.readObject(input, BVGraph.class), kryo.readObject(input, BVGraph.class) };
+				properties = new Properties[] { kryo.readObject(input, Properties.class), kryo.readObject(input, Properties.class) };
+				LID2GID = kryo.readObject(input, long[].class);
+			}
+			final Long2IntOpenHashMap GID2LID = kryo.readObject(input, Long2IntOpenHashMap.class);
+			final Condensation condensation = Condensation.read(kryo, input);
+			return new CallGraphData(graphs[0], graphs[1], properties, null, 0, LID2GID, GID2LID, condensation, nInternal, buffer.length);
+		}
+
+		/**
+		 * Returns the properties of the graphs, decoding them if necessary.
+		 *
+		 * @return the properties of the call graph and of the transpose.
+		 */
+		private Properties[] properties() {
+			if (properties != null) return properties;
+			final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(buffer, propertiesOffset, buffer.length - propertiesOffset));
+			final Properties[] properties = new Properties[2];
+			try {
+				for (int i = 0; i < properties.length; i++) {
+					properties[i] = new Properties();
+					for (int k = dis.readInt(); k-- != 0;) properties[i].setProperty(dis.readUTF(), dis.readUTF());
+				}
+			} catch (final IOException e) {
+				throw new RuntimeException(e);
+			}
+			return this.properties = properties;
+		}
+
+		/**
+		 * Returns the properties (in the sense of {@link ImmutableGraph}) of the call graph.
+		 *
+		 * @return the properties of the call graph.
+		 */
+		public Properties graphProperties() {
+			return properties()[0];
+		}
+
+		/**
+		 * Returns the properties (in the sense of {@link ImmutableGraph}) of the transpose graph.
+		 *
+		 * @return the properties of the transpose graph.
+		 */
+		public Properties transposeProperties() {
+			return properties()[1];
+		}
+
 		@Override
 		public int numNodes() {
 			return graph.numNodes();
@@ -306,6 +540,18 @@ public class KnowledgeBase implements Serializable, Closeable {
 
 		@Override
 		public LongList successors(final long node) {
+			return successors(node, graph.copy());
+		}
+
+		/**
+		 * Returns the successors of a node using a given lightweight copy of the call graph, so that a
+		 * visit can take a single copy per revision.
+		 *
+		 * @param node the GID of a node.
+		 * @param graph a copy of the call graph owned by the caller (see {@link #rawGraph()}).
+		 * @return the GIDs of the successors of <code>node</code>.
+		 */
+		public LongList successors(final long node, final ImmutableGraph graph) {
 			final int lid = GID2LID.get(node);
 			if (lid < 0) throw new IllegalArgumentException("GID " + node + " does not exist");
 			final int outdegree = graph.outdegree(lid);
@@ -316,6 +562,18 @@ public class KnowledgeBase implements Serializable, Closeable {
 
 		@Override
 		public LongList predecessors(final long node) {
+			return predecessors(node, transpose.copy());
+		}
+
+		/**
+		 * Returns the predecessors of a node using a given lightweight copy of the transpose graph, as
+		 * {@link #successors(long, ImmutableGraph)}.
+		 *
+		 * @param node the GID of a node.
+		 * @param transpose a copy of the transpose graph owned by the caller (see {@link #rawTranspose()}).
+		 * @return the GIDs of the predecessors of <code>node</code>.
+		 */
+		public LongList predecessors(final long node, final ImmutableGraph transpose) {
 			final int lid = GID2LID.get(node);
 			if (lid < 0) throw new IllegalArgumentException("GID " + node + " does not exist");
 			final int indegree = transpose.outdegree(lid);
@@ -345,12 +603,22 @@ public class KnowledgeBase implements Serializable, Closeable {
 			return !externalNodes.contains(node);
 		}
 
+		/**
+		 * Returns a lightweight copy of the call graph, which must not be shared with other threads.
+		 *
+		 * @return the call graph.
+		 */
 		public ImmutableGraph rawGraph() {
-			return graph;
+			return graph.copy();
 		}
 
+		/**
+		 * Returns a lightweight copy of the transpose graph, which must not be shared with other threads.
+		 *
+		 * @return the transpose graph.
+		 */
 		public ImmutableGraph rawTranspose() {
-			return transpose;
+			return transpose.copy();
 		}
 
 		@Override
@@ -388,105 +656,73 @@ public class KnowledgeBase implements Serializable, Closeable {
 	}
 
 	/**
-	 * Instances represent call graphs and the associated metadata. Each call
-	 * graph corresponds to a specific release (product, version, forge), and
-	 * has a unique revision index. Its nodes are divided into internal nodes
-	 * and external nodes (the former have smaller values, the latter have
-	 * larger values). Each node number is called a local identifier (LID); LIDs
-	 * are mapped to global identifiers (GIDs). External nodes have no outgoing
-	 * arcs.
+	 * A {@link RevisionCallGraph} whose graph has been built, reordered and compressed, but whose nodes
+	 * have not been assigned GIDs yet. Since instances do not depend on the state of the knowledge
+	 * base, they can be built concurrently (see {@link Ingestion}); the short, serialized part of the
+	 * ingestion (GID assignment, storage and update of the maps from GIDs to revisions) is then
+	 * performed by {@link KnowledgeBase#commit(CompressedCallGraph, long)}.
 	 */
-	public class CallGraph implements Serializable {
-		private static final long serialVersionUID = 1L;
-		/**
-		 * Number of internal nodes (first {@link #nInternal} GIDs in
-		 * {@link #LID2GID}).
-		 */
-		public final int nInternal;
-		/** The product described in this call graph. */
-		public final String product;
-		/** The version described in this call graph. */
-		public final String version;
-		/** The forge described in this call graph. */
-		public final String forge;
-		/** The revision index of this call graph. */
-		public final long index;
-		/**
-		 * An array of two graphs: the call graph (index 0) and its transpose
-		 * (index 1).
-		 */
-		@SuppressWarnings("null")
+	protected static final class CompressedCallGraph {
+		/** The revision call graph. */
+		private final RevisionCallGraph g;
+		/** The number of internal nodes. */
+		private final int nInternal;
+		/** The generic URIs of the nodes, in temporary order (internal nodes first). */
+		private final FastenURI[] temporary2URI;
+		/** The permutation from temporary indices to LIDs. */
+		private final int[] perm;
+		/** The compressed graph, with nodes numbered by LID (see {@link DirectBVGraph#compress(ImmutableGraph, Properties)}). */
+		private final BVGraph graph;
+		/** The compressed transpose. */
+		private final BVGraph transpose;
+		/** The properties of the compressed graph. */
+		private final Properties graphProperties = new Properties();
+		/** The properties of the compressed transpose. */
+		private final Properties transposeProperties = new Properties();
+		/** The condensation of the graph. */
+		private final Condensation condensation;
+		/** The GIDs of the nodes, indexed by LID; assigned by {@link CallGraph#CallGraph(CompressedCallGraph, long)}. */
+		private long[] LID2GID;
 
-		private transient SoftReference<CallGraphData> callGraphData;
-
-		// ALERT unsynchronized update of Knowledge Base maps.
 		/**
-		 * Creates a call graph from a {@link RevisionCallGraph}. All
-		 * maps of the knowledge base (e.g. {@link KnowledgeBase#GIDAppearsIn})
-		 * are updated appropriately. The graphs are stored in the database.
+		 * Builds, reorders and compresses the graph of a revision call graph.
 		 *
 		 * @param g the revision call graph.
-		 * @param index the revision index.
 		 */
-		protected CallGraph(final RevisionCallGraph g, final long index) throws IOException, RocksDBException {
-			product = g.product;
-			version = g.version;
-			forge = g.forge;
-			this.index = index;
-
-			LOGGER.info("Analyzing fasten://" + forge + "!" + product + "$" + version);
-			// List of internal GIDs
-			final LongLinkedOpenHashSet internalGIDs = new LongLinkedOpenHashSet();
-			// List of external GIDs
-			final LongLinkedOpenHashSet externalGIDs = new LongLinkedOpenHashSet();
+		protected CompressedCallGraph(final RevisionCallGraph g) throws IOException {
+			this.g = g;
+			LOGGER.info("Analyzing fasten://" + g.forge + "!" + g.product + "$" + g.version);
+			// Map from generic URIs to temporary indices
+			final Object2IntLinkedOpenHashMap<FastenURI> uri2Temporary = new Object2IntLinkedOpenHashMap<>();
+			uri2Temporary.defaultReturnValue(-1);
 			final Int2IntOpenHashMap jsonId2Temporary = new Int2IntOpenHashMap();
 
-			// First enumerate all internal nodes, add their URIs to the global maps if necessary, and assign them a temporary index
+			// First enumerate all internal nodes and assign them a temporary index
 			// Update jsonId2Temporary accordingly
 			final Map<Integer, FastenURI> mapOfAllMethods = g.mapOfAllMethods();
 			for (final Entry<Integer, FastenURI> e : mapOfAllMethods.entrySet()) {
-				final int jsonId = e.getKey().intValue();
-				final FastenURI uri = e.getValue();
-				final FastenURI genericUri = FastenURI.createSchemeless(null, null, null, uri.getRawNamespace(), uri.getRawEntity());
-				final long gid = addURI(genericUri);
-				// Fix gazillions of copies of Java classes in jars
-				addGidRev(GIDAppearsIn, gid, index);
-				jsonId2Temporary.put(jsonId, internalGIDs.size());
-				internalGIDs.add(gid);
+				final FastenURI genericUri = genericURI(e.getValue());
+				if (!uri2Temporary.containsKey(genericUri)) uri2Temporary.put(genericUri, uri2Temporary.size());
+				jsonId2Temporary.put(e.getKey().intValue(), uri2Temporary.getInt(genericUri));
 			}
 
-			nInternal = internalGIDs.size();
+			nInternal = uri2Temporary.size();
 
-			// Enumerate all external arcs, add the target URIs to the global maps if necessary. Note that they don't have a JSON id.
+			// Enumerate all external arcs. Note that they don't have a JSON id.
 			// While performing the enumeration, we check that their generic URIs don't appear already among those of internal nodes.
 			for(final Pair<Integer, FastenURI> e : g.getGraph().getExternalCalls().keySet()) {
-				final FastenURI uri = e.getValue();
-				final FastenURI genericUri = FastenURI.createSchemeless(null, null, null, uri.getRawNamespace(), uri.getRawEntity());
-				final long gid = addURI(genericUri);
-				if (internalGIDs.contains(gid)) LOGGER.error("GID " + gid + " (URL " + uri + ") appears both as an internal and as an external node: considering it internal");
-				else {
-					addGidRev(GIDCalledBy, gid, index);
-					externalGIDs.add(gid);
-				}
+				final FastenURI genericUri = genericURI(e.getValue());
+				final int temporary = uri2Temporary.getInt(genericUri);
+				if (temporary == -1) uri2Temporary.put(genericUri, uri2Temporary.size());
+				else if (temporary < nInternal) LOGGER.error("URL " + e.getValue() + " appears both as an internal and as an external node: considering it internal");
 			}
 
-			// Now compute the map from temporary indices to GIDs (all GIDs are in the global maps, by now)
-			final long[] temporary2GID = new long[internalGIDs.size() + externalGIDs.size()];
-			LongIterators.unwrap(internalGIDs.iterator(), temporary2GID);
-			LongIterators.unwrap(externalGIDs.iterator(), temporary2GID, nInternal, temporary2GID.length - nInternal);
-			// Compute the reverse map
-			final Long2IntOpenHashMap GID2Temporary = new Long2IntOpenHashMap();
-			GID2Temporary.defaultReturnValue(-1);
-			for (int i = 0; i < temporary2GID.length; i++) {
-				final long result = GID2Temporary.put(temporary2GID[i], i);
-				assert result == -1; // Internal and external GIDs should be
-				// disjoint by construction
-			}
+			temporary2URI = uri2Temporary.keySet().toArray(new FastenURI[uri2Temporary.size()]);
 
 			// Create, store and load compressed versions of the graph and of the transpose.
 
 			// First create the graph as an ArrayListMutableGraph
-			final ArrayListMutableGraph mutableGraph = new ArrayListMutableGraph(temporary2GID.length);
+			final ArrayListMutableGraph mutableGraph = new ArrayListMutableGraph(temporary2URI.length);
 
 			// Add arcs between internal nodes
 			for(final List<Integer> a : g.getGraph().getInternalCalls()) {
@@ -497,7 +733,7 @@ public class KnowledgeBase implements Serializable, Closeable {
 				try {
 					mutableGraph.addArc(jsonId2Temporary.get(jsonSource), jsonId2Temporary.get(jsonTarget));
 				} catch (final IllegalArgumentException e) {
-					LOGGER.error("Duplicate arc " + gid2URI(temporary2GID[jsonId2Temporary.get(jsonSource)]) + " -> " + gid2URI(temporary2GID[jsonId2Temporary.get(jsonSource)]));
+					LOGGER.error("Duplicate arc " + temporary2URI[jsonId2Temporary.get(jsonSource)] + " -> " + temporary2URI[jsonId2Temporary.get(jsonTarget)]);
 				}
 			}
 
@@ -505,102 +741,143 @@ public class KnowledgeBase implements Serializable, Closeable {
 			for(final Pair<Integer, FastenURI> a : g.getGraph().getExternalCalls().keySet()) {
 
 				final int jsonSource = a.getLeft().intValue();
-				final FastenURI targetUri = a.getRight();
-				final FastenURI genericTargetUri = FastenURI.createSchemeless(null, null, null, targetUri.getRawNamespace(), targetUri.getRawEntity());
-				final long targetGID = addURI(genericTargetUri);
+				final FastenURI genericTargetUri = genericURI(a.getRight());
 
 				try {
-					mutableGraph.addArc(jsonId2Temporary.get(jsonSource), GID2Temporary.get(targetGID));
+					mutableGraph.addArc(jsonId2Temporary.get(jsonSource), uri2Temporary.getInt(genericTargetUri));
 				} catch (final IllegalArgumentException e) {
-					LOGGER.error("Duplicate arc " + gid2URI(temporary2GID[jsonId2Temporary.get(jsonSource)]) + " -> " + genericTargetUri);
+					LOGGER.error("Duplicate arc " + temporary2URI[jsonId2Temporary.get(jsonSource)] + " -> " + genericTargetUri);
 				}
 			}
 
-			final File f = File.createTempFile(KnowledgeBase.class.getSimpleName(), ".tmpgraph");
-
-			final Properties graphProperties = new Properties(), transposeProperties = new Properties();
-			FileInputStream propertyFile;
-
-			// Compress, load and serialize graph
-			final int[] bfsperm = bfsperm(mutableGraph.immutableView(), -1, internalGIDs.size());
-			final ImmutableGraph graph = Transform.map(mutableGraph.immutableView(), bfsperm);
-			BVGraph.store(graph, f.toString());
-			propertyFile = new FileInputStream(f + BVGraph.PROPERTIES_EXTENSION);
-			graphProperties.load(propertyFile);
-			propertyFile.close();
-
-			final FastByteArrayOutputStream fbaos = new FastByteArrayOutputStream();
-			final ByteBufferOutput bbo = new ByteBufferOutput(fbaos);
-			kryo.writeObject(bbo, BVGraph.load(f.toString()));
-
-			// Compute LIDs according to the current node renumbering based on BFS
-			final long[] LID2GID = new long[temporary2GID.length];
-			final Long2IntOpenHashMap GID2LID = new Long2IntOpenHashMap();
-			GID2LID.defaultReturnValue(-1);
-
-			for (int x = 0; x < temporary2GID.length; x++)
-				LID2GID[bfsperm[x]] = temporary2GID[x];
-			for (int i = 0; i < temporary2GID.length; i++)
-				GID2LID.put(LID2GID[i], i);
-
-			// Compress, load and serialize transpose graph
-			BVGraph.store(Transform.transpose(graph), f.toString());
-			propertyFile = new FileInputStream(f + BVGraph.PROPERTIES_EXTENSION);
-			transposeProperties.load(propertyFile);
-			propertyFile.close();
-
-			kryo.writeObject(bbo, BVGraph.load(f.toString()));
-
-			// Write out properties
-			kryo.writeObject(bbo, graphProperties);
-			kryo.writeObject(bbo, transposeProperties);
+			// Compress graph and transpose in memory
+			perm = bfsperm(mutableGraph.immutableView(), -1, nInternal);
+			final ImmutableGraph permutedGraph = Transform.map(mutableGraph.immutableView(), perm);
+			graph = DirectBVGraph.compress(permutedGraph, graphProperties);
+			transpose = DirectBVGraph.compress(Transform.transpose(permutedGraph), transposeProperties);
+			condensation = Condensation.compute(permutedGraph);
+		}
+	}
 
-			// Write out LID2GID info
-			kryo.writeObject(bbo, LID2GID);
-			// This could be rebuilt if data were input correctly (i.e., no duplicate internal and external nodes, see assert above).
-			kryo.writeObject(bbo, GID2LID);
-			bbo.flush();
+	/**
+	 * Instances represent call graphs and the associated metadata. Each call
+	 * graph corresponds to a specific release (product, version, forge), and
+	 * has a unique revision index. Its nodes are divided into internal nodes
+	 * and external nodes (the former have smaller values, the latter have
+	 * larger values). Each node number is called a local identifier (LID); LIDs
+	 * are mapped to global identifiers (GIDs). External nodes have no outgoing
+	 * arcs.
+	 */
+	public class CallGraph implements Serializable {
+		private static final long serialVersionUID = 1L;
+		/**
+		 * Number of internal nodes (first {@link #nInternal} GIDs in
+		 * {@link #LID2GID}).
+		 */
+		public final int nInternal;
+		/** The product described in this call graph. */
+		public final String product;
+		/** The version described in this call graph. */
+		public final String version;
+		/** The forge described in this call graph. */
+		public final String forge;
+		/** The revision index of this call graph. */
+		public final long index;
+		/**
+		 * The depset of this call graph, used by constrained visits (see {@link #admits(CallGraph)});
+		 * it is <code>null</code> for call graphs stored by previous versions.
+		 */
+		public final List<List<RevisionCallGraph.Dependency>> depset;
+		/**
+		 * A random, nonzero stamp telling apart call graphs added with the same index (e.g., to detect
+		 * without reading the database that a revision has been replaced); it is zero for call graphs
+		 * stored by previous versions.
+		 */
+		public final long stamp;
+		/**
+		 * Creates a call graph from a {@link RevisionCallGraph}, assigning GIDs to its nodes. The
+		 * graphs are neither stored in the database nor published: see
+		 * {@link KnowledgeBase#add(RevisionCallGraph, long)}.
+		 *
+		 * @param g the revision call graph.
+		 * @param index the revision index.
+		 */
+		protected CallGraph(final RevisionCallGraph g, final long index) throws IOException {
+			this(new CompressedCallGraph(g), index);
+		}
 
-			// Write to DB
-			callGraphDB.put(defaultHandle, Longs.toByteArray(index), 0, 8, fbaos.array, 0, fbaos.length);
+		// ALERT unsynchronized update of Knowledge Base maps.
+		/**
+		 * Creates a call graph from a {@linkplain CompressedCallGraph compressed call graph}, assigning
+		 * GIDs to its nodes (see {@link CompressedCallGraph#LID2GID}). The graphs are neither stored
+		 * in the database nor published: see {@link KnowledgeBase#commit(CompressedCallGraph, long)}.
+		 *
+		 * @param c the compressed call graph.
+		 * @param index the revision index.
+		 */
+		protected CallGraph(final CompressedCallGraph c, final long index) {
+			product = c.g.product;
+			version = c.g.version;
+			forge = c.g.forge;
+			this.index = index;
+			depset = c.g.depset;
+			nInternal = c.nInternal;
+			long stamp;
+			while ((stamp = ThreadLocalRandom.current().nextLong()) == 0);
+			this.stamp = stamp;
+
+			// Add the generic URIs of all nodes to the global maps at once
+			final Object2LongOpenHashMap<String> uri2GID = addURIs(Arrays.asList(c.temporary2URI));
+			// Compute LIDs according to the node renumbering of the compressed graphs
+			c.LID2GID = new long[c.temporary2URI.length];
+			for (int x = 0; x < c.temporary2URI.length; x++)
+				c.LID2GID[c.perm[x]] = uri2GID.getLong(c.temporary2URI[x].toString());
+		}
 
-			new File(f.toString() + BVGraph.PROPERTIES_EXTENSION).delete();
-			new File(f.toString() + BVGraph.OFFSETS_EXTENSION).delete();
-			new File(f.toString() + BVGraph.GRAPH_EXTENSION).delete();
-			f.delete();
+		/**
+		 * Returns whether the depset of this call graph admits another call graph, that is, whether
+		 * this revision may call into <code>callee</code>.
+		 *
+		 * @param callee another call graph.
+		 * @return true if the {@linkplain #depset depset} of this call graph is unknown, or if it
+		 *         {@linkplain RevisionCallGraph.Dependency#admits(List, String, String, String) admits}
+		 *         the forge, product and version of <code>callee</code>.
+		 */
+		public boolean admits(final CallGraph callee) {
+			return depset == null || RevisionCallGraph.Dependency.admits(depset, callee.forge, callee.product, callee.version);
 		}
 
 		/**
 		 * Returns the call graph and its transpose in a 2-element array. The
-		 * graphs are cached, and read from the database if needed.
+		 * graphs are kept in the {@linkplain KnowledgeBase#callGraphDataCache() cache} of
+		 * the knowledge base, and read from the database if needed.
+		 *
+		 * <p>This method is thread-safe: concurrent calls on the same call graph
+		 * will decode its data just once, whereas calls on different call graphs
+		 * proceed in parallel.
 		 *
 		 * @return an array containing the call graph and its transpose.
 		 */
 		public CallGraphData callGraphData() {
-			if (callGraphData != null) {
-				final var callGraphData = this.callGraphData.get();
+			CallGraphData callGraphData = callGraphDataCache.get(index);
+			if (callGraphData != null) return callGraphData;
+			synchronized (this) {
+				callGraphData = callGraphDataCache.peek(index);
 				if (callGraphData != null) return callGraphData;
+				callGraphData = loadCallGraphData();
+				callGraphDataCache.put(index, callGraphData);
+				return callGraphData;
 			}
+		}
+
+		/**
+		 * Reads and decodes the data of this call graph from the database.
+		 *
+		 * @return the data of this call graph.
+		 */
+		private CallGraphData loadCallGraphData() {
 			try {
-				final byte[] buffer = callGraphDB.get(Longs.toByteArray(index));
-				final Input input = new Input(buffer);
-				assert kryo != null;
-				final var graphs = new ImmutableGraph[] { kryo.readObject(input, BVGraph.class), kryo.readObject(input, BVGraph.class) };
-				final Properties[] properties = new Properties[] { kryo.readObject(input, Properties.class), kryo.readObject(input, Properties.class) };
-				final long[] LID2GID = kryo.readObject(input, long[].class);
-				final Long2IntOpenHashMap GID2LID = kryo.readObject(input, Long2IntOpenHashMap.class);
-
-				/* This might be reinstated if incoming data is correct. See assert above.
-				// Rebuild GID2LID from LID2GID
-				final int n = LID2GID.length;
-				final Long2IntOpenHashMap GID2LID = new Long2IntOpenHashMap(n);
-				GID2LID.defaultReturnValue(-1);
-				for (int i = 0; i < n; i++) GID2LID.put(LID2GID[i], i);
-				*/
-
-				final CallGraphData callGraphData = new CallGraphData(graphs[0], graphs[1], properties[0], properties[1], LID2GID, GID2LID, nInternal, buffer.length);
-				this.callGraphData = new SoftReference<>(callGraphData);
-				return callGraphData;
+				return CallGraphData.read(callGraphDB.get(Longs.toByteArray(index)), KnowledgeBase.this.kryo.get(), nInternal);
 			} catch (final RocksDBException e) {
 				throw new RuntimeException(e);
 			}
@@ -611,7 +888,7 @@ public class KnowledgeBase implements Serializable, Closeable {
 			final StringBuilder b = new StringBuilder();
 
 			final CallGraphData callGraphData = callGraphData();
-			for (final NodeIterator nodeIterator = callGraphData.graph.nodeIterator(); nodeIterator.hasNext();) {
+			for (final NodeIterator nodeIterator = callGraphData.rawGraph().nodeIterator(); nodeIterator.hasNext();) {
 				final FastenURI u = gid2URI(callGraphData.LID2GID[nodeIterator.nextInt()]);
 				final LazyIntIterator successors = nodeIterator.successors();
 				for (int s; (s = successors.nextInt()) != -1;)
@@ -622,19 +899,66 @@ public class KnowledgeBase implements Serializable, Closeable {
 	}
 
 	/**
-	 * Wraps a set of nodes, and allows one to iterate over it with an iterator
+	 * A lazy breadth-first visit, returning nodes in the same order as {@link #reaches(Node)} or
+	 * {@link #coreaches(Node)}.
+	 *
+	 * <p>
+	 * A node is expanded only when the following node is requested, so the cost of the visit (and
+	 * the memory used for the visit state) is proportional to the number of nodes actually returned.
+	 * The read lock is acquired for each expansion, so the knowledge base can be updated while the
+	 * visit is in progress.
+	 */
+	private final class Visit implements ObjectIterator<Node> {
+		/** Whether we are following successors (reachability) or predecessors (coreachability). */
+		private final boolean forward;
+		/** The nodes that have been discovered. */
+		private final ObjectOpenHashSet<Node> seen = new ObjectOpenHashSet<>();
+		/** The nodes that have been discovered but not returned yet. */
+		private final ObjectArrayFIFOQueue<Node> queue = new ObjectArrayFIFOQueue<>();
+		/** The last node returned, if it has not been expanded yet, or <code>null</code>. */
+		private Node toExpand;
+
+		private Visit(final Node start, final boolean forward) {
+			this.forward = forward;
+			queue.enqueue(start);
+			seen.add(start);
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (toExpand != null) {
+				lock.readLock().lock();
+				try {
+					for (final Node s : forward ? successors(toExpand) : predecessors(toExpand)) if (seen.add(s)) queue.enqueue(s);
+				} finally {
+					lock.readLock().unlock();
+				}
+				toExpand = null;
+			}
+			return !queue.isEmpty();
+		}
+
+		@Override
+		public Node next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			return toExpand = queue.dequeue();
+		}
+	}
+
+	/**
+	 * Wraps a set of node signatures, and allows one to iterate over it with an iterator
 	 * that returns the {@link FastenURI} of the node each time.
 	 */
 	private final class NamedResult extends AbstractObjectCollection<FastenURI> {
-		private final ObjectLinkedOpenHashSet<Node> reaches;
+		private final LongSet reaches;
 
 		/**
-		 * Wraps a given set of nodes.
+		 * Wraps a given set of node signatures.
 		 *
-		 * @param objectLinkedOpenHashSet the set of nodes.
+		 * @param reaches the set of node signatures.
 		 */
-		private NamedResult(final ObjectLinkedOpenHashSet<Node> objectLinkedOpenHashSet) {
-			this.reaches = objectLinkedOpenHashSet;
+		private NamedResult(final LongSet reaches) {
+			this.reaches = reaches;
 		}
 
 		@Override
@@ -649,7 +973,7 @@ public class KnowledgeBase implements Serializable, Closeable {
 
 		@Override
 		public ObjectIterator<FastenURI> iterator() {
-			final ObjectIterator<Node> iterator = reaches.iterator();
+			final LongIterator iterator = reaches.iterator();
 			return new ObjectIterator<>() {
 
 				@Override
@@ -659,15 +983,55 @@ public class KnowledgeBase implements Serializable, Closeable {
 
 				@Override
 				public FastenURI next() {
-					return iterator.next().toFastenURI();
+					final long signature = iterator.nextLong();
+					return new Node(gid(signature), index(signature)).toFastenURI();
 				}
 			};
 		}
 	}
 
-	/** Initializes the kryo instance used for serialization. */
+	/**
+	 * Initializes the per-thread kryo instances used for serialization, the visit lock, the cache of
+	 * call-graph data and the cache of visit results (whose budgets are the default ones), and the
+	 * cache of recently added URIs.
+	 */
 	private void initKryo() {
-		kryo = new Kryo();
+		kryo = ThreadLocal.withInitial(KnowledgeBase::createKryo);
+		lock = new ReentrantReadWriteLock();
+		callGraphDataCache = new CallGraphDataCache(CallGraphDataCache.defaultBudget());
+		reachabilityCache = new ReachabilityCache(ReachabilityCache.defaultBudget());
+		uriCache = new Object2LongLinkedOpenHashMap<>();
+		uriCache.defaultReturnValue(-1);
+	}
+
+	/**
+	 * Returns the cache of decoded call-graph data, which can be used to tune its budget, pin revisions
+	 * and read statistics.
+	 *
+	 * @return the cache of decoded call-graph data.
+	 */
+	public CallGraphDataCache callGraphDataCache() {
+		return callGraphDataCache;
+	}
+
+	/**
+	 * Returns the cache of the results of {@link #reaches(long)} and {@link #coreaches(long)}, which
+	 * can be used to tune its budget and read statistics. The cache is disabled (i.e., its budget is
+	 * zero) unless {@link ReachabilityCache#BUDGET_PROPERTY} is set or a budget is set explicitly.
+	 *
+	 * @return the cache of visit results.
+	 */
+	public ReachabilityCache reachabilityCache() {
+		return reachabilityCache;
+	}
+
+	/**
+	 * Creates a new kryo instance with all serializers needed by the knowledge base.
+	 *
+	 * @return a new kryo instance.
+	 */
+	private static Kryo createKryo() {
+		final Kryo kryo = new Kryo();
 		kryo.register(BVGraph.class, new BVGraphSerializer(kryo));
 		kryo.register(byte[].class);
 		kryo.register(InputBitStream.class);
@@ -676,7 +1040,9 @@ public class KnowledgeBase implements Serializable, Closeable {
 		kryo.register(MutableString.class, new FieldSerializer<>(kryo, MutableString.class));
 		kryo.register(Properties.class);
 		kryo.register(long[].class);
+		kryo.register(int[].class);
 		kryo.register(Long2IntOpenHashMap.class);
+		return kryo;
 	}
 
 	/**
@@ -686,22 +1052,65 @@ public class KnowledgeBase implements Serializable, Closeable {
 	 *
 	 * @param readOnly
 	 */
-	private KnowledgeBase(final RocksDB callGraphDB, final ColumnFamilyHandle defaultHandle, final ColumnFamilyHandle gid2URIFamilyHandle, final ColumnFamilyHandle uri2GIDFamilyHandle, final String kbMetadataPathname, final boolean readOnly) {
-		GIDAppearsIn = new Long2ObjectOpenHashMap<>();
-		GIDCalledBy = new Long2ObjectOpenHashMap<>();
+	private KnowledgeBase(final RocksDB callGraphDB, final List<ColumnFamilyHandle> columnFamilyHandles, final String kbMetadataPathname, final boolean readOnly) {
 		callGraphs = new Long2ObjectOpenHashMap<>();
 
-		GIDAppearsIn.defaultReturnValue(LongSets.EMPTY_SET);
-		GIDCalledBy.defaultReturnValue(LongSets.EMPTY_SET);
-
 		this.readOnly = readOnly;
-		this.callGraphDB = callGraphDB;
 		this.kbMetadataPathname = kbMetadataPathname;
-		this.defaultHandle = defaultHandle;
-		this.gid2uriFamilyHandle = gid2URIFamilyHandle;
-		this.uri2gidFamilyHandle = uri2GIDFamilyHandle;
+		columnFamilies(callGraphDB, columnFamilyHandles);
 
 		initKryo();
+		initProductVersionIndex();
+	}
+
+	/** Builds the map from product and version to revision indices. */
+	private void initProductVersionIndex() {
+		productVersion2Index = new Object2LongOpenHashMap<>();
+		productVersion2Index.defaultReturnValue(-1);
+		for (final CallGraph callGraph : callGraphs.values()) productVersion2Index.put(productVersion(callGraph.product, callGraph.version), callGraph.index);
+	}
+
+	/** Returns the key of {@link #productVersion2Index} associated with a product and a version. */
+	private static String productVersion(final String product, final String version) {
+		return product + "$" + version;
+	}
+
+	/**
+	 * Sets the database, the column-family handles and the indices depending on them.
+	 *
+	 * @param db the database.
+	 * @param columnFamilyHandles the handles of the column families, in the order of
+	 *            {@link #getInstance(String, String, boolean)}.
+	 */
+	private void columnFamilies(final RocksDB db, final List<ColumnFamilyHandle> columnFamilyHandles) {
+		this.callGraphDB = db;
+		this.defaultHandle = columnFamilyHandles.get(0);
+		this.gid2uriFamilyHandle = columnFamilyHandles.get(1);
+		this.uri2gidFamilyHandle = columnFamilyHandles.get(2);
+		this.appearsInFamilyHandle = columnFamilyHandles.get(3);
+		this.calledByFamilyHandle = columnFamilyHandles.get(4);
+		appearsInIndex = new GIDRevisionIndex(db, appearsInFamilyHandle);
+		calledByIndex = new GIDRevisionIndex(db, calledByFamilyHandle);
+	}
+
+	/**
+	 * Moves the maps from GIDs to revisions serialized by previous versions into the database.
+	 */
+	private void migrateLegacyMaps() {
+		LOGGER.info("Migrating maps from GIDs to revisions to the database...");
+		for (final var e : Arrays.asList(Pair.of(GIDAppearsIn, appearsInFamilyHandle), Pair.of(GIDCalledBy, calledByFamilyHandle))) {
+			for (final Long2ObjectMap.Entry<LongSet> entry : e.getLeft().long2ObjectEntrySet()) {
+				final long[] revisions = entry.getValue().toLongArray();
+				Arrays.sort(revisions);
+				try {
+					callGraphDB.put(e.getRight(), Longs.toByteArray(entry.getLongKey()), GIDRevisionIndex.encode(revisions));
+				} catch (final RocksDBException ex) {
+					throw new RuntimeException(ex);
+				}
+			}
+		}
+		GIDAppearsIn = null;
+		GIDCalledBy = null;
 	}
 
 	/**
@@ -713,45 +1122,70 @@ public class KnowledgeBase implements Serializable, Closeable {
 		this.callGraphDB = db;
 	}
 
-	@SuppressWarnings("resource")
 	public static KnowledgeBase getInstance(final String kbDir, final String kbMetadataPathname, final boolean readOnly) throws RocksDBException, ClassNotFoundException, IOException {
+		return getInstance(kbDir, kbMetadataPathname, readOnly, StorageProfile.defaultProfile());
+	}
+
+	/**
+	 * Opens (or creates) a knowledge base, tuning the underlying database with a given profile.
+	 *
+	 * @param kbDir the directory of the RocksDB instance containing the knowledge base.
+	 * @param kbMetadataPathname the file containing the knowledge base metadata.
+	 * @param readOnly whether to open the knowledge base in read-only mode.
+	 * @param profile the storage profile used to open the database.
+	 * @return the knowledge base.
+	 */
+	@SuppressWarnings("resource")
+	public static KnowledgeBase getInstance(final String kbDir, final String kbMetadataPathname, final boolean readOnly, final StorageProfile profile) throws RocksDBException, ClassNotFoundException, IOException {
 		final boolean metadataExists = new File(kbMetadataPathname).exists();
 		final boolean kbDirExists = new File(kbDir).exists();
 		if (metadataExists != kbDirExists) throw new IllegalArgumentException("Either both or none of the knowledge-base directory and metadata must exist");
 
 		RocksDB.loadLibrary();
-		final ColumnFamilyOptions cfOptions = new ColumnFamilyOptions().setCompressionType(CompressionType.LZ4_COMPRESSION);
-		final DBOptions dbOptions = new DBOptions().setCreateIfMissing(true).setCreateMissingColumnFamilies(true);
-		final List<ColumnFamilyDescriptor> cfDescriptors = Arrays.asList(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, cfOptions), new ColumnFamilyDescriptor(GID2URI, cfOptions), new ColumnFamilyDescriptor(URI2GID, cfOptions));
-
-		final List<ColumnFamilyHandle> columnFamilyHandles = new ArrayList<>();
-		final RocksDB db = readOnly ? RocksDB.openReadOnly(dbOptions, kbDir, cfDescriptors, columnFamilyHandles) : RocksDB.open(dbOptions, kbDir, cfDescriptors, columnFamilyHandles);
-
+		final StorageProfile.Resources resources = profile.resources();
 		final KnowledgeBase kb;
-		if (metadataExists) {
-			kb = (KnowledgeBase) BinIO.loadObject(kbMetadataPathname);
-			kb.readOnly = readOnly;
-			kb.callGraphDB = db;
-			kb.defaultHandle = columnFamilyHandles.get(0);
-			kb.gid2uriFamilyHandle = columnFamilyHandles.get(1);
-			kb.uri2gidFamilyHandle = columnFamilyHandles.get(2);
-		} else kb = new KnowledgeBase(db, columnFamilyHandles.get(0), columnFamilyHandles.get(1), columnFamilyHandles.get(2), kbMetadataPathname, readOnly);
+		try {
+			final ColumnFamilyOptions cfOptions = resources.columnFamilyOptions(CompressionType.LZ4_COMPRESSION);
+			final DBOptions dbOptions = resources.dbOptions();
+			final List<ColumnFamilyDescriptor> cfDescriptors = columnFamilyDescriptors(cfOptions);
+
+			if (readOnly && kbDirExists) try (final Options options = new Options()) {
+				if (RocksDB.listColumnFamilies(options, kbDir).size() < cfDescriptors.size()) throw new IllegalStateException("The knowledge base in " + kbDir + " must be opened once in read-write mode to migrate its data");
+			}
+			final List<ColumnFamilyHandle> columnFamilyHandles = new ArrayList<>();
+			final RocksDB db = readOnly ? RocksDB.openReadOnly(dbOptions, kbDir, cfDescriptors, columnFamilyHandles) : RocksDB.open(dbOptions, kbDir, cfDescriptors, columnFamilyHandles);
+
+			if (metadataExists) {
+				kb = (KnowledgeBase) BinIO.loadObject(kbMetadataPathname);
+				kb.readOnly = readOnly;
+				kb.columnFamilies(db, columnFamilyHandles);
+				if (kb.GIDAppearsIn != null) {
+					if (readOnly) throw new IllegalStateException("The knowledge base in " + kbDir + " must be opened once in read-write mode to migrate its data");
+					kb.migrateLegacyMaps();
+				}
+			} else kb = new KnowledgeBase(db, columnFamilyHandles, kbMetadataPathname, readOnly);
+		} catch (final RocksDBException | IOException | ClassNotFoundException | RuntimeException e) {
+			resources.close();
+			throw e;
+		}
+		kb.storageResources = resources;
 		return kb;
 	}
 
 	/**
-	 * Adds a given revision index to the set associated to the given gid.
-	 *
-	 * @param map the map associating gids to sets revision indices.
-	 * @param gid the gid whose associated set should be modified.
-	 * @param revIndex the revision index to be added.
+	 * Returns the descriptors of the column families of a knowledge base: the default one (revision
+	 * indices to call-graph data), {@link #GID2URI}, {@link #URI2GID}, {@link #APPEARS_IN} and
+	 * {@link #CALLED_BY}.
 	 *
-	 * @return true iff the revision index was not present.
+	 * @param cfOptions the options of the column families; they will be set to use the
+	 *            {@linkplain GIDRevisionIndex#MERGE_OPERATOR merge operator} of the maps from GIDs to
+	 *            revisions.
+	 * @return the descriptors of the column families of a knowledge base.
 	 */
-	protected static boolean addGidRev(final Long2ObjectMap<LongSet> map, final long gid, final long revIndex) {
-		LongSet set = map.get(gid);
-		if (set == LongSets.EMPTY_SET) map.put(gid, set = new LongOpenHashSet());
-		return set.add(revIndex);
+	public static List<ColumnFamilyDescriptor> columnFamilyDescriptors(final ColumnFamilyOptions cfOptions) {
+		// Only the maps from GIDs to revisions use merges, so the operator can be shared by all column families
+		cfOptions.setMergeOperator(GIDRevisionIndex.MERGE_OPERATOR);
+		return Arrays.asList(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, cfOptions), new ColumnFamilyDescriptor(GID2URI, cfOptions), new ColumnFamilyDescriptor(URI2GID, cfOptions), new ColumnFamilyDescriptor(APPEARS_IN, cfOptions), new ColumnFamilyDescriptor(CALLED_BY, cfOptions));
 	}
 
 	/**
@@ -762,28 +1196,105 @@ public class KnowledgeBase implements Serializable, Closeable {
 	 * @return the associated GID.
 	 */
 	protected long addURI(final FastenURI uri) {
-		if (readOnly) throw new IllegalStateException();
-		final byte[] uriBytes = uri.toString().getBytes(StandardCharsets.UTF_8);
-		try {
-			final byte[] result = callGraphDB.get(uri2gidFamilyHandle, uriBytes);
-			if (result != null) return Longs.fromByteArray(result);
-			final long gid = nextGID++;
-			final byte[] gidBytes = Longs.toByteArray(gid);
-			callGraphDB.put(gid2uriFamilyHandle, gidBytes, uriBytes);
-			callGraphDB.put(uri2gidFamilyHandle, uriBytes, gidBytes);
-			return gid;
-		} catch (final RocksDBException e) {
-			throw new RuntimeException(e);
-		}
+		return addURIs(Collections.singletonList(uri)).getLong(uri.toString());
 	}
 
 	/**
-	 * Returns the successors of a given node.
+	 * Adds a collection of URIs to the global maps, assigning new GIDs to URIs that are not present.
 	 *
-	 * @param node a node (say, corresponding to the pair [<code>index</code>,
-	 *            <code>LID</code>])
-	 * @return the list of all successors; these are obtained as follows: for
-	 *         every successor <code>x</code> of <code>node</code> in the call
+	 * <p>
+	 * URIs are deduplicated and looked up first in an in-process LRU {@linkplain #uriCache cache} of
+	 * recently used URIs, and then in the database with a single multiple get; the mappings of new
+	 * URIs are written to the database with a single write batch.
+	 *
+	 * @param uris a collection of Fasten URIs.
+	 * @return a map from the string representation of each URI in <code>uris</code> to its GID.
+	 */
+	protected Object2LongOpenHashMap<String> addURIs(final Collection<FastenURI> uris) {
+		if (readOnly) throw new IllegalStateException();
+		final Object2LongOpenHashMap<String> result = new Object2LongOpenHashMap<>(uris.size());
+		final ObjectArrayList<String> missing = new ObjectArrayList<>();
+		synchronized (uriCache) {
+			for (final FastenURI uri : uris) {
+				final String key = uri.toString();
+				if (result.containsKey(key)) continue;
+				final long gid = uriCache.getAndMoveToLast(key);
+				result.put(key, gid);
+				if (gid == -1) missing.add(key);
+			}
+		}
+		if (missing.isEmpty()) return result;
+
+		final ObjectArrayList<byte[]> keys = new ObjectArrayList<>(missing.size());
+		for (final String key : missing) keys.add(key.getBytes(StandardCharsets.UTF_8));
+		try (final WriteBatch batch = new WriteBatch(); final WriteOptions writeOptions = new WriteOptions()) {
+			final List<byte[]> gids = callGraphDB.multiGetAsList(Collections.nCopies(keys.size(), uri2gidFamilyHandle), keys);
+			for (int i = 0; i < keys.size(); i++) {
+				final byte[] gidBytes = gids.get(i);
+				if (gidBytes != null) result.put(missing.get(i), Longs.fromByteArray(gidBytes));
+				else {
+					final long gid = nextGID++;
+					result.put(missing.get(i), gid);
+					batch.put(gid2uriFamilyHandle, Longs.toByteArray(gid), keys.get(i));
+					batch.put(uri2gidFamilyHandle, keys.get(i), Longs.toByteArray(gid));
+				}
+			}
+			if (batch.count() != 0) callGraphDB.write(writeOptions, batch);
+		} catch (final RocksDBException e) {
+			throw new RuntimeException(e);
+		}
+
+		synchronized (uriCache) {
+			for (final String key : missing) {
+				uriCache.putAndMoveToLast(key, result.getLong(key));
+				if (uriCache.size() > URI_CACHE_SIZE) uriCache.removeFirstLong();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the revisions in which a given GID appears as an internal node.
+	 *
+	 * @param gid a GID.
+	 * @return an iterator returning, in increasing order, the revision indices of the revisions in
+	 *         which <code>gid</code> appears as an internal node.
+	 */
+	public LongIterator appearsIn(final long gid) {
+		return appearsInIndex.revisions(gid);
+	}
+
+	/**
+	 * Returns whether a given GID appears as an internal node in a given revision. The data of the
+	 * revision is not needed.
+	 *
+	 * @param gid a GID.
+	 * @param index a revision index.
+	 * @return true if <code>gid</code> appears as an internal node in the revision of index
+	 *         <code>index</code>.
+	 */
+	public boolean appearsIn(final long gid, final long index) {
+		return appearsInIndex.contains(gid, index);
+	}
+
+	/**
+	 * Returns the revisions in which a given GID appears as an external node.
+	 *
+	 * @param gid a GID.
+	 * @return an iterator returning, in increasing order, the revision indices of the revisions in
+	 *         which <code>gid</code> appears as an external node.
+	 */
+	public LongIterator calledBy(final long gid) {
+		return calledByIndex.revisions(gid);
+	}
+
+	/**
+	 * Returns the successors of a given node.
+	 *
+	 * @param node a node (say, corresponding to the pair [<code>index</code>,
+	 *            <code>LID</code>])
+	 * @return the list of all successors; these are obtained as follows: for
+	 *         every successor <code>x</code> of <code>node</code> in the call
 	 *         graph
 	 *         <ul>
 	 *         <li>if <code>x</code> is internal, [<code>index</code>,
@@ -810,7 +1321,7 @@ public class KnowledgeBase implements Serializable, Closeable {
 		/* In the successor case, internal nodes can be added directly... */
 		for (final long x: successors)
 			if (callGraphData.isExternal(x))
-				for (final LongIterator revisions = GIDAppearsIn.get(x).iterator(); revisions.hasNext();)
+				for (final LongIterator revisions = appearsInIndex.revisions(x); revisions.hasNext();)
 					result.add(new Node(x, revisions.nextLong()));
 			else result.add(new Node(x, index));
 
@@ -828,21 +1339,55 @@ public class KnowledgeBase implements Serializable, Closeable {
 	 * @see #successors(Node)
 	 */
 	public LongList successors(final long nodeSig) {
+		return successors(nodeSig, false);
+	}
+
+	/**
+	 * Returns the successors of a given node by signature, optionally expanding external nodes only
+	 * into the revisions admitted by the dependency constraints of the revision of the node.
+	 *
+	 * <p>
+	 * In constrained mode, an external node with GID <code>g</code> is expanded into [<code>g</code>,
+	 * <code>otherIndex</code>] only if the {@linkplain CallGraph#depset depset} of the revision of
+	 * <code>nodeSig</code> {@linkplain CallGraph#admits(CallGraph) admits} the revision
+	 * <code>otherIndex</code>. Internal successors are not affected.
+	 *
+	 * @param nodeSig a node signature.
+	 * @param constrained whether to expand external nodes only into admitted revisions.
+	 * @return the set of signatures of successors.
+	 * @see #successors(long)
+	 */
+	public LongList successors(final long nodeSig, final boolean constrained) {
+		return successors(nodeSig, constrained, new GraphCopies(true));
+	}
+
+	/**
+	 * Returns the successors of a given node by signature, using the call-graph copies of a visit.
+	 *
+	 * @param nodeSig a node signature.
+	 * @param constrained whether to expand external nodes only into admitted revisions.
+	 * @param graphs the copies of the call graphs owned by the visit.
+	 * @return the set of signatures of successors.
+	 * @see #successors(long, boolean)
+	 */
+	private LongList successors(final long nodeSig, final boolean constrained, final GraphCopies graphs) {
 		final long gid = gid(nodeSig);
 		final long index = index(nodeSig);
 		final CallGraph callGraph = callGraphs.get(index);
 		assert callGraph != null;
 
 		final CallGraphData callGraphData = callGraph.callGraphData();
-		final LongList successors = callGraphData.successors(gid);
+		final LongList successors = callGraphData.successors(gid, graphs.get(index, callGraphData));
 
 		final LongArrayList result = new LongArrayList();
 
 		/* In the successor case, internal nodes can be added directly... */
 		for (final long x : successors)
 			if (callGraphData.isExternal(x))
-				for (final LongIterator revisions = GIDAppearsIn.get(x).iterator(); revisions.hasNext();)
-					result.add(signature(x, revisions.nextLong()));
+				for (final LongIterator revisions = appearsInIndex.revisions(x); revisions.hasNext();) {
+					final long revIndex = revisions.nextLong();
+					if (!constrained || callGraph.admits(callGraphs.get(revIndex))) result.add(signature(x, revIndex));
+				}
 			else result.add(signature(x, index));
 
 		return result;
@@ -884,7 +1429,7 @@ public class KnowledgeBase implements Serializable, Closeable {
 		 * To move backward in the call graph, we use GIDCalledBy to find
 		 * revisions that might contain external nodes of the form <gid, index>.
 		 */
-		for (final LongIterator revisions = GIDCalledBy.get(gid).iterator(); revisions.hasNext();) {
+		for (final LongIterator revisions = calledByIndex.revisions(gid); revisions.hasNext();) {
 			final long revIndex = revisions.nextLong();
 			final CallGraphData precCallGraphData = callGraphs.get(revIndex).callGraphData();
 			for (final long y: precCallGraphData.predecessors(gid)) result.add(new Node(y, revIndex));
@@ -905,13 +1450,45 @@ public class KnowledgeBase implements Serializable, Closeable {
 	 * @see #predecessor(Node)
 	 */
 	public LongList predecessors(final long nodeSig) {
+		return predecessors(nodeSig, false);
+	}
+
+	/**
+	 * Returns the predecessors of a given node by signature, optionally considering only the
+	 * revisions whose dependency constraints admit the revision of the node.
+	 *
+	 * <p>
+	 * In constrained mode, a revision <code>otherIndex</code> calling the GID of
+	 * <code>nodeSig</code> contributes predecessors only if its {@linkplain CallGraph#depset depset}
+	 * {@linkplain CallGraph#admits(CallGraph) admits} the revision of <code>nodeSig</code>. Internal
+	 * predecessors are not affected.
+	 *
+	 * @param nodeSig a node signature.
+	 * @param constrained whether to consider only revisions admitting the revision of the node.
+	 * @return the set of signatures of predecessors.
+	 * @see #predecessors(long)
+	 */
+	public LongList predecessors(final long nodeSig, final boolean constrained) {
+		return predecessors(nodeSig, constrained, new GraphCopies(false));
+	}
+
+	/**
+	 * Returns the predecessors of a given node by signature, using the transpose copies of a visit.
+	 *
+	 * @param nodeSig a node signature.
+	 * @param constrained whether to consider only revisions admitting the revision of the node.
+	 * @param transposes the copies of the transposes owned by the visit.
+	 * @return the set of signatures of predecessors.
+	 * @see #predecessors(long, boolean)
+	 */
+	private LongList predecessors(final long nodeSig, final boolean constrained, final GraphCopies transposes) {
 		final long gid = gid(nodeSig);
 		final long index = index(nodeSig);
 		final CallGraph callGraph = callGraphs.get(index);
 		assert callGraph != null;
 
 		final CallGraphData callGraphData = callGraph.callGraphData();
-		final LongList predecessors = callGraphData.predecessors(gid);
+		final LongList predecessors = callGraphData.predecessors(gid, transposes.get(index, callGraphData));
 
 		final LongArrayList result = new LongArrayList();
 
@@ -925,32 +1502,107 @@ public class KnowledgeBase implements Serializable, Closeable {
 		 * To move backward in the call graph, we use GIDCalledBy to find revisions that might contain
 		 * external nodes of the form <gid, index>.
 		 */
-		for (final LongIterator revisions = GIDCalledBy.get(gid).iterator(); revisions.hasNext();) {
+		for (final LongIterator revisions = calledByIndex.revisions(gid); revisions.hasNext();) {
 			final long revIndex = revisions.nextLong();
-			final CallGraphData precCallGraphData = callGraphs.get(revIndex).callGraphData();
-			for (final long y : precCallGraphData.predecessors(gid)) result.add(signature(y, revIndex));
+			final CallGraph precCallGraph = callGraphs.get(revIndex);
+			if (constrained && !precCallGraph.admits(callGraph)) continue;
+			final CallGraphData precCallGraphData = precCallGraph.callGraphData();
+			for (final long y : precCallGraphData.predecessors(gid, transposes.get(revIndex, precCallGraphData))) result.add(signature(y, revIndex));
 		}
 
 		return result;
 	}
 
+	/**
+	 * Returns the index of the revision with a given product and version.
+	 *
+	 * @param product a product.
+	 * @param version a version.
+	 * @return the index of the revision of <code>product</code> with version <code>version</code>,
+	 *         or -1 if there is no such revision.
+	 */
+	public long revisionIndex(final String product, final String version) {
+		lock.readLock().lock();
+		try {
+			return productVersion2Index.getLong(productVersion(product, version));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
 	/**
 	 * Returns the node corresponding to a given (non-generic)
 	 * {@link FastenURI}.
 	 *
+	 * <p>
+	 * The revision is found in constant time using the product and the version of the URI, and the
+	 * GID using the namespace and the entity (i.e., the generic, product-independent URI under which
+	 * {@link #add(RevisionCallGraph, long)} indexes methods); the node exists if the GID is internal to
+	 * the revision.
+	 *
 	 * @param fastenURI a {@link FastenURI} with version.
 	 * @return the corresponding node, or <code>null</code>.
 	 */
 	public Node fastenURI2Node(final FastenURI fastenURI) {
 		if (fastenURI.getVersion() == null) throw new IllegalArgumentException("The FASTEN URI must be versioned");
-		final FastenURI genericURI = FastenURI.createSchemeless(null, fastenURI.getRawProduct(), null, fastenURI.getRawNamespace(), fastenURI.getRawEntity());
-		final long gid = uri2GID(genericURI);
-		if (gid == -1) return null;
-		final String version = fastenURI.getVersion();
-		for (final long index : GIDAppearsIn.get(gid))
-			if (version.equals(callGraphs.get(index).version)) return new Node(gid, index);
+		final long index = revisionIndex(fastenURI.getRawProduct(), fastenURI.getVersion());
+		if (index == -1) return null;
+		final long gid = uri2GID(genericURI(fastenURI));
+		return gid != -1 && isInternal(gid, index) ? new Node(gid, index) : null;
+	}
+
+	/**
+	 * Returns the nodes corresponding to a list of (non-generic) {@link FastenURI}.
+	 *
+	 * <p>
+	 * This method is semantically equivalent to calling {@link #fastenURI2Node(FastenURI)} on each
+	 * element of the list, but the GIDs are retrieved from the database with a single multiple get.
+	 *
+	 * @param fastenURIs a list of {@link FastenURI} with version.
+	 * @return a list of the same size of <code>fastenURIs</code> containing the corresponding nodes
+	 *         (<code>null</code> for URIs not corresponding to a node).
+	 */
+	public ObjectList<Node> fastenURI2Nodes(final List<FastenURI> fastenURIs) {
+		final int n = fastenURIs.size();
+		final long[] index = new long[n];
+		final ObjectArrayList<byte[]> keys = new ObjectArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			final FastenURI fastenURI = fastenURIs.get(i);
+			if (fastenURI.getVersion() == null) throw new IllegalArgumentException("The FASTEN URI must be versioned: " + fastenURI);
+			index[i] = revisionIndex(fastenURI.getRawProduct(), fastenURI.getVersion());
+			keys.add(genericURI(fastenURI).toString().getBytes(StandardCharsets.UTF_8));
+		}
+
+		final List<byte[]> gids;
+		try {
+			gids = callGraphDB.multiGetAsList(Collections.nCopies(n, uri2gidFamilyHandle), keys);
+		} catch (final RocksDBException e) {
+			throw new RuntimeException(e);
+		}
+
+		final ObjectArrayList<Node> result = new ObjectArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			final byte[] gidBytes = gids.get(i);
+			final long gid = gidBytes == null ? -1 : Longs.fromByteArray(gidBytes);
+			result.add(index[i] != -1 && gid != -1 && isInternal(gid, index[i]) ? new Node(gid, index[i]) : null);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the generic, schemeless URI (i.e., with just namespace and entity) under which the GID
+	 * of a method is stored.
+	 */
+	private static FastenURI genericURI(final FastenURI fastenURI) {
+		return FastenURI.createSchemeless(null, null, null, fastenURI.getRawNamespace(), fastenURI.getRawEntity());
+	}
 
-		return null;
+	/**
+	 * Returns whether a GID is internal to a revision, using the map from GIDs to the revisions in
+	 * which they are internal, so that the data of the revision is not needed.
+	 */
+	private boolean isInternal(final long gid, final long index) {
+		return appearsIn(gid, index);
 	}
 
 	/**
@@ -966,8 +1618,8 @@ public class KnowledgeBase implements Serializable, Closeable {
 		final long gid = uri2GID(genericURI);
 		if (gid == -1) return null;
 		final ObjectArrayList<FastenURI> result = new ObjectArrayList<>();
-		for (final long index : GIDAppearsIn.get(gid))
-			result.add(FastenURI.createSchemeless(genericURI.getRawForge(), genericURI.getRawProduct(), callGraphs.get(index).version, genericURI.getRawNamespace(), genericURI.getRawEntity()));
+		for (final LongIterator revisions = appearsInIndex.revisions(gid); revisions.hasNext();)
+			result.add(FastenURI.createSchemeless(genericURI.getRawForge(), genericURI.getRawProduct(), callGraphs.get(revisions.nextLong()).version, genericURI.getRawNamespace(), genericURI.getRawEntity()));
 		return result;
 	}
 
@@ -978,47 +1630,76 @@ public class KnowledgeBase implements Serializable, Closeable {
 	 * @return the set of all nodes for which there is a directed path from
 	 *         <code>start</code> to that node.
 	 */
-	public synchronized ObjectLinkedOpenHashSet<Node> reaches(final Node start) {
-		final ObjectLinkedOpenHashSet<Node> result = new ObjectLinkedOpenHashSet<>();
-		// Visit queue
-		final ObjectArrayFIFOQueue<Node> queue = new ObjectArrayFIFOQueue<>();
-		queue.enqueue(start);
-		result.add(start);
-
-		while (!queue.isEmpty()) {
-			final Node node = queue.dequeue();
-			for (final Node s : successors(node)) if (!result.contains(s)) {
-				queue.enqueue(s);
-				result.add(s);
+	public ObjectLinkedOpenHashSet<Node> reaches(final Node start) {
+		lock.readLock().lock();
+		try {
+			final ObjectLinkedOpenHashSet<Node> result = new ObjectLinkedOpenHashSet<>();
+			// Visit queue
+			final ObjectArrayFIFOQueue<Node> queue = new ObjectArrayFIFOQueue<>();
+			queue.enqueue(start);
+			result.add(start);
+
+			while (!queue.isEmpty()) {
+				final Node node = queue.dequeue();
+				for (final Node s : successors(node)) if (!result.contains(s)) {
+					queue.enqueue(s);
+					result.add(s);
+				}
 			}
-		}
 
-		return result;
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 
 	/**
 	 * The set of all node signatures that are reachable from the signature <code>startSig</code>.
 	 *
+	 * <p>
+	 * The set iterates in visit (i.e., breadth-first) order, whether it comes from the
+	 * {@linkplain #reachabilityCache() cache} or not.
+	 *
 	 * @param start the starting node.
 	 * @return the set of all node signatures for which there is a directed path from
 	 *         <code>startSig</code> to that node.
 	 */
-	public synchronized LongSet reaches(final long startSig) {
-		final LongOpenHashSet result = new LongOpenHashSet();
-		// Visit queue
-		final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
-		queue.enqueue(startSig);
-		result.add(startSig);
-
-		while (!queue.isEmpty()) {
-			final long nodeSig = queue.dequeueLong();
-			for (final long s : successors(nodeSig)) if (!result.contains(s)) {
-				queue.enqueue(s);
-				result.add(s);
+	public LongSet reaches(final long startSig) {
+		return cachedVisit(startSig, true);
+	}
+
+	/**
+	 * The set of all node signatures that are reachable from the signature <code>startSig</code>,
+	 * optionally following only calls admitted by dependency constraints (see
+	 * {@link #successors(long, boolean)}).
+	 *
+	 * @param startSig the starting node signature.
+	 * @param constrained whether to follow only calls admitted by dependency constraints.
+	 * @return the set of all node signatures for which there is a directed path from
+	 *         <code>startSig</code> to that node.
+	 */
+	public LongSet reaches(final long startSig, final boolean constrained) {
+		lock.readLock().lock();
+		try {
+			// Linked, so that results are returned in visit order
+			final LongLinkedOpenHashSet result = new LongLinkedOpenHashSet();
+			// Visit queue
+			final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+			queue.enqueue(startSig);
+			result.add(startSig);
+
+			while (!queue.isEmpty()) {
+				final long nodeSig = queue.dequeueLong();
+				for (final long s : successors(nodeSig, constrained)) if (!result.contains(s)) {
+					queue.enqueue(s);
+					result.add(s);
+				}
 			}
-		}
 
-		return result;
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 
 	/**
@@ -1031,7 +1712,7 @@ public class KnowledgeBase implements Serializable, Closeable {
 	public Collection<FastenURI> reaches(final FastenURI fastenURI) {
 		final Node start = fastenURI2Node(fastenURI);
 		if (start == null) return null;
-		return new NamedResult(reaches(start));
+		return new NamedResult(reaches(start.signature()));
 	}
 
 	/**
@@ -1041,22 +1722,27 @@ public class KnowledgeBase implements Serializable, Closeable {
 	 * @return the set of all nodes for which there is a directed path from that node to
 	 *         <code>start</code>.
 	 */
-	public synchronized ObjectLinkedOpenHashSet<Node> coreaches(final Node start) {
-		final ObjectLinkedOpenHashSet<Node> result = new ObjectLinkedOpenHashSet<>();
-		// Visit queue
-		final ObjectArrayFIFOQueue<Node> queue = new ObjectArrayFIFOQueue<>();
-		queue.enqueue(start);
-		result.add(start);
-
-		while (!queue.isEmpty()) {
-			final Node node = queue.dequeue();
-			for (final Node s : predecessors(node)) if (!result.contains(s)) {
-				queue.enqueue(s);
-				result.add(s);
+	public ObjectLinkedOpenHashSet<Node> coreaches(final Node start) {
+		lock.readLock().lock();
+		try {
+			final ObjectLinkedOpenHashSet<Node> result = new ObjectLinkedOpenHashSet<>();
+			// Visit queue
+			final ObjectArrayFIFOQueue<Node> queue = new ObjectArrayFIFOQueue<>();
+			queue.enqueue(start);
+			result.add(start);
+
+			while (!queue.isEmpty()) {
+				final Node node = queue.dequeue();
+				for (final Node s : predecessors(node)) if (!result.contains(s)) {
+					queue.enqueue(s);
+					result.add(s);
+				}
 			}
-		}
 
-		return result;
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 
 	/**
@@ -1067,60 +1753,1340 @@ public class KnowledgeBase implements Serializable, Closeable {
 	 * @param fastenURI the starting node.
 	 * @return all the nodes that can be coreached from <code>fastenURI</code>.
 	 */
-	public synchronized Collection<FastenURI> coreaches(final FastenURI fastenURI) {
+	public Collection<FastenURI> coreaches(final FastenURI fastenURI) {
+		final Node start = fastenURI2Node(fastenURI);
+		if (start == null) return null;
+		return new NamedResult(coreaches(start.signature()));
+	}
+
+	/**
+	 * Returns a lazy iterator over the nodes that are reachable from <code>start</code>.
+	 *
+	 * <p>
+	 * The iterator returns the same nodes, in the same order, as {@link #reaches(Node)}, but the
+	 * visit proceeds only as far as needed to return the nodes actually requested: callers that
+	 * need just the first results (possibly after {@linkplain ObjectIterator#skip(int) skipping}
+	 * some of them) pay only for the part of the visit they consume.
+	 *
+	 * @param start the starting node.
+	 * @return a lazy iterator over the nodes reachable from <code>start</code>.
+	 */
+	public ObjectIterator<Node> reachesIterator(final Node start) {
+		return new Visit(start, true);
+	}
+
+	/**
+	 * Returns a lazy iterator over the nodes that are coreachable from <code>start</code>.
+	 *
+	 * @param start the starting node.
+	 * @return a lazy iterator over the nodes coreachable from <code>start</code>.
+	 * @see #reachesIterator(Node)
+	 */
+	public ObjectIterator<Node> coreachesIterator(final Node start) {
+		return new Visit(start, false);
+	}
+
+	/**
+	 * Returns a lazy iterator over the {@link FastenURI} that are reachable from a given
+	 * {@link FastenURI}, skipping the first results and returning at most a given number of
+	 * results. If the result of the visit is in the {@linkplain #reachabilityCache() cache}, the
+	 * cached result is returned; in both cases, results are returned in visit order, so skipping
+	 * results pages consistently.
+	 *
+	 * @param fastenURI the starting node.
+	 * @param skip the number of results to skip.
+	 * @param limit the maximum number of results to return.
+	 * @return a lazy iterator over the nodes that can be reached from <code>fastenURI</code>, or
+	 *         <code>null</code> if <code>fastenURI</code> is not indexed.
+	 * @see #reachesIterator(Node)
+	 */
+	public ObjectIterator<FastenURI> reachesIterator(final FastenURI fastenURI, final long skip, final long limit) {
 		final Node start = fastenURI2Node(fastenURI);
 		if (start == null) return null;
-		return new NamedResult(coreaches(start));
+		return namedIterator(resultIterator(start, true), skip, limit);
+	}
+
+	/**
+	 * Returns a lazy iterator over the {@link FastenURI} that are coreachable from a given
+	 * {@link FastenURI}, skipping the first results and returning at most a given number of
+	 * results. If the result of the visit is in the {@linkplain #reachabilityCache() cache}, the
+	 * cached result is returned; in both cases, results are returned in visit order, so skipping
+	 * results pages consistently.
+	 *
+	 * @param fastenURI the starting node.
+	 * @param skip the number of results to skip.
+	 * @param limit the maximum number of results to return.
+	 * @return a lazy iterator over the nodes that can be coreached from <code>fastenURI</code>, or
+	 *         <code>null</code> if <code>fastenURI</code> is not indexed.
+	 * @see #coreachesIterator(Node)
+	 */
+	public ObjectIterator<FastenURI> coreachesIterator(final FastenURI fastenURI, final long skip, final long limit) {
+		final Node start = fastenURI2Node(fastenURI);
+		if (start == null) return null;
+		return namedIterator(resultIterator(start, false), skip, limit);
+	}
+
+	/**
+	 * Returns an iterator on the result of a visit: if the result is in the
+	 * {@linkplain #reachabilityCache() cache}, the iterator scans the cached result; otherwise, it
+	 * performs a lazy visit. Since cached results are stored in visit order, the two iterators return
+	 * the same nodes in the same order.
+	 */
+	private ObjectIterator<Node> resultIterator(final Node start, final boolean forward) {
+		final LongSet cached = reachabilityCache.get(start.signature(), forward);
+		if (cached == null) return new Visit(start, forward);
+		final LongIterator iterator = cached.iterator();
+		return new ObjectIterator<>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Node next() {
+				final long signature = iterator.nextLong();
+				return new Node(gid(signature), index(signature));
+			}
+		};
+	}
+
+	/**
+	 * Skips the first elements of an iterator on nodes, and returns a view of at most a given number
+	 * of the following elements as {@link FastenURI}.
+	 */
+	private static ObjectIterator<FastenURI> namedIterator(final ObjectIterator<Node> iterator, long skip, final long limit) {
+		if (skip < 0) throw new IllegalArgumentException("Negative number of results to skip: " + skip);
+		if (limit < 0) throw new IllegalArgumentException("Negative limit: " + limit);
+		while (skip > 0 && iterator.hasNext()) skip -= iterator.skip((int)Math.min(skip, Integer.MAX_VALUE));
+		return new ObjectIterator<>() {
+			private long remaining = limit;
+
+			@Override
+			public boolean hasNext() {
+				return remaining > 0 && iterator.hasNext();
+			}
+
+			@Override
+			public FastenURI next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				remaining--;
+				return iterator.next().toFastenURI();
+			}
+		};
 	}
 
 
 	/**
 	 * The set of all nodes signatures that are coreachable from <code>startSig</code>.
 	 *
+	 * <p>
+	 * The set iterates in visit (i.e., breadth-first) order, whether it comes from the
+	 * {@linkplain #reachabilityCache() cache} or not.
+	 *
 	 * @param start the starting node signature.
 	 * @return the set of all node signatures for which there is a directed path from that node to
 	 *         <code>startSig</code>.
 	 */
-	public synchronized LongSet coreaches(final long startSig) {
-		final LongOpenHashSet result = new LongOpenHashSet();
-		// Visit queue
-		final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
-		queue.enqueue(startSig);
-		result.add(startSig);
-
-		while (!queue.isEmpty()) {
-			final long nodeSig = queue.dequeueLong();
-			for (final long s : predecessors(nodeSig)) if (!result.contains(s)) {
-				queue.enqueue(s);
-				result.add(s);
+	public LongSet coreaches(final long startSig) {
+		return cachedVisit(startSig, false);
+	}
+
+	/**
+	 * Returns the result of an unconstrained visit from the {@linkplain #reachabilityCache() cache}, or
+	 * computes it and caches it. The read lock is held throughout, so that no revision can be added
+	 * between the visit and the caching of its result.
+	 *
+	 * @param startSig the starting node signature.
+	 * @param forward whether to visit successors (true) or predecessors (false).
+	 * @return the set of node signatures reachable or coreachable from <code>startSig</code>.
+	 */
+	private LongSet cachedVisit(final long startSig, final boolean forward) {
+		lock.readLock().lock();
+		try {
+			LongSet result = reachabilityCache.get(startSig, forward);
+			if (result == null) {
+				result = forward ? reaches(startSig, false) : coreaches(startSig, false);
+				reachabilityCache.put(startSig, forward, result);
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The set of all node signatures that are coreachable from <code>startSig</code>, optionally
+	 * following only calls admitted by dependency constraints (see
+	 * {@link #predecessors(long, boolean)}).
+	 *
+	 * @param startSig the starting node signature.
+	 * @param constrained whether to follow only calls admitted by dependency constraints.
+	 * @return the set of all node signatures for which there is a directed path from that node to
+	 *         <code>startSig</code>.
+	 */
+	public LongSet coreaches(final long startSig, final boolean constrained) {
+		lock.readLock().lock();
+		try {
+			// Linked, so that results are returned in visit order
+			final LongLinkedOpenHashSet result = new LongLinkedOpenHashSet();
+			// Visit queue
+			final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+			queue.enqueue(startSig);
+			result.add(startSig);
+
+			while (!queue.isEmpty()) {
+				final long nodeSig = queue.dequeueLong();
+				for (final long s : predecessors(nodeSig, constrained)) if (!result.contains(s)) {
+					queue.enqueue(s);
+					result.add(s);
+				}
+			}
+
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns a shortest call chain between two nodes, computed by a bidirectional visit.
+	 *
+	 * <p>
+	 * The visit alternates between a forward visit from <code>from</code> (using
+	 * {@link #successors(long)}) and a backward visit from <code>to</code> (using
+	 * {@link #predecessors(long)}), always expanding the smaller frontier by a whole level, and it
+	 * stops as soon as the two visits meet. Thus, deciding whether <code>to</code> is reachable from
+	 * <code>from</code> usually requires exploring a much smaller part of the knowledge base than
+	 * {@link #reaches(Node)}.
+	 *
+	 * @param from the starting node.
+	 * @param to the target node.
+	 * @return a shortest list of nodes, starting with <code>from</code> and ending with
+	 *         <code>to</code>, in which each node is a successor of the previous one, or
+	 *         <code>null</code> if <code>to</code> is not reachable from <code>from</code>.
+	 */
+	public ObjectList<Node> shortestPath(final Node from, final Node to) {
+		lock.readLock().lock();
+		try {
+			final long fromSig = from.signature(), toSig = to.signature();
+			final ObjectArrayList<Node> path = new ObjectArrayList<>();
+			if (fromSig == toSig) {
+				path.add(from);
+				return path;
+			}
+			// For each node discovered, the previous node on a path from fromSig (the next node on a path to toSig)
+			final Long2LongOpenHashMap forwardParent = new Long2LongOpenHashMap(), backwardParent = new Long2LongOpenHashMap();
+			forwardParent.put(fromSig, fromSig);
+			backwardParent.put(toSig, toSig);
+			LongArrayList forwardFrontier = LongArrayList.wrap(new long[] { fromSig }), backwardFrontier = LongArrayList.wrap(new long[] { toSig });
+
+			while (!forwardFrontier.isEmpty() && !backwardFrontier.isEmpty()) {
+				final boolean forward = forwardFrontier.size() <= backwardFrontier.size();
+				final Long2LongOpenHashMap parent = forward ? forwardParent : backwardParent, otherParent = forward ? backwardParent : forwardParent;
+				final LongArrayList next = new LongArrayList();
+				final LongArrayList meetings = new LongArrayList();
+				for (final long x : forward ? forwardFrontier : backwardFrontier)
+					for (final long y : forward ? successors(x) : predecessors(x)) if (!parent.containsKey(y)) {
+						parent.put(y, x);
+						next.add(y);
+						if (otherParent.containsKey(y)) meetings.add(y);
+					}
+
+				if (!meetings.isEmpty()) {
+					// All meetings have the same distance from the visit just expanded; choose the closest to the other end
+					for (final long m : meetings) {
+						final LongArrayList candidate = new LongArrayList();
+						for (long x = m; x != fromSig; x = forwardParent.get(x)) candidate.add(x);
+						candidate.add(fromSig);
+						Collections.reverse(candidate);
+						for (long x = m; x != toSig;) candidate.add(x = backwardParent.get(x));
+						if (path.isEmpty() || candidate.size() < path.size()) {
+							path.clear();
+							for (final long x : candidate) path.add(new Node(gid(x), index(x)));
+						}
+					}
+					return path;
+				}
+
+				if (forward) forwardFrontier = next;
+				else backwardFrontier = next;
 			}
+
+			return null;
+		} finally {
+			lock.readLock().unlock();
 		}
+	}
 
+	/**
+	 * Returns a shortest call chain between two {@link FastenURI}; just a convenience method to be
+	 * used instead of {@link #shortestPath(Node, Node)}.
+	 *
+	 * @param from the starting node.
+	 * @param to the target node.
+	 * @return a shortest list of {@link FastenURI} from <code>from</code> to <code>to</code>, an empty
+	 *         list if there is no such list, or <code>null</code> if one of the arguments is not
+	 *         indexed.
+	 */
+	public List<FastenURI> shortestPath(final FastenURI from, final FastenURI to) {
+		final Node fromNode = fastenURI2Node(from), toNode = fastenURI2Node(to);
+		if (fromNode == null || toNode == null) return null;
+		final ObjectList<Node> path = shortestPath(fromNode, toNode);
+		final ObjectArrayList<FastenURI> result = new ObjectArrayList<>();
+		if (path != null) for (final Node node : path) result.add(node.toFastenURI());
 		return result;
 	}
 
 	/**
-	 * Adds a new {@link CallGraph} to the list of all call graphs.
+	 * The set of all node signatures that are reachable from some signature in a collection,
+	 * computed by a single multi-source visit.
 	 *
-	 * @param g the revision call graph from which the call graph will be created.
-	 * @param index the revision index to which the new call graph will be associated.
-	 * @throws IOException
-	 * @throws RocksDBException
+	 * <p>
+	 * The result is the union of the results of {@link #reaches(long)} on each element of
+	 * <code>startSigs</code>, but each node is expanded at most once, so overlapping regions of the
+	 * knowledge base are visited just once.
+	 *
+	 * @param startSigs a collection of starting node signatures.
+	 * @return the set of all node signatures for which there is a directed path from some element
+	 *         of <code>startSigs</code> to that node.
 	 */
-	public synchronized void add(final RevisionCallGraph g, final long index) throws IOException, RocksDBException {
-		if (readOnly) throw new IllegalStateException();
-		callGraphs.put(index, new CallGraph(g, index));
+	public LongSet reaches(final LongCollection startSigs) {
+		return multiSourceVisit(startSigs, true);
 	}
 
-	@Override
-	public void close() throws IOException {
+	/**
+	 * The set of all node signatures that are coreachable from some signature in a collection,
+	 * computed by a single multi-source visit.
+	 *
+	 * @param startSigs a collection of starting node signatures.
+	 * @return the set of all node signatures for which there is a directed path from that node to
+	 *         some element of <code>startSigs</code>.
+	 * @see #reaches(LongCollection)
+	 */
+	public LongSet coreaches(final LongCollection startSigs) {
+		return multiSourceVisit(startSigs, false);
+	}
+
+	private LongSet multiSourceVisit(final LongCollection startSigs, final boolean forward) {
+		lock.readLock().lock();
 		try {
-			if (!readOnly) BinIO.storeObject(this, kbMetadataPathname);
+			final LongOpenHashSet result = new LongOpenHashSet();
+			// Visit queue
+			final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+			for (final long startSig : startSigs) if (result.add(startSig)) queue.enqueue(startSig);
+
+			while (!queue.isEmpty()) {
+				final long nodeSig = queue.dequeueLong();
+				for (final long s : forward ? successors(nodeSig) : predecessors(nodeSig)) if (result.add(s)) queue.enqueue(s);
+			}
+
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Computes the nodes reachable from a list of sources, attributing each node to the sources
+	 * that reach it.
+	 *
+	 * <p>
+	 * Each node is associated with a bit mask (an array of longs) in which bit <code>i</code> (i.e.,
+	 * bit <code>i % 64</code> of word <code>i / 64</code>) is set if the node is reachable from the
+	 * source of index <code>i</code> in <code>startSigs</code>. Masks are propagated bit-parallel
+	 * along arcs in a single visit: a node is expanded again only when its mask gains new bits, so
+	 * regions reached by many sources are traversed far fewer times than with a visit per source.
+	 *
+	 * @param startSigs a list of starting node signatures.
+	 * @return a map from the signatures of the reachable nodes to their source masks.
+	 * @see #reaches(LongCollection)
+	 */
+	public Long2ObjectOpenHashMap<long[]> reachesBySource(final LongList startSigs) {
+		return multiSourceMaskedVisit(startSigs, true);
+	}
+
+	/**
+	 * Computes the nodes coreachable from a list of sources, attributing each node to the sources
+	 * that coreach it.
+	 *
+	 * @param startSigs a list of starting node signatures.
+	 * @return a map from the signatures of the coreachable nodes to their source masks.
+	 * @see #reachesBySource(LongList)
+	 */
+	public Long2ObjectOpenHashMap<long[]> coreachesBySource(final LongList startSigs) {
+		return multiSourceMaskedVisit(startSigs, false);
+	}
+
+	private Long2ObjectOpenHashMap<long[]> multiSourceMaskedVisit(final LongList startSigs, final boolean forward) {
+		final int words = (startSigs.size() + Long.SIZE - 1) / Long.SIZE;
+		lock.readLock().lock();
+		try {
+			final Long2ObjectOpenHashMap<long[]> masks = new Long2ObjectOpenHashMap<>();
+			// Nodes whose mask has gained bits since their last expansion
+			final LongOpenHashSet pending = new LongOpenHashSet();
+			final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+			for (int i = 0; i < startSigs.size(); i++) {
+				final long startSig = startSigs.getLong(i);
+				long[] mask = masks.get(startSig);
+				if (mask == null) masks.put(startSig, mask = new long[words]);
+				mask[i / Long.SIZE] |= 1L << i;
+				if (pending.add(startSig)) queue.enqueue(startSig);
+			}
+
+			while (!queue.isEmpty()) {
+				final long nodeSig = queue.dequeueLong();
+				pending.remove(nodeSig);
+				final long[] mask = masks.get(nodeSig);
+				for (final long s : forward ? successors(nodeSig) : predecessors(nodeSig)) {
+					long[] t = masks.get(s);
+					if (t == null) masks.put(s, t = new long[words]);
+					boolean changed = false;
+					for (int w = 0; w < words; w++) {
+						if ((mask[w] & ~t[w]) != 0) {
+							t[w] |= mask[w];
+							changed = true;
+						}
+					}
+					if (changed && pending.add(s)) queue.enqueue(s);
+				}
+			}
+
+			return masks;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The set of all node signatures that are reachable from the signature <code>startSig</code>,
+	 * computed within a given budget.
+	 *
+	 * <p>
+	 * The visit is the same as that of {@link #reaches(long)}, but it stops when the budget runs out
+	 * or it is cancelled; moreover, nodes in revisions exceeding the revision limits of the budget
+	 * are not visited. In both cases, the result is marked as {@linkplain VisitResult#truncated
+	 * truncated}.
+	 *
+	 * @param startSig the starting node signature.
+	 * @param budget a budget for the visit.
+	 * @return the (possibly truncated) set of all node signatures for which there is a directed
+	 *         path from <code>startSig</code> to that node.
+	 */
+	public VisitResult reaches(final long startSig, final VisitBudget budget) {
+		return new BoundedVisit(budget, x -> true).visit(startSig, true);
+	}
+
+	/**
+	 * The set of all node signatures that are reachable from the signature <code>startSig</code>
+	 * through nodes satisfying a given filter, computed within a given budget.
+	 *
+	 * @param startSig the starting node signature.
+	 * @param budget a budget for the visit.
+	 * @param filter a predicate on signatures; nodes not satisfying the predicate are neither
+	 *            returned nor visited, and do not count against the budget.
+	 * @return the (possibly truncated) set of all node signatures for which there is a directed
+	 *         path from <code>startSig</code> to that node made of nodes satisfying
+	 *         <code>filter</code>.
+	 * @see #reaches(long, VisitBudget)
+	 */
+	public VisitResult reaches(final long startSig, final VisitBudget budget, final LongPredicate filter) {
+		return new BoundedVisit(budget, filter).visit(startSig, true);
+	}
+
+	/**
+	 * The set of all node signatures that are coreachable from the signature <code>startSig</code>,
+	 * computed within a given budget.
+	 *
+	 * @param startSig the starting node signature.
+	 * @param budget a budget for the visit.
+	 * @return the (possibly truncated) set of all node signatures for which there is a directed
+	 *         path from that node to <code>startSig</code>.
+	 * @see #reaches(long, VisitBudget)
+	 */
+	public VisitResult coreaches(final long startSig, final VisitBudget budget) {
+		return new BoundedVisit(budget, x -> true).visit(startSig, false);
+	}
+
+	/**
+	 * The set of all node signatures that are coreachable from the signature <code>startSig</code>
+	 * through nodes satisfying a given filter, computed within a given budget.
+	 *
+	 * @param startSig the starting node signature.
+	 * @param budget a budget for the visit.
+	 * @param filter a predicate on signatures; nodes not satisfying the predicate are neither
+	 *            returned nor visited, and do not count against the budget.
+	 * @return the (possibly truncated) set of all node signatures for which there is a directed
+	 *         path from that node to <code>startSig</code> made of nodes satisfying
+	 *         <code>filter</code>.
+	 * @see #reaches(long, VisitBudget)
+	 */
+	public VisitResult coreaches(final long startSig, final VisitBudget budget, final LongPredicate filter) {
+		return new BoundedVisit(budget, filter).visit(startSig, false);
+	}
+
+	/**
+	 * The state of a visit within a {@link VisitBudget}.
+	 *
+	 * <p>
+	 * Successors and predecessors are enumerated inline, rather than by {@link #successors(long)}
+	 * and {@link #predecessors(long)}, so that a revision is admitted, and the deadline and
+	 * cancellation are checked, before the call graph of the revision is decoded.
+	 */
+	private final class BoundedVisit {
+		private final VisitBudget budget;
+		private final LongPredicate filter;
+		private final long deadline;
+		private final LongOpenHashSet result = new LongOpenHashSet();
+		/** Revisions entered so far, overall and by product. */
+		private final LongOpenHashSet revisions = new LongOpenHashSet();
+		private final Object2ObjectOpenHashMap<String, LongOpenHashSet> product2Revisions = new Object2ObjectOpenHashMap<>();
+		private final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+		/** The copies of the call graphs and of the transposes used by the visit. */
+		private final GraphCopies graphs = new GraphCopies(true), transposes = new GraphCopies(false);
+		private boolean truncated;
+
+		private BoundedVisit(final VisitBudget budget, final LongPredicate filter) {
+			this.budget = budget;
+			this.filter = filter;
+			this.deadline = budget.deadline();
+		}
+
+		/**
+		 * Admits a revision into the visit, if it has already been entered or if the revision limits
+		 * of the budget allow it.
+		 *
+		 * @param revIndex a revision index.
+		 * @return true if the visit can enter the revision.
+		 */
+		private boolean admit(final long revIndex) {
+			if (revisions.contains(revIndex)) return true;
+			final LongOpenHashSet productRevisions = product2Revisions.computeIfAbsent(callGraphs.get(revIndex).product, p -> new LongOpenHashSet());
+			if (revisions.size() >= budget.maxRevisions() || productRevisions.size() >= budget.maxRevisionsPerProduct()) {
+				truncated = true;
+				return false;
+			}
+			revisions.add(revIndex);
+			productRevisions.add(revIndex);
+			return true;
+		}
+
+		/**
+		 * Returns whether the visit must stop because the budget has been cancelled or the deadline
+		 * has passed.
+		 *
+		 * @return true if the visit must stop.
+		 */
+		private boolean expired() {
+			if (budget.isCancelled() || deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0) return truncated = true;
+			return false;
+		}
+
+		/**
+		 * Adds a node to the result and to the queue, unless it has already been visited or it does
+		 * not satisfy the filter.
+		 *
+		 * @param sig a node signature, in an admitted revision.
+		 * @return false if the visit must stop because the maximum number of nodes has been reached.
+		 */
+		private boolean add(final long sig) {
+			if (result.contains(sig) || !filter.test(sig)) return true;
+			if (result.size() >= budget.maxNodes()) return !(truncated = true);
+			result.add(sig);
+			queue.enqueue(sig);
+			return true;
+		}
+
+		private VisitResult visit(final long startSig, final boolean forward) {
+			lock.readLock().lock();
+			try {
+				admit(index(startSig));
+				result.add(startSig);
+				queue.enqueue(startSig);
+
+				visit: while (!queue.isEmpty()) {
+					if (expired()) break;
+					final long nodeSig = queue.dequeueLong();
+					final long gid = gid(nodeSig);
+					final long index = index(nodeSig);
+					// The revision of the node has been admitted when the node was added
+					final CallGraphData callGraphData = callGraphs.get(index).callGraphData();
+					if (forward) {
+						for (final long x : callGraphData.successors(gid, graphs.get(index, callGraphData))) {
+							if (callGraphData.isInternal(x)) {
+								if (!add(signature(x, index))) break visit;
+							} else for (final LongIterator i = appearsInIndex.revisions(x); i.hasNext();) {
+								// Nodes in other revisions are decoded only when dequeued
+								final long revIndex = i.nextLong();
+								final long s = signature(x, revIndex);
+								if (result.contains(s) || !filter.test(s) || !admit(revIndex)) continue;
+								if (!add(s)) break visit;
+							}
+						}
+					} else {
+						for (final long x : callGraphData.predecessors(gid, transposes.get(index, callGraphData))) if (!add(signature(x, index))) break visit;
+						for (final LongIterator i = calledByIndex.revisions(gid); i.hasNext();) {
+							final long revIndex = i.nextLong();
+							if (!admit(revIndex)) continue;
+							if (expired()) break visit;
+							final CallGraphData precCallGraphData = callGraphs.get(revIndex).callGraphData();
+							for (final long y : precCallGraphData.predecessors(gid, transposes.get(revIndex, precCallGraphData))) if (!add(signature(y, revIndex))) break visit;
+						}
+					}
+				}
+
+				return new VisitResult(result, truncated, revisions.size());
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * The set of all node signatures that are reachable from the signature <code>startSig</code>,
+	 * computed by a parallel level-synchronous visit.
+	 *
+	 * <p>
+	 * This method returns the same set as {@link #reaches(long)}, but each level of the visit is
+	 * expanded in parallel in the {@linkplain ForkJoinPool#commonPool() common pool}, so the call
+	 * graphs of different revisions are decoded concurrently.
+	 *
+	 * @param startSig the signature of the starting node.
+	 * @return the set of all node signatures for which there is a directed path from
+	 *         <code>startSig</code> to that node.
+	 */
+	public LongSet parallelReaches(final long startSig) {
+		return parallelVisit(startSig, true, x -> true);
+	}
+
+	/**
+	 * The set of all node signatures that are reachable from the signature <code>startSig</code>
+	 * through nodes satisfying a given filter, computed by a parallel level-synchronous visit.
+	 *
+	 * @param startSig the signature of the starting node.
+	 * @param filter a thread-safe predicate on signatures; nodes not satisfying the predicate are
+	 *            neither returned nor visited.
+	 * @return the set of all node signatures for which there is a directed path from
+	 *         <code>startSig</code> to that node made of nodes satisfying <code>filter</code>.
+	 * @see #parallelReaches(long)
+	 */
+	public LongSet parallelReaches(final long startSig, final LongPredicate filter) {
+		return parallelVisit(startSig, true, filter);
+	}
+
+	/**
+	 * The set of all node signatures that are coreachable from the signature <code>startSig</code>,
+	 * computed by a parallel level-synchronous visit.
+	 *
+	 * <p>
+	 * This method returns the same set as {@link #coreaches(long)}.
+	 *
+	 * @param startSig the signature of the starting node.
+	 * @return the set of all node signatures for which there is a directed path from that node to
+	 *         <code>startSig</code>.
+	 * @see #parallelReaches(long)
+	 */
+	public LongSet parallelCoreaches(final long startSig) {
+		return parallelVisit(startSig, false, x -> true);
+	}
+
+	/**
+	 * The set of all node signatures that are coreachable from the signature <code>startSig</code>
+	 * through nodes satisfying a given filter, computed by a parallel level-synchronous visit.
+	 *
+	 * @param startSig the signature of the starting node.
+	 * @param filter a thread-safe predicate on signatures; nodes not satisfying the predicate are
+	 *            neither returned nor visited.
+	 * @return the set of all node signatures for which there is a directed path from that node to
+	 *         <code>startSig</code> made of nodes satisfying <code>filter</code>.
+	 * @see #parallelReaches(long, LongPredicate)
+	 */
+	public LongSet parallelCoreaches(final long startSig, final LongPredicate filter) {
+		return parallelVisit(startSig, false, filter);
+	}
+
+	/**
+	 * Performs a level-synchronous breadth-first visit: each level is expanded in parallel by a
+	 * {@link FrontierExpansion} task, and then merged sequentially into the set of visited nodes,
+	 * yielding the next frontier.
+	 *
+	 * @param startSig the signature of the starting node.
+	 * @param forward whether to visit successors (true) or predecessors (false).
+	 * @param filter a thread-safe predicate on signatures.
+	 * @return the set of visited signatures.
+	 */
+	private LongSet parallelVisit(final long startSig, final boolean forward, final LongPredicate filter) {
+		lock.readLock().lock();
+		try {
+			final LongOpenHashSet result = new LongOpenHashSet();
+			result.add(startSig);
+			long[] frontier = { startSig };
+
+			while (frontier.length != 0) {
+				// Sorting groups nodes by revision index, so tasks touch as few revisions as possible
+				LongArrays.parallelQuickSort(frontier);
+				final LongArrayList candidates = ForkJoinPool.commonPool().invoke(new FrontierExpansion(frontier, 0, frontier.length, forward, filter, result));
+				final LongArrayList next = new LongArrayList();
+				for (final long s : candidates) if (result.add(s)) next.add(s);
+				frontier = next.toLongArray();
+			}
+
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * A fork/join task computing the successors (or predecessors) of a range of a visit frontier that
+	 * have not been visited yet and satisfy a filter. The set of visited nodes is only read by these
+	 * tasks, and it is modified by {@link KnowledgeBase#parallelVisit(long, boolean, LongPredicate)}
+	 * only between levels.
+	 */
+	private final class FrontierExpansion extends RecursiveTask<LongArrayList> {
+		private static final long serialVersionUID = 1L;
+		/** Below this number of nodes a task is not split further. */
+		private static final int GRAIN = 64;
+		private final long[] frontier;
+		private final int from;
+		private final int to;
+		private final boolean forward;
+		private final LongPredicate filter;
+		private final LongSet visited;
+
+		private FrontierExpansion(final long[] frontier, final int from, final int to, final boolean forward, final LongPredicate filter, final LongSet visited) {
+			this.frontier = frontier;
+			this.from = from;
+			this.to = to;
+			this.forward = forward;
+			this.filter = filter;
+			this.visited = visited;
+		}
+
+		@Override
+		protected LongArrayList compute() {
+			if (to - from > GRAIN) {
+				final int mid = from + to >>> 1;
+				final FrontierExpansion left = new FrontierExpansion(frontier, from, mid, forward, filter, visited);
+				left.fork();
+				final LongArrayList result = new FrontierExpansion(frontier, mid, to, forward, filter, visited).compute();
+				result.addAll(left.join());
+				return result;
+			}
+
+			final LongArrayList result = new LongArrayList();
+			// Tasks run in different threads, so each leaf owns its copies
+			final GraphCopies copies = new GraphCopies(forward);
+			for (int i = from; i < to; i++)
+				for (final long s : forward ? successors(frontier[i], false, copies) : predecessors(frontier[i], false, copies))
+					if (!visited.contains(s) && filter.test(s)) result.add(s);
+			return result;
+		}
+	}
+
+	/**
+	 * The set of all node signatures that are reachable from the signature <code>startSig</code>,
+	 * represented by per-revision bitmaps.
+	 *
+	 * <p>
+	 * This method is semantically equivalent to {@link #reaches(long)}, but it keeps track of visited
+	 * nodes using, for each revision touched by the visit, a bitmap indexed by the LIDs of its
+	 * internal nodes, and it scans successors directly on the compressed graphs, so it uses
+	 * significantly less memory on large visits.
+	 *
+	 * @param startSig the signature of the starting node.
+	 * @return a map from the revision index of each revision touched by the visit to the bitmap of the
+	 *         LIDs of the reachable nodes in the revision.
+	 * @see #toSignatures(Long2ObjectMap)
+	 */
+	public Long2ObjectOpenHashMap<LongArrayBitVector> reachesBitmaps(final long startSig) {
+		return bitmapVisit(startSig, true);
+	}
+
+	/**
+	 * The set of all node signatures that are coreachable from the signature <code>startSig</code>,
+	 * represented by per-revision bitmaps.
+	 *
+	 * <p>
+	 * This method is semantically equivalent to {@link #coreaches(long)}, but it uses the same
+	 * representation as {@link #reachesBitmaps(long)}.
+	 *
+	 * @param startSig the signature of the starting node.
+	 * @return a map from the revision index of each revision touched by the visit to the bitmap of the
+	 *         LIDs of the coreachable nodes in the revision.
+	 * @see #toSignatures(Long2ObjectMap)
+	 */
+	public Long2ObjectOpenHashMap<LongArrayBitVector> coreachesBitmaps(final long startSig) {
+		return bitmapVisit(startSig, false);
+	}
+
+	/**
+	 * Converts the per-revision bitmaps returned by {@link #reachesBitmaps(long)} or
+	 * {@link #coreachesBitmaps(long)} into a set of node signatures.
+	 *
+	 * @param bitmaps a map from revision indices to bitmaps of LIDs.
+	 * @return the set of signatures of the nodes represented by <code>bitmaps</code>.
+	 */
+	public LongSet toSignatures(final Long2ObjectMap<LongArrayBitVector> bitmaps) {
+		final LongOpenHashSet result = new LongOpenHashSet();
+		for (final Long2ObjectMap.Entry<LongArrayBitVector> entry : bitmaps.long2ObjectEntrySet()) {
+			final long index = entry.getLongKey();
+			final long[] LID2GID = callGraphs.get(index).callGraphData().LID2GID;
+			final LongArrayBitVector bits = entry.getValue();
+			for (long lid = bits.nextOne(0); lid != -1; lid = bits.nextOne(lid + 1)) result.add(signature(LID2GID[(int)lid], index));
+		}
+		return result;
+	}
+
+	/**
+	 * The set of all node signatures that are reachable from the signature <code>startSig</code>,
+	 * computed by a version-coalesced visit.
+	 *
+	 * <p>
+	 * This method is semantically equivalent to {@link #reaches(long)}, but the elements of the visit
+	 * are GIDs, each with the set of revisions in which it has been reached. Since the same GID
+	 * usually appears in many revisions (i.e., versions) of a product, this approach reduces
+	 * dramatically the number of frontier elements and the size of the result. Moreover, revisions of
+	 * a GID with the same successors are expanded together, and external successors are expanded into
+	 * the revisions in which they appear just once.
+	 *
+	 * @param startSig the signature of the starting node.
+	 * @return a map from the GID of each reachable node to the set of the revisions in which it is
+	 *         reachable.
+	 * @see #coalescedToSignatures(Long2ObjectMap)
+	 */
+	public Long2ObjectOpenHashMap<LongOpenHashSet> reachesCoalesced(final long startSig) {
+		return coalescedVisit(startSig, true);
+	}
+
+	/**
+	 * The set of all node signatures that are coreachable from the signature <code>startSig</code>,
+	 * computed by a version-coalesced visit.
+	 *
+	 * <p>
+	 * This method is semantically equivalent to {@link #coreaches(long)}, but it uses the same
+	 * representation as {@link #reachesCoalesced(long)}.
+	 *
+	 * @param startSig the signature of the starting node.
+	 * @return a map from the GID of each coreachable node to the set of the revisions in which it is
+	 *         coreachable.
+	 * @see #coalescedToSignatures(Long2ObjectMap)
+	 */
+	public Long2ObjectOpenHashMap<LongOpenHashSet> coreachesCoalesced(final long startSig) {
+		return coalescedVisit(startSig, false);
+	}
+
+	/**
+	 * Converts the per-GID revision sets returned by {@link #reachesCoalesced(long)} or
+	 * {@link #coreachesCoalesced(long)} into a set of node signatures.
+	 *
+	 * @param revisions a map from GIDs to sets of revision indices.
+	 * @return the set of signatures of the nodes represented by <code>revisions</code>.
+	 */
+	public static LongSet coalescedToSignatures(final Long2ObjectMap<? extends LongSet> revisions) {
+		final LongOpenHashSet result = new LongOpenHashSet();
+		for (final Long2ObjectMap.Entry<? extends LongSet> entry : revisions.long2ObjectEntrySet()) {
+			final long gid = entry.getLongKey();
+			for (final long index : entry.getValue()) result.add(signature(gid, index));
+		}
+		return result;
+	}
+
+	/**
+	 * Performs a breadth-first visit whose elements are GIDs, each associated with the revisions in
+	 * which it has been reached but not yet expanded.
+	 *
+	 * <p>
+	 * Revision sets are sparse (the number of revisions in which a GID is reached is usually a tiny
+	 * fraction of the number of revisions): visited revisions are kept in hash sets, and revisions to
+	 * expand in lists.
+	 *
+	 * @param startSig the signature of the starting node.
+	 * @param forward whether to visit successors (true) or predecessors (false).
+	 * @return a map from GIDs to sets of revision indices.
+	 */
+	private Long2ObjectOpenHashMap<LongOpenHashSet> coalescedVisit(final long startSig, final boolean forward) {
+		lock.readLock().lock();
+		try {
+			final Long2ObjectOpenHashMap<LongOpenHashSet> result = new Long2ObjectOpenHashMap<>();
+			// Revisions reached but not expanded yet, for each GID in the queue
+			final Long2ObjectOpenHashMap<LongArrayList> pending = new Long2ObjectOpenHashMap<>();
+			// GIDs whose cross-revision arcs have already been followed
+			final LongOpenHashSet crossed = new LongOpenHashSet();
+			// Visit queue
+			final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+			final GraphCopies graphs = new GraphCopies(forward);
+			final CallGraph startCallGraph = callGraphs.get(index(startSig));
+			if (startCallGraph == null || !startCallGraph.callGraphData().GID2LID.containsKey(gid(startSig))) throw new IllegalArgumentException("Signature " + startSig + " does not correspond to a node");
+			visitCoalesced(result, pending, queue, gid(startSig), index(startSig));
+
+			while (!queue.isEmpty()) {
+				final long gid = queue.dequeueLong();
+				final LongArrayList revisions = pending.remove(gid);
+
+				// Group revisions by successor list (external successors are stored complemented)
+				final Object2ObjectOpenHashMap<LongArrayList, LongArrayList> groups = new Object2ObjectOpenHashMap<>();
+				for (int r = 0; r < revisions.size(); r++) {
+					final long index = revisions.getLong(r);
+					final CallGraph callGraph = callGraphs.get(index);
+					final CallGraphData callGraphData = callGraph.callGraphData();
+					final LazyIntIterator neighbors = graphs.get(index, callGraphData).successors(callGraphData.GID2LID.get(gid));
+					final LongArrayList key = new LongArrayList();
+					for (int x; (x = neighbors.nextInt()) != -1;) key.add(x < callGraph.nInternal ? callGraphData.LID2GID[x] : ~callGraphData.LID2GID[x]);
+					groups.computeIfAbsent(key, k -> new LongArrayList()).add(index);
+				}
+
+				for (final Map.Entry<LongArrayList, LongArrayList> group : groups.entrySet())
+					for (final long x : group.getKey()) {
+						if (x >= 0) visitCoalesced(result, pending, queue, x, group.getValue());
+						// An external successor leads to all revisions in which its GID is internal
+						else if (crossed.add(~x)) visitCoalesced(result, pending, queue, ~x, new LongArrayList(appearsInIndex.revisions(~x)));
+					}
+
+				if (!forward && crossed.add(gid)) {
+					// Predecessors of the external nodes with GID gid in other revisions
+					for (final LongIterator i = calledByIndex.revisions(gid); i.hasNext();) {
+						final long revIndex = i.nextLong();
+						final CallGraphData precCallGraphData = callGraphs.get(revIndex).callGraphData();
+						final LazyIntIterator predecessors = graphs.get(revIndex, precCallGraphData).successors(precCallGraphData.GID2LID.get(gid));
+						for (int p; (p = predecessors.nextInt()) != -1;) visitCoalesced(result, pending, queue, precCallGraphData.LID2GID[p], revIndex);
+					}
+				}
+			}
+
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Visits, for {@link #coalescedVisit(long, boolean)}, a GID in a set of revisions: the revisions
+	 * not yet visited are added to the result and to the revisions of the GID that must be expanded
+	 * (if there were none, the GID is enqueued).
+	 *
+	 * @param visited the map from GIDs to sets of visited revisions.
+	 * @param pending the map from GIDs to lists of revisions to expand.
+	 * @param queue the visit queue.
+	 * @param gid a GID.
+	 * @param revisions a list of distinct revisions.
+	 */
+	private static void visitCoalesced(final Long2ObjectOpenHashMap<LongOpenHashSet> visited, final Long2ObjectOpenHashMap<LongArrayList> pending, final LongArrayFIFOQueue queue, final long gid, final LongArrayList revisions) {
+		LongOpenHashSet v = visited.get(gid);
+		if (v == null) visited.put(gid, v = new LongOpenHashSet(revisions.size()));
+		LongArrayList p = pending.get(gid);
+		for (int r = 0; r < revisions.size(); r++) {
+			final long index = revisions.getLong(r);
+			if (!v.add(index)) continue;
+			if (p == null) {
+				pending.put(gid, p = new LongArrayList());
+				queue.enqueue(gid);
+			}
+			p.add(index);
+		}
+	}
+
+	/**
+	 * Visits, for {@link #coalescedVisit(long, boolean)}, a GID in a single revision.
+	 *
+	 * @param visited the map from GIDs to sets of visited revisions.
+	 * @param pending the map from GIDs to lists of revisions to expand.
+	 * @param queue the visit queue.
+	 * @param gid a GID.
+	 * @param index a revision.
+	 * @see #visitCoalesced(Long2ObjectOpenHashMap, Long2ObjectOpenHashMap, LongArrayFIFOQueue, long, LongArrayList)
+	 */
+	private static void visitCoalesced(final Long2ObjectOpenHashMap<LongOpenHashSet> visited, final Long2ObjectOpenHashMap<LongArrayList> pending, final LongArrayFIFOQueue queue, final long gid, final long index) {
+		LongOpenHashSet v = visited.get(gid);
+		if (v == null) visited.put(gid, v = new LongOpenHashSet(1));
+		if (!v.add(index)) return;
+		LongArrayList p = pending.get(gid);
+		if (p == null) {
+			pending.put(gid, p = new LongArrayList());
+			queue.enqueue(gid);
+		}
+		p.add(index);
+	}
+
+	/**
+	 * The {@linkplain CallGraphData#rawGraph() lightweight copies} of the call graphs, or of their
+	 * transposes, used by a visit, one per revision: since each copy allocates a new graph, a visit
+	 * takes a copy when it first expands a node of a revision, and uses it for the rest of the visit.
+	 * Instances are not thread-safe, and must be used only by the thread performing the visit.
+	 */
+	private static final class GraphCopies {
+		/** Whether to copy call graphs (true) or their transposes (false). */
+		private final boolean forward;
+		/** Maps revision indices to copies. */
+		private final Long2ObjectOpenHashMap<ImmutableGraph> copies = new Long2ObjectOpenHashMap<>();
+
+		/**
+		 * Creates an empty set of copies.
+		 *
+		 * @param forward whether to copy call graphs (true) or their transposes (false).
+		 */
+		private GraphCopies(final boolean forward) {
+			this.forward = forward;
+		}
+
+		/**
+		 * Returns the copy of the call graph, or of its transpose, of a revision, taking it if needed.
+		 *
+		 * @param index a revision index.
+		 * @param callGraphData the data of the revision.
+		 * @return the copy of the call graph, or of its transpose, of the revision.
+		 */
+		private ImmutableGraph get(final long index, final CallGraphData callGraphData) {
+			ImmutableGraph copy = copies.get(index);
+			if (copy == null) copies.put(index, copy = forward ? callGraphData.rawGraph() : callGraphData.rawTranspose());
+			return copy;
+		}
+	}
+
+	/**
+	 * Performs a breadth-first visit using per-revision bitmaps of internal LIDs.
+	 *
+	 * <p>
+	 * The visit queue contains nodes represented by the revision index in the upper 32 bits and, in
+	 * the lower 32 bits, the LID of a node or, if the revision has a {@link Condensation}, a component:
+	 * in the latter case, the visit proceeds component by component, marking all nodes of a component
+	 * as visited at once.
+	 *
+	 * @param startSig the signature of the starting node.
+	 * @param forward whether to visit successors (true) or predecessors (false).
+	 * @return a map from revision indices to bitmaps of visited LIDs.
+	 */
+	private Long2ObjectOpenHashMap<LongArrayBitVector> bitmapVisit(final long startSig, final boolean forward) {
+		lock.readLock().lock();
+		try {
+			final Long2ObjectOpenHashMap<LongArrayBitVector> result = new Long2ObjectOpenHashMap<>();
+			// Visit queue
+			final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+			final GraphCopies graphs = new GraphCopies(forward);
+			final long startIndex = index(startSig);
+			final CallGraph startCallGraph = callGraphs.get(startIndex);
+			if (startCallGraph == null) throw new IllegalArgumentException("Signature " + startSig + " does not correspond to an internal node");
+			final CallGraphData startCallGraphData = startCallGraph.callGraphData();
+			final int startLID = startCallGraphData.GID2LID.get(gid(startSig));
+			if (startLID < 0 || startLID >= startCallGraph.nInternal) throw new IllegalArgumentException("Signature " + startSig + " does not correspond to an internal node");
+			visitBitmap(result, queue, startIndex, startLID, startCallGraph.nInternal, startCallGraphData);
+
+			while (!queue.isEmpty()) {
+				final long node = queue.dequeueLong();
+				final long index = node >>> 32;
+				final CallGraph callGraph = callGraphs.get(index);
+				final CallGraphData callGraphData = callGraph.callGraphData();
+				final Condensation condensation = callGraphData.condensation;
+
+				if (condensation == null) {
+					final int lid = (int)node;
+					if (forward) {
+						final LazyIntIterator successors = graphs.get(index, callGraphData).successors(lid);
+						for (int s; (s = successors.nextInt()) != -1;) forwardBitmap(result, queue, index, s, callGraph.nInternal, callGraphData);
+					} else {
+						final LazyIntIterator predecessors = graphs.get(index, callGraphData).successors(lid);
+						for (int p; (p = predecessors.nextInt()) != -1;) visitBitmap(result, queue, index, p, callGraph.nInternal, callGraphData);
+						backwardBitmap(result, queue, graphs, callGraphData.LID2GID[lid]);
+					}
+				} else {
+					final int c = (int)node;
+					if (forward) {
+						// All successors of a component are either internal components or external singletons
+						for (int i = condensation.outdegree(c); i-- != 0;) forwardBitmap(result, queue, index, condensation.member(condensation.successor(c, i), 0), callGraph.nInternal, callGraphData);
+					} else {
+						for (int i = condensation.indegree(c); i-- != 0;) visitBitmap(result, queue, index, condensation.member(condensation.predecessor(c, i), 0), callGraph.nInternal, callGraphData);
+						for (int i = condensation.size(c); i-- != 0;) backwardBitmap(result, queue, graphs, callGraphData.LID2GID[condensation.member(c, i)]);
+					}
+				}
+			}
+
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Visits a successor found by {@link #bitmapVisit(long, boolean)}: internal nodes are visited
+	 * directly, whereas external nodes lead to all revisions in which their GID is internal.
+	 *
+	 * @param visited the map from revision indices to bitmaps of visited LIDs.
+	 * @param queue the visit queue.
+	 * @param index the revision index of the successor.
+	 * @param lid the LID of the successor.
+	 * @param nInternal the number of internal nodes of the revision.
+	 * @param callGraphData the data of the revision.
+	 */
+	private void forwardBitmap(final Long2ObjectOpenHashMap<LongArrayBitVector> visited, final LongArrayFIFOQueue queue, final long index, final int lid, final int nInternal, final CallGraphData callGraphData) {
+		if (lid < nInternal) {
+			visitBitmap(visited, queue, index, lid, nInternal, callGraphData);
+			return;
+		}
+		final long gid = callGraphData.LID2GID[lid];
+		for (final LongIterator revisions = appearsInIndex.revisions(gid); revisions.hasNext();) {
+			final long revIndex = revisions.nextLong();
+			final CallGraph succCallGraph = callGraphs.get(revIndex);
+			final CallGraphData succCallGraphData = succCallGraph.callGraphData();
+			visitBitmap(visited, queue, revIndex, succCallGraphData.GID2LID.get(gid), succCallGraph.nInternal, succCallGraphData);
+		}
+	}
+
+	/**
+	 * Visits, for {@link #bitmapVisit(long, boolean)}, the predecessors of the external nodes with a
+	 * given GID in all revisions in which the GID is external.
+	 *
+	 * @param visited the map from revision indices to bitmaps of visited LIDs.
+	 * @param queue the visit queue.
+	 * @param transposes the copies of the transposes used by the visit.
+	 * @param gid the GID of an internal node.
+	 */
+	private void backwardBitmap(final Long2ObjectOpenHashMap<LongArrayBitVector> visited, final LongArrayFIFOQueue queue, final GraphCopies transposes, final long gid) {
+		for (final LongIterator revisions = calledByIndex.revisions(gid); revisions.hasNext();) {
+			final long revIndex = revisions.nextLong();
+			final CallGraph precCallGraph = callGraphs.get(revIndex);
+			final CallGraphData precCallGraphData = precCallGraph.callGraphData();
+			final LazyIntIterator predecessors = transposes.get(revIndex, precCallGraphData).successors(precCallGraphData.GID2LID.get(gid));
+			for (int p; (p = predecessors.nextInt()) != -1;) visitBitmap(visited, queue, revIndex, p, precCallGraph.nInternal, precCallGraphData);
+		}
+	}
+
+	/**
+	 * Marks an internal node as visited and enqueues it, if it was not visited before. If the revision
+	 * has a {@link Condensation}, all nodes of the component of the node are marked, and the component
+	 * is enqueued.
+	 *
+	 * @param visited the map from revision indices to bitmaps of visited LIDs.
+	 * @param queue the visit queue.
+	 * @param index the revision index of the node.
+	 * @param lid the LID of the node.
+	 * @param nInternal the number of internal nodes of the revision.
+	 * @param callGraphData the data of the revision.
+	 */
+	private static void visitBitmap(final Long2ObjectOpenHashMap<LongArrayBitVector> visited, final LongArrayFIFOQueue queue, final long index, final int lid, final int nInternal, final CallGraphData callGraphData) {
+		LongArrayBitVector bits = visited.get(index);
+		if (bits == null) visited.put(index, bits = LongArrayBitVector.ofLength(nInternal));
+		if (bits.getBoolean(lid)) return;
+		final Condensation condensation = callGraphData.condensation;
+		if (condensation == null) {
+			bits.set(lid);
+			queue.enqueue(index << 32 | lid);
+		} else {
+			final int c = condensation.component[lid];
+			for (int i = condensation.size(c); i-- != 0;) bits.set(condensation.member(c, i));
+			queue.enqueue(index << 32 | c);
+		}
+	}
+
+	/**
+	 * Adds a new {@link CallGraph} to the list of all call graphs.
+	 *
+	 * <p>
+	 * The graph is built, compressed and (unless it replaces a graph with the same index) stored
+	 * before acquiring the write lock, so visits can proceed meanwhile; to add several graphs
+	 * concurrently, use an {@link Ingestion}.
+	 *
+	 * @param g the revision call graph from which the call graph will be created.
+	 * @param index the revision index to which the new call graph will be associated.
+	 * @throws IOException
+	 * @throws RocksDBException
+	 */
+	public void add(final RevisionCallGraph g, final long index) throws IOException, RocksDBException {
+		if (readOnly) throw new IllegalStateException();
+		commit(new CompressedCallGraph(g), index);
+	}
+
+	/**
+	 * Adds to the list of all call graphs the call graph of a compressed call graph.
+	 *
+	 * <p>
+	 * Commits are serialized by the monitor of the knowledge base, so GIDs are assigned in commit
+	 * order; the write lock, which blocks visits, is held only to update the maps from GIDs to
+	 * revisions and to publish the call graph.
+	 *
+	 * @param c a compressed call graph.
+	 * @param index the revision index to which the new call graph will be associated.
+	 */
+	private synchronized void commit(final CompressedCallGraph c, final long index) throws IOException, RocksDBException {
+		final CallGraph callGraph = new CallGraph(c, index);
+		// Call graphs are modified only here, so no lock is needed to read them
+		final boolean replacing = callGraphs.containsKey(index);
+		// A new call graph is not reachable by visits until it is published
+		if (!replacing) store(c, index);
+		// The maps from GIDs to revisions must forget the GIDs of the call graph being replaced
+		final CallGraph replaced = callGraphs.get(index);
+		final long[] replacedLID2GID = replacing ? replaced.callGraphData().LID2GID : null;
+		lock.writeLock().lock();
+		try {
+			// Visits of the call graph being replaced must not see the new data
+			if (replacing) store(c, index);
+			// The changes to the maps from GIDs to revisions are written at once
+			try (final WriteBatch batch = new WriteBatch(); final WriteOptions writeOptions = new WriteOptions()) {
+				if (replacing) {
+					for (int lid = 0; lid < replacedLID2GID.length; lid++) {
+						if (lid < replaced.nInternal) appearsInIndex.remove(batch, replacedLID2GID[lid], index);
+						else calledByIndex.remove(batch, replacedLID2GID[lid], index);
+					}
+				}
+				for (int lid = 0; lid < c.LID2GID.length; lid++) {
+					// Fix gazillions of copies of Java classes in jars
+					if (lid < c.nInternal) appearsInIndex.add(batch, c.LID2GID[lid], index);
+					else calledByIndex.add(batch, c.LID2GID[lid], index);
+				}
+				callGraphDB.write(writeOptions, batch);
+			}
+			// Fold the lists that have been appended to, so that values are rewritten once per compaction
+			for (final GIDRevisionIndex gidRevisionIndex : new GIDRevisionIndex[] { appearsInIndex, calledByIndex })
+				if (gidRevisionIndex.touched() >= GIDRevisionIndex.COMPACTION_THRESHOLD) gidRevisionIndex.compact();
+			// The cached data, if any, belongs to the previous call graph with the same index
+			callGraphDataCache.remove(index);
+			final CallGraph old = callGraphs.put(index, callGraph);
+			if (old != null) productVersion2Index.removeLong(productVersion(old.product, old.version));
+			productVersion2Index.put(productVersion(callGraph.product, callGraph.version), index);
+			if (old != null) reachabilityCache.clear();
+			else if (reachabilityCache.size() != 0) {
+				// Forward results change only if they touch a revision calling a GID that is internal here,
+				// backward results only if they contain a GID that is called here
+				final long[] LID2GID = c.LID2GID;
+				final LongOpenHashSet callingRevisions = new LongOpenHashSet(), calledGIDs = new LongOpenHashSet();
+				for (int lid = 0; lid < LID2GID.length; lid++) {
+					if (lid < c.nInternal) for (final LongIterator revisions = calledByIndex.revisions(LID2GID[lid]); revisions.hasNext();) callingRevisions.add(revisions.nextLong());
+					else calledGIDs.add(LID2GID[lid]);
+				}
+				reachabilityCache.invalidate(callingRevisions, calledGIDs);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Stores in the database the data of a compressed call graph whose nodes have been assigned GIDs.
+	 *
+	 * @param c a compressed call graph.
+	 * @param index the revision index of the call graph.
+	 */
+	private void store(final CompressedCallGraph c, final long index) throws IOException, RocksDBException {
+		final FastByteArrayOutputStream fbaos = new FastByteArrayOutputStream();
+		CallGraphData.write(fbaos, c.graph, c.transpose, c.graphProperties, c.transposeProperties, c.LID2GID, c.condensation);
+		callGraphDB.put(defaultHandle, Longs.toByteArray(index), 0, 8, fbaos.array, 0, fbaos.length);
+	}
+
+	/**
+	 * Returns a new pipelined ingestion for this knowledge base.
+	 *
+	 * @param threads the number of threads building and compressing graphs.
+	 * @return a new ingestion, which must be {@linkplain Ingestion#close() closed} to complete it.
+	 */
+	public Ingestion ingestion(final int threads) {
+		if (readOnly) throw new IllegalStateException();
+		return new Ingestion(threads);
+	}
+
+	/**
+	 * A pipelined ingestion of revision call graphs.
+	 *
+	 * <p>
+	 * Graphs passed to {@link #add(RevisionCallGraph, long)} are built, reordered and compressed by a
+	 * pool of threads, whereas GID assignment and storage are performed in submission order by the
+	 * thread calling {@link #add(RevisionCallGraph, long)} and {@link #close()}: thus, the resulting
+	 * knowledge base is identical to that obtained by calling {@link KnowledgeBase#add(RevisionCallGraph, long)}
+	 * sequentially. At most twice as many graphs as threads are pending at any time.
+	 *
+	 * <p>
+	 * If a graph cannot be added, the exception is thrown by the call that would have committed it,
+	 * and the ingestion fails: later graphs are never committed (so the knowledge base contains
+	 * exactly the graphs submitted before the failing one), further calls to
+	 * {@link #add(RevisionCallGraph, long)} throw an {@link IllegalStateException}, and
+	 * {@link #close()} just cancels the pending graphs.
+	 *
+	 * <p>
+	 * Instances are not thread-safe: they should be used by a single thread.
+	 */
+	public class Ingestion implements Closeable {
+		/** The pool compressing graphs. */
+		private final ExecutorService executor;
+		/** The maximum number of pending graphs. */
+		private final int window;
+		/** The pending graphs, in submission order. */
+		private final ObjectArrayFIFOQueue<Future<CompressedCallGraph>> pending = new ObjectArrayFIFOQueue<>();
+		/** The revision indices of the pending graphs, in submission order. */
+		private final LongArrayFIFOQueue pendingIndices = new LongArrayFIFOQueue();
+		/** Whether a graph could not be added. */
+		private boolean failed;
+
+		private Ingestion(final int threads) {
+			if (threads <= 0) throw new IllegalArgumentException("Nonpositive number of threads: " + threads);
+			executor = Executors.newFixedThreadPool(threads);
+			window = 2 * threads;
+		}
+
+		/**
+		 * Schedules the addition of a new {@link CallGraph}; if too many graphs are pending, the
+		 * oldest ones are added first.
+		 *
+		 * @param g the revision call graph from which the call graph will be created.
+		 * @param index the revision index to which the new call graph will be associated.
+		 */
+		public void add(final RevisionCallGraph g, final long index) throws IOException, RocksDBException {
+			if (failed) throw new IllegalStateException("This ingestion has failed");
+			while (pending.size() >= window) commitNext();
+			pending.enqueue(executor.submit(() -> new CompressedCallGraph(g)));
+			pendingIndices.enqueue(index);
+		}
+
+		private void commitNext() throws IOException, RocksDBException {
+			final Future<CompressedCallGraph> future = pending.dequeue();
+			final long index = pendingIndices.dequeueLong();
+			// Cleared only if the graph is committed, whatever is thrown
+			failed = true;
+			final CompressedCallGraph c;
+			try {
+				c = future.get();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (final ExecutionException e) {
+				final Throwable cause = e.getCause();
+				if (cause instanceof IOException) throw (IOException)cause;
+				if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+				throw new RuntimeException(cause);
+			}
+			commit(c, index);
+			failed = false;
+		}
+
+		/**
+		 * Adds all pending graphs, unless this ingestion has failed, and releases the threads of this
+		 * ingestion.
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				while (!failed && !pending.isEmpty()) commitNext();
+			} catch (final RocksDBException e) {
+				throw new RuntimeException(e);
+			} finally {
+				while (!pending.isEmpty()) pending.dequeue().cancel(true);
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (!readOnly) {
+				appearsInIndex.compact();
+				calledByIndex.compact();
+				BinIO.storeObject(this, kbMetadataPathname);
+			}
 		} finally {
 			defaultHandle.close();
 			gid2uriFamilyHandle.close();
 			uri2gidFamilyHandle.close();
+			appearsInFamilyHandle.close();
+			calledByFamilyHandle.close();
 			callGraphDB.close();
+			if (storageResources != null) storageResources.close();
 		}
 	}
 
@@ -1136,6 +3102,7 @@ public class KnowledgeBase implements Serializable, Closeable {
 	private void readObject(final ObjectInputStream s) throws IOException, ClassNotFoundException {
 		s.defaultReadObject();
 		initKryo();
+		initProductVersionIndex();
 	}
 
 	/**
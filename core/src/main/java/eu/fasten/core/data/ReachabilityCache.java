@@ -0,0 +1,385 @@
+package eu.fasten.core.data;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+/**
+ * A least-recently-used cache (by starting signature) of the results of {@linkplain KnowledgeBase#reaches(long)
+ * reachability} and {@linkplain KnowledgeBase#coreaches(long) coreachability} visits, indexed by
+ * starting signature and direction, and bounded by the size of the stored results.
+ *
+ * <p>
+ * Results are stored compressed, in the order in which they are iterated when they are
+ * {@linkplain #put(long, boolean, LongSet) cached} (for visits, the visit order), as the differences
+ * between consecutive signatures in zig-zag, variable-length 7-bit encoding; {@link #get(long, boolean)}
+ * returns them in the same order.
+ *
+ * <p>
+ * When a revision is added to a knowledge base, the results that might change are
+ * {@linkplain #invalidate(LongSet, LongSet) invalidated}: a forward result changes only if it
+ * contains a node of a revision calling (as an external node) a GID that is internal to the new
+ * revision, and a backward result changes only if it contains a node whose GID is called (as an
+ * external node) by the new revision. To check these conditions without decoding results, each
+ * result is stored with a summary: the sorted revision indices of its nodes, for forward results,
+ * and the sorted GIDs of its nodes, for backward results. Summaries are accounted for in the
+ * budget.
+ *
+ * <p>
+ * All methods are thread-safe.
+ */
+public class ReachabilityCache {
+	/**
+	 * The system property that can be used to set the default budget, in bytes, of the reachability
+	 * cache of a {@link KnowledgeBase}.
+	 */
+	public static final String BUDGET_PROPERTY = ReachabilityCache.class.getName() + ".budget";
+
+	/** The forward and backward results for a starting signature (either might be missing). */
+	private static final class Entry {
+		/** The encoded results. */
+		private final byte[][] results = new byte[2][];
+		/** The summaries of the results: sorted revision indices (forward) or GIDs (backward). */
+		private final long[][] summaries = new long[2][];
+
+		/**
+		 * Returns the size of a result.
+		 *
+		 * @param d a direction.
+		 * @return the size in bytes of the result and of its summary, or 0 if there is no result.
+		 */
+		private long size(final int d) {
+			return results[d] == null ? 0 : results[d].length + (long)summaries[d].length * Long.BYTES;
+		}
+	}
+
+	/** The cached results, in access order (least recently used first), keyed by starting signature. */
+	private final Long2ObjectLinkedOpenHashMap<Entry> cache = new Long2ObjectLinkedOpenHashMap<>();
+	/** The number of cached results. */
+	private int size;
+	/** The maximum sum of the sizes of the cached results. */
+	private long budget;
+	/** The sum of the sizes of the cached results. */
+	private long usedBytes;
+	/** The number of lookups that found an entry. */
+	private long hits;
+	/** The number of lookups that did not find an entry. */
+	private long misses;
+	/** The number of evicted entries. */
+	private long evictions;
+	/** The number of invalidated entries. */
+	private long invalidations;
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param budget the maximum sum of the sizes of the cached results, in bytes.
+	 */
+	public ReachabilityCache(final long budget) {
+		if (budget < 0) throw new IllegalArgumentException("Negative budget: " + budget);
+		this.budget = budget;
+	}
+
+	/**
+	 * Returns the default budget: the value of the system property {@link #BUDGET_PROPERTY}, if set, or
+	 * zero (i.e., caching is opt-in).
+	 *
+	 * @return the default budget, in bytes.
+	 */
+	public static long defaultBudget() {
+		final String budget = System.getProperty(BUDGET_PROPERTY);
+		return budget != null ? Long.parseLong(budget) : 0;
+	}
+
+	private static int direction(final boolean forward) {
+		return forward ? 0 : 1;
+	}
+
+	/**
+	 * Returns a cached result, updating the hit/miss counters and the access order.
+	 *
+	 * @param startSig the starting signature.
+	 * @param forward whether the result is that of a reachability (true) or coreachability (false)
+	 *            visit.
+	 * @return a newly allocated set containing the cached result, iterating in the order in which the
+	 *         result was cached, or <code>null</code> if the result is not cached.
+	 */
+	public LongSet get(final long startSig, final boolean forward) {
+		final byte[] encoded;
+		synchronized (this) {
+			final Entry entry = cache.getAndMoveToLast(startSig);
+			encoded = entry == null ? null : entry.results[direction(forward)];
+			if (encoded != null) hits++;
+			else misses++;
+		}
+		if (encoded == null) return null;
+		final LongLinkedOpenHashSet result = new LongLinkedOpenHashSet();
+		for (final LongIterator i = decode(encoded); i.hasNext();) result.add(i.nextLong());
+		return result;
+	}
+
+	/**
+	 * Caches a result, evicting least recently used entries until the cache fits its budget. Results
+	 * whose compressed size is larger than the budget are not cached, and if the budget is zero results
+	 * are not even compressed.
+	 *
+	 * @param startSig the starting signature.
+	 * @param forward whether the result is that of a reachability (true) or coreachability (false)
+	 *            visit.
+	 * @param result the set of signatures returned by the visit; {@link #get(long, boolean)} will
+	 *            return the signatures in the iteration order of this set.
+	 */
+	public void put(final long startSig, final boolean forward, final LongSet result) {
+		if (budget() == 0) return;
+		final byte[] encoded = encode(result);
+		final LongOpenHashSet keys = new LongOpenHashSet();
+		for (final LongIterator i = result.iterator(); i.hasNext();) {
+			final long signature = i.nextLong();
+			keys.add(forward ? KnowledgeBase.index(signature) : KnowledgeBase.gid(signature));
+		}
+		final long[] summary = keys.toLongArray();
+		Arrays.sort(summary);
+		synchronized (this) {
+			if (encoded.length + (long)summary.length * Long.BYTES > budget) return;
+			Entry entry = cache.getAndMoveToLast(startSig);
+			if (entry == null) cache.putAndMoveToLast(startSig, entry = new Entry());
+			final int d = direction(forward);
+			if (entry.results[d] != null) usedBytes -= entry.size(d);
+			else size++;
+			entry.results[d] = encoded;
+			entry.summaries[d] = summary;
+			usedBytes += entry.size(d);
+			evict();
+		}
+	}
+
+	/**
+	 * Removes the results that might be changed by the addition of a revision.
+	 *
+	 * @param callingRevisions the revisions calling, as an external node, a GID that is internal to
+	 *            the new revision: forward results containing nodes of these revisions are removed.
+	 * @param calledGIDs the GIDs called, as external nodes, by the new revision: backward results
+	 *            containing nodes with these GIDs are removed.
+	 */
+	public synchronized void invalidate(final LongSet callingRevisions, final LongSet calledGIDs) {
+		for (final ObjectIterator<Long2ObjectLinkedOpenHashMap.Entry<Entry>> iterator = cache.long2ObjectEntrySet().fastIterator(); iterator.hasNext();) {
+			final Entry entry = iterator.next().getValue();
+			for (int d = 0; d < 2; d++) {
+				if (entry.results[d] == null || !intersects(entry.summaries[d], d == 0 ? callingRevisions : calledGIDs)) continue;
+				usedBytes -= entry.size(d);
+				entry.results[d] = null;
+				entry.summaries[d] = null;
+				size--;
+				invalidations++;
+			}
+			if (entry.results[0] == null && entry.results[1] == null) iterator.remove();
+		}
+	}
+
+	/**
+	 * Returns whether a sorted array and a set have a common element, scanning the smaller of the two.
+	 *
+	 * @param sorted a sorted array.
+	 * @param set a set.
+	 * @return true if some element of <code>sorted</code> belongs to <code>set</code>.
+	 */
+	private static boolean intersects(final long[] sorted, final LongSet set) {
+		if (set.size() < sorted.length) {
+			for (final LongIterator i = set.iterator(); i.hasNext();) if (Arrays.binarySearch(sorted, i.nextLong()) >= 0) return true;
+		} else for (final long x : sorted) if (set.contains(x)) return true;
+		return false;
+	}
+
+	/**
+	 * Encodes a set of signatures in its iteration order: the number of signatures is followed by the
+	 * differences between consecutive signatures (the first difference being the first signature),
+	 * in zig-zag, variable-length 7-bit encoding.
+	 *
+	 * @param signatures a set of signatures.
+	 * @return the encoded set.
+	 */
+	private static byte[] encode(final LongSet signatures) {
+		final byte[] buffer = new byte[10 * (signatures.size() + 1)];
+		int pos = writeLong(buffer, 0, signatures.size());
+		long prev = 0;
+		for (final LongIterator i = signatures.iterator(); i.hasNext();) {
+			final long signature = i.nextLong();
+			final long delta = signature - prev;
+			pos = writeLong(buffer, pos, delta << 1 ^ delta >> 63);
+			prev = signature;
+		}
+		return Arrays.copyOf(buffer, pos);
+	}
+
+	/**
+	 * Returns an iterator decoding lazily a set encoded by {@link #encode(LongSet)}.
+	 *
+	 * @param encoded an encoded set.
+	 * @return an iterator on the signatures of the set, in the order in which they were encoded.
+	 */
+	private static LongIterator decode(final byte[] encoded) {
+		return new LongIterator() {
+			private int pos;
+			private long remaining = readLong();
+			private long prev;
+
+			private long readLong() {
+				long result = 0;
+				for (int shift = 0;; shift += 7) {
+					final byte b = encoded[pos++];
+					result |= (b & 0x7FL) << shift;
+					if (b >= 0) return result;
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				return remaining != 0;
+			}
+
+			@Override
+			public long nextLong() {
+				if (!hasNext()) throw new NoSuchElementException();
+				remaining--;
+				final long zigzag = readLong();
+				return prev += zigzag >>> 1 ^ -(zigzag & 1);
+			}
+		};
+	}
+
+	/**
+	 * Writes a long in variable-length 7-bit encoding (least significant group first, continuation
+	 * bit set on all groups but the last).
+	 */
+	private static int writeLong(final byte[] buffer, int pos, long x) {
+		while ((x & ~0x7FL) != 0) {
+			buffer[pos++] = (byte)(x & 0x7F | 0x80);
+			x >>>= 7;
+		}
+		buffer[pos++] = (byte)x;
+		return pos;
+	}
+
+	/** Removes all entries from the cache. */
+	public synchronized void clear() {
+		cache.clear();
+		usedBytes = 0;
+		size = 0;
+	}
+
+	/** Evicts least recently used entries until the cache fits its budget. */
+	private void evict() {
+		for (final ObjectIterator<Long2ObjectLinkedOpenHashMap.Entry<Entry>> iterator = cache.long2ObjectEntrySet().fastIterator(); usedBytes > budget && iterator.hasNext();) {
+			final Entry entry = iterator.next().getValue();
+			for (int d = 0; d < 2; d++) if (entry.results[d] != null) {
+				usedBytes -= entry.size(d);
+				size--;
+				evictions++;
+			}
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Sets the budget, possibly causing evictions.
+	 *
+	 * @param budget the new maximum sum of the sizes of the cached results, in bytes.
+	 */
+	public synchronized void budget(final long budget) {
+		if (budget < 0) throw new IllegalArgumentException("Negative budget: " + budget);
+		this.budget = budget;
+		evict();
+	}
+
+	/**
+	 * Returns the budget.
+	 *
+	 * @return the maximum sum of the sizes of the cached results, in bytes.
+	 */
+	public synchronized long budget() {
+		return budget;
+	}
+
+	/**
+	 * Returns the sum of the sizes of the cached results.
+	 *
+	 * @return the sum of the sizes of the cached results, in bytes.
+	 */
+	public synchronized long usedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * Returns the number of cached results.
+	 *
+	 * @return the number of cached results.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of lookups that found an entry.
+	 *
+	 * @return the number of hits.
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that did not find an entry.
+	 *
+	 * @return the number of misses.
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of evicted entries.
+	 *
+	 * @return the number of evictions.
+	 */
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of entries removed by {@link #invalidate(LongSet, LongSet)}.
+	 *
+	 * @return the number of invalidations.
+	 */
+	public synchronized long invalidations() {
+		return invalidations;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "[entries=" + size + ", bytes=" + usedBytes + "/" + budget + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", invalidations=" + invalidations + "]";
+	}
+}
@@ -18,6 +18,7 @@
 
 package eu.fasten.core.data;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -39,7 +40,8 @@ import org.slf4j.LoggerFactory;
 public class RevisionCallGraph {
 
     /** A constraint represents an interval of versions. It includes all versions between a given lower and upper bound. */
-    public static class Constraint {
+    public static class Constraint implements Serializable {
+        private static final long serialVersionUID = 1L;
         /** Version must be not smaller than this (no lower bound, if <code>null</code>). */
         public final String lowerBound;
         /** Version must be not larger than this (no upper bound, if <code>null</code>). */
@@ -99,6 +101,56 @@ public class RevisionCallGraph {
             return result;
         }
 
+        /** Compares two versions: versions are split into maximal runs of digits and of other characters
+         *  (separators such as '.' and '-' are discarded), and runs are compared pairwise, numerically if
+         *  they are both made of digits, lexicographically otherwise. A version that is a prefix of another
+         *  one precedes it.
+         *
+         * @param v0 a version.
+         * @param v1 another version.
+         * @return a negative integer, zero, or a positive integer as <code>v0</code> is smaller than,
+         *         equal to, or larger than <code>v1</code>.
+         */
+        public static int compareVersions(final String v0, final String v1) {
+            final List<String> t0 = tokenize(v0), t1 = tokenize(v1);
+            for (int i = 0; i < Math.min(t0.size(), t1.size()); i++) {
+                final String a = t0.get(i), b = t1.get(i);
+                final boolean aDigits = Character.isDigit(a.charAt(0)), bDigits = Character.isDigit(b.charAt(0));
+                final int cmp;
+                if (aDigits && bDigits) {
+                    final String x = a.replaceFirst("^0+(?=.)", ""), y = b.replaceFirst("^0+(?=.)", "");
+                    cmp = x.length() != y.length() ? Integer.compare(x.length(), y.length()) : x.compareTo(y);
+                } else if (aDigits != bDigits) cmp = aDigits ? 1 : -1;
+                else cmp = a.compareTo(b);
+                if (cmp != 0) return cmp;
+            }
+            return Integer.compare(t0.size(), t1.size());
+        }
+
+        private static List<String> tokenize(final String version) {
+            final List<String> tokens = new ObjectArrayList<>();
+            int start = -1;
+            for (int i = 0; i <= version.length(); i++) {
+                final boolean separator = i == version.length() || !Character.isLetterOrDigit(version.charAt(i));
+                if (start >= 0 && (separator || Character.isDigit(version.charAt(i)) != Character.isDigit(version.charAt(start)))) {
+                    tokens.add(version.substring(start, i));
+                    start = -1;
+                }
+                if (!separator && start < 0) start = i;
+            }
+            return tokens;
+        }
+
+        /** Returns whether a version satisfies this constraint.
+         *
+         * @param version a version.
+         * @return true if <code>version</code> is between the bounds of this constraint (according to
+         *         {@link #compareVersions(String, String)}).
+         */
+        public boolean matches(final String version) {
+            return (lowerBound == null || compareVersions(lowerBound, version) <= 0) && (upperBound == null || compareVersions(version, upperBound) <= 0);
+        }
+
         @Override
         public String toString() {
             if (lowerBound != null && lowerBound.equals(upperBound))
@@ -112,7 +164,8 @@ public class RevisionCallGraph {
         }
     }
 
-    public static class Dependency {
+    public static class Dependency implements Serializable {
+        private static final long serialVersionUID = 1L;
         public final String forge;
         public final String product;
         public final List<Constraint> constraints;
@@ -157,6 +210,38 @@ public class RevisionCallGraph {
             return d;
         }
 
+        /** Returns whether a version of the product of this dependency satisfies one of its constraints.
+         *
+         * @param version a version.
+         * @return true if there are no constraints, or if <code>version</code> satisfies one of them.
+         */
+        public boolean matches(final String version) {
+            if (constraints.isEmpty()) return true;
+            for (final Constraint constraint: constraints) if (constraint.matches(version)) return true;
+            return false;
+        }
+
+        /** Returns whether a depset admits a given revision of a product: this happens if the depset
+         *  does not mention the product, or if one of the dependencies on the product
+         *  {@linkplain #matches(String) matches} the version.
+         *
+         * @param depset a depset.
+         * @param forge the forge of the revision (ignored, if <code>null</code>).
+         * @param product the product of the revision.
+         * @param version the version of the revision.
+         * @return true if <code>depset</code> admits the given revision.
+         */
+        public static boolean admits(final List<List<Dependency>> depset, final String forge, final String product, final String version) {
+            boolean mentioned = false;
+            for (final List<Dependency> clause: depset)
+                for (final Dependency dependency: clause) {
+                    if (!dependency.product.equals(product) || forge != null && dependency.forge != null && !dependency.forge.equals(forge)) continue;
+                    if (dependency.matches(version)) return true;
+                    mentioned = true;
+                }
+            return !mentioned;
+        }
+
         /** Produces the JSON representation of this dependency.
          *
          * @return the JSON representation.
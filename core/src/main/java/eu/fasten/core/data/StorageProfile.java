@@ -0,0 +1,284 @@
+package eu.fasten.core.data;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.Cache;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.CompactionStyle;
+import org.rocksdb.CompressionType;
+import org.rocksdb.DBOptions;
+import org.rocksdb.IndexType;
+import org.rocksdb.LRUCache;
+
+/**
+ * A named set of RocksDB tuning parameters, used to open the databases of a {@link KnowledgeBase}
+ * and of a {@link eu.fasten.core.data.graphdb.RocksDao}.
+ *
+ * <p>
+ * Three profiles are predefined:
+ * <ul>
+ * <li>{@link #BALANCED} (the default): a moderate shared block cache and Bloom filters on keys;
+ * <li>{@link #QUERY}, for read-heavy query nodes: a large shared block cache, Bloom filters,
+ * partitioned indices and filters, and level compaction with dynamic level sizes, which minimizes
+ * read and space amplification;
+ * <li>{@link #INGESTION}, for write-heavy ingestion nodes: a small block cache, large write buffers,
+ * universal compaction, which minimizes write amplification, and more background jobs.
+ * </ul>
+ *
+ * <p>
+ * A profile is {@linkplain #parse(String) specified} by its name, optionally followed by a colon and
+ * a comma-separated list of overrides (e.g., <code>query:cache=4g,bloom=16</code>). The default
+ * profile can be set using the system property {@link #PROFILE_PROPERTY}.
+ *
+ * <p>
+ * The RocksDB options of a profile are native objects: they are created by a {@link Resources}
+ * instance, which must be closed after the database has been closed. A database can be reopened
+ * with a different profile; changing the compaction style will however reshape its levels at the
+ * next compactions.
+ *
+ * @see eu.fasten.core.index.StorageProfileBenchmark
+ */
+public class StorageProfile {
+	/** The system property that can be used to set the default profile. */
+	public static final String PROFILE_PROPERTY = StorageProfile.class.getName() + ".profile";
+
+	/** The default profile. */
+	public static final StorageProfile BALANCED = new StorageProfile("balanced", 256L << 20, 10, false, CompactionStyle.LEVEL, 64L << 20, 2, 2);
+	/** A profile for read-heavy query nodes. */
+	public static final StorageProfile QUERY = new StorageProfile("query", 1L << 30, 10, true, CompactionStyle.LEVEL, 64L << 20, 2, 2);
+	/** A profile for write-heavy ingestion nodes. */
+	public static final StorageProfile INGESTION = new StorageProfile("ingestion", 64L << 20, 10, false, CompactionStyle.UNIVERSAL, 256L << 20, 4, Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+	/** The name of this profile. */
+	public final String name;
+	/** The size in bytes of the block cache shared by all column families. */
+	public final long blockCacheSize;
+	/** The number of bits per key of Bloom filters, or zero for no filters. */
+	public final int bloomBitsPerKey;
+	/** Whether indices and filters are partitioned (and only their top level is pinned in the cache). */
+	public final boolean partitionedIndex;
+	/** The compaction style. */
+	public final CompactionStyle compactionStyle;
+	/** The size in bytes of each write buffer (memtable). */
+	public final long writeBufferSize;
+	/** The maximum number of write buffers. */
+	public final int maxWriteBufferNumber;
+	/** The maximum number of concurrent background flushes and compactions. */
+	public final int backgroundJobs;
+
+	private StorageProfile(final String name, final long blockCacheSize, final int bloomBitsPerKey, final boolean partitionedIndex, final CompactionStyle compactionStyle, final long writeBufferSize, final int maxWriteBufferNumber, final int backgroundJobs) {
+		this.name = name;
+		this.blockCacheSize = blockCacheSize;
+		this.bloomBitsPerKey = bloomBitsPerKey;
+		this.partitionedIndex = partitionedIndex;
+		this.compactionStyle = compactionStyle;
+		this.writeBufferSize = writeBufferSize;
+		this.maxWriteBufferNumber = maxWriteBufferNumber;
+		this.backgroundJobs = backgroundJobs;
+	}
+
+	/**
+	 * Returns a profile given its specification: the name of a predefined profile, optionally
+	 * followed by a colon and a comma-separated list of overrides of the form <code>key=value</code>.
+	 * Keys are <code>cache</code> (a size, with optional <code>k</code>, <code>m</code> or
+	 * <code>g</code> suffix), <code>bloom</code> (bits per key, zero to disable),
+	 * <code>partitioned</code> (a boolean), <code>compaction</code> (<code>level</code> or
+	 * <code>universal</code>), <code>writebuffer</code> (a size), <code>writebuffers</code> and
+	 * <code>jobs</code>.
+	 *
+	 * @param spec the specification of a profile.
+	 * @return the specified profile.
+	 */
+	public static StorageProfile parse(final String spec) {
+		final int colon = spec.indexOf(':');
+		final String name = (colon == -1 ? spec : spec.substring(0, colon)).trim().toLowerCase(Locale.ROOT);
+		final StorageProfile base;
+		switch (name) {
+		case "balanced":
+			base = BALANCED;
+			break;
+		case "query":
+			base = QUERY;
+			break;
+		case "ingestion":
+			base = INGESTION;
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown storage profile: " + name);
+		}
+		if (colon == -1) return base;
+
+		long blockCacheSize = base.blockCacheSize, writeBufferSize = base.writeBufferSize;
+		int bloomBitsPerKey = base.bloomBitsPerKey, maxWriteBufferNumber = base.maxWriteBufferNumber, backgroundJobs = base.backgroundJobs;
+		boolean partitionedIndex = base.partitionedIndex;
+		CompactionStyle compactionStyle = base.compactionStyle;
+		for (final String override : spec.substring(colon + 1).split(",")) {
+			final String[] keyValue = override.split("=");
+			if (keyValue.length != 2) throw new IllegalArgumentException("Malformed storage-profile specification: " + spec);
+			final String value = keyValue[1].trim().toLowerCase(Locale.ROOT);
+			switch (keyValue[0].trim().toLowerCase(Locale.ROOT)) {
+			case "cache":
+				blockCacheSize = parseSize(value);
+				break;
+			case "bloom":
+				bloomBitsPerKey = Integer.parseInt(value);
+				break;
+			case "partitioned":
+				partitionedIndex = Boolean.parseBoolean(value);
+				break;
+			case "compaction":
+				compactionStyle = CompactionStyle.valueOf(value.toUpperCase(Locale.ROOT));
+				if (compactionStyle != CompactionStyle.LEVEL && compactionStyle != CompactionStyle.UNIVERSAL) throw new IllegalArgumentException("Unsupported compaction style: " + value);
+				break;
+			case "writebuffer":
+				writeBufferSize = parseSize(value);
+				break;
+			case "writebuffers":
+				maxWriteBufferNumber = Integer.parseInt(value);
+				break;
+			case "jobs":
+				backgroundJobs = Integer.parseInt(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown storage-profile parameter: " + keyValue[0]);
+			}
+		}
+		return new StorageProfile(name, blockCacheSize, bloomBitsPerKey, partitionedIndex, compactionStyle, writeBufferSize, maxWriteBufferNumber, backgroundJobs);
+	}
+
+	/** Parses a size in bytes, with an optional <code>k</code>, <code>m</code> or <code>g</code> suffix. */
+	private static long parseSize(final String size) {
+		final int shift = size.endsWith("k") ? 10 : size.endsWith("m") ? 20 : size.endsWith("g") ? 30 : 0;
+		return Long.parseLong(shift == 0 ? size : size.substring(0, size.length() - 1)) << shift;
+	}
+
+	/**
+	 * Returns the default profile, specified by the system property {@link #PROFILE_PROPERTY}, or
+	 * {@link #BALANCED} if the property is not set.
+	 *
+	 * @return the default profile.
+	 */
+	public static StorageProfile defaultProfile() {
+		final String spec = System.getProperty(PROFILE_PROPERTY);
+		return spec != null ? parse(spec) : BALANCED;
+	}
+
+	/**
+	 * Returns a profile given its specification, or the {@linkplain #defaultProfile() default
+	 * profile} if the specification is <code>null</code>.
+	 *
+	 * @param spec the specification of a profile, or <code>null</code>.
+	 * @return the specified profile, or the default one.
+	 */
+	public static StorageProfile parseOrDefault(final String spec) {
+		return spec != null ? parse(spec) : defaultProfile();
+	}
+
+	/**
+	 * Returns a new set of native resources built following this profile.
+	 *
+	 * @return a new set of native resources; it must be closed after the database using it.
+	 */
+	public Resources resources() {
+		return new Resources();
+	}
+
+	/**
+	 * The native RocksDB objects built following a profile. All column families created by the same
+	 * instance share the same block cache.
+	 */
+	public final class Resources implements AutoCloseable {
+		/** Native objects to be closed. */
+		private final List<AutoCloseable> resources = new ArrayList<>();
+		/** The block cache shared by all column families. */
+		private final Cache cache;
+
+		private Resources() {
+			cache = register(new LRUCache(blockCacheSize));
+		}
+
+		private <T extends AutoCloseable> T register(final T resource) {
+			resources.add(resource);
+			return resource;
+		}
+
+		/**
+		 * Returns database options: missing databases and column families are created.
+		 *
+		 * @return database options.
+		 */
+		public DBOptions dbOptions() {
+			return register(new DBOptions()
+					.setCreateIfMissing(true)
+					.setCreateMissingColumnFamilies(true)
+					.setMaxBackgroundJobs(backgroundJobs));
+		}
+
+		/**
+		 * Returns options for a column family using the shared block cache.
+		 *
+		 * @param compressionType the compression applied by RocksDB to the blocks of the column
+		 *            family.
+		 * @return column-family options.
+		 */
+		public ColumnFamilyOptions columnFamilyOptions(final CompressionType compressionType) {
+			final BlockBasedTableConfig tableConfig = new BlockBasedTableConfig()
+					.setBlockCache(cache)
+					.setCacheIndexAndFilterBlocks(true)
+					.setCacheIndexAndFilterBlocksWithHighPriority(true)
+					.setPinL0FilterAndIndexBlocksInCache(true);
+			// Keys are mostly 8-byte revision indices or GIDs, so whole-key filtering is what we need
+			if (bloomBitsPerKey > 0) tableConfig.setFilterPolicy(register(new BloomFilter(bloomBitsPerKey, false))).setWholeKeyFiltering(true);
+			if (partitionedIndex) tableConfig.setIndexType(IndexType.kTwoLevelIndexSearch).setPartitionFilters(bloomBitsPerKey > 0).setPinTopLevelIndexAndFilter(true);
+
+			final ColumnFamilyOptions options = register(new ColumnFamilyOptions())
+					.setCompressionType(compressionType)
+					.setTableFormatConfig(tableConfig)
+					.setCompactionStyle(compactionStyle)
+					.setWriteBufferSize(writeBufferSize)
+					.setMaxWriteBufferNumber(maxWriteBufferNumber);
+			if (compactionStyle == CompactionStyle.LEVEL) options.setLevelCompactionDynamicLevelBytes(true);
+			return options;
+		}
+
+		@Override
+		public void close() {
+			// Close in reverse order of creation, so options are closed before the objects they refer to
+			for (int i = resources.size(); i-- != 0;) {
+				try {
+					resources.get(i).close();
+				} catch (final Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+			resources.clear();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name + " (cache: " + (blockCacheSize >> 20) + "MiB, bloom: " + (bloomBitsPerKey > 0 ? bloomBitsPerKey + " bits/key" : "none") + ", " + (partitionedIndex ? "partitioned" : "monolithic") + " index, " + compactionStyle.toString().toLowerCase(Locale.ROOT) + " compaction, write buffers: " + maxWriteBufferNumber + "x" + (writeBufferSize >> 20) + "MiB, background jobs: " + backgroundJobs + ")";
+	}
+}
@@ -0,0 +1,141 @@
+package eu.fasten.core.data;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A budget limiting the resources used by a visit of a {@link KnowledgeBase} (see, e.g.,
+ * {@link KnowledgeBase#reaches(long, VisitBudget)}).
+ *
+ * <p>
+ * A budget can limit the number of nodes returned, the number of revisions entered by the visit,
+ * the number of revisions of each product, and the wall-clock time of the visit; moreover, the
+ * visit can be {@linkplain #cancel() cancelled} cooperatively by another thread. A revision is
+ * entered before its call graph is decoded, so the revision limits also bound the number of call
+ * graphs decoded by the visit, and the time limit and cancellation are checked before each
+ * decoding. All limits are unbounded by default. When a limit is reached, the visit stops (or, in
+ * the case of revision limits, stops expanding into new revisions) and returns a partial result
+ * marked as {@linkplain VisitResult#truncated truncated}.
+ *
+ * <p>
+ * Setters return the budget itself, so they can be chained. The time limit starts when the visit
+ * starts, so a budget can be reused for several visits, but it is not meant to be used by
+ * concurrent visits, unless the purpose is cancelling them all at once.
+ */
+public class VisitBudget {
+	/** The maximum number of nodes. */
+	private long maxNodes = Long.MAX_VALUE;
+	/** The maximum number of revisions. */
+	private long maxRevisions = Long.MAX_VALUE;
+	/** The maximum number of revisions of each product. */
+	private int maxRevisionsPerProduct = Integer.MAX_VALUE;
+	/** The maximum duration of the visit in nanoseconds. */
+	private long timeoutNanos = Long.MAX_VALUE;
+	/** Whether the visit has been cancelled. */
+	private volatile boolean cancelled;
+
+	/**
+	 * Sets the maximum number of nodes returned by the visit.
+	 *
+	 * @param maxNodes the maximum number of nodes.
+	 * @return this budget.
+	 */
+	public VisitBudget maxNodes(final long maxNodes) {
+		if (maxNodes < 1) throw new IllegalArgumentException("The maximum number of nodes must be positive: " + maxNodes);
+		this.maxNodes = maxNodes;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of revisions the visit can enter.
+	 *
+	 * @param maxRevisions the maximum number of revisions.
+	 * @return this budget.
+	 */
+	public VisitBudget maxRevisions(final long maxRevisions) {
+		if (maxRevisions < 1) throw new IllegalArgumentException("The maximum number of revisions must be positive: " + maxRevisions);
+		this.maxRevisions = maxRevisions;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of revisions of each product the visit can enter.
+	 *
+	 * @param maxRevisionsPerProduct the maximum number of revisions of each product.
+	 * @return this budget.
+	 */
+	public VisitBudget maxRevisionsPerProduct(final int maxRevisionsPerProduct) {
+		if (maxRevisionsPerProduct < 1) throw new IllegalArgumentException("The maximum number of revisions per product must be positive: " + maxRevisionsPerProduct);
+		this.maxRevisionsPerProduct = maxRevisionsPerProduct;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum duration of the visit.
+	 *
+	 * @param timeout the maximum duration.
+	 * @param unit the unit of <code>timeout</code>.
+	 * @return this budget.
+	 */
+	public VisitBudget timeout(final long timeout, final TimeUnit unit) {
+		if (timeout < 0) throw new IllegalArgumentException("Negative timeout: " + timeout);
+		timeoutNanos = unit.toNanos(timeout);
+		return this;
+	}
+
+	/** Cancels the visits using this budget; they will return as soon as possible. */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Returns whether this budget has been {@linkplain #cancel() cancelled}.
+	 *
+	 * @return true if this budget has been cancelled.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public long maxNodes() {
+		return maxNodes;
+	}
+
+	public long maxRevisions() {
+		return maxRevisions;
+	}
+
+	public int maxRevisionsPerProduct() {
+		return maxRevisionsPerProduct;
+	}
+
+	/**
+	 * Returns the deadline of a visit starting now.
+	 *
+	 * @return the value of {@link System#nanoTime()} after which the visit must stop, or
+	 *         {@link Long#MAX_VALUE} if there is no time limit.
+	 */
+	long deadline() {
+		if (timeoutNanos == Long.MAX_VALUE) return Long.MAX_VALUE;
+		final long now = System.nanoTime();
+		// Saturate on overflow
+		return now + timeoutNanos < now ? Long.MAX_VALUE : now + timeoutNanos;
+	}
+}
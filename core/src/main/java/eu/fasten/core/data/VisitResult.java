@@ -0,0 +1,47 @@
+package eu.fasten.core.data;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+/**
+ * The result of a visit of a {@link KnowledgeBase} limited by a {@link VisitBudget}.
+ */
+public class VisitResult {
+	/** The signatures of the nodes visited. */
+	public final LongSet nodes;
+	/**
+	 * Whether the visit was stopped, or some node was not visited, because of the budget (or
+	 * because of cancellation): in this case, {@link #nodes} is a subset of the full result.
+	 */
+	public final boolean truncated;
+	/** The number of distinct revisions entered by the visit. */
+	public final long revisions;
+
+	public VisitResult(final LongSet nodes, final boolean truncated, final long revisions) {
+		this.nodes = nodes;
+		this.truncated = truncated;
+		this.revisions = revisions;
+	}
+
+	@Override
+	public String toString() {
+		return "[nodes: " + nodes.size() + " revisions: " + revisions + (truncated ? " (truncated)]" : "]");
+	}
+}
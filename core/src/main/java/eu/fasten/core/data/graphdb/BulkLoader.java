@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.fasten.core.data.graphdb;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.DBOptions;
+import org.rocksdb.EnvOptions;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.SstFileWriter;
+
+import com.google.common.primitives.Longs;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * An offline bulk loader for a {@link RocksDao}, to be used when (re)building a graph database.
+ *
+ * <p>Graphs {@linkplain #add(long, List, int, List) added} to the loader are compressed in parallel,
+ * and their encoded values are spilled to a temporary file. When the loader is {@linkplain #finish()
+ * finished}, the values are sorted by revision index, split into contiguous key ranges, and written
+ * in parallel, one range per thread, to SST files (one per column family and range), which are then
+ * ingested into the database. Since the files of different ranges do not overlap, on an empty
+ * database they are placed directly in the bottommost level, and no compaction is needed.
+ *
+ * <p>If the same revision index is added several times, the last addition wins, as with
+ * {@link RocksDao#saveToRocksDb(long, List, int, List)}.
+ */
+public class BulkLoader implements Closeable {
+
+    /** The prefixes of the names of the SST files of the {@link RocksDao#GRAPH}, {@link RocksDao#TRANSPOSE} and {@link RocksDao#MAPS} column families. */
+    private static final String[] FILE_PREFIXES = {"graph", "transpose", "maps"};
+
+    private final RocksDao rocksDao;
+    /** The temporary directory containing the spill file and the SST files. */
+    private final File tmpDir;
+    /** The number of threads used to compress graphs and to write SST files. */
+    private final int threads;
+    private final ExecutorService executor;
+    /** Limits the number of graphs waiting to be compressed. */
+    private final Semaphore window;
+    /** The file where encoded values are appended. */
+    private final FileChannel spill;
+    /** For each spilled graph, its revision index, its sequence number and the position of its values. */
+    private final LongArrayList indices = new LongArrayList(), offsets = new LongArrayList();
+    private final IntArrayList sequence = new IntArrayList();
+    /** For each spilled graph, the lengths of the values of the graph, of the transpose and of the maps. */
+    private final IntArrayList[] lengths = {new IntArrayList(), new IntArrayList(), new IntArrayList()};
+    /** The current length of {@link #spill}. */
+    private long spillLength;
+    /** The number of graphs added so far. */
+    private int added;
+    /** The first error thrown by a compression task, if any. */
+    private volatile Throwable error;
+
+    /**
+     * Creates a bulk loader.
+     *
+     * @param rocksDao the database that will receive the graphs
+     * @param tmpDir   a directory where temporary files will be created, or {@code null} for the
+     *                 system temporary directory; it should be on the same filesystem as the database,
+     *                 so that SST files can be moved rather than copied
+     * @param threads  the number of threads used to compress graphs and to write SST files
+     * @throws IOException if the temporary files could not be created
+     */
+    BulkLoader(final RocksDao rocksDao, final File tmpDir, final int threads) throws IOException {
+        if (threads < 1) throw new IllegalArgumentException("The number of threads must be positive: " + threads);
+        this.rocksDao = rocksDao;
+        this.tmpDir = (tmpDir != null ? Files.createTempDirectory(tmpDir.toPath(), "bulk") : Files.createTempDirectory("bulk")).toFile();
+        this.threads = threads;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.window = new Semaphore(2 * threads);
+        this.spill = FileChannel.open(new File(this.tmpDir, "spill").toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Adds a graph to this loader; the graph is compressed asynchronously.
+     *
+     * @param index       Index of the graph (ID from postgres)
+     * @param nodes       List of GID nodes (first internal nodes, then external nodes)
+     * @param numInternal Number of internal nodes in nodes list
+     * @param edges       List of edges (pairs of GIDs)
+     * @throws IOException if the compression of a previously added graph failed
+     */
+    public void add(final long index, final List<Long> nodes, final int numInternal, final List<List<Long>> edges) throws IOException {
+        checkError();
+        try {
+            window.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        final int seq = added++;
+        executor.execute(() -> {
+            try {
+                if (error == null) spill(index, seq, rocksDao.encode(nodes, numInternal, edges));
+            } catch (final Throwable t) {
+                if (error == null) error = t;
+            } finally {
+                window.release();
+            }
+        });
+    }
+
+    private synchronized void spill(final long index, final int seq, final byte[][] values) throws IOException {
+        indices.add(index);
+        sequence.add(seq);
+        offsets.add(spillLength);
+        for (int i = 0; i < values.length; i++) {
+            final ByteBuffer buffer = ByteBuffer.wrap(values[i]);
+            while (buffer.hasRemaining()) spillLength += spill.write(buffer, spillLength);
+            lengths[i].add(values[i].length);
+        }
+    }
+
+    private void checkError() throws IOException {
+        if (error != null) throw error instanceof IOException ? (IOException)error : new IOException(error);
+    }
+
+    /**
+     * Waits for all graphs to be compressed, writes the SST files and ingests them into the database.
+     *
+     * @return the number of distinct revision indices loaded
+     * @throws IOException      if the compression of a graph failed, or if there was a problem with the
+     *                          temporary files
+     * @throws RocksDBException if there was a problem writing or ingesting the SST files
+     */
+    public long finish() throws IOException, RocksDBException {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        checkError();
+
+        // Sort by key (in the byte order used by RocksDB) and, for equal keys, by sequence number
+        final int n = indices.size();
+        final int[] perm = new int[n];
+        for (int i = 0; i < n; i++) perm[i] = i;
+        IntArrays.parallelQuickSort(perm, (x, y) -> {
+            final int t = Long.compareUnsigned(indices.getLong(x), indices.getLong(y));
+            return t != 0 ? t : Integer.compare(sequence.getInt(x), sequence.getInt(y));
+        });
+        // Keep only the last addition of each key
+        final IntArrayList entries = new IntArrayList(n);
+        for (int i = 0; i < n; i++) {
+            if (i + 1 < n && indices.getLong(perm[i]) == indices.getLong(perm[i + 1])) continue;
+            entries.add(perm[i]);
+        }
+        if (entries.isEmpty()) return 0;
+
+        // Write SST files, one range of keys per thread
+        final int ranges = Math.min(threads, entries.size());
+        final List<List<String>> files = new ArrayList<>();
+        for (int f = 0; f < 3; f++) files.add(new ArrayList<>());
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (int r = 0; r < ranges; r++) {
+            final int from = (int)((long)entries.size() * r / ranges), to = (int)((long)entries.size() * (r + 1) / ranges);
+            final String[] names = new String[3];
+            for (int f = 0; f < 3; f++) files.get(f).add(names[f] = new File(tmpDir, FILE_PREFIXES[f] + "-" + r + ".sst").toString());
+            tasks.add(() -> {
+                writeRange(entries, from, to, names);
+                return null;
+            });
+        }
+        final ExecutorService writers = Executors.newFixedThreadPool(ranges);
+        try {
+            for (final Future<Void> future : writers.invokeAll(tasks)) future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RocksDBException) throw (RocksDBException)cause;
+            if (cause instanceof UncheckedIOException) throw ((UncheckedIOException)cause).getCause();
+            throw new IOException(cause);
+        } finally {
+            writers.shutdownNow();
+        }
+
+        final long[] keys = new long[entries.size()];
+        for (int i = 0; i < keys.length; i++) keys[i] = indices.getLong(entries.getInt(i));
+        rocksDao.ingest(files, keys);
+        return entries.size();
+    }
+
+    /** Writes the values of the given range of entries to an SST file per column family. */
+    private void writeRange(final IntArrayList entries, final int from, final int to, final String[] names) throws RocksDBException, IOException {
+        final ColumnFamilyOptions[] familyOptions = rocksDao.familyOptions();
+        final SstFileWriter[] writers = new SstFileWriter[3];
+        try (final EnvOptions envOptions = new EnvOptions(); final DBOptions dbOptions = new DBOptions()) {
+            final Options[] options = new Options[3];
+            try {
+                for (int f = 0; f < 3; f++) {
+                    options[f] = new Options(dbOptions, familyOptions[f]);
+                    writers[f] = new SstFileWriter(envOptions, options[f]);
+                    writers[f].open(names[f]);
+                }
+                for (int i = from; i < to; i++) {
+                    final int entry = entries.getInt(i);
+                    final byte[] key = Longs.toByteArray(indices.getLong(entry));
+                    long position = offsets.getLong(entry);
+                    for (int f = 0; f < 3; f++) {
+                        final ByteBuffer value = ByteBuffer.allocate(lengths[f].getInt(entry));
+                        while (value.hasRemaining()) {
+                            final int read = spill.read(value, position + value.position());
+                            if (read < 0) throw new IOException("Truncated spill file");
+                        }
+                        position += value.capacity();
+                        writers[f].put(key, value.array());
+                    }
+                }
+                for (final SstFileWriter writer : writers) writer.finish();
+            } finally {
+                for (int f = 0; f < 3; f++) {
+                    if (writers[f] != null) writers[f].close();
+                    if (options[f] != null) options[f].close();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        spill.close();
+        FileUtils.deleteDirectory(tmpDir);
+    }
+}
@@ -2,9 +2,10 @@ package eu.fasten.core.data.graphdb;
 
 import java.util.Arrays;
 import java.util.Properties;
+import java.util.function.Supplier;
 
+import eu.fasten.core.data.Condensation;
 import eu.fasten.core.data.DirectedGraph;
-import eu.fasten.core.data.GOV3LongFunction;
 import it.unimi.dsi.fastutil.HashCommon;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongList;
@@ -12,100 +13,245 @@ import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import it.unimi.dsi.webgraph.ImmutableGraph;
 
-/** Instances of this class contain the data relative to a call graph that are stored in the database. */
+/**
+ * Instances of this class contain the data relative to a call graph that are stored in the database.
+ *
+ * <p>
+ * The data is made of three independent parts: the call graph and its properties, the transpose and
+ * its properties, and the {@linkplain Maps maps} between LIDs and GIDs (plus the condensation).
+ * Instances built by {@link RocksDao} load each part from the database only when it is first needed,
+ * so, for example, a forward visit never reads or decodes the transpose. Each part carries the stamp
+ * of the save that wrote it, so that parts of different saves of the same graph are never mixed.
+ */
 public class CallGraphData implements DirectedGraph {
-	/** The call graph. */
-	private final ImmutableGraph graph;
-	/** The transpose graph. */
-	private final ImmutableGraph transpose;
-	/** Properties (in the sense of {@link ImmutableGraph}) of the call graph. */
-	public final Properties graphProperties;
-	/** Properties (in the sense of {@link ImmutableGraph}) of the transpose graph. */
-	public final Properties transposeProperties;
-	/** Maps LIDs to GIDs. */
-	public final long[] LID2GID;
-	/** Inverse to {@link #LID2GID}: maps GIDs to LIDs. */
-	public final GOV3LongFunction GID2LID;
-	/** A cached copy of the set of external nodes (TODO: immutable? slower but safer). */
-	private final LongOpenHashSet externalNodes;
-	/** The size in bytes of the RocksDB entry. */
-	public final int size;
-
-	public CallGraphData(final ImmutableGraph graph, final ImmutableGraph transpose, final Properties graphProperties, final Properties transposeProperties, final long[] LID2GID, final GOV3LongFunction GID2LID, final int nInternal, final int size) {
-		super();
+
+	/** A graph together with its properties (in the sense of {@link ImmutableGraph}). */
+	static final class Graph {
+		final ImmutableGraph graph;
+		final Properties properties;
+		/** The size in bytes of the database entry. */
+		final int size;
+		/** The stamp of the save that wrote the database entry. */
+		final long stamp;
+
+		Graph(final ImmutableGraph graph, final Properties properties, final int size, final long stamp) {
+			this.graph = graph;
+			this.properties = properties;
+			this.size = size;
+			this.stamp = stamp;
+		}
+	}
+
+	/** The maps between LIDs and GIDs, the number of internal nodes and the condensation. */
+	static final class Maps {
+		final int nInternal;
+		final long[] LID2GID;
+		final GIDIndex GID2LID;
+		final Condensation condensation;
+		/** A cached copy of the set of external nodes (TODO: immutable? slower but safer). */
+		final LongOpenHashSet externalNodes;
+		/** The size in bytes of the database entry. */
+		final int size;
+		/** The stamp of the save that wrote the database entry. */
+		final long stamp;
+
+		Maps(final int nInternal, final long[] LID2GID, final GIDIndex GID2LID, final Condensation condensation, final int size, final long stamp) {
+			this.nInternal = nInternal;
+			this.LID2GID = LID2GID;
+			this.GID2LID = GID2LID;
+			this.condensation = condensation;
+			this.externalNodes = new LongOpenHashSet(Arrays.copyOfRange(LID2GID, nInternal, LID2GID.length));
+			this.size = size;
+			this.stamp = stamp;
+		}
+	}
+
+	/** A thread-safe memoizing supplier. */
+	static final class Lazy<T> implements Supplier<T> {
+		private Supplier<T> supplier;
+		private volatile T value;
+
+		Lazy(final Supplier<T> supplier) {
+			this.supplier = supplier;
+		}
+
+		Lazy(final T value) {
+			this.value = value;
+		}
+
+		@Override
+		public T get() {
+			T result = value;
+			if (result == null) {
+				synchronized (this) {
+					if ((result = value) == null) {
+						value = result = supplier.get();
+						supplier = null;
+					}
+				}
+			}
+			return result;
+		}
+
+		/** Returns whether the value has already been computed. */
+		boolean isLoaded() {
+			return value != null;
+		}
+	}
+
+	/** The call graph and its properties. */
+	private final Lazy<Graph> graph;
+	/** The transpose graph and its properties. */
+	private final Lazy<Graph> transpose;
+	/** The maps between LIDs and GIDs. */
+	private final Lazy<Maps> maps;
+
+	public CallGraphData(final ImmutableGraph graph, final ImmutableGraph transpose, final Properties graphProperties, final Properties transposeProperties, final long[] LID2GID, final GIDIndex GID2LID, final int nInternal, final int size) {
+		this(graph, transpose, graphProperties, transposeProperties, LID2GID, GID2LID, null, nInternal, size);
+	}
+
+	public CallGraphData(final ImmutableGraph graph, final ImmutableGraph transpose, final Properties graphProperties, final Properties transposeProperties, final long[] LID2GID, final GIDIndex GID2LID, final Condensation condensation, final int nInternal, final int size) {
+		// The whole size is attributed to the maps, which are needed by every access; all parts come from the same (legacy) save
+		this(new Lazy<>(new Graph(graph, graphProperties, 0, 0)), new Lazy<>(new Graph(transpose, transposeProperties, 0, 0)), new Lazy<>(new Maps(nInternal, LID2GID, GID2LID, condensation, size, 0)));
+	}
+
+	/**
+	 * Creates call-graph data whose parts are loaded on demand.
+	 *
+	 * @param graph a supplier of the call graph and its properties.
+	 * @param transpose a supplier of the transpose and its properties.
+	 * @param maps a supplier of the maps between LIDs and GIDs.
+	 */
+	CallGraphData(final Supplier<Graph> graph, final Supplier<Graph> transpose, final Supplier<Maps> maps) {
+		this(new Lazy<>(graph), new Lazy<>(transpose), new Lazy<>(maps));
+	}
+
+	/**
+	 * Creates call-graph data from parts that have already been loaded.
+	 *
+	 * @param graph the call graph and its properties.
+	 * @param transpose the transpose and its properties.
+	 * @param maps the maps between LIDs and GIDs.
+	 */
+	CallGraphData(final Graph graph, final Graph transpose, final Maps maps) {
+		this(new Lazy<>(graph), new Lazy<>(transpose), new Lazy<>(maps));
+	}
+
+	private CallGraphData(final Lazy<Graph> graph, final Lazy<Graph> transpose, final Lazy<Maps> maps) {
 		this.graph = graph;
 		this.transpose = transpose;
-		this.graphProperties = graphProperties;
-		this.transposeProperties = transposeProperties;
-		this.LID2GID = LID2GID;
-		this.GID2LID = GID2LID;
-		this.externalNodes = new LongOpenHashSet(Arrays.copyOfRange(LID2GID, nInternal, LID2GID.length));
-		this.size = size;
+		this.maps = maps;
+	}
+
+	Graph graphPart() {
+		return graph.get();
+	}
+
+	Graph transposePart() {
+		return transpose.get();
+	}
+
+	Maps mapsPart() {
+		return maps.get();
+	}
+
+	/** Returns the properties (in the sense of {@link ImmutableGraph}) of the call graph. */
+	public Properties graphProperties() {
+		return graph.get().properties;
+	}
+
+	/** Returns the properties (in the sense of {@link ImmutableGraph}) of the transpose graph. */
+	public Properties transposeProperties() {
+		return transpose.get().properties;
+	}
+
+	/** Returns the map from LIDs to GIDs. */
+	public long[] LID2GID() {
+		return maps.get().LID2GID;
+	}
+
+	/** Returns the inverse of {@link #LID2GID()}: maps GIDs to LIDs. */
+	public GIDIndex GID2LID() {
+		return maps.get().GID2LID;
+	}
+
+	/** Returns the condensation of the call graph, or <code>null</code> if it was not stored with the call graph. */
+	public Condensation condensation() {
+		return maps.get().condensation;
+	}
+
+	/** Returns the size in bytes of the database entries loaded so far. */
+	public int size() {
+		return (graph.isLoaded() ? graph.get().size : 0) + (transpose.isLoaded() ? transpose.get().size : 0) + (maps.isLoaded() ? maps.get().size : 0);
 	}
 
 	@Override
 	public int numNodes() {
-		return graph.numNodes();
+		return maps.get().LID2GID.length;
 	}
 
 	@Override
 	public long numArcs() {
-		return graph.numArcs();
+		return graph.get().graph.numArcs();
 	}
 
 	@Override
 	public LongList successors(final long node) {
-		final int lid = (int)GID2LID.getLong(node);
-		if (lid < 0 || lid >= numNodes() || LID2GID[lid] != node) throw new IllegalArgumentException("GID " + node + " does not exist");
+		final Maps maps = this.maps.get();
+		final int lid = maps.GID2LID.get(node);
+		if (lid == -1) throw new IllegalArgumentException("GID " + node + " does not exist");
+		final ImmutableGraph graph = this.graph.get().graph;
 		final int outdegree = graph.outdegree(lid);
 		final LongArrayList gidList = new LongArrayList(outdegree);
-		for (final int s: graph.successorArray(lid)) gidList.add(LID2GID[s]);
+		for (final int s: graph.successorArray(lid)) gidList.add(maps.LID2GID[s]);
 		return gidList;
 	}
 
 	@Override
 	public LongList predecessors(final long node) {
-		final int lid = (int)GID2LID.getLong(node);
-		if (lid < 0 || lid >= numNodes() || LID2GID[lid] != node) throw new IllegalArgumentException("GID " + node + " does not exist");
+		final Maps maps = this.maps.get();
+		final int lid = maps.GID2LID.get(node);
+		if (lid == -1) throw new IllegalArgumentException("GID " + node + " does not exist");
+		final ImmutableGraph transpose = this.transpose.get().graph;
 		final int indegree = transpose.outdegree(lid);
 		final LongArrayList gidList = new LongArrayList(indegree);
-		for (final int s: transpose.successorArray(lid)) gidList.add(LID2GID[s]);
+		for (final int s: transpose.successorArray(lid)) gidList.add(maps.LID2GID[s]);
 		return gidList;
 	}
 
 	@Override
 	public LongSet nodes() {
 		// TODO maybe cache this
-		return new LongOpenHashSet(LID2GID);
+		return new LongOpenHashSet(maps.get().LID2GID);
 	}
 
 	@Override
 	public LongSet externalNodes() {
-		return externalNodes;
+		return maps.get().externalNodes;
 	}
 
 	@Override
 	public boolean isExternal(final long node) {
-		return externalNodes.contains(node);
+		return maps.get().externalNodes.contains(node);
 	}
 
 	@Override
 	public boolean isInternal(final long node) {
-		return !externalNodes.contains(node);
+		return !maps.get().externalNodes.contains(node);
 	}
 
 	public ImmutableGraph rawGraph() {
-		return graph;
+		return graph.get().graph;
 	}
 
 	public ImmutableGraph rawTranspose() {
-		return transpose;
+		return transpose.get().graph;
 	}
 
 	@Override
 	public String toString() {
 		final StringBuilder sb = new StringBuilder();
-		for (final long gid : LID2GID) {
+		for (final long gid : maps.get().LID2GID) {
 			sb.append(gid).append(": ").append(successors(gid));
 		}
 		return sb.toString();
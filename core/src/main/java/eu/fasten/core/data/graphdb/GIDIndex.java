@@ -0,0 +1,385 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.fasten.core.data.graphdb;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import eu.fasten.core.data.GOV3LongFunction;
+import it.unimi.dsi.bits.Fast;
+import it.unimi.dsi.bits.LongArrayBitVector;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.AbstractLong2IntFunction;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+/**
+ * A size-adaptive index mapping the GIDs of a call graph to their LIDs.
+ *
+ * <p>
+ * Indices are built by {@link #build(long[])}: for graphs with less than {@link #HASH_THRESHOLD}
+ * nodes, the index is the list of LIDs sorted by GID, which is searched by interpolation (GIDs are
+ * assigned sequentially, so they are distributed rather uniformly); for larger graphs, the index is
+ * a minimal perfect hash function in the style of PTHash (keys are distributed into small buckets,
+ * and each bucket stores a pilot value that places its keys in distinct slots of a table) followed by
+ * a table mapping slots to LIDs. All data are stored as fixed-width bit arrays, and
+ * {@link #write(DataOutput)} and {@link #read(ByteBuffer, long[])} just copy them.
+ *
+ * <p>
+ * Indices refer to the map from LIDs to GIDs of the call graph, and return
+ * {@linkplain #defaultReturnValue() -1} on GIDs that are not in the graph. A GID appearing more
+ * than once in the map (e.g., both as an internal and as an external node) is mapped to its last
+ * position, as a hash map filled in LID order would do. Instances are thread-safe.
+ */
+public abstract class GIDIndex extends AbstractLong2IntFunction {
+	private static final long serialVersionUID = 1L;
+
+	/** Graphs with at least this number of nodes are indexed by hashing. */
+	public static final int HASH_THRESHOLD = 4096;
+	/** The average number of keys per bucket of a hashed index. */
+	private static final int BUCKET_SIZE = 4;
+	/** The load factor of the table of a hashed index. */
+	private static final double LOAD_FACTOR = .97;
+	/** The maximum pilot value tried before changing the seed of a hashed index. */
+	private static final int MAX_PILOT = 1 << 16;
+
+	private static final byte SORTED = 0, HASHED = 1;
+
+	/** The map from LIDs to GIDs. */
+	protected final long[] LID2GID;
+
+	private GIDIndex(final long[] LID2GID) {
+		this.LID2GID = LID2GID;
+		defRetValue = -1;
+	}
+
+	/**
+	 * Builds an index of the appropriate type for a map from LIDs to GIDs.
+	 *
+	 * @param LID2GID a map from LIDs to GIDs.
+	 * @return an index mapping the GIDs in <code>LID2GID</code> to their position.
+	 */
+	public static GIDIndex build(final long[] LID2GID) {
+		return LID2GID.length < HASH_THRESHOLD ? new Sorted(LID2GID) : new Hashed(LID2GID);
+	}
+
+	/**
+	 * Adapts a {@link GOV3LongFunction} stored by previous versions. The index is
+	 * {@linkplain #write(DataOutput) written} as the one {@linkplain #build(long[]) built} from
+	 * <code>LID2GID</code>.
+	 *
+	 * @param function a function mapping GIDs to LIDs.
+	 * @param LID2GID the map from LIDs to GIDs.
+	 * @return an index using <code>function</code>.
+	 */
+	public static GIDIndex wrap(final GOV3LongFunction function, final long[] LID2GID) {
+		return new GIDIndex(LID2GID) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public int get(final long gid) {
+				final long lid = function.getLong(gid);
+				return lid >= 0 && lid < LID2GID.length && LID2GID[(int)lid] == gid ? (int)lid : defRetValue;
+			}
+
+			@Override
+			public void write(final DataOutput output) throws IOException {
+				// GOV3 functions are not stored anymore: write an equivalent native index
+				build(LID2GID).write(output);
+			}
+		};
+	}
+
+	/**
+	 * Writes this index in the layout read by {@link #read(ByteBuffer, long[])}.
+	 *
+	 * @param output a data output.
+	 */
+	public abstract void write(DataOutput output) throws IOException;
+
+	/**
+	 * Reads an index written by {@link #write(DataOutput)}, starting at the current position of a
+	 * buffer; on return, the position of the buffer will be just after the index.
+	 *
+	 * @param buffer a buffer.
+	 * @param LID2GID the map from LIDs to GIDs used to build the index.
+	 * @return the index.
+	 */
+	public static GIDIndex read(final ByteBuffer buffer, final long[] LID2GID) {
+		final byte type = buffer.get();
+		switch (type) {
+		case SORTED:
+			return new Sorted(LID2GID, Packed.read(buffer));
+		case HASHED:
+			final long seed = buffer.getLong();
+			final int numBuckets = buffer.getInt();
+			final int tableSize = buffer.getInt();
+			return new Hashed(LID2GID, seed, numBuckets, tableSize, Packed.read(buffer), Packed.read(buffer));
+		default:
+			throw new IllegalArgumentException("Unknown index type: " + type);
+		}
+	}
+
+	@Override
+	public boolean containsKey(final long gid) {
+		return get(gid) != -1;
+	}
+
+	@Override
+	public int size() {
+		return LID2GID.length;
+	}
+
+	/**
+	 * Returns the positions of the last occurrence of each GID in a map from LIDs to GIDs.
+	 *
+	 * @param LID2GID a map from LIDs to GIDs.
+	 * @return the LIDs indexed by a {@link GIDIndex} built on <code>LID2GID</code>.
+	 */
+	private static int[] keys(final long[] LID2GID) {
+		final LongOpenHashSet seen = new LongOpenHashSet(LID2GID.length);
+		final IntArrayList keys = new IntArrayList(LID2GID.length);
+		for (int lid = LID2GID.length; lid-- != 0;) if (seen.add(LID2GID[lid])) keys.add(lid);
+		return keys.toIntArray();
+	}
+
+	/** Returns the number of bits necessary to represent nonnegative values smaller than or equal to <code>x</code>. */
+	private static int width(final long x) {
+		return Math.max(1, Fast.length(x));
+	}
+
+	/** A list of fixed-width values stored in a bit vector. */
+	private static final class Packed implements Serializable {
+		private static final long serialVersionUID = 1L;
+		/** The bit vector containing the values. */
+		private final LongArrayBitVector bits;
+		/** The width of the values. */
+		private final int width;
+		/** The number of values. */
+		private final int size;
+
+		/** Creates a list of values using the smallest possible width. */
+		private Packed(final int[] values) {
+			width = width(Arrays.stream(values).max().orElse(0));
+			size = values.length;
+			bits = LongArrayBitVector.getInstance((long)size * width);
+			for (final int v : values) bits.append(v, width);
+		}
+
+		private Packed(final LongArrayBitVector bits, final int width, final int size) {
+			this.bits = bits;
+			this.width = width;
+			this.size = size;
+		}
+
+		private int get(final int i) {
+			final long from = (long)i * width;
+			return (int)bits.getLong(from, from + width);
+		}
+
+		private void write(final DataOutput output) throws IOException {
+			output.writeInt(width);
+			output.writeInt(size);
+			final long[] words = bits.bits();
+			for (int i = 0; i < numWords(size, width); i++) output.writeLong(words[i]);
+		}
+
+		private static Packed read(final ByteBuffer buffer) {
+			final int width = buffer.getInt();
+			final int size = buffer.getInt();
+			final long[] words = new long[numWords(size, width)];
+			buffer.asLongBuffer().get(words);
+			buffer.position(buffer.position() + words.length * Long.BYTES);
+			return new Packed(LongArrayBitVector.wrap(words, (long)size * width), width, size);
+		}
+
+		private static int numWords(final int size, final int width) {
+			return (int)(((long)size * width + Long.SIZE - 1) / Long.SIZE);
+		}
+	}
+
+	/** An index containing the LIDs sorted by GID. */
+	private static final class Sorted extends GIDIndex {
+		private static final long serialVersionUID = 1L;
+		/** The LIDs, sorted by GID. */
+		private final Packed sorted;
+
+		private Sorted(final long[] LID2GID) {
+			super(LID2GID);
+			final int[] lids = keys(LID2GID);
+			IntArrays.quickSort(lids, (x, y) -> Long.compare(LID2GID[x], LID2GID[y]));
+			sorted = new Packed(lids);
+		}
+
+		private Sorted(final long[] LID2GID, final Packed sorted) {
+			super(LID2GID);
+			this.sorted = sorted;
+		}
+
+		private long gid(final int i) {
+			return LID2GID[sorted.get(i)];
+		}
+
+		@Override
+		public int get(final long gid) {
+			int low = 0, high = sorted.size - 1;
+			boolean interpolate = true;
+			while (low <= high) {
+				final long lowGID = gid(low), highGID = gid(high);
+				if (gid < lowGID || gid > highGID) return defRetValue;
+				// Alternate interpolation and bisection, so that skewed GIDs cost at most twice a binary search
+				final int mid = interpolate && highGID != lowGID ? low + (int)((double)(gid - lowGID) / (highGID - lowGID) * (high - low)) : (low + high) >>> 1;
+				interpolate = !interpolate;
+				final long midGID = gid(mid);
+				if (midGID < gid) low = mid + 1;
+				else if (midGID > gid) high = mid - 1;
+				else return sorted.get(mid);
+			}
+			return defRetValue;
+		}
+
+		@Override
+		public void write(final DataOutput output) throws IOException {
+			output.writeByte(SORTED);
+			sorted.write(output);
+		}
+	}
+
+	/** An index based on a minimal perfect hash function with a table from slots to LIDs. */
+	private static final class Hashed extends GIDIndex {
+		private static final long serialVersionUID = 1L;
+		/** The seed of the hash function. */
+		private final long seed;
+		/** The number of buckets. */
+		private final int numBuckets;
+		/** The number of slots of the table. */
+		private final int tableSize;
+		/** The pilot of each bucket. */
+		private final Packed pilots;
+		/** The LID associated with each slot of the table. */
+		private final Packed table;
+
+		private Hashed(final long[] LID2GID) {
+			super(LID2GID);
+			final int[] lids = keys(LID2GID);
+			final int n = lids.length;
+			numBuckets = (n + BUCKET_SIZE - 1) / BUCKET_SIZE;
+			tableSize = (int)Math.ceil(n / LOAD_FACTOR);
+			final int[] pilot = new int[numBuckets];
+			final int[] slot2LID = new int[tableSize];
+
+			long s = 0;
+			while (!place(HashCommon.murmurHash3(++s), lids, pilot, slot2LID));
+			seed = HashCommon.murmurHash3(s);
+
+			pilots = new Packed(pilot);
+			table = new Packed(slot2LID);
+		}
+
+		private Hashed(final long[] LID2GID, final long seed, final int numBuckets, final int tableSize, final Packed pilots, final Packed table) {
+			super(LID2GID);
+			this.seed = seed;
+			this.numBuckets = numBuckets;
+			this.tableSize = tableSize;
+			this.pilots = pilots;
+			this.table = table;
+		}
+
+		private static long hash(final long gid, final long seed) {
+			return HashCommon.murmurHash3(gid ^ seed);
+		}
+
+		private static int bucket(final long hash, final int numBuckets) {
+			return (int)((hash >>> 32) * numBuckets >>> 32);
+		}
+
+		private static int slot(final long hash, final int pilot, final int tableSize) {
+			return (int)Long.remainderUnsigned(HashCommon.murmurHash3(hash + pilot * 0x9E3779B97F4A7C15L), tableSize);
+		}
+
+		/**
+		 * Tries to find pilots placing all keys in distinct slots, processing buckets by decreasing size.
+		 *
+		 * @return false if some bucket could not be placed (or contains duplicate hashes).
+		 */
+		private boolean place(final long seed, final int[] lids, final int[] pilot, final int[] slot2LID) {
+			final int n = LID2GID.length;
+			final long[] hash = new long[n];
+			final int[] bucketOf = new int[n];
+			final int[] bucketStart = new int[numBuckets + 1];
+			for (final int lid : lids) {
+				hash[lid] = hash(LID2GID[lid], seed);
+				bucketStart[(bucketOf[lid] = bucket(hash[lid], numBuckets)) + 1]++;
+			}
+			for (int b = 0; b < numBuckets; b++) bucketStart[b + 1] += bucketStart[b];
+			final int[] fill = Arrays.copyOf(bucketStart, numBuckets);
+			final int[] keys = new int[lids.length];
+			for (final int lid : lids) keys[fill[bucketOf[lid]]++] = lid;
+
+			final int[] buckets = new int[numBuckets];
+			for (int b = 0; b < numBuckets; b++) buckets[b] = b;
+			IntArrays.quickSort(buckets, (x, y) -> Integer.compare(bucketStart[y + 1] - bucketStart[y], bucketStart[x + 1] - bucketStart[x]));
+
+			final LongArrayBitVector taken = LongArrayBitVector.ofLength(tableSize);
+			final int[] slots = new int[n];
+			for (final int b : buckets) {
+				final int start = bucketStart[b], end = bucketStart[b + 1];
+				if (start == end) break;
+				int p;
+				search: for (p = 0; p < MAX_PILOT; p++) {
+					for (int i = start; i < end; i++) {
+						final int s = slot(hash[keys[i]], p, tableSize);
+						if (taken.getBoolean(s)) {
+							for (int j = start; j < i; j++) taken.clear(slots[j]);
+							continue search;
+						}
+						taken.set(s);
+						slots[i] = s;
+					}
+					break;
+				}
+				if (p == MAX_PILOT) return false;
+				pilot[b] = p;
+				for (int i = start; i < end; i++) slot2LID[slots[i]] = keys[i];
+			}
+			return true;
+		}
+
+		@Override
+		public int get(final long gid) {
+			final long hash = hash(gid, seed);
+			final int lid = table.get(slot(hash, pilots.get(bucket(hash, numBuckets)), tableSize));
+			return LID2GID[lid] == gid ? lid : defRetValue;
+		}
+
+		@Override
+		public void write(final DataOutput output) throws IOException {
+			output.writeByte(HASHED);
+			output.writeLong(seed);
+			output.writeInt(numBuckets);
+			output.writeInt(tableSize);
+			pilots.write(output);
+			table.write(output);
+		}
+	}
+}
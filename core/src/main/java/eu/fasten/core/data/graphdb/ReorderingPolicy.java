@@ -0,0 +1,325 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.fasten.core.data.graphdb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import eu.fasten.core.data.KnowledgeBase;
+import eu.fasten.core.index.DirectBVGraph;
+import eu.fasten.core.index.LayeredLabelPropagation;
+import it.unimi.dsi.Util;
+import it.unimi.dsi.webgraph.ArrayListMutableGraph;
+import it.unimi.dsi.webgraph.ImmutableGraph;
+import it.unimi.dsi.webgraph.Transform;
+
+/**
+ * A size-aware policy choosing how to renumber the nodes of a graph before compression.
+ *
+ * <p>
+ * A policy is a list of {@linkplain Strategy strategies}, each paired with a threshold: a graph is
+ * reordered by the first strategy whose threshold is larger than its number of nodes. In this way
+ * small graphs, for which {@linkplain #llp(double[], int) Layered Label Propagation} costs more than
+ * the space it saves, can be left {@linkplain #IDENTITY as they are} or reordered with a
+ * {@linkplain #BFS breadth-first visit}.
+ *
+ * <p>
+ * A policy keeps, for each strategy, the number of graphs, nodes and arcs it reordered, the time
+ * spent reordering, and the number of bits used by the compressed graphs. If
+ * {@linkplain #measureGain(boolean) gain measurement} is enabled, the policy also compresses graphs
+ * in their original order, so that {@link #toString()} can report the bits per link gained by each
+ * strategy against the time it took. Instances are thread-safe.
+ */
+public class ReorderingPolicy {
+
+    /** The system property containing the {@linkplain #parse(String) specification} of the default policy. */
+    public static final String POLICY_PROPERTY = ReorderingPolicy.class.getName() + ".policy";
+
+    /** The specification of the default policy, used if {@link #POLICY_PROPERTY} is not set. */
+    public static final String DEFAULT_POLICY = "identity:16,bfs:4096,llp";
+
+    /** A strategy renumbering the nodes of a graph. */
+    public interface Strategy {
+        /**
+         * Returns the name of this strategy.
+         *
+         * @return the name of this strategy.
+         */
+        String name();
+
+        /**
+         * Computes a renumbering of the nodes of a graph that keeps internal nodes first.
+         *
+         * @param graph a graph.
+         * @param numInternal the number of internal nodes (the first ones of <code>graph</code>).
+         * @return a permutation mapping each node of <code>graph</code> to its new number, suitable
+         *         for {@link Transform#map(ImmutableGraph, int[])}.
+         */
+        int[] permutation(ImmutableGraph graph, int numInternal) throws IOException;
+    }
+
+    /** The strategy leaving nodes in their order. */
+    public static final Strategy IDENTITY = new Strategy() {
+        @Override
+        public String name() {
+            return "identity";
+        }
+
+        @Override
+        public int[] permutation(final ImmutableGraph graph, final int numInternal) {
+            return Util.identity(graph.numNodes());
+        }
+    };
+
+    /** The strategy renumbering nodes in the order of a breadth-first visit, as {@link KnowledgeBase} does. */
+    public static final Strategy BFS = new Strategy() {
+        @Override
+        public String name() {
+            return "bfs";
+        }
+
+        @Override
+        public int[] permutation(final ImmutableGraph graph, final int numInternal) {
+            return KnowledgeBase.bfsperm(graph, -1, numInternal);
+        }
+    };
+
+    /**
+     * Returns a strategy renumbering nodes using {@link LayeredLabelPropagation} on the symmetrized
+     * graph; internal nodes are then moved first, keeping their relative order.
+     *
+     * @param gammas the gammas used by Layered Label Propagation.
+     * @param threads the number of threads, or 0 for a number depending on the size of the graph.
+     * @return the strategy.
+     */
+    public static Strategy llp(final double[] gammas, final int threads) {
+        return new Strategy() {
+            @Override
+            public String name() {
+                return "llp";
+            }
+
+            @Override
+            public int[] permutation(final ImmutableGraph graph, final int numInternal) throws IOException {
+                final int numNodes = graph.numNodes();
+                final ImmutableGraph symGraph = new ArrayListMutableGraph(Transform.symmetrize(graph)).immutableView();
+                final int numberOfThreads = threads != 0 ? threads : Math.min(Runtime.getRuntime().availableProcessors(), 1 + numNodes / 100);
+                final LayeredLabelPropagation clustering = new LayeredLabelPropagation(symGraph, null, numberOfThreads, 0, false);
+                final int[] perm = clustering.computePermutation(gammas, null);
+
+                Util.invertPermutationInPlace(perm);
+                final int[] sorted = new int[numNodes];
+                int internal = 0, external = numInternal;
+                for (int j = 0; j < numNodes; j++) {
+                    if (perm[j] < numInternal) sorted[internal++] = perm[j];
+                    else sorted[external++] = perm[j];
+                }
+                Util.invertPermutationInPlace(sorted);
+                return sorted;
+            }
+        };
+    }
+
+    /** The strategies of this policy. */
+    private final Strategy[] strategies;
+    /** The thresholds of the strategies of this policy; the last one is {@link Integer#MAX_VALUE}. */
+    private final int[] thresholds;
+    /** Whether to compress graphs also in their original order. */
+    private volatile boolean measureGain;
+    /** For each strategy, graphs, nodes, arcs, nanoseconds, bits, measured graphs, measured arcs, measured bits and measured original bits. */
+    private final long[][] stats;
+
+    private static final int GRAPHS = 0, NODES = 1, ARCS = 2, NANOS = 3, BITS = 4, MEASURED_GRAPHS = 5, MEASURED_ARCS = 6, MEASURED_BITS = 7, ORIGINAL_BITS = 8;
+
+    /**
+     * Creates a policy.
+     *
+     * @param strategies the strategies.
+     * @param thresholds the thresholds of all strategies but the last one, in increasing order: the
+     *            strategy of index <var>i</var> is used for graphs with less than
+     *            <code>thresholds[i]</code> nodes (and at least <code>thresholds[i - 1]</code>).
+     */
+    public ReorderingPolicy(final Strategy[] strategies, final int[] thresholds) {
+        if (strategies.length == 0) throw new IllegalArgumentException("No strategies");
+        if (thresholds.length != strategies.length - 1) throw new IllegalArgumentException("There must be exactly one threshold less than strategies");
+        for (int i = 1; i < thresholds.length; i++) if (thresholds[i - 1] >= thresholds[i]) throw new IllegalArgumentException("Thresholds are not increasing: " + Arrays.toString(thresholds));
+        this.strategies = strategies.clone();
+        this.thresholds = Arrays.copyOf(thresholds, strategies.length);
+        this.thresholds[strategies.length - 1] = Integer.MAX_VALUE;
+        stats = new long[strategies.length][ORIGINAL_BITS + 1];
+    }
+
+    /**
+     * Parses a policy specification: a comma-separated list of strategy names (<code>identity</code>,
+     * <code>bfs</code> or <code>llp</code>), each but the last one followed by a colon and by its
+     * threshold, as in <code>identity:16,bfs:4096,llp</code>. The <code>llp</code> strategy uses the
+     * {@linkplain LayeredLabelPropagation#DEFAULT_GAMMAS default gammas}.
+     *
+     * @param spec a policy specification.
+     * @return the policy.
+     */
+    public static ReorderingPolicy parse(final String spec) {
+        final List<Strategy> strategies = new ArrayList<>();
+        final String[] parts = spec.split(",");
+        final int[] thresholds = new int[parts.length - 1];
+        for (int i = 0; i < parts.length; i++) {
+            final String[] strategyAndThreshold = parts[i].trim().split(":");
+            if (strategyAndThreshold.length != (i < parts.length - 1 ? 2 : 1)) throw new IllegalArgumentException("Malformed policy specification: " + spec);
+            switch (strategyAndThreshold[0].trim().toLowerCase(Locale.ROOT)) {
+            case "identity":
+                strategies.add(IDENTITY);
+                break;
+            case "bfs":
+                strategies.add(BFS);
+                break;
+            case "llp":
+                strategies.add(llp(LayeredLabelPropagation.DEFAULT_GAMMAS, 0));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown strategy: " + strategyAndThreshold[0]);
+            }
+            if (i < parts.length - 1) thresholds[i] = Integer.parseInt(strategyAndThreshold[1].trim());
+        }
+        return new ReorderingPolicy(strategies.toArray(new Strategy[0]), thresholds);
+    }
+
+    /**
+     * Returns a new default policy, specified by the system property {@link #POLICY_PROPERTY}, or by
+     * {@link #DEFAULT_POLICY} if the property is not set.
+     *
+     * @return a new default policy.
+     */
+    public static ReorderingPolicy defaultPolicy() {
+        return parse(System.getProperty(POLICY_PROPERTY, DEFAULT_POLICY));
+    }
+
+    /**
+     * Sets whether to compress graphs also in their original order, so to measure the gain of
+     * reordering.
+     *
+     * @param measureGain whether to measure the gain of reordering.
+     * @return this policy.
+     */
+    public ReorderingPolicy measureGain(final boolean measureGain) {
+        this.measureGain = measureGain;
+        return this;
+    }
+
+    private int strategyIndex(final int numNodes) {
+        int i = 0;
+        while (i < thresholds.length - 1 && numNodes >= thresholds[i]) i++;
+        return i;
+    }
+
+    /**
+     * Returns the strategy used for graphs with a given number of nodes.
+     *
+     * @param numNodes a number of nodes.
+     * @return the strategy used for graphs with <code>numNodes</code> nodes.
+     */
+    public Strategy strategy(final int numNodes) {
+        return strategies[strategyIndex(numNodes)];
+    }
+
+    /**
+     * Computes a renumbering of the nodes of a graph using the strategy associated with its number
+     * of nodes, and records the time spent.
+     *
+     * @param graph a graph.
+     * @param numInternal the number of internal nodes (the first ones of <code>graph</code>).
+     * @return a permutation mapping each node of <code>graph</code> to its new number.
+     */
+    public int[] permutation(final ImmutableGraph graph, final int numInternal) throws IOException {
+        final int i = strategyIndex(graph.numNodes());
+        final long start = System.nanoTime();
+        final int[] perm = strategies[i].permutation(graph, numInternal);
+        final long elapsed = System.nanoTime() - start;
+        synchronized (stats) {
+            stats[i][GRAPHS]++;
+            stats[i][NODES] += graph.numNodes();
+            stats[i][NANOS] += elapsed;
+        }
+        return perm;
+    }
+
+    /**
+     * Records the outcome of the compression of a graph reordered by {@link #permutation(ImmutableGraph, int)}.
+     * If {@linkplain #measureGain(boolean) gain measurement} is enabled, the original graph is
+     * compressed, too.
+     *
+     * @param graph the original graph.
+     * @param compressedProperties the properties of the compressed reordered graph.
+     */
+    public void record(final ImmutableGraph graph, final Properties compressedProperties) throws IOException {
+        final int i = strategyIndex(graph.numNodes());
+        final long arcs = Long.parseLong(compressedProperties.getProperty("arcs"));
+        final long bits = bits(compressedProperties);
+        long originalBits = -1;
+        if (measureGain) {
+            final Properties originalProperties = new Properties();
+            DirectBVGraph.compress(graph, originalProperties);
+            originalBits = bits(originalProperties);
+        }
+        synchronized (stats) {
+            stats[i][ARCS] += arcs;
+            stats[i][BITS] += bits;
+            if (originalBits != -1) {
+                stats[i][MEASURED_GRAPHS]++;
+                stats[i][MEASURED_ARCS] += arcs;
+                stats[i][MEASURED_BITS] += bits;
+                stats[i][ORIGINAL_BITS] += originalBits;
+            }
+        }
+    }
+
+    /** Returns the exact number of bits of a compressed graph, summing the bits of each component. */
+    private static long bits(final Properties properties) {
+        long bits = 0;
+        for (final String key : new String[] { "bitsforoutdegrees", "bitsforreferences", "bitsforblocks", "bitsforintervals", "bitsforresiduals" }) bits += Long.parseLong(properties.getProperty(key));
+        return bits;
+    }
+
+    /**
+     * Returns, for each strategy, the number of graphs, nodes and arcs, the time spent reordering,
+     * the bits per link and, if measured, the bits per link gained.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder s = new StringBuilder();
+        synchronized (stats) {
+            for (int i = 0; i < strategies.length; i++) {
+                final long[] t = stats[i];
+                if (i != 0) s.append("; ");
+                s.append(strategies[i].name());
+                if (thresholds[i] != Integer.MAX_VALUE) s.append(" (<").append(thresholds[i]).append(" nodes)");
+                s.append(": ").append(t[GRAPHS]).append(" graphs, ").append(t[NODES]).append(" nodes, ").append(t[ARCS]).append(" arcs, ");
+                s.append(Util.format(t[NANOS] / 1E6)).append(" ms, ");
+                s.append(Util.format(t[ARCS] == 0 ? 0 : (double)t[BITS] / t[ARCS])).append(" bits/link");
+                if (t[MEASURED_GRAPHS] != 0) {
+                    s.append(", ").append(Util.format(t[MEASURED_ARCS] == 0 ? 0 : (double)(t[ORIGINAL_BITS] - t[MEASURED_BITS]) / t[MEASURED_ARCS])).append(" bits/link gained");
+                }
+            }
+        }
+        return s.toString();
+    }
+}
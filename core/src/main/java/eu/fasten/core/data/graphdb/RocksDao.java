@@ -19,21 +19,34 @@
 package eu.fasten.core.data.graphdb;
 
 import java.io.Closeable;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Properties;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.rocksdb.ColumnFamilyDescriptor;
 import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.ColumnFamilyOptions;
-import org.rocksdb.DBOptions;
+import org.rocksdb.CompressionType;
+import org.rocksdb.IngestExternalFileOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,19 +57,25 @@ import com.esotericsoftware.kryo.serializers.FieldSerializer;
 import com.esotericsoftware.kryo.serializers.JavaSerializer;
 import com.google.common.primitives.Longs;
 
+import eu.fasten.core.data.Condensation;
 import eu.fasten.core.data.GOV3LongFunction;
 import eu.fasten.core.data.KnowledgeBase;
+import eu.fasten.core.data.StorageProfile;
 import eu.fasten.core.index.BVGraphSerializer;
-import eu.fasten.core.index.LayeredLabelPropagation;
-import it.unimi.dsi.Util;
+import eu.fasten.core.index.DirectBVGraph;
 import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+import it.unimi.dsi.fastutil.longs.AbstractLong2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongCollection;
 import it.unimi.dsi.fastutil.longs.LongIterators;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
 import it.unimi.dsi.io.InputBitStream;
 import it.unimi.dsi.io.NullInputStream;
 import it.unimi.dsi.lang.MutableString;
+import it.unimi.dsi.logging.ProgressLogger;
 import it.unimi.dsi.sux4j.util.EliasFanoMonotoneLongBigList;
 import it.unimi.dsi.webgraph.ArrayListMutableGraph;
 import it.unimi.dsi.webgraph.BVGraph;
@@ -65,33 +84,99 @@ import it.unimi.dsi.webgraph.Transform;
 
 public class RocksDao implements Closeable {
 
+    /**
+     * A magic number marking the beginning of database entries whose GID-to-LID map is a
+     * {@link GIDIndex} (entries starting with {@link DirectBVGraph#MAGIC} contain a
+     * {@link GOV3LongFunction} serialized with {@link JavaSerializer}).
+     */
+    public static final long MAGIC = 0xFA57E4D1BEC7B0A2L;
+
+    /** The column family containing call graphs and their properties. */
+    public static final byte[] GRAPH = "GRAPH".getBytes();
+    /** The column family containing transposed call graphs and their properties. */
+    public static final byte[] TRANSPOSE = "TRANSPOSE".getBytes();
+    /** The column family containing LID/GID maps and condensations. */
+    public static final byte[] MAPS = "MAPS".getBytes();
+
+    /**
+     * The stamp of the parts of single-blob entries written by previous versions, which is preserved
+     * by {@link #migrate(ProgressLogger)}; every other save stamps its parts with a random nonzero value.
+     */
+    private static final long LEGACY_STAMP = 0;
+
+    /** The number of graphs fetched by a single multi-get in {@link #getGraphData(LongCollection)}. */
+    private static final int MULTIGET_BATCH_SIZE = 256;
+
     private final RocksDB rocksDb;
+    /** Handle of the default column family, which contains single-blob entries written by previous versions. */
     private final ColumnFamilyHandle defaultHandle;
-    private Kryo kryo;
+    private final ColumnFamilyHandle graphHandle;
+    private final ColumnFamilyHandle transposeHandle;
+    private final ColumnFamilyHandle mapsHandle;
+    /** The options of the {@link #GRAPH}, {@link #TRANSPOSE} and {@link #MAPS} column families. */
+    private final ColumnFamilyOptions graphOptions, transposeOptions, mapsOptions;
+    /** The native resources (options, block cache) of the storage profile, closed with the database. */
+    private final StorageProfile.Resources resources;
+    private final ThreadLocal<Kryo> kryo = ThreadLocal.withInitial(RocksDao::createKryo);
+    private volatile ReorderingPolicy reorderingPolicy = ReorderingPolicy.defaultPolicy();
+    /**
+     * The pool fetching and decoding graphs for {@link #getGraphData(LongCollection)}, created on first
+     * use; it is separate from the common pool, which may contain the threads consuming the results.
+     */
+    private ExecutorService multiGetExecutor;
     private final Logger logger = LoggerFactory.getLogger(RocksDao.class.getName());
 
     /**
-     * Constructor of RocksDao (Database Access Object).
+     * Constructor of RocksDao (Database Access Object) using the
+     * {@linkplain StorageProfile#defaultProfile() default storage profile}.
      *
      * @param dbDir Directory where RocksDB data will be stored
      * @throws RocksDBException if there is an error loading or opening RocksDB instance
      */
     public RocksDao(final String dbDir) throws RocksDBException {
+        this(dbDir, StorageProfile.defaultProfile());
+    }
+
+    /**
+     * Constructor of RocksDao (Database Access Object).
+     *
+     * @param dbDir   Directory where RocksDB data will be stored
+     * @param profile Storage profile used to tune RocksDB; all column families share its block cache
+     * @throws RocksDBException if there is an error loading or opening RocksDB instance
+     */
+    public RocksDao(final String dbDir, final StorageProfile profile) throws RocksDBException {
         RocksDB.loadLibrary();
-        final ColumnFamilyOptions cfOptions = new ColumnFamilyOptions();
-        final DBOptions dbOptions = new DBOptions()
-                .setCreateIfMissing(true)
-                .setCreateMissingColumnFamilies(true);
-        final List<ColumnFamilyDescriptor> cfDescriptors = Collections.singletonList(
-                new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, cfOptions));
+        this.resources = profile.resources();
+        // Graphs are already compressed, so RocksDB compression would just waste time on them
+        this.graphOptions = resources.columnFamilyOptions(CompressionType.NO_COMPRESSION);
+        this.transposeOptions = resources.columnFamilyOptions(CompressionType.NO_COMPRESSION);
+        this.mapsOptions = resources.columnFamilyOptions(CompressionType.LZ4_COMPRESSION);
+        final List<ColumnFamilyDescriptor> cfDescriptors = Arrays.asList(
+                new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, resources.columnFamilyOptions(CompressionType.NO_COMPRESSION)),
+                new ColumnFamilyDescriptor(GRAPH, graphOptions),
+                new ColumnFamilyDescriptor(TRANSPOSE, transposeOptions),
+                new ColumnFamilyDescriptor(MAPS, mapsOptions));
         final List<ColumnFamilyHandle> columnFamilyHandles = new ArrayList<>();
-        this.rocksDb = RocksDB.open(dbOptions, dbDir, cfDescriptors, columnFamilyHandles);
+        try {
+            this.rocksDb = RocksDB.open(resources.dbOptions(), dbDir, cfDescriptors, columnFamilyHandles);
+        } catch (final RocksDBException e) {
+            resources.close();
+            throw e;
+        }
         this.defaultHandle = columnFamilyHandles.get(0);
-        initKryo();
+        this.graphHandle = columnFamilyHandles.get(1);
+        this.transposeHandle = columnFamilyHandles.get(2);
+        this.mapsHandle = columnFamilyHandles.get(3);
+        logger.info("Opened graph database in " + dbDir + " with storage profile " + profile);
     }
 
-    private void initKryo() {
-        kryo = new Kryo();
+    /**
+     * Creates a {@link Kryo} instance with the registrations used by single-blob entries.
+     *
+     * @return a new {@link Kryo} instance
+     */
+    static Kryo createKryo() {
+        final Kryo kryo = new Kryo();
         kryo.register(BVGraph.class, new BVGraphSerializer(kryo));
 		kryo.register(Boolean.class);
         kryo.register(byte[].class);
@@ -101,8 +186,28 @@ public class RocksDao implements Closeable {
         kryo.register(MutableString.class, new FieldSerializer<>(kryo, MutableString.class));
         kryo.register(Properties.class);
         kryo.register(long[].class);
+        kryo.register(int[].class);
         kryo.register(Long2IntOpenHashMap.class);
 		kryo.register(GOV3LongFunction.class, new JavaSerializer());
+        return kryo;
+    }
+
+    /**
+     * Returns the policy used to reorder graphs before compression.
+     *
+     * @return the reordering policy
+     */
+    public ReorderingPolicy getReorderingPolicy() {
+        return reorderingPolicy;
+    }
+
+    /**
+     * Sets the policy used to reorder graphs before compression.
+     *
+     * @param reorderingPolicy the reordering policy
+     */
+    public void setReorderingPolicy(final ReorderingPolicy reorderingPolicy) {
+        this.reorderingPolicy = reorderingPolicy;
     }
 
     /**
@@ -115,8 +220,83 @@ public class RocksDao implements Closeable {
      * @throws IOException      if there was a problem writing to files
      * @throws RocksDBException if there was a problem inserting in the database
      */
-    public void saveToRocksDb(final long index, List<Long> nodes, final int numInternal, final List<List<Long>> edges)
+    public void saveToRocksDb(final long index, final List<Long> nodes, final int numInternal, final List<List<Long>> edges)
             throws IOException, RocksDBException {
+        final byte[][] values = encode(nodes, numInternal, edges);
+        final byte[] key = Longs.toByteArray(index);
+        try (final WriteBatch batch = new WriteBatch(); final WriteOptions writeOptions = new WriteOptions()) {
+            batch.put(graphHandle, key, values[0]);
+            batch.put(transposeHandle, key, values[1]);
+            batch.put(mapsHandle, key, values[2]);
+            // Supersede any entry written by previous versions
+            batch.delete(defaultHandle, key);
+            rocksDb.write(writeOptions, batch);
+        }
+    }
+
+    /**
+     * Returns a loader that inserts graphs into this database by writing SST files and ingesting
+     * them, rather than one write at a time. Graphs added to the loader are not visible until
+     * {@link BulkLoader#finish()} has been called.
+     *
+     * @param tmpDir  a directory where temporary files will be created, or {@code null} for the
+     *                system temporary directory
+     * @param threads the number of threads used to compress graphs and to write SST files
+     * @return a bulk loader for this database
+     * @throws IOException if the temporary files could not be created
+     */
+    public BulkLoader bulkLoader(final File tmpDir, final int threads) throws IOException {
+        return new BulkLoader(this, tmpDir, threads);
+    }
+
+    /**
+     * Returns the options of the {@link #GRAPH}, {@link #TRANSPOSE} and {@link #MAPS} column families,
+     * in this order.
+     */
+    ColumnFamilyOptions[] familyOptions() {
+        return new ColumnFamilyOptions[] {graphOptions, transposeOptions, mapsOptions};
+    }
+
+    /**
+     * Ingests SST files into the {@link #GRAPH}, {@link #TRANSPOSE} and {@link #MAPS} column families,
+     * and deletes the entries of the default column family with the same keys.
+     *
+     * @param files the SST files of the {@link #GRAPH}, {@link #TRANSPOSE} and {@link #MAPS} column
+     *              families, in this order; they are moved into the database
+     * @param keys  the revision indices contained in the files
+     * @throws RocksDBException if there was a problem ingesting the files
+     */
+    void ingest(final List<List<String>> files, final long[] keys) throws RocksDBException {
+        final ColumnFamilyHandle[] handles = {graphHandle, transposeHandle, mapsHandle};
+        try (final IngestExternalFileOptions ingestOptions = new IngestExternalFileOptions().setMoveFiles(true)) {
+            for (int f = 0; f < handles.length; f++) rocksDb.ingestExternalFile(handles[f], files.get(f), ingestOptions);
+        }
+        // Supersede any entry written by previous versions, so that migrate() does not resurrect it
+        try (final RocksIterator iterator = rocksDb.newIterator(defaultHandle)) {
+            iterator.seekToFirst();
+            if (!iterator.isValid()) return;
+        }
+        try (final WriteOptions writeOptions = new WriteOptions()) {
+            for (int i = 0; i < keys.length;) {
+                try (final WriteBatch batch = new WriteBatch()) {
+                    for (final int end = Math.min(keys.length, i + 1000); i < end; i++) batch.delete(defaultHandle, Longs.toByteArray(keys[i]));
+                    rocksDb.write(writeOptions, batch);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compresses a graph and encodes the values to be stored in the {@link #GRAPH}, {@link #TRANSPOSE}
+     * and {@link #MAPS} column families. This method is thread-safe.
+     *
+     * @param nodes       List of GID nodes (first internal nodes, then external nodes)
+     * @param numInternal Number of internal nodes in nodes list
+     * @param edges       List of edges (pairs of GIDs)
+     * @return the values of the graph, of the transpose and of the maps
+     * @throws IOException if there was a problem compressing the graph
+     */
+    byte[][] encode(List<Long> nodes, final int numInternal, final List<List<Long>> edges) throws IOException {
         final var nodesSet = new LongOpenHashSet(nodes);
         nodes = nodesSet.parallelStream().collect(Collectors.toList());
         final var edgeNodesSet = new LongOpenHashSet();
@@ -153,101 +333,378 @@ public class RocksDao implements Closeable {
                 logger.error("Duplicate arc (" + sourceId + " -> " + targetId + ")", e);
             }
         }
-        final var file = File.createTempFile(KnowledgeBase.class.getSimpleName(), ".tmpgraph");
         final var graphProperties = new Properties();
         final var transposeProperties = new Properties();
-        FileInputStream propertyFile;
-        // Compress, load and serialize graph
+        // Compress graph and transpose in memory
 
 		final ImmutableGraph unpermutedGraph = mutableGraph.immutableView();
-		final int numNodes = unpermutedGraph.numNodes();
-		final ImmutableGraph symGraph = new ArrayListMutableGraph(Transform.symmetrize(unpermutedGraph)).immutableView();
-		final LayeredLabelPropagation clustering = new LayeredLabelPropagation(symGraph, null, Math.min(Runtime.getRuntime().availableProcessors(), 1 + numNodes / 100), 0, false);
-		final int[] perm = clustering.computePermutation(LayeredLabelPropagation.DEFAULT_GAMMAS, null);
-
-		Util.invertPermutationInPlace(perm);
-		final int[] sorted = new int[numNodes];
-		int internal = 0, external = numInternal;
-		for (int j = 0; j < numNodes; j++) {
-			if (perm[j] < numInternal) sorted[internal++] = perm[j];
-			else sorted[external++] = perm[j];
-		}
-		Util.invertPermutationInPlace(sorted);
+		final int[] sorted = reorderingPolicy.permutation(unpermutedGraph, numInternal);
 
 		final ImmutableGraph graph = Transform.map(unpermutedGraph, sorted);
-        BVGraph.store(graph, file.toString());
-        propertyFile = new FileInputStream(file + BVGraph.PROPERTIES_EXTENSION);
-        graphProperties.load(propertyFile);
-        propertyFile.close();
-        final FastByteArrayOutputStream fbaos = new FastByteArrayOutputStream();
-        final ByteBufferOutput bbo = new ByteBufferOutput(fbaos);
-        kryo.writeObject(bbo, Boolean.TRUE);
-        kryo.writeObject(bbo, BVGraph.load(file.toString()));
+        final BVGraph compressedGraph = DirectBVGraph.compress(graph, graphProperties);
+        reorderingPolicy.record(unpermutedGraph, graphProperties);
         // Compute LIDs according to the current node renumbering based on BFS
         final long[] LID2GID = new long[temporary2GID.length];
         for (int x = 0; x < temporary2GID.length; x++) {
 			LID2GID[sorted[x]] = temporary2GID[x];
         }
 
-		final GOV3LongFunction GID2LID = new GOV3LongFunction.Builder().keys(LongArrayList.wrap(LID2GID)).build();
-        // Compress, load and serialize transpose graph
-        BVGraph.store(Transform.transpose(graph), file.toString());
-        propertyFile = new FileInputStream(file + BVGraph.PROPERTIES_EXTENSION);
-        transposeProperties.load(propertyFile);
-        propertyFile.close();
-        kryo.writeObject(bbo, BVGraph.load(file.toString()));
-        kryo.writeObject(bbo, numInternal);
-        // Write out properties
-        kryo.writeObject(bbo, graphProperties);
-        kryo.writeObject(bbo, transposeProperties);
-        // Write out maps
-        kryo.writeObject(bbo, LID2GID);
-        kryo.writeObject(bbo, GID2LID);
+		final GIDIndex GID2LID = GIDIndex.build(LID2GID);
+        final BVGraph compressedTranspose = DirectBVGraph.compress(Transform.transpose(graph), transposeProperties);
+        long stamp;
+        while ((stamp = ThreadLocalRandom.current().nextLong()) == LEGACY_STAMP);
+        return new byte[][] {
+                graphValue(compressedGraph, graphProperties, stamp),
+                graphValue(compressedTranspose, transposeProperties, stamp),
+                mapsValue(numInternal, LID2GID, GID2LID, Condensation.compute(graph), stamp)
+        };
+    }
+
+    /**
+     * Encodes the stamp of a save, a graph and its properties, using a layout that can be used in place.
+     */
+    private byte[] graphValue(final BVGraph graph, final Properties properties, final long stamp) throws IOException {
+        final FastByteArrayOutputStream fbaos = new FastByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(fbaos);
+        dos.writeLong(stamp);
+        DirectBVGraph.write(graph, dos);
+        dos.flush();
+        final ByteBufferOutput bbo = new ByteBufferOutput(fbaos);
+        kryo.get().writeObject(bbo, properties);
         bbo.flush();
-        // Write to DB
-        rocksDb.put(defaultHandle, Longs.toByteArray(index), 0, 8, fbaos.array, 0, fbaos.length);
-        new File(file.toString() + BVGraph.PROPERTIES_EXTENSION).delete();
-        new File(file.toString() + BVGraph.OFFSETS_EXTENSION).delete();
-        new File(file.toString() + BVGraph.GRAPH_EXTENSION).delete();
-        file.delete();
+        return Arrays.copyOf(fbaos.array, fbaos.length);
+    }
+
+    /**
+     * Encodes the stamp of a save, the number of internal nodes, the LID/GID maps and the condensation of a graph.
+     */
+    private byte[] mapsValue(final int numInternal, final long[] LID2GID, final GIDIndex GID2LID, final Condensation condensation,
+            final long stamp) throws IOException {
+        final FastByteArrayOutputStream fbaos = new FastByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(fbaos);
+        dos.writeLong(stamp);
+        dos.writeInt(numInternal);
+        dos.writeInt(LID2GID.length);
+        for (final long gid : LID2GID) dos.writeLong(gid);
+        GID2LID.write(dos);
+        dos.flush();
+        final ByteBufferOutput bbo = new ByteBufferOutput(fbaos);
+        condensation.write(kryo.get(), bbo);
+        bbo.flush();
+        return Arrays.copyOf(fbaos.array, fbaos.length);
     }
 
     /**
      * Retrieves graph data from RocksDB database.
      *
+     * <p>The graph, its transpose and the LID/GID maps are read from the database independently,
+     * the first time they are needed. Graphs stored by previous versions in a single entry of the
+     * default column family are read (in full) in their place. Accessing the data of a graph
+     * that is not in the database throws an {@link IllegalArgumentException}; accessing a part
+     * of a graph that has been saved again after another part was loaded throws an
+     * {@link IllegalStateException}, as the LIDs of the two parts are not compatible.
+     *
      * @param index Index of the graph
      * @return CallGraphData stored in the database
-     * @throws RocksDBException if there was problem retrieving data from RocksDB
-     */
-	public CallGraphData getGraphData(final long index)
-            throws RocksDBException {
-        final byte[] buffer = rocksDb.get(Longs.toByteArray(index));
-        final Input input = new Input(buffer);
-        assert kryo != null;
-		final boolean compressed = kryo.readObject(input, Boolean.class).booleanValue();
-
-        final var graphs = new ImmutableGraph[]{
-                kryo.readObject(input, BVGraph.class),
-                kryo.readObject(input, BVGraph.class)
-        };
-        final int numInternal = kryo.readObject(input, int.class);
-        final Properties[] properties = new Properties[]{
-                kryo.readObject(input, Properties.class),
-                kryo.readObject(input, Properties.class)
+     */
+    public CallGraphData getGraphData(final long index) {
+        final byte[] key = Longs.toByteArray(index);
+        final CallGraphData.Lazy<CallGraphData> legacy = new CallGraphData.Lazy<>(() -> {
+            final byte[] buffer = get(defaultHandle, key);
+            if (buffer == null) throw new IllegalArgumentException("No graph with index " + index);
+            return readLegacy(buffer);
+        });
+        final StampCheck stampCheck = new StampCheck(index);
+        return new CallGraphData(() -> {
+            final byte[] buffer = get(graphHandle, key);
+            return stampCheck.check(buffer != null ? readGraph(buffer) : legacy.get().graphPart());
+        }, () -> {
+            final byte[] buffer = get(transposeHandle, key);
+            return stampCheck.check(buffer != null ? readGraph(buffer) : legacy.get().transposePart());
+        }, () -> {
+            final byte[] buffer = get(mapsHandle, key);
+            return stampCheck.check(buffer != null ? readMaps(buffer) : legacy.get().mapsPart());
+        });
+    }
+
+    /** Checks that the parts of a graph loaded independently come from the same save. */
+    private static final class StampCheck {
+        private final long index;
+        private boolean loaded;
+        private long stamp;
+
+        private StampCheck(final long index) {
+            this.index = index;
+        }
+
+        private synchronized void check(final long stamp) {
+            if (!loaded) {
+                this.stamp = stamp;
+                loaded = true;
+            } else if (this.stamp != stamp) throw new IllegalStateException("The graph with index " + index + " has been saved again while being loaded");
+        }
+
+        CallGraphData.Graph check(final CallGraphData.Graph graph) {
+            check(graph.stamp);
+            return graph;
+        }
+
+        CallGraphData.Maps check(final CallGraphData.Maps maps) {
+            check(maps.stamp);
+            return maps;
+        }
+    }
+
+    /**
+     * Retrieves the call graphs with the given indices, fetching their entries with batched
+     * multi-gets and decoding them in parallel in a pool of threads owned by this object.
+     *
+     * <p>The returned iterator yields the graphs as soon as they are decoded, and thus not necessarily
+     * in the order of {@code indices}; it blocks while no graph is available. Indices with no graph in
+     * the database are skipped. Unlike {@link #getGraphData(long)}, all parts of the graphs are
+     * loaded.
+     *
+     * @param indices the indices of the graphs (IDs from postgres)
+     * @return an iterator over pairs given by an index and the corresponding call graph
+     */
+    public ObjectIterator<Long2ObjectMap.Entry<CallGraphData>> getGraphData(final LongCollection indices) {
+        final long[] keys = indices.toLongArray();
+        final CompletionService<Long2ObjectMap.Entry<CallGraphData>> completionService = new ExecutorCompletionService<>(multiGetExecutor());
+        final int batches = (keys.length + MULTIGET_BATCH_SIZE - 1) / MULTIGET_BATCH_SIZE;
+        for (int b = 0; b < batches; b++) {
+            final int from = b * MULTIGET_BATCH_SIZE, to = Math.min(keys.length, from + MULTIGET_BATCH_SIZE);
+            completionService.submit(() -> {
+                fetch(keys, from, to, completionService);
+                return null;
+            });
+        }
+
+        return new ObjectIterator<>() {
+            /** The number of tasks whose result has not been taken yet: one per batch and one per index. */
+            private int pending = batches + keys.length;
+            private Long2ObjectMap.Entry<CallGraphData> next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && pending > 0) {
+                    pending--;
+                    try {
+                        next = completionService.take().get();
+                    } catch (final InterruptedException e) {
+                        pending = 0;
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException(e);
+                    } catch (final ExecutionException e) {
+                        pending = 0;
+                        if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+                        throw new RuntimeException(e.getCause());
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Long2ObjectMap.Entry<CallGraphData> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                final Long2ObjectMap.Entry<CallGraphData> result = next;
+                next = null;
+                return result;
+            }
         };
-        final long[] LID2GID = kryo.readObject(input, long[].class);
-		final GOV3LongFunction GID2LID = kryo.readObject(input, GOV3LongFunction.class);
+    }
+
+    private synchronized ExecutorService multiGetExecutor() {
+        if (multiGetExecutor == null) multiGetExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        return multiGetExecutor;
+    }
+
+    /**
+     * Fetches with a single multi-get the entries of the graphs with the given range of indices, and
+     * submits their decoding.
+     */
+    private void fetch(final long[] indices, final int from, final int to, final CompletionService<Long2ObjectMap.Entry<CallGraphData>> completionService) throws RocksDBException {
+        final List<ColumnFamilyHandle> handles = new ArrayList<>(3 * (to - from));
+        final List<byte[]> keys = new ArrayList<>(3 * (to - from));
+        for (int i = from; i < to; i++) {
+            final byte[] key = Longs.toByteArray(indices[i]);
+            for (final ColumnFamilyHandle handle : new ColumnFamilyHandle[] {graphHandle, transposeHandle, mapsHandle}) {
+                handles.add(handle);
+                keys.add(key);
+            }
+        }
+        final List<byte[]> values = rocksDb.multiGetAsList(handles, keys);
+        for (int i = from; i < to; i++) {
+            final long index = indices[i];
+            final int j = 3 * (i - from);
+            final byte[] graph = values.get(j), transpose = values.get(j + 1), maps = values.get(j + 2);
+            completionService.submit(() -> decode(index, graph, transpose, maps));
+        }
+    }
+
+    /**
+     * Decodes the entries of a graph, falling back to the entry written by previous versions for
+     * missing parts; returns {@code null} if there is no graph with the given index.
+     */
+    private Long2ObjectMap.Entry<CallGraphData> decode(final long index, final byte[] graph, final byte[] transpose, final byte[] maps) {
+        CallGraphData legacy = null;
+        if (graph == null || transpose == null || maps == null) {
+            final byte[] buffer = get(defaultHandle, Longs.toByteArray(index));
+            if (buffer == null) {
+                if (graph == null && transpose == null && maps == null) return null;
+                throw new IllegalStateException("Incomplete graph with index " + index);
+            }
+            legacy = readLegacy(buffer);
+        }
+        final StampCheck stampCheck = new StampCheck(index);
+        return new AbstractLong2ObjectMap.BasicEntry<>(index, new CallGraphData(
+                stampCheck.check(graph != null ? readGraph(graph) : legacy.graphPart()),
+                stampCheck.check(transpose != null ? readGraph(transpose) : legacy.transposePart()),
+                stampCheck.check(maps != null ? readMaps(maps) : legacy.mapsPart())));
+    }
+
+    private byte[] get(final ColumnFamilyHandle handle, final byte[] key) {
+        try {
+            return rocksDb.get(handle, key);
+        } catch (final RocksDBException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private CallGraphData.Graph readGraph(final byte[] buffer) {
+        // The graph is backed directly by the buffer
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        final long stamp = byteBuffer.getLong();
+        final ImmutableGraph graph = DirectBVGraph.read(byteBuffer);
+        final Input input = new Input(buffer, byteBuffer.position(), buffer.length - byteBuffer.position());
+        return new CallGraphData.Graph(graph, kryo.get().readObject(input, Properties.class), buffer.length, stamp);
+    }
+
+    private CallGraphData.Maps readMaps(final byte[] buffer) {
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        final long stamp = byteBuffer.getLong();
+        final int numInternal = byteBuffer.getInt();
+        final long[] LID2GID = new long[byteBuffer.getInt()];
+        byteBuffer.asLongBuffer().get(LID2GID);
+        byteBuffer.position(byteBuffer.position() + LID2GID.length * Long.BYTES);
+        final GIDIndex GID2LID = GIDIndex.read(byteBuffer, LID2GID);
+        final Input input = new Input(buffer, byteBuffer.position(), buffer.length - byteBuffer.position());
+        return new CallGraphData.Maps(numInternal, LID2GID, GID2LID, Condensation.read(kryo.get(), input), buffer.length, stamp);
+    }
+
+    /**
+     * Decodes a single-blob entry written by previous versions.
+     *
+     * @param buffer the entry
+     * @return the decoded graph data
+     */
+    private CallGraphData readLegacy(final byte[] buffer) {
+        final Kryo kryo = this.kryo.get();
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        final ImmutableGraph[] graphs;
+        final int numInternal;
+        final Properties[] properties;
+        final long[] LID2GID;
+        final Input input;
+        final long magic = buffer.length >= Long.BYTES ? byteBuffer.getLong(0) : 0;
+        GIDIndex GID2LID = null;
+        if (magic == MAGIC || magic == DirectBVGraph.MAGIC) {
+            // The graphs are backed directly by the buffer
+            byteBuffer.position(Long.BYTES);
+            graphs = new ImmutableGraph[]{
+                    DirectBVGraph.read(byteBuffer),
+                    DirectBVGraph.read(byteBuffer)
+            };
+            numInternal = byteBuffer.getInt();
+            LID2GID = new long[byteBuffer.getInt()];
+            byteBuffer.asLongBuffer().get(LID2GID);
+            byteBuffer.position(byteBuffer.position() + LID2GID.length * Long.BYTES);
+            if (magic == MAGIC) GID2LID = GIDIndex.read(byteBuffer, LID2GID);
+            input = new Input(buffer, byteBuffer.position(), buffer.length - byteBuffer.position());
+            properties = new Properties[]{
+                    kryo.readObject(input, Properties.class),
+                    kryo.readObject(input, Properties.class)
+            };
+        } else {
+            input = new Input(buffer);
+            kryo.readObject(input, Boolean.class);
+            graphs = new ImmutableGraph[]{
+                    kryo.readObject(input, BVGraph.class),
+                    kryo.readObject(input, BVGraph.class)
+            };
+            numInternal = kryo.readObject(input, int.class);
+            properties = new Properties[]{
+                    kryo.readObject(input, Properties.class),
+                    kryo.readObject(input, Properties.class)
+            };
+            LID2GID = kryo.readObject(input, long[].class);
+        }
+        // Entries written by previous versions contain a Java-serialized function
+        if (GID2LID == null) GID2LID = GIDIndex.wrap(kryo.readObject(input, GOV3LongFunction.class), LID2GID);
+		final Condensation condensation = Condensation.read(kryo, input);
 		return new CallGraphData(graphs[0], graphs[1], properties[0], properties[1],
-                LID2GID, GID2LID, numInternal, buffer.length);
+                LID2GID, GID2LID, condensation, numInternal, buffer.length);
+    }
+
+    /**
+     * Moves all single-blob entries written by previous versions in the default column family
+     * to the {@link #GRAPH}, {@link #TRANSPOSE} and {@link #MAPS} column families.
+     *
+     * @param pl a progress logger, or {@code null}
+     * @return the number of migrated entries
+     * @throws IOException      if there was a problem encoding an entry
+     * @throws RocksDBException if there was a problem accessing the database
+     */
+    public long migrate(final ProgressLogger pl) throws IOException, RocksDBException {
+        long migrated = 0;
+        if (pl != null) {
+            pl.itemsName = "graphs";
+            pl.start("Migrating graphs...");
+        }
+        try (final RocksIterator iterator = rocksDb.newIterator(defaultHandle)) {
+            for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+                final byte[] key = iterator.key();
+                final CallGraphData data = readLegacy(iterator.value());
+                final CallGraphData.Maps maps = data.mapsPart();
+                try (final WriteBatch batch = new WriteBatch(); final WriteOptions writeOptions = new WriteOptions()) {
+                    // Migrated parts keep the legacy stamp, as they are compatible with unmigrated ones
+                    batch.put(graphHandle, key, graphValue((BVGraph)data.rawGraph(), data.graphProperties(), LEGACY_STAMP));
+                    batch.put(transposeHandle, key, graphValue((BVGraph)data.rawTranspose(), data.transposeProperties(), LEGACY_STAMP));
+                    // Rebuilding the index also replaces GOV3 functions stored by older versions
+                    batch.put(mapsHandle, key, mapsValue(maps.nInternal, maps.LID2GID, GIDIndex.build(maps.LID2GID),
+                            maps.condensation != null ? maps.condensation : Condensation.compute(data.rawGraph()), LEGACY_STAMP));
+                    batch.delete(defaultHandle, key);
+                    rocksDb.write(writeOptions, batch);
+                }
+                migrated++;
+                if (pl != null) pl.lightUpdate();
+            }
+        }
+        if (pl != null) pl.done();
+        return migrated;
     }
 
     @Override
     public void close() {
-        if (defaultHandle != null) {
-            defaultHandle.close();
+        logger.info("Reordering: " + reorderingPolicy);
+        synchronized (this) {
+            if (multiGetExecutor != null) {
+                // Running fetches and decodings use the database, so they must end before it is closed
+                multiGetExecutor.shutdownNow();
+                try {
+                    multiGetExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        for (final ColumnFamilyHandle handle : new ColumnFamilyHandle[] {defaultHandle, graphHandle, transposeHandle, mapsHandle}) {
+            if (handle != null) {
+                handle.close();
+            }
         }
         if (rocksDb != null) {
             rocksDb.close();
         }
+        resources.close();
     }
 }
@@ -0,0 +1,104 @@
+package eu.fasten.core.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.rocksdb.RocksDBException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.martiansoftware.jsap.FlaggedOption;
+import com.martiansoftware.jsap.JSAP;
+import com.martiansoftware.jsap.JSAPException;
+import com.martiansoftware.jsap.JSAPResult;
+import com.martiansoftware.jsap.Parameter;
+import com.martiansoftware.jsap.SimpleJSAP;
+import com.martiansoftware.jsap.UnflaggedOption;
+
+import eu.fasten.core.data.StorageProfile;
+import eu.fasten.core.data.graphdb.BulkLoader;
+import eu.fasten.core.data.graphdb.GidGraph;
+import eu.fasten.core.data.graphdb.RocksDao;
+import it.unimi.dsi.logging.ProgressLogger;
+
+/**
+ * Builds a graph database offline from GID graphs, using a {@link BulkLoader}.
+ *
+ * <p>
+ * Each input file contains a sequence of JSON objects, which are either GID graphs or records in
+ * the format consumed by the graph-database plugin (i.e., with a <code>payload</code> member
+ * containing a GID graph, or the path of a file containing a GID graph in its <code>dir</code>
+ * member).
+ */
+public class BulkLoadGraphDB {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BulkLoadGraphDB.class);
+
+	private static GidGraph parse(JSONObject json) throws IOException {
+		if (json.has("payload")) json = json.getJSONObject("payload");
+		final String path = json.optString("dir");
+		if (path.isEmpty()) return GidGraph.getGraph(json);
+		try (final Reader reader = new FileReader(path)) {
+			return GidGraph.getGraph(new JSONObject(new JSONTokener(reader)));
+		}
+	}
+
+	public static void main(final String[] args) throws JSAPException, RocksDBException, IOException {
+		final SimpleJSAP jsap = new SimpleJSAP(BulkLoadGraphDB.class.getName(),
+				"Loads GID graphs into a graph database by writing and ingesting SST files.",
+				new Parameter[] {
+						new FlaggedOption("threads", JSAP.INTEGER_PARSER, Integer.toString(Runtime.getRuntime().availableProcessors()), JSAP.NOT_REQUIRED, 'T', "threads", "The number of threads used to compress graphs and to write SST files."),
+						new FlaggedOption("tmp", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, 't', "tmp", "A directory for temporary files, preferably on the same filesystem as the graph database (default: the system temporary directory)."),
+						new FlaggedOption("profile", JSAP.STRING_PARSER, "ingestion", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "profile", "The RocksDB storage profile (balanced, query or ingestion, optionally followed by a colon and overrides such as cache=4g)."),
+						new UnflaggedOption("graphdb", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The directory of the RocksDB instance containing the graph database." ),
+						new UnflaggedOption("file", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.GREEDY, "The files containing the GID graphs." ),
+		});
+
+		final JSAPResult jsapResult = jsap.parse(args);
+		if ( jsap.messagePrinted() ) return;
+
+		final File tmpDir = jsapResult.userSpecified("tmp") ? new File(jsapResult.getString("tmp")) : null;
+		final ProgressLogger pl = new ProgressLogger(LOGGER);
+		pl.itemsName = "graphs";
+		try (final RocksDao rocksDao = new RocksDao(jsapResult.getString("graphdb"), StorageProfile.parse(jsapResult.getString("profile")));
+				final BulkLoader loader = rocksDao.bulkLoader(tmpDir, jsapResult.getInt("threads"))) {
+			pl.start("Compressing graphs...");
+			for (final String file : jsapResult.getStringArray("file")) {
+				try (final Reader reader = new FileReader(file)) {
+					final JSONTokener tokener = new JSONTokener(reader);
+					while (tokener.skipTo('{') != 0) {
+						final GidGraph graph = parse(new JSONObject(tokener));
+						loader.add(graph.getIndex(), graph.getNodes(), graph.getNumInternalNodes(), graph.getEdges());
+						pl.lightUpdate();
+					}
+				}
+			}
+			pl.done();
+			LOGGER.info("Writing and ingesting SST files...");
+			final long loaded = loader.finish();
+			LOGGER.info("Loaded " + loaded + " graphs");
+		}
+	}
+}
@@ -0,0 +1,442 @@
+package eu.fasten.core.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
+
+import com.esotericsoftware.kryo.Kryo;
+
+import it.unimi.dsi.bits.Fast;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+import it.unimi.dsi.fastutil.longs.AbstractLongBigList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongBigList;
+import it.unimi.dsi.fastutil.longs.LongBigLists;
+import it.unimi.dsi.io.ByteBufferInputStream;
+import it.unimi.dsi.io.InputBitStream;
+import it.unimi.dsi.io.NullOutputStream;
+import it.unimi.dsi.io.OutputBitStream;
+import it.unimi.dsi.webgraph.BVGraph;
+import it.unimi.dsi.webgraph.ImmutableGraph;
+import it.unimi.dsi.webgraph.NodeIterator;
+
+/**
+ * A {@link BVGraph} whose bitstream and offsets are read directly from a {@link ByteBuffer}, such as
+ * a buffer wrapping the value of a database entry, or a memory-mapped file.
+ *
+ * <p>
+ * The layout written by {@link #write(BVGraph, DataOutput)} contains a fixed-size header with the
+ * compression parameters, the bitstream of the graph, and the bit offsets of the successor lists as
+ * fixed-width longs. {@link #read(ByteBuffer)} just slices the buffer: no data is copied or decoded,
+ * and successor lists are accessed with an offset lookup.
+ *
+ * <p>
+ * {@link #compress(ImmutableGraph, Properties)} compresses a graph directly into this layout, in
+ * memory, using the same format and default parameters of {@link BVGraph#store(ImmutableGraph,
+ * CharSequence)}, but with no need for temporary files.
+ */
+public class DirectBVGraph extends BVGraph {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * A magic number marking the beginning of database entries whose graphs use the layout of this
+	 * class (entries written by previous versions start with {@link Kryo}-serialized data).
+	 */
+	public static final long MAGIC = 0xFA57E4D1BEC7B0A1L;
+
+	/** The layout this graph was read from, if any. */
+	private ByteBuffer layout;
+
+	private DirectBVGraph() {}
+
+	/** A {@link LongBigList} view of a {@link LongBuffer}. */
+	private static final class LongBufferBigList extends AbstractLongBigList {
+		private final LongBuffer buffer;
+
+		private LongBufferBigList(final LongBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public long getLong(final long index) {
+			return buffer.get((int)index);
+		}
+
+		@Override
+		public long size64() {
+			return buffer.limit();
+		}
+	}
+
+	/**
+	 * Writes a graph using the layout read by {@link #read(ByteBuffer)}.
+	 *
+	 * @param graph a graph loaded in memory (e.g., with {@link BVGraph#load(CharSequence)}), or
+	 *            returned by {@link #read(ByteBuffer)} or {@link #compress(ImmutableGraph, Properties)}.
+	 * @param output a data output.
+	 */
+	public static void write(final BVGraph graph, final DataOutput output) throws IOException {
+		if (graph instanceof DirectBVGraph && ((DirectBVGraph)graph).layout != null) {
+			// Just copy the layout
+			final ByteBuffer layout = ((DirectBVGraph)graph).layout.duplicate();
+			final byte[] b = new byte[layout.remaining()];
+			layout.get(b);
+			output.write(b);
+			return;
+		}
+		final byte[] graphMemory;
+		final LongBigList offsets;
+		final int flags;
+		try {
+			graphMemory = (byte[])FieldUtils.readField(graph, "graphMemory", true);
+			offsets = (LongBigList)FieldUtils.readField(graph, "offsets", true);
+			flags = ((Integer)FieldUtils.readField(graph, "flags", true)).intValue();
+		} catch (final IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		if (graphMemory == null || offsets == null) throw new IllegalArgumentException("The graph must be loaded in memory, with offsets");
+		write(graph, flags, graphMemory, graphMemory.length, offsets, output);
+	}
+
+	private static void write(final BVGraph graph, final int flags, final byte[] graphMemory, final int graphBytes, final LongBigList offsets, final DataOutput output) throws IOException {
+		final int n = graph.numNodes();
+		output.writeInt(n);
+		output.writeLong(graph.numArcs());
+		output.writeInt(graph.windowSize());
+		output.writeInt(graph.maxRefCount());
+		output.writeInt(intField(graph, "minIntervalLength"));
+		output.writeInt(intField(graph, "zetaK"));
+		output.writeInt(flags);
+		output.writeInt(intField(graph, "outdegreeCoding"));
+		output.writeInt(intField(graph, "blockCoding"));
+		output.writeInt(intField(graph, "residualCoding"));
+		output.writeInt(intField(graph, "referenceCoding"));
+		output.writeInt(intField(graph, "blockCountCoding"));
+		output.writeLong(graphBytes);
+		output.write(graphMemory, 0, graphBytes);
+		for (int x = 0; x <= n; x++) output.writeLong(offsets.getLong(x));
+	}
+
+	/**
+	 * Compresses a graph in memory.
+	 *
+	 * <p>
+	 * The graph is compressed with the default parameters of {@link BVGraph}, and the result is
+	 * bit-for-bit identical to that of {@link BVGraph#store(ImmutableGraph, CharSequence)}.
+	 *
+	 * @param graph a graph.
+	 * @param properties a property object that will be filled with the properties that
+	 *            {@link BVGraph#store(ImmutableGraph, CharSequence)} would write (with the exception
+	 *            of the compression ratio and of gap statistics).
+	 * @return a compressed version of <code>graph</code>, backed by an array, that can be
+	 *         {@linkplain #write(BVGraph, DataOutput) written} with a bulk copy.
+	 */
+	public static BVGraph compress(final ImmutableGraph graph, final Properties properties) throws IOException {
+		final DirectBVGraph encoder = new DirectBVGraph();
+		encoder.n = graph.numNodes();
+		final FastByteArrayOutputStream graphStream = new FastByteArrayOutputStream();
+		final OutputBitStream obs = new OutputBitStream(graphStream, 0);
+		final long[] offsets = new long[encoder.n + 1];
+		final long[] stats = new long[STATS];
+		encoder.compress(graph, obs, offsets, stats);
+		obs.flush();
+		encoder.m = stats[ARCS];
+
+		final FastByteArrayOutputStream fbaos = new FastByteArrayOutputStream();
+		final DataOutputStream dos = new DataOutputStream(fbaos);
+		write(encoder, 0, graphStream.array, graphStream.length, LongBigLists.asBigList(LongArrayList.wrap(offsets)), dos);
+		dos.flush();
+
+		final NumberFormat format = NumberFormat.getInstance(Locale.US);
+		((DecimalFormat)format).applyPattern("0.###");
+		final int n = encoder.n;
+		properties.setProperty("nodes", String.valueOf(n));
+		properties.setProperty("arcs", String.valueOf(stats[ARCS]));
+		properties.setProperty("windowsize", String.valueOf(encoder.windowSize));
+		properties.setProperty("maxrefcount", String.valueOf(encoder.maxRefCount));
+		properties.setProperty("minintervallength", String.valueOf(encoder.minIntervalLength));
+		properties.setProperty("zetak", String.valueOf(encoder.zetaK));
+		properties.setProperty("compressionflags", "");
+		properties.setProperty("avgref", format.format((double)stats[TOT_REF] / n));
+		properties.setProperty("avgdist", format.format((double)stats[TOT_DIST] / n));
+		properties.setProperty("copiedarcs", String.valueOf(stats[COPIED_ARCS]));
+		properties.setProperty("intervalisedarcs", String.valueOf(stats[INTERVALISED_ARCS]));
+		properties.setProperty("residualarcs", String.valueOf(stats[RESIDUAL_ARCS]));
+		properties.setProperty("bitsperlink", format.format((double)offsets[n] / stats[ARCS]));
+		properties.setProperty("bitspernode", format.format((double)offsets[n] / n));
+		properties.setProperty("avgbitsforoutdegrees", format.format((double)stats[BITS_FOR_OUTDEGREES] / n));
+		properties.setProperty("avgbitsforreferences", format.format((double)stats[BITS_FOR_REFERENCES] / n));
+		properties.setProperty("avgbitsforblocks", format.format((double)stats[BITS_FOR_BLOCKS] / n));
+		properties.setProperty("avgbitsforresiduals", format.format((double)stats[BITS_FOR_RESIDUALS] / n));
+		properties.setProperty("avgbitsforintervals", format.format((double)stats[BITS_FOR_INTERVALS] / n));
+		properties.setProperty("bitsforoutdegrees", Long.toString(stats[BITS_FOR_OUTDEGREES]));
+		properties.setProperty("bitsforreferences", Long.toString(stats[BITS_FOR_REFERENCES]));
+		properties.setProperty("bitsforblocks", Long.toString(stats[BITS_FOR_BLOCKS]));
+		properties.setProperty("bitsforresiduals", Long.toString(stats[BITS_FOR_RESIDUALS]));
+		properties.setProperty("bitsforintervals", Long.toString(stats[BITS_FOR_INTERVALS]));
+		properties.setProperty("graphclass", BVGraph.class.getName());
+		properties.setProperty("version", String.valueOf(0));
+
+		return read(ByteBuffer.wrap(fbaos.array, 0, fbaos.length));
+	}
+
+	/* Indices of the statistics gathered by compress(ImmutableGraph, OutputBitStream, long[], long[]). */
+	private static final int ARCS = 0, TOT_REF = 1, TOT_DIST = 2, COPIED_ARCS = 3, INTERVALISED_ARCS = 4, RESIDUAL_ARCS = 5, BITS_FOR_OUTDEGREES = 6, BITS_FOR_REFERENCES = 7, BITS_FOR_BLOCKS = 8, BITS_FOR_INTERVALS = 9, BITS_FOR_RESIDUALS = 10, STATS = 11;
+
+	/**
+	 * Compresses a graph using the parameters of this instance, choosing references as
+	 * {@link BVGraph#store(ImmutableGraph, CharSequence)} does (i.e., greedily, with the shortest
+	 * encoding within the window).
+	 *
+	 * @param graph a graph.
+	 * @param obs the output bit stream.
+	 * @param offsets an array of length <code>graph.numNodes() + 1</code> that will be filled with the
+	 *            bit offsets of the successor lists.
+	 * @param stats an array that will be filled with statistics.
+	 */
+	private void compress(final ImmutableGraph graph, final OutputBitStream obs, final long[] offsets, final long[] stats) throws IOException {
+		final OutputBitStream bitCount = new OutputBitStream(NullOutputStream.getInstance(), 0);
+		final int cyclicBufferSize = windowSize + 1;
+		final int[][] list = new int[cyclicBufferSize][0];
+		final int[] listLen = new int[cyclicBufferSize];
+		final int[] refCount = new int[cyclicBufferSize];
+		final IntArrayList blocks = new IntArrayList(), extras = new IntArrayList(), left = new IntArrayList(), len = new IntArrayList(), residuals = new IntArrayList();
+
+		final NodeIterator nodeIterator = graph.nodeIterator();
+		for (int currNode = 0; currNode < n; currNode++) {
+			nodeIterator.nextInt();
+			final int outd = nodeIterator.outdegree();
+			final int currIndex = currNode % cyclicBufferSize;
+			offsets[currNode] = obs.writtenBits();
+			stats[BITS_FOR_OUTDEGREES] += writeOutdegree(obs, outd);
+			list[currIndex] = IntArrays.ensureCapacity(list[currIndex], outd);
+			System.arraycopy(nodeIterator.successorArray(), 0, list[currIndex], 0, outd);
+			listLen[currIndex] = outd;
+			if (outd == 0) continue;
+
+			// Try all references in the window and pick the shortest encoding
+			long bestComp = Long.MAX_VALUE;
+			int bestCand = -1;
+			refCount[currIndex] = -1;
+			for (int r = 0; r < cyclicBufferSize; r++) {
+				final int cand = (currIndex - r + cyclicBufferSize) % cyclicBufferSize;
+				if (refCount[cand] < maxRefCount && listLen[cand] != 0) {
+					bitCount.writtenBits(0);
+					diffComp(bitCount, currNode, r, list[cand], listLen[cand], list[currIndex], outd, blocks, extras, left, len, residuals, null);
+					final long t = bitCount.writtenBits();
+					if (t < bestComp) {
+						bestComp = t;
+						bestCand = cand;
+					}
+				}
+			}
+
+			refCount[currIndex] = refCount[bestCand] + 1;
+			final int bestRef = (currIndex - bestCand + cyclicBufferSize) % cyclicBufferSize;
+			diffComp(obs, currNode, bestRef, list[bestCand], listLen[bestCand], list[currIndex], outd, blocks, extras, left, len, residuals, stats);
+			stats[ARCS] += outd;
+			stats[TOT_REF] += refCount[currIndex];
+			stats[TOT_DIST] += bestRef;
+		}
+		offsets[n] = obs.writtenBits();
+	}
+
+	/**
+	 * Writes a successor list, possibly referring to a previous list.
+	 *
+	 * @param obs the output bit stream.
+	 * @param currNode the current node.
+	 * @param ref the reference (i.e., the distance from the referred node), or 0.
+	 * @param refList the referred list.
+	 * @param refLen the length of <code>refList</code>.
+	 * @param currList the current list.
+	 * @param currLen the length of <code>currList</code>.
+	 * @param stats an array that will be updated with statistics, or <code>null</code>.
+	 */
+	private void diffComp(final OutputBitStream obs, final int currNode, final int ref, final int[] refList, final int refLen, final int[] currList, final int currLen, final IntArrayList blocks, final IntArrayList extras, final IntArrayList left, final IntArrayList len, final IntArrayList residuals, final long[] stats) throws IOException {
+		long bits = obs.writtenBits();
+		if (windowSize > 0) {
+			writeReference(obs, ref);
+			if (stats != null) stats[BITS_FOR_REFERENCES] += obs.writtenBits() - bits;
+		}
+
+		extras.clear();
+		if (ref > 0) {
+			// Copy blocks alternate with skip blocks, starting with a copy block
+			blocks.clear();
+			int i = 0, j = 0, currBlockLen = 0;
+			boolean copying = true;
+			while (i < currLen && j < refLen) {
+				if (copying) {
+					if (currList[i] > refList[j]) {
+						blocks.add(currBlockLen);
+						copying = false;
+						currBlockLen = 0;
+					} else if (currList[i] < refList[j]) extras.add(currList[i++]);
+					else {
+						i++;
+						j++;
+						currBlockLen++;
+					}
+				} else {
+					if (currList[i] < refList[j]) extras.add(currList[i++]);
+					else if (currList[i] > refList[j]) {
+						j++;
+						currBlockLen++;
+					} else {
+						blocks.add(currBlockLen);
+						copying = true;
+						currBlockLen = 0;
+					}
+				}
+			}
+			// The rest of the referred list is copied if the number of blocks is even, skipped otherwise
+			if (copying && j < refLen) blocks.add(currBlockLen);
+			while (i < currLen) extras.add(currList[i++]);
+
+			bits = obs.writtenBits();
+			writeBlockCount(obs, blocks.size());
+			for (int k = 0; k < blocks.size(); k++) writeBlock(obs, k == 0 ? blocks.getInt(k) : blocks.getInt(k) - 1);
+			if (stats != null) {
+				stats[BITS_FOR_BLOCKS] += obs.writtenBits() - bits;
+				stats[COPIED_ARCS] += currLen - extras.size();
+			}
+		} else extras.addElements(0, currList, 0, currLen);
+
+		if (extras.isEmpty()) return;
+
+		final IntArrayList residual;
+		if (minIntervalLength != NO_INTERVALS) {
+			bits = obs.writtenBits();
+			left.clear();
+			len.clear();
+			residuals.clear();
+			final int intervalCount = intervalize(extras, minIntervalLength, left, len, residuals);
+			obs.writeGamma(intervalCount);
+			int prev = 0;
+			for (int k = 0; k < intervalCount; k++) {
+				if (k == 0) obs.writeLongGamma(Fast.int2nat((long)left.getInt(0) - currNode));
+				else obs.writeGamma(left.getInt(k) - prev - 1);
+				obs.writeGamma(len.getInt(k) - minIntervalLength);
+				prev = left.getInt(k) + len.getInt(k);
+			}
+			if (stats != null) {
+				stats[BITS_FOR_INTERVALS] += obs.writtenBits() - bits;
+				stats[INTERVALISED_ARCS] += extras.size() - residuals.size();
+			}
+			residual = residuals;
+		} else residual = extras;
+
+		bits = obs.writtenBits();
+		final int[] r = residual.elements();
+		final int residualCount = residual.size();
+		if (residualCount != 0) {
+			writeResidual(obs, Fast.int2nat((long)r[0] - currNode));
+			for (int k = 1; k < residualCount; k++) writeResidual(obs, r[k] - r[k - 1] - 1);
+		}
+		if (stats != null) {
+			stats[BITS_FOR_RESIDUALS] += obs.writtenBits() - bits;
+			stats[RESIDUAL_ARCS] += residualCount;
+		}
+	}
+
+	private static int intField(final BVGraph graph, final String name) {
+		try {
+			return ((Integer)FieldUtils.readField(graph, name, true)).intValue();
+		} catch (final IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Returns a slice of a buffer starting at its current position, and advances the position.
+	 *
+	 * @param buffer a buffer.
+	 * @param length the length of the slice.
+	 * @return a slice of <code>buffer</code> whose capacity is <code>length</code>.
+	 */
+	private static ByteBuffer slice(final ByteBuffer buffer, final int length) {
+		final ByteBuffer slice = buffer.duplicate();
+		slice.limit(buffer.position() + length);
+		buffer.position(buffer.position() + length);
+		return slice.slice();
+	}
+
+	/**
+	 * Returns a graph backed by a buffer written by {@link #write(BVGraph, DataOutput)}, starting at
+	 * the current position of the buffer; on return, the position of the buffer will be just after
+	 * the layout.
+	 *
+	 * <p>
+	 * The graph is valid as long as the content of the buffer does not change. As usual, the returned
+	 * graph is not thread-safe, but its {@linkplain BVGraph#copy() copies} are (lightweight) views on
+	 * the same buffer.
+	 *
+	 * @param buffer a buffer.
+	 * @return a graph backed by <code>buffer</code>.
+	 */
+	public static BVGraph read(final ByteBuffer buffer) {
+		final DirectBVGraph graph = new DirectBVGraph();
+		final int start = buffer.position();
+		graph.n = buffer.getInt();
+		graph.m = buffer.getLong();
+		graph.windowSize = buffer.getInt();
+		graph.maxRefCount = buffer.getInt();
+		graph.minIntervalLength = buffer.getInt();
+		graph.zetaK = buffer.getInt();
+		final int flags = buffer.getInt();
+		graph.outdegreeCoding = buffer.getInt();
+		graph.blockCoding = buffer.getInt();
+		graph.residualCoding = buffer.getInt();
+		graph.referenceCoding = buffer.getInt();
+		graph.blockCountCoding = buffer.getInt();
+		final int graphBytes = (int)buffer.getLong();
+
+		final ByteBuffer graphBuffer = slice(buffer, graphBytes);
+		final ByteBuffer offsetBuffer = slice(buffer, Long.BYTES * (graph.n + 1));
+
+		final ByteBuffer layout = buffer.duplicate();
+		layout.position(start).limit(buffer.position());
+		graph.layout = layout.slice();
+
+		graph.isMapped = true;
+		graph.mappedGraphStream = new ByteBufferInputStream(graphBuffer);
+		graph.offsets = new LongBufferBigList(offsetBuffer.asLongBuffer());
+		graph.offsetType = 1;
+		try {
+			FieldUtils.writeField(graph, "flags", Integer.valueOf(flags), true);
+			FieldUtils.writeField(graph, "outdegreeIbs", new InputBitStream(graph.mappedGraphStream.copy(), 0), true);
+		} catch (final IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		return graph;
+	}
+}
@@ -36,6 +36,7 @@ import com.martiansoftware.jsap.UnflaggedOption;
 import eu.fasten.core.data.KnowledgeBase;
 import eu.fasten.core.data.KnowledgeBase.CallGraph;
 import eu.fasten.core.data.KnowledgeBase.CallGraphData;
+import eu.fasten.core.data.StorageProfile;
 import it.unimi.dsi.logging.ProgressLogger;
 
 
@@ -49,6 +50,7 @@ public class ExtractProperties {
 				new Parameter[] {
 						new FlaggedOption("min", JSAP.INTEGER_PARSER, "0", JSAP.NOT_REQUIRED, 'm', "min", "Consider only graphs with at least this number of internal nodes."),
 						new FlaggedOption("n", JSAP.LONG_PARSER, Long.toString(Long.MAX_VALUE), JSAP.NOT_REQUIRED, 'n', "n", "Analyze just this number of graphs."),
+						new FlaggedOption("profile", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "profile", "The RocksDB storage profile (balanced, query or ingestion, optionally followed by a colon and overrides such as cache=4g); default: the value of the " + StorageProfile.PROFILE_PROPERTY + " system property, or balanced."),
 						new UnflaggedOption("kb", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The directory of the RocksDB instance containing the knowledge base." ),
 						new UnflaggedOption("kbmeta", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The file containing the knowledge base metadata." ),
 		});
@@ -63,7 +65,7 @@ public class ExtractProperties {
 		final String kbMetadataFilename = jsapResult.getString("kbmeta");
 		if (!new File(kbMetadataFilename).exists()) throw new IllegalArgumentException("No such file: " + kbMetadataFilename);
 		LOGGER.info("Loading KnowledgeBase metadata");
-		final KnowledgeBase kb = KnowledgeBase.getInstance(kbDir, kbMetadataFilename, true);
+		final KnowledgeBase kb = KnowledgeBase.getInstance(kbDir, kbMetadataFilename, true, StorageProfile.parseOrDefault(jsapResult.getString("profile")));
 
 		final ProgressLogger pl = new ProgressLogger();
 
@@ -83,9 +85,9 @@ public class ExtractProperties {
 			System.out.print('\t');
 			System.out.print(callGraph.version);
 			System.out.print('\t');
-			System.out.print(callGraphData.graphProperties);
+			System.out.print(callGraphData.graphProperties());
 			System.out.print('\t');
-			System.out.print(callGraphData.transposeProperties);
+			System.out.print(callGraphData.transposeProperties());
 			System.out.println();
 		}
 
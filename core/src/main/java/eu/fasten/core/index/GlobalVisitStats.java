@@ -25,7 +25,6 @@ import static eu.fasten.core.data.KnowledgeBase.index;
 import java.io.File;
 import java.io.IOException;
 
-import org.apache.commons.lang3.mutable.MutableLong;
 import org.rocksdb.RocksDBException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,15 +35,18 @@ import com.martiansoftware.jsap.JSAPException;
 import com.martiansoftware.jsap.JSAPResult;
 import com.martiansoftware.jsap.Parameter;
 import com.martiansoftware.jsap.SimpleJSAP;
+import com.martiansoftware.jsap.Switch;
 import com.martiansoftware.jsap.UnflaggedOption;
 
 import eu.fasten.core.data.KnowledgeBase;
 import eu.fasten.core.data.KnowledgeBase.CallGraph;
 import eu.fasten.core.data.KnowledgeBase.CallGraphData;
 import eu.fasten.core.data.KnowledgeBase.Node;
+import eu.fasten.core.data.StorageProfile;
+import eu.fasten.core.data.VisitBudget;
+import eu.fasten.core.data.VisitResult;
 import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
-import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import it.unimi.dsi.logging.ProgressLogger;
@@ -58,8 +60,6 @@ public class GlobalVisitStats {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(GlobalVisitStats.class);
 
-	private static final LongOpenHashSet badGIDs = new LongOpenHashSet();
-
 	public static class Result {
 		final LongOpenHashSet nodes;
 		final long numProducts;
@@ -72,107 +72,93 @@ public class GlobalVisitStats {
 		}
 	}
 
+	/**
+	 * Performs a forward visit using {@link KnowledgeBase#reaches(long, VisitBudget, java.util.function.LongPredicate)}.
+	 *
+	 * @param kb the knowledge base.
+	 * @param startSig the signature of the starting node.
+	 * @param maxRevs the maximum number of revisions per product.
+	 * @param pl a progress logger.
+	 * @return the result of the visit.
+	 */
 	public static Result reaches(final KnowledgeBase kb, final long startSig, final int maxRevs, final ProgressLogger pl) {
-		final LongOpenHashSet result = new LongOpenHashSet();
-		final Object2ObjectOpenHashMap<String, IntOpenHashSet> product2Revs = new Object2ObjectOpenHashMap<>();
-		final MutableLong totRevs = new MutableLong();
-
-		// Visit queue
-		final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
-		queue.enqueue(startSig);
-		result.add(startSig);
-
-		String p = kb.callGraphs.get(index(startSig)).product;
-		IntOpenHashSet revs = new IntOpenHashSet();
-		revs.add(index(startSig));
-		product2Revs.put(p, revs);
-		totRevs.increment();
-
-
 		pl.itemsName = "nodes";
-		pl.info = new Object() {
-			@Override
-			public String toString() {
-				return "[nodes: " + result.size() + " products: " + product2Revs.size() + " revisions: " + totRevs.getValue() + "]";
-			}
-		};
-
 		pl.start("Visiting reachable nodes...");
-
-		while (!queue.isEmpty()) {
-			final long node = queue.dequeueLong();
-
-			for (final long s : kb.successors(node)) if (!result.contains(s)) {
-				p = kb.callGraphs.get(index(s)).product;
-				final long gid = gid(s);
-				if (badGIDs.contains(gid)) continue;
-				final String targetNameSpace = kb.new Node(gid, index(s)).toFastenURI().getRawNamespace();
-				if (targetNameSpace.startsWith("java.") || targetNameSpace.startsWith("javax.") || targetNameSpace.startsWith("jdk.")) {
-					badGIDs.add(gid);
-					continue;
-				}
-				revs = product2Revs.get(p);
-				if (revs == null) product2Revs.put(p, revs = new IntOpenHashSet());
-				if (revs.contains(index(s)) || revs.size() < maxRevs) {
-					queue.enqueue(s);
-					result.add(s);
-					//System.out.println(kb.new Node(gid(node), index(node)).toFastenURI() + " -> " + kb.new Node(gid(s), index(s)).toFastenURI());
-					if (revs.add(index(s))) totRevs.increment();
-				}
-			}
-			pl.lightUpdate();
-		}
-
-		pl.done();
-		return new Result(result, product2Revs.size(), totRevs.getValue().longValue());
+		final VisitResult visit = kb.reaches(startSig, new VisitBudget().maxRevisionsPerProduct(maxRevs), s -> !isJDK(kb, s));
+		pl.done(visit.nodes.size());
+		return result(kb, new LongOpenHashSet(visit.nodes));
 	}
 
+	/**
+	 * Performs a backward visit using {@link KnowledgeBase#coreaches(long, VisitBudget, java.util.function.LongPredicate)}.
+	 *
+	 * @param kb the knowledge base.
+	 * @param startSig the signature of the starting node.
+	 * @param maxRevs the maximum number of revisions per product.
+	 * @param pl a progress logger.
+	 * @return the result of the visit.
+	 */
 	public static Result coreaches(final KnowledgeBase kb, final long startSig, final int maxRevs, final ProgressLogger pl) {
-		final LongOpenHashSet result = new LongOpenHashSet();
-		final Object2ObjectOpenHashMap<String, IntOpenHashSet> product2Revs = new Object2ObjectOpenHashMap<>();
-		final MutableLong totRevs = new MutableLong();
-
-		// Visit queue
-		final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
-		queue.enqueue(startSig);
-		result.add(startSig);
-
-		String p = kb.callGraphs.get(index(startSig)).product;
-		IntOpenHashSet revs = new IntOpenHashSet();
-		revs.add(index(startSig));
-		product2Revs.put(p, revs);
-		totRevs.increment();
-
-
 		pl.itemsName = "nodes";
-		pl.info = new Object() {
-			@Override
-			public String toString() {
-				return "[nodes: " + result.size() + " products: " + product2Revs.size() + " revisions: " + totRevs.getValue() + "]";
-			}
-		};
 		pl.start("Visiting coreachable nodes...");
-		while (!queue.isEmpty()) {
-			final long node = queue.dequeueLong();
-
-			for (final long s : kb.predecessors(node)) if (!result.contains(s)) {
-				p = kb.callGraphs.get(index(s)).product;
-				final String targetNameSpace = kb.new Node(gid(s), index(s)).toFastenURI().getRawNamespace();
-				if (targetNameSpace.startsWith("java.") || targetNameSpace.startsWith("javax.") || targetNameSpace.startsWith("jdk.")) continue;
-				revs = product2Revs.get(p);
-				if (revs == null) product2Revs.put(p, revs = new IntOpenHashSet());
-				if (revs.contains(index(s)) || revs.size() < maxRevs) {
-					queue.enqueue(s);
-					result.add(s);
-					//System.out.println(kb.new Node(gid(node), index(node)).toFastenURI() + " -> " + kb.new Node(gid(s), index(s)).toFastenURI());
-					if (revs.add(index(s))) totRevs.increment();
-				}
-			}
-			pl.lightUpdate();
+		final VisitResult visit = kb.coreaches(startSig, new VisitBudget().maxRevisionsPerProduct(maxRevs), s -> !isJDK(kb, s));
+		pl.done(visit.nodes.size());
+		return result(kb, new LongOpenHashSet(visit.nodes));
+	}
+
+	/**
+	 * Returns whether a node should be excluded from the statistics because it belongs to the JDK.
+	 *
+	 * @param kb the knowledge base.
+	 * @param sig the signature of a node.
+	 * @return true if the namespace of the node belongs to the JDK.
+	 */
+	private static boolean isJDK(final KnowledgeBase kb, final long sig) {
+		final String nameSpace = kb.new Node(gid(sig), index(sig)).toFastenURI().getRawNamespace();
+		return nameSpace.startsWith("java.") || nameSpace.startsWith("javax.") || nameSpace.startsWith("jdk.");
+	}
+
+	/**
+	 * Computes a {@link Result} from a set of signatures by counting products and revisions.
+	 *
+	 * @param kb the knowledge base.
+	 * @param nodes a set of signatures.
+	 * @return the corresponding result.
+	 */
+	private static Result result(final KnowledgeBase kb, final LongOpenHashSet nodes) {
+		final Object2ObjectOpenHashMap<String, IntOpenHashSet> product2Revs = new Object2ObjectOpenHashMap<>();
+		long totRevs = 0;
+		for (final long s : nodes) {
+			final String p = kb.callGraphs.get(index(s)).product;
+			IntOpenHashSet revs = product2Revs.get(p);
+			if (revs == null) product2Revs.put(p, revs = new IntOpenHashSet());
+			if (revs.add(index(s))) totRevs++;
 		}
+		return new Result(nodes, product2Revs.size(), totRevs);
+	}
 
-		pl.done();
-		return new Result(result, product2Revs.size(), totRevs.getValue().longValue());
+	/**
+	 * Performs a forward visit using {@link KnowledgeBase#parallelReaches(long, java.util.function.LongPredicate)}.
+	 * Since levels are expanded in parallel, there is no cap on the number of revisions per product.
+	 *
+	 * @param kb the knowledge base.
+	 * @param startSig the signature of the starting node.
+	 * @return the result of the visit.
+	 */
+	public static Result parallelReaches(final KnowledgeBase kb, final long startSig) {
+		return result(kb, new LongOpenHashSet(kb.parallelReaches(startSig, s -> !isJDK(kb, s))));
+	}
+
+	/**
+	 * Performs a backward visit using {@link KnowledgeBase#parallelCoreaches(long, java.util.function.LongPredicate)}.
+	 * Since levels are expanded in parallel, there is no cap on the number of revisions per product.
+	 *
+	 * @param kb the knowledge base.
+	 * @param startSig the signature of the starting node.
+	 * @return the result of the visit.
+	 */
+	public static Result parallelCoreaches(final KnowledgeBase kb, final long startSig) {
+		return result(kb, new LongOpenHashSet(kb.parallelCoreaches(startSig, s -> !isJDK(kb, s))));
 	}
 
 	public static int reachable(final ImmutableGraph graph, final int startingNode) {
@@ -207,6 +193,8 @@ public class GlobalVisitStats {
 						new FlaggedOption("maxRevsB", JSAP.INTEGER_PARSER, Integer.toString(Integer.MAX_VALUE), JSAP.NOT_REQUIRED, 'b', "max-revs-b", "The maximum number of revision per product during the backward visits."),
 						new FlaggedOption("n", JSAP.INTEGER_PARSER, "1", JSAP.NOT_REQUIRED, 'n', "n", "The the number of starting nodes for visits."),
 						new FlaggedOption("p", JSAP.INTEGER_PARSER, "1", JSAP.NOT_REQUIRED, 'p', "p", "The the number of starting pairs for visits."),
+						new Switch("parallel", 'P', "parallel", "Use parallel level-synchronous visits (the maximum number of revisions per product is ignored)."),
+						new FlaggedOption("profile", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "profile", "The RocksDB storage profile (balanced, query or ingestion, optionally followed by a colon and overrides such as cache=4g); default: the value of the " + StorageProfile.PROFILE_PROPERTY + " system property, or balanced."),
 						new UnflaggedOption("kb", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The directory of the RocksDB instance containing the knowledge base." ),
 						new UnflaggedOption("kbmeta", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The file containing the knowledge base metadata." ),
 		});
@@ -218,12 +206,14 @@ public class GlobalVisitStats {
 		final int p = jsapResult.getInt("p");
 		final int maxRevsF = jsapResult.getInt("maxRevsF");
 		final int maxRevsB = jsapResult.getInt("maxRevsB");
+		final boolean parallel = jsapResult.getBoolean("parallel");
+		if (parallel && (maxRevsF != Integer.MAX_VALUE || maxRevsB != Integer.MAX_VALUE)) LOGGER.warn("Parallel visits ignore the maximum number of revisions per product");
 		final String kbDir = jsapResult.getString("kb");
 		if (!new File(kbDir).exists()) throw new IllegalArgumentException("No such directory: " + kbDir);
 		final String kbMetadataFilename = jsapResult.getString("kbmeta");
 		if (!new File(kbMetadataFilename).exists()) throw new IllegalArgumentException("No such file: " + kbMetadataFilename);
 		LOGGER.info("Loading KnowledgeBase metadata");
-		final KnowledgeBase kb = KnowledgeBase.getInstance(kbDir, kbMetadataFilename, true);
+		final KnowledgeBase kb = KnowledgeBase.getInstance(kbDir, kbMetadataFilename, true, StorageProfile.parseOrDefault(jsapResult.getString("profile")));
 		LOGGER.info("Number of graphs: " + kb.callGraphs.size());
 
 		final ProgressLogger pl = new ProgressLogger();
@@ -251,11 +241,11 @@ public class GlobalVisitStats {
 			final int startNode = random.nextInt(callGraph.nInternal);
 			final Node node = kb.new Node(callGraphData.LID2GID[startNode], index);
 			LOGGER.info("Analyzing node " + node.toFastenURI());
-			final Result reaches = reaches(kb, node.signature(), maxRevsF, pl2);
+			final Result reaches = parallel ? parallelReaches(kb, node.signature()) : reaches(kb, node.signature(), maxRevsF, pl2);
 			reachable.add(reaches.nodes.size());
 			reachableProducts.add(reaches.numProducts);
 			reachableRevs.add(reaches.numRevs);
-			final Result coreaches = coreaches(kb, node.signature(), maxRevsB, pl2);
+			final Result coreaches = parallel ? parallelCoreaches(kb, node.signature()) : coreaches(kb, node.signature(), maxRevsB, pl2);
 			coreachable.add(coreaches.nodes.size());
 			coreachableProducts.add(coreaches.numProducts);
 			coreachableRevs.add(coreaches.numRevs);
@@ -281,10 +271,10 @@ public class GlobalVisitStats {
 			final Node node0 = kb.new Node(callGraphData0.LID2GID[startNode0], index0);
 			final Node node1 = kb.new Node(callGraphData1.LID2GID[startNode1], index1);
 			LOGGER.info("Analyzing pair (" + node0.toFastenURI() + ", " + node1.toFastenURI() + ")");
-			final Result reaches0 = reaches(kb, node0.signature(), maxRevsF, pl2);
-			final Result reaches1 = reaches(kb, node1.signature(), maxRevsF, pl2);
-			final Result coreaches0 = coreaches(kb, node0.signature(), maxRevsB, pl2);
-			final Result coreaches1 = coreaches(kb, node1.signature(), maxRevsB, pl2);
+			final Result reaches0 = parallel ? parallelReaches(kb, node0.signature()) : reaches(kb, node0.signature(), maxRevsF, pl2);
+			final Result reaches1 = parallel ? parallelReaches(kb, node1.signature()) : reaches(kb, node1.signature(), maxRevsF, pl2);
+			final Result coreaches0 = parallel ? parallelCoreaches(kb, node0.signature()) : coreaches(kb, node0.signature(), maxRevsB, pl2);
+			final Result coreaches1 = parallel ? parallelCoreaches(kb, node1.signature()) : coreaches(kb, node1.signature(), maxRevsB, pl2);
 			reaches0.nodes.retainAll(reaches1.nodes);
 			reachableIntersection.add(reaches0.nodes.size());
 			coreaches0.nodes.retainAll(coreaches1.nodes);
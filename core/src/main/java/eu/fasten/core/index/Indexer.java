@@ -51,8 +51,9 @@ import com.martiansoftware.jsap.Parameter;
 import com.martiansoftware.jsap.SimpleJSAP;
 import com.martiansoftware.jsap.UnflaggedOption;
 
-import eu.fasten.core.data.RevisionCallGraph;
 import eu.fasten.core.data.KnowledgeBase;
+import eu.fasten.core.data.RevisionCallGraph;
+import eu.fasten.core.data.StorageProfile;
 /** A sample in-memory indexer that reads, compresses and stores in memory
  *  graphs stored in JSON format and answers to impact queries.
  *
@@ -109,16 +110,29 @@ public class Indexer {
 	}
 
 	public void index(final long max, final String... files) throws JSONException, IOException, RocksDBException {
+		index(max, 1, files);
+	}
+
+	/** Indexes a list of JSON files, building and compressing graphs in parallel.
+	 *
+	 * @param max the maximum number of call graphs that will be indexed.
+	 * @param threads the number of threads building and compressing graphs.
+	 * @param files the JSON files.
+	 * @see KnowledgeBase#ingestion(int)
+	 */
+	public void index(final long max, final int threads, final String... files) throws JSONException, IOException, RocksDBException {
 		long index = kb.size();
 		long nIndexed = 0;
-		for(final String file: files) {
-			LOGGER.debug("Parsing " + file);
-			final FileReader reader = new FileReader(file);
-			final JSONObject json = new JSONObject(new JSONTokener(reader));
-			kb.add(new RevisionCallGraph(json), index++);
-			nIndexed++;
-			if (nIndexed >= max)  break;
-			reader.close();
+		try (final KnowledgeBase.Ingestion ingestion = kb.ingestion(threads)) {
+			for(final String file: files) {
+				LOGGER.debug("Parsing " + file);
+				final FileReader reader = new FileReader(file);
+				final JSONObject json = new JSONObject(new JSONTokener(reader));
+				reader.close();
+				ingestion.add(new RevisionCallGraph(json), index++);
+				nIndexed++;
+				if (nIndexed >= max)  break;
+			}
 		}
 	}
 
@@ -131,6 +145,8 @@ public class Indexer {
 						new FlaggedOption("host", JSAP.STRING_PARSER, "localhost", JSAP.NOT_REQUIRED, 'h', "host", "The host of the Kafka server." ),
 						new FlaggedOption("port", JSAP.INTEGER_PARSER, "30001", JSAP.NOT_REQUIRED, 'p', "port", "The port of the Kafka server." ),
 						new FlaggedOption("max", JSAP.LONG_PARSER, String.valueOf(Long.MAX_VALUE), JSAP.NOT_REQUIRED, 'm', "max", "The maximum number of call graphs that will be indexed." ),
+						new FlaggedOption("threads", JSAP.INTEGER_PARSER, Integer.toString(Runtime.getRuntime().availableProcessors()), JSAP.NOT_REQUIRED, 'T', "threads", "The number of threads building and compressing graphs (files only)." ),
+						new FlaggedOption("profile", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "profile", "The RocksDB storage profile (balanced, query or ingestion, optionally followed by a colon and overrides such as cache=4g); default: the value of the " + StorageProfile.PROFILE_PROPERTY + " system property, or balanced."),
 						new UnflaggedOption("kb", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The directory of the RocksDB instance containing the knowledge base." ),
 						new UnflaggedOption("kbmeta", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The file containing the knowledge base metadata." ),
 						new UnflaggedOption("filename", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.GREEDY, "The name of the file containing the JSON object." ),
@@ -145,7 +161,7 @@ public class Indexer {
 		if (new File(kbDir).exists()) throw new IllegalArgumentException("Knowledge base directory exists");
 		if (new File(kbMetadataFilename).exists()) throw new IllegalArgumentException("Knowledge-base metadata file exists");
 
-		final KnowledgeBase kb = KnowledgeBase.getInstance(kbDir, kbMetadataFilename, false);
+		final KnowledgeBase kb = KnowledgeBase.getInstance(kbDir, kbMetadataFilename, false, StorageProfile.parseOrDefault(jsapResult.getString("profile")));
 
 		final Indexer indexer = new Indexer(kb);
 
@@ -167,7 +183,7 @@ public class Indexer {
 			future.get(); // Wait for indexing to complete
 		} else
 			// File indexing
-			indexer.index(max, jsapResult.getStringArray("filename"));
+			indexer.index(max, jsapResult.getInt("threads"), jsapResult.getStringArray("filename"));
 		kb.close();
 	}
 }
@@ -41,6 +41,7 @@ import com.martiansoftware.jsap.UnflaggedOption;
 import eu.fasten.core.data.KnowledgeBase;
 import eu.fasten.core.data.KnowledgeBase.CallGraph;
 import eu.fasten.core.data.KnowledgeBase.CallGraphData;
+import eu.fasten.core.data.StorageProfile;
 import it.unimi.dsi.bits.Fast;
 import it.unimi.dsi.logging.ProgressLogger;
 
@@ -59,6 +60,7 @@ public class KBStats {
 						new FlaggedOption("id", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, 'i', "id", "Indegree distribution: graph id, external?, indegree (tab-separated, one per node)." ),
 						new FlaggedOption("min", JSAP.INTEGER_PARSER, "0", JSAP.NOT_REQUIRED, 'm', "min", "Consider only graphs with at least this number of nodes." ),
 						new FlaggedOption("n", JSAP.INTEGER_PARSER, Integer.toString(Integer.MAX_VALUE), JSAP.NOT_REQUIRED, 'n', "n", "Analyze just this number of graphs."),
+						new FlaggedOption("profile", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "profile", "The RocksDB storage profile (balanced, query or ingestion, optionally followed by a colon and overrides such as cache=4g); default: the value of the " + StorageProfile.PROFILE_PROPERTY + " system property, or balanced."),
 						new UnflaggedOption("kb", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The directory of the RocksDB instance containing the knowledge base." ),
 						new UnflaggedOption("kbmeta", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The file containing the knowledge base metadata." ),
 		});
@@ -73,7 +75,7 @@ public class KBStats {
 		final String kbMetadataFilename = jsapResult.getString("kbmeta");
 		if (!new File(kbMetadataFilename).exists()) throw new IllegalArgumentException("No such file: " + kbMetadataFilename);
 		LOGGER.info("Loading KnowledgeBase metadata");
-		final KnowledgeBase kb = KnowledgeBase.getInstance(kbDir, kbMetadataFilename, true);
+		final KnowledgeBase kb = KnowledgeBase.getInstance(kbDir, kbMetadataFilename, true, StorageProfile.parseOrDefault(jsapResult.getString("profile")));
 		LOGGER.info("Number of graphs: " + kb.callGraphs.size());
 
 		final ProgressLogger pl = new ProgressLogger();
@@ -141,9 +143,9 @@ public class KBStats {
 			deflationBySize[Fast.ceilLog2(callGraphData.numNodes() + 1)].add((double)b / r);
 			internalNodes.add(callGraph.nInternal);
 			internalNodeRatio.add(((double)callGraph.nInternal)/callGraphData.numNodes());
-			final double bpl = Double.parseDouble((callGraphData.graphProperties.getProperty("bitsperlink")));
+			final double bpl = Double.parseDouble((callGraphData.graphProperties().getProperty("bitsperlink")));
 			if (! Double.isNaN(bpl)) bitsPerLink.add(bpl);
-			final double bplt = Double.parseDouble((callGraphData.transposeProperties.getProperty("bitsperlink")));
+			final double bplt = Double.parseDouble((callGraphData.transposeProperties().getProperty("bitsperlink")));
 			if (! Double.isNaN(bplt)) bitsPerLinkt.add(bplt);
 			int internalArcs = 0, externalArcs = 0, totalArcs = 0;
 			if (atFlag || odFlag) {
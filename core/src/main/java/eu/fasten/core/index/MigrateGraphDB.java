@@ -0,0 +1,63 @@
+package eu.fasten.core.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.rocksdb.RocksDBException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.martiansoftware.jsap.FlaggedOption;
+import com.martiansoftware.jsap.JSAP;
+import com.martiansoftware.jsap.JSAPException;
+import com.martiansoftware.jsap.JSAPResult;
+import com.martiansoftware.jsap.Parameter;
+import com.martiansoftware.jsap.SimpleJSAP;
+import com.martiansoftware.jsap.UnflaggedOption;
+
+import eu.fasten.core.data.StorageProfile;
+import eu.fasten.core.data.graphdb.RocksDao;
+import it.unimi.dsi.logging.ProgressLogger;
+
+/**
+ * Moves the graphs stored by previous versions of {@link RocksDao} as single entries of the
+ * default column family to the separate column families used by the current version.
+ */
+public class MigrateGraphDB {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MigrateGraphDB.class);
+
+	public static void main(final String[] args) throws JSAPException, RocksDBException, IOException {
+		final SimpleJSAP jsap = new SimpleJSAP(MigrateGraphDB.class.getName(),
+				"Migrates a graph database to the column-family layout.",
+				new Parameter[] {
+						new FlaggedOption("profile", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "profile", "The RocksDB storage profile (balanced, query or ingestion, optionally followed by a colon and overrides such as cache=4g); default: the value of the " + StorageProfile.PROFILE_PROPERTY + " system property, or balanced."),
+						new UnflaggedOption("graphdb", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The directory of the RocksDB instance containing the graph database." ),
+		});
+
+		final JSAPResult jsapResult = jsap.parse(args);
+		if ( jsap.messagePrinted() ) return;
+
+		try (final RocksDao rocksDao = new RocksDao(jsapResult.getString("graphdb"), StorageProfile.parseOrDefault(jsapResult.getString("profile")))) {
+			final long migrated = rocksDao.migrate(new ProgressLogger(LOGGER));
+			LOGGER.info("Migrated " + migrated + " graphs");
+		}
+	}
+}
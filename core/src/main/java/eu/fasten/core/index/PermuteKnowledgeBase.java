@@ -19,10 +19,8 @@ package eu.fasten.core.index;
  */
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 
@@ -38,11 +36,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.ByteBufferOutput;
-import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.serializers.FieldSerializer;
 import com.esotericsoftware.kryo.serializers.JavaSerializer;
 import com.google.common.primitives.Longs;
+import com.martiansoftware.jsap.FlaggedOption;
 import com.martiansoftware.jsap.JSAP;
 import com.martiansoftware.jsap.JSAPException;
 import com.martiansoftware.jsap.JSAPResult;
@@ -50,7 +47,10 @@ import com.martiansoftware.jsap.Parameter;
 import com.martiansoftware.jsap.SimpleJSAP;
 import com.martiansoftware.jsap.UnflaggedOption;
 
+import eu.fasten.core.data.Condensation;
 import eu.fasten.core.data.KnowledgeBase;
+import eu.fasten.core.data.KnowledgeBase.CallGraphData;
+import eu.fasten.core.data.StorageProfile;
 import it.unimi.dsi.Util;
 import it.unimi.dsi.fastutil.io.BinIO;
 import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
@@ -75,6 +75,7 @@ public class PermuteKnowledgeBase {
 		final SimpleJSAP jsap = new SimpleJSAP(PermuteKnowledgeBase.class.getName(),
 				"Permutes a knowledge base using LLP.",
 				new Parameter[] {
+						new FlaggedOption("profile", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "profile", "The RocksDB storage profile (balanced, query or ingestion, optionally followed by a colon and overrides such as cache=4g); default: the value of the " + StorageProfile.PROFILE_PROPERTY + " system property, or balanced."),
 						new UnflaggedOption("kb", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The directory of the RocksDB instance containing the knowledge base." ),
 						new UnflaggedOption("kbmeta", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The file containing the knowledge base metadata." ),
 		});
@@ -86,9 +87,10 @@ public class PermuteKnowledgeBase {
 		if (!new File(kbDir).exists()) throw new IllegalArgumentException("No such directory: " + kbDir);
 
 		RocksDB.loadLibrary();
-		final ColumnFamilyOptions cfOptions = new ColumnFamilyOptions().setCompressionType(CompressionType.LZ4_COMPRESSION);
-		final DBOptions dbOptions = new DBOptions().setCreateIfMissing(true).setCreateMissingColumnFamilies(true);
-		final List<ColumnFamilyDescriptor> cfDescriptors = Arrays.asList(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, cfOptions), new ColumnFamilyDescriptor(KnowledgeBase.GID2URI, cfOptions), new ColumnFamilyDescriptor(KnowledgeBase.URI2GID, cfOptions));
+		final StorageProfile.Resources resources = StorageProfile.parseOrDefault(jsapResult.getString("profile")).resources();
+		final ColumnFamilyOptions cfOptions = resources.columnFamilyOptions(CompressionType.LZ4_COMPRESSION);
+		final DBOptions dbOptions = resources.dbOptions();
+		final List<ColumnFamilyDescriptor> cfDescriptors = KnowledgeBase.columnFamilyDescriptors(cfOptions);
 
 		final List<ColumnFamilyHandle> columnFamilyHandles = new ArrayList<>();
 		final RocksDB db = RocksDB.open(dbOptions, kbDir, cfDescriptors, columnFamilyHandles);
@@ -105,6 +107,7 @@ public class PermuteKnowledgeBase {
 		kryo.register(MutableString.class, new FieldSerializer<>(kryo, MutableString.class));
 		kryo.register(Properties.class);
 		kryo.register(long[].class);
+		kryo.register(int[].class);
 		kryo.register(Long2IntOpenHashMap.class);
 
 		final ProgressLogger pl = new ProgressLogger(LOGGER);
@@ -112,8 +115,6 @@ public class PermuteKnowledgeBase {
 		pl.itemsName = "graphs";
 		pl.count = kb.size();
 		pl.start("Permuting graphs...");
-		final String f = File.createTempFile(PermuteKnowledgeBase.class.getSimpleName(), ".tmpgraph").toString();
-
 		final RocksIterator iterator = db.newIterator(columnFamilyHandles.get(0));
 
 		for(iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
@@ -122,16 +123,11 @@ public class PermuteKnowledgeBase {
 			final byte[] value = iterator.value();
 			final int nInternal = kb.callGraphs.get(index).nInternal;
 
-			final Input input = new Input(value);
-
-			final var graphs = new ImmutableGraph[] { kryo.readObject(input, BVGraph.class), kryo.readObject(input, BVGraph.class) };
-			// Skip properties
-			kryo.readObject(input, Properties.class);
-			kryo.readObject(input, Properties.class);
-			final long[] origLID2GID = kryo.readObject(input, long[].class);
+			final CallGraphData callGraphData = CallGraphData.read(value, kryo, nInternal);
+			final long[] origLID2GID = callGraphData.LID2GID;
 
-			ImmutableGraph graph = graphs[0];
-			ImmutableGraph transpose = graphs[1];
+			ImmutableGraph graph = callGraphData.rawGraph();
+			ImmutableGraph transpose = callGraphData.rawTranspose();
 			final int numNodes = graph.numNodes();
 
 			final ImmutableGraph symGraph = new ArrayListMutableGraph(Transform.symmetrize(graph)).immutableView();
@@ -150,44 +146,20 @@ public class PermuteKnowledgeBase {
 			graph = new ArrayListMutableGraph(Transform.map(graph, sorted)).immutableView();
 			transpose = new ArrayListMutableGraph(Transform.map(transpose, sorted)).immutableView();
 
-			BVGraph.store(graph, f.toString());
-			FileInputStream propertyFile = new FileInputStream(f + BVGraph.PROPERTIES_EXTENSION);
 			final Properties graphProperties = new Properties();
-			graphProperties.load(propertyFile);
-			propertyFile.close();
-
-			final FastByteArrayOutputStream fbaos = new FastByteArrayOutputStream();
-			final ByteBufferOutput bbo = new ByteBufferOutput(fbaos);
-			kryo.writeObject(bbo, BVGraph.load(f.toString()));
+			final BVGraph compressedGraph = DirectBVGraph.compress(graph, graphProperties);
 
 			// Compute LIDs according to the current node renumbering based on BFS
 			final long[] LID2GID = new long[origLID2GID.length];
-
-			final Long2IntOpenHashMap GID2LID = new Long2IntOpenHashMap();
-			GID2LID.defaultReturnValue(-1);
-
 			for (int x = 0; x < origLID2GID.length; x++) LID2GID[sorted[x]] = origLID2GID[x];
-			for (int j = 0; j < origLID2GID.length; j++) GID2LID.put(LID2GID[j], j);
 
-			// Compress, load and serialize transpose graph
-			BVGraph.store(transpose, f.toString());
-			propertyFile = new FileInputStream(f + BVGraph.PROPERTIES_EXTENSION);
+			// Compress transpose graph
 			final Properties transposeProperties = new Properties();
-			transposeProperties.load(propertyFile);
-			propertyFile.close();
-
-			kryo.writeObject(bbo, BVGraph.load(f.toString()));
+			final BVGraph compressedTranspose = DirectBVGraph.compress(transpose, transposeProperties);
 
-			// Write out properties
-			kryo.writeObject(bbo, graphProperties);
-			kryo.writeObject(bbo, transposeProperties);
-
-			// Write out LID2GID info
-			kryo.writeObject(bbo, LID2GID);
-			// This could be rebuilt if data were input correctly (i.e., no duplicate internal and external
-			// nodes, see assert above).
-			kryo.writeObject(bbo, GID2LID);
-			bbo.flush();
+			final FastByteArrayOutputStream fbaos = new FastByteArrayOutputStream();
+			// Write out the data, with the condensation of the permuted graph
+			CallGraphData.write(fbaos, compressedGraph, compressedTranspose, graphProperties, transposeProperties, LID2GID, Condensation.compute(graph));
 
 			// Write to DB
 			db.put(columnFamilyHandles.get(0), key, 0, 8, fbaos.array, 0, fbaos.length);
@@ -195,11 +167,8 @@ public class PermuteKnowledgeBase {
 		}
 
 		db.close();
+		resources.close();
 		pl.done();
-		new File(f.toString());
-		new File(f.toString() + BVGraph.PROPERTIES_EXTENSION).delete();
-		new File(f.toString() + BVGraph.OFFSETS_EXTENSION).delete();
-		new File(f.toString() + BVGraph.GRAPH_EXTENSION).delete();
 	}
 
 }
@@ -0,0 +1,387 @@
+package eu.fasten.core.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static eu.fasten.core.data.KnowledgeBase.gid;
+import static eu.fasten.core.data.KnowledgeBase.index;
+import static eu.fasten.core.data.KnowledgeBase.signature;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+import org.rocksdb.RocksDBException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.martiansoftware.jsap.FlaggedOption;
+import com.martiansoftware.jsap.JSAP;
+import com.martiansoftware.jsap.JSAPException;
+import com.martiansoftware.jsap.JSAPResult;
+import com.martiansoftware.jsap.Parameter;
+import com.martiansoftware.jsap.SimpleJSAP;
+import com.martiansoftware.jsap.UnflaggedOption;
+
+import eu.fasten.core.data.KnowledgeBase;
+import eu.fasten.core.data.KnowledgeBase.CallGraph;
+import eu.fasten.core.data.KnowledgeBase.CallGraphData;
+import eu.fasten.core.data.StorageProfile;
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.io.BinIO;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.logging.ProgressLogger;
+import it.unimi.dsi.webgraph.ImmutableGraph;
+import it.unimi.dsi.webgraph.LazyIntIterator;
+
+/**
+ * Per-revision reachability summaries of a {@link KnowledgeBase}.
+ *
+ * <p>
+ * The internal call structure of a revision never changes, so for each revision we can precompute,
+ * for each <em>entry node</em> (an internal node whose GID is called as an external node by some
+ * other revision), the set of <em>exits</em> (GIDs of external nodes) that it can reach. A global
+ * forward visit can then jump from revision to revision without performing a breadth-first visit
+ * inside each revision: this is what {@link #reachedEntries(KnowledgeBase, long)} does, returning
+ * the nodes at which such a visit enters each reached revision.
+ *
+ * <p>
+ * Summaries are built by {@link #build(KnowledgeBase)} (or by the command-line tool provided by
+ * this class) and remain correct when new revisions are added to the knowledge base; in that case,
+ * for revisions or entry nodes that have no summary the exits are computed on the fly. Each summary
+ * records the {@linkplain CallGraph#stamp stamp} of the call graph it was computed from, so that if a
+ * revision index is reused for a different call graph the stale summary is
+ * {@linkplain Summary#matches(CallGraph) detected} without reading the database, and the exits are
+ * computed on the fly as well.
+ */
+public class ReachabilitySummaries implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReachabilitySummaries.class);
+
+	/** The reachability summary of a revision call graph. */
+	public static final class Summary implements Serializable {
+		private static final long serialVersionUID = 2L;
+		/** The {@linkplain CallGraph#stamp stamp} of the call graph this summary was computed from. */
+		private final long stamp;
+		/** The GIDs of the external nodes of the revision, in LID order. */
+		private final long[] exits;
+		/** Maps the GID of each entry node to its entry number. */
+		private final Long2IntOpenHashMap entries;
+		/**
+		 * The exits reachable from entry number <var>i</var> are given by
+		 * <code>reachable[offset[i]..offset[i + 1])</code>.
+		 */
+		private final int[] offset;
+		/** The concatenated lists of reachable exits, as indices into {@link #exits}. */
+		private final int[] reachable;
+
+		private Summary(final long stamp, final long[] exits, final Long2IntOpenHashMap entries, final int[] offset, final int[] reachable) {
+			this.stamp = stamp;
+			this.exits = exits;
+			this.entries = entries;
+			this.offset = offset;
+			this.reachable = reachable;
+		}
+
+		/**
+		 * Returns whether this summary was computed from a given call graph, by comparing their
+		 * {@linkplain CallGraph#stamp stamps}; the data of the call graph is not needed.
+		 *
+		 * @param callGraph a revision call graph.
+		 * @return true if this summary was computed from <code>callGraph</code> (or, with negligible
+		 *         probability, from a call graph with the same stamp).
+		 */
+		public boolean matches(final CallGraph callGraph) {
+			return stamp == callGraph.stamp;
+		}
+
+		/**
+		 * Returns the number of entry nodes of this summary.
+		 *
+		 * @return the number of entry nodes of this summary.
+		 */
+		public int numEntries() {
+			return entries.size();
+		}
+
+		/**
+		 * Returns the GIDs of the exits reachable from a given entry node.
+		 *
+		 * @param gid the GID of an internal node.
+		 * @return the GIDs of the exits reachable from the node, or <code>null</code> if the node is not
+		 *         an entry node of this summary.
+		 */
+		public LongList reachableExits(final long gid) {
+			final int entry = entries.get(gid);
+			if (entry == -1) return null;
+			final LongArrayList result = new LongArrayList(offset[entry + 1] - offset[entry]);
+			for (int i = offset[entry]; i < offset[entry + 1]; i++) result.add(exits[reachable[i]]);
+			return result;
+		}
+	}
+
+	/** Maps revision indices to their summary. */
+	private final Long2ObjectOpenHashMap<Summary> summaries;
+
+	private ReachabilitySummaries(final Long2ObjectOpenHashMap<Summary> summaries) {
+		this.summaries = summaries;
+	}
+
+	/**
+	 * Returns the summary of a revision.
+	 *
+	 * @param index a revision index.
+	 * @return the summary of the revision, or <code>null</code> if no summary is available.
+	 */
+	public Summary summary(final long index) {
+		return summaries.get(index);
+	}
+
+	/**
+	 * Collects the LIDs of the external nodes reachable from a given node.
+	 *
+	 * @param graph a call graph.
+	 * @param nInternal the number of internal nodes of the call graph.
+	 * @param lid the starting LID.
+	 * @param mark an array of visit stamps, one per node.
+	 * @param stamp the stamp of this visit, different from all stamps in <code>mark</code>.
+	 * @param queue a queue, which must be empty.
+	 * @param exits a list to which the LIDs of the reachable exits will be added.
+	 */
+	private static void reachableExits(final ImmutableGraph graph, final int nInternal, final int lid, final int[] mark, final int stamp, final IntArrayFIFOQueue queue, final IntArrayList exits) {
+		queue.enqueue(lid);
+		mark[lid] = stamp;
+		while (!queue.isEmpty()) {
+			final int x = queue.dequeueInt();
+			final LazyIntIterator successors = graph.successors(x);
+			for (int s; (s = successors.nextInt()) != -1;) {
+				if (mark[s] == stamp) continue;
+				mark[s] = stamp;
+				// External nodes have no outgoing arcs
+				if (s >= nInternal) exits.add(s);
+				else queue.enqueue(s);
+			}
+		}
+	}
+
+	/**
+	 * Computes the summary of a revision call graph.
+	 *
+	 * @param callGraph the revision call graph.
+	 * @param isEntry a predicate on GIDs selecting the entry nodes.
+	 * @return the summary of the revision call graph.
+	 */
+	public static Summary summarize(final CallGraph callGraph, final LongPredicate isEntry) {
+		final CallGraphData callGraphData = callGraph.callGraphData();
+		final int nInternal = callGraph.nInternal;
+		final ImmutableGraph graph = callGraphData.rawGraph();
+		final int n = graph.numNodes();
+		final int[] mark = new int[n];
+		final IntArrayFIFOQueue queue = new IntArrayFIFOQueue();
+		final IntArrayList exits = new IntArrayList();
+
+		final Long2IntOpenHashMap entries = new Long2IntOpenHashMap();
+		entries.defaultReturnValue(-1);
+		final IntArrayList offset = new IntArrayList();
+		final IntArrayList reachable = new IntArrayList();
+		offset.add(0);
+
+		for (int lid = 0; lid < nInternal; lid++) {
+			final long gid = callGraphData.LID2GID[lid];
+			if (!isEntry.test(gid)) continue;
+			entries.put(gid, entries.size());
+			exits.clear();
+			reachableExits(graph, nInternal, lid, mark, lid + 1, queue, exits);
+			for (final int x : exits) reachable.add(x - nInternal);
+			offset.add(reachable.size());
+		}
+
+		return new Summary(callGraph.stamp, Arrays.copyOfRange(callGraphData.LID2GID, nInternal, n), entries, offset.toIntArray(), reachable.toIntArray());
+	}
+
+	/**
+	 * Builds the summaries of all revisions of a knowledge base; entry nodes are internal nodes whose
+	 * GID appears as an external node in some revision.
+	 *
+	 * @param kb a knowledge base.
+	 * @return the summaries of all revisions of <code>kb</code>.
+	 */
+	public static ReachabilitySummaries build(final KnowledgeBase kb) {
+		final ProgressLogger pl = new ProgressLogger(LOGGER);
+		pl.itemsName = "graphs";
+		pl.expectedUpdates = kb.callGraphs.size();
+		pl.start("Summarizing graphs...");
+		final Long2ObjectOpenHashMap<Summary> summaries = new Long2ObjectOpenHashMap<>();
+		for (final CallGraph callGraph : kb.callGraphs.values()) {
+			summaries.put(callGraph.index, summarize(callGraph, gid -> kb.calledBy(gid).hasNext()));
+			pl.lightUpdate();
+		}
+		pl.done();
+		return new ReachabilitySummaries(summaries);
+	}
+
+	/**
+	 * The state of the on-the-fly visits of a call to {@link #reachedEntries(KnowledgeBase, long)},
+	 * reused across revisions so that no per-revision array is allocated.
+	 */
+	private static final class Scratch {
+		/** Visit stamps, grown to the size of the largest call graph visited so far. */
+		private int[] mark = IntArrays.EMPTY_ARRAY;
+		/** The stamp of the last visit. */
+		private int stamp;
+		private final IntArrayFIFOQueue queue = new IntArrayFIFOQueue();
+		private final IntArrayList exits = new IntArrayList();
+
+		/**
+		 * Prepares a new visit of a call graph with a given number of nodes.
+		 *
+		 * @param n the number of nodes of the call graph.
+		 * @return the stamp of the new visit.
+		 */
+		private int next(final int n) {
+			if (mark.length < n) mark = new int[Math.max(n, mark.length + (mark.length >> 1))];
+			else if (stamp == Integer.MAX_VALUE) {
+				Arrays.fill(mark, 0);
+				stamp = 0;
+			}
+			exits.clear();
+			return ++stamp;
+		}
+	}
+
+	/**
+	 * Returns the GIDs of the exits reachable from a given node, using a summary if possible.
+	 *
+	 * @param kb the knowledge base.
+	 * @param sig the signature of a node.
+	 * @param scratch the state used by visits of revisions without a summary.
+	 * @return the GIDs of the exits reachable from the node.
+	 */
+	private LongList reachableExits(final KnowledgeBase kb, final long sig, final Scratch scratch) {
+		final long gid = gid(sig);
+		final long index = index(sig);
+		final CallGraph callGraph = kb.callGraphs.get(index);
+		final Summary summary = summaries.get(index);
+		if (summary != null && summary.matches(callGraph)) {
+			final LongList exits = summary.reachableExits(gid);
+			if (exits != null) return exits;
+		}
+
+		final CallGraphData callGraphData = callGraph.callGraphData();
+		final int stamp = scratch.next(callGraphData.numNodes());
+		reachableExits(callGraphData.rawGraph(), callGraph.nInternal, callGraphData.GID2LID.get(gid), scratch.mark, stamp, scratch.queue, scratch.exits);
+		final LongArrayList result = new LongArrayList(scratch.exits.size());
+		for (final int x : scratch.exits) result.add(callGraphData.LID2GID[x]);
+		return result;
+	}
+
+	/**
+	 * Returns the signatures of the entry points of the revisions reachable from a given node.
+	 *
+	 * <p>
+	 * The result contains <code>startSig</code> and, for every exit reachable from a node in the
+	 * result, the signatures of the nodes with the same GID in the revisions in which the GID is
+	 * internal. It is thus the subset of {@link KnowledgeBase#reaches(long)} made of the nodes at which
+	 * the visit enters a revision, and it touches exactly the same revisions. If <code>startSig</code>
+	 * is an external node, its GID is itself an exit: the result contains the entry points of the
+	 * visits from the nodes with the same GID in the revisions in which it is internal (whereas
+	 * {@link KnowledgeBase#reaches(long)} does not follow arcs out of an external starting node).
+	 *
+	 * <p>
+	 * Only the entry points are returned: summaries do not record the internal nodes reachable from
+	 * an entry node, so the full result of {@link KnowledgeBase#reaches(long)} cannot be recovered
+	 * without decoding the call graphs of the reached revisions. This method is thus suited to
+	 * questions about reached revisions (e.g., which dependencies are actually used), and call graphs
+	 * are decoded only for revisions or entry nodes without a valid summary.
+	 *
+	 * @param kb the knowledge base these summaries have been built from.
+	 * @param startSig the signature of the starting node.
+	 * @return the signatures of the entry points of the revisions reachable from
+	 *         <code>startSig</code>.
+	 */
+	public LongSet reachedEntries(final KnowledgeBase kb, final long startSig) {
+		final LongOpenHashSet result = new LongOpenHashSet();
+		final LongOpenHashSet expandedExits = new LongOpenHashSet();
+		// Visit queue
+		final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+		final Scratch scratch = new Scratch();
+		result.add(startSig);
+		final long startGID = gid(startSig);
+		if (kb.appearsIn(startGID, index(startSig))) queue.enqueue(startSig);
+		else {
+			// An external node leads to all revisions in which its GID is internal
+			expandedExits.add(startGID);
+			for (final LongIterator revisions = kb.appearsIn(startGID); revisions.hasNext();) {
+				final long s = signature(startGID, revisions.nextLong());
+				if (result.add(s)) queue.enqueue(s);
+			}
+		}
+
+		while (!queue.isEmpty()) {
+			final long sig = queue.dequeueLong();
+			for (final long exit : reachableExits(kb, sig, scratch)) {
+				// Each exit leads to the same nodes, no matter the revision it belongs to
+				if (!expandedExits.add(exit)) continue;
+				for (final LongIterator revisions = kb.appearsIn(exit); revisions.hasNext();) {
+					final long s = signature(exit, revisions.nextLong());
+					if (result.add(s)) queue.enqueue(s);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	public static void main(final String[] args) throws JSAPException, ClassNotFoundException, RocksDBException, IOException {
+		final SimpleJSAP jsap = new SimpleJSAP(ReachabilitySummaries.class.getName(),
+				"Computes per-revision reachability summaries for a prototype knowledge base.",
+				new Parameter[] {
+						new FlaggedOption("profile", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "profile", "The RocksDB storage profile (balanced, query or ingestion, optionally followed by a colon and overrides such as cache=4g); default: the value of the " + StorageProfile.PROFILE_PROPERTY + " system property, or balanced."),
+						new UnflaggedOption("kb", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The directory of the RocksDB instance containing the knowledge base." ),
+						new UnflaggedOption("kbmeta", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The file containing the knowledge base metadata." ),
+						new UnflaggedOption("summaries", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The file where the summaries will be stored." ),
+		});
+
+		final JSAPResult jsapResult = jsap.parse(args);
+		if ( jsap.messagePrinted() ) return;
+
+		final String kbDir = jsapResult.getString("kb");
+		if (!new File(kbDir).exists()) throw new IllegalArgumentException("No such directory: " + kbDir);
+		final String kbMetadataFilename = jsapResult.getString("kbmeta");
+		if (!new File(kbMetadataFilename).exists()) throw new IllegalArgumentException("No such file: " + kbMetadataFilename);
+		LOGGER.info("Loading KnowledgeBase metadata");
+		final KnowledgeBase kb = KnowledgeBase.getInstance(kbDir, kbMetadataFilename, true, StorageProfile.parseOrDefault(jsapResult.getString("profile")));
+		LOGGER.info("Number of graphs: " + kb.callGraphs.size());
+
+		final ReachabilitySummaries summaries = build(kb);
+		LOGGER.info("Closing KnowledgeBase");
+		kb.close();
+		BinIO.storeObject(summaries, jsapResult.getString("summaries"));
+	}
+}
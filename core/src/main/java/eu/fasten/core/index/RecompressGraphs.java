@@ -38,6 +38,7 @@ import com.martiansoftware.jsap.UnflaggedOption;
 import eu.fasten.core.data.KnowledgeBase;
 import eu.fasten.core.data.KnowledgeBase.CallGraph;
 import eu.fasten.core.data.KnowledgeBase.CallGraphData;
+import eu.fasten.core.data.StorageProfile;
 import it.unimi.dsi.Util;
 import it.unimi.dsi.logging.ProgressLogger;
 import it.unimi.dsi.util.Properties;
@@ -65,6 +66,7 @@ public class RecompressGraphs {
 						new FlaggedOption("n", JSAP.LONG_PARSER, Long.toString(Long.MAX_VALUE), JSAP.NOT_REQUIRED, 'n', "n", "Analyze just this number of graphs."),
 						new Switch("llp", 'l', "llp", "Apply Layered Label Propagation before recompression."),
 						new Switch("eliasFano", 'e', "elias-fano", "Recompress as Elias-Fano."),
+						new FlaggedOption("profile", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "profile", "The RocksDB storage profile (balanced, query or ingestion, optionally followed by a colon and overrides such as cache=4g); default: the value of the " + StorageProfile.PROFILE_PROPERTY + " system property, or balanced."),
 						new UnflaggedOption("kb", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The directory of the RocksDB instance containing the knowledge base." ),
 						new UnflaggedOption("kbmeta", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The file containing the knowledge base metadata." ),
 		});
@@ -94,7 +96,7 @@ public class RecompressGraphs {
 		final String kbMetadataFilename = jsapResult.getString("kbmeta");
 		if (!new File(kbMetadataFilename).exists()) throw new IllegalArgumentException("No such file: " + kbMetadataFilename);
 		LOGGER.info("Loading KnowledgeBase metadata");
-		final KnowledgeBase kb = KnowledgeBase.getInstance(kbDir, kbMetadataFilename, true);
+		final KnowledgeBase kb = KnowledgeBase.getInstance(kbDir, kbMetadataFilename, true, StorageProfile.parseOrDefault(jsapResult.getString("profile")));
 
 		final ProgressLogger pl = new ProgressLogger();
 
@@ -150,7 +152,7 @@ public class RecompressGraphs {
 			}
 			Properties properties = new Properties(f + BVGraph.PROPERTIES_EXTENSION);
 			System.out.print('\t');
-			System.out.print(callGraphData.graphProperties.get("bitsperlink"));
+			System.out.print(callGraphData.graphProperties().get("bitsperlink"));
 			System.out.print('\t');
 			System.out.print(properties.getString("bitsperlink"));
 
@@ -161,7 +163,7 @@ public class RecompressGraphs {
 			}
 			properties = new Properties(f + BVGraph.PROPERTIES_EXTENSION);
 			System.out.print('\t');
-			System.out.print(callGraphData.transposeProperties.get("bitsperlink"));
+			System.out.print(callGraphData.transposeProperties().get("bitsperlink"));
 			System.out.print('\t');
 			System.out.print(properties.getString("bitsperlink"));
 			System.out.println();
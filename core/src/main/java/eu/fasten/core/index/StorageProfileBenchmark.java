@@ -0,0 +1,182 @@
+package eu.fasten.core.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.apache.commons.io.FileUtils;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.CompressionType;
+import org.rocksdb.FlushOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.primitives.Longs;
+import com.martiansoftware.jsap.FlaggedOption;
+import com.martiansoftware.jsap.JSAP;
+import com.martiansoftware.jsap.JSAPException;
+import com.martiansoftware.jsap.JSAPResult;
+import com.martiansoftware.jsap.Parameter;
+import com.martiansoftware.jsap.SimpleJSAP;
+import com.martiansoftware.jsap.UnflaggedOption;
+
+import eu.fasten.core.data.StorageProfile;
+import it.unimi.dsi.Util;
+
+/**
+ * Compares {@linkplain StorageProfile storage profiles} on a synthetic workload shaped like a
+ * graph database: values of a given size indexed by 8-byte revision indices.
+ *
+ * <p>
+ * For each profile, a fresh database is filled by batched writes in random key order (the workload
+ * of an ingestion node); the ingestion time includes waiting for the background compactions caused
+ * by the writes. The database is then probed, as it is, by random lookups of existing keys and of
+ * missing keys (the workload of a query node; missing keys are typical of lookups in the
+ * {@linkplain eu.fasten.core.data.KnowledgeBase#APPEARS_IN revision indices}). The ingestion
+ * profile should show the best ingestion throughput, and profiles with Bloom filters should answer
+ * lookups of missing keys several times faster than lookups of existing keys. Lookups benefit from
+ * the size of the block cache only if the database does not fit in the smaller caches, so the
+ * number and size of values should be chosen accordingly (or caches should be shrunk using
+ * overrides, e.g., <code>query:cache=64m</code>).
+ */
+public class StorageProfileBenchmark {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(StorageProfileBenchmark.class);
+
+	/** The results of a run. */
+	private static final class Result {
+		double writeSeconds, compactSeconds, hitSeconds, missSeconds;
+		long sstFiles;
+	}
+
+	private static Result run(final StorageProfile profile, final File dir, final int n, final int valueSize, final int lookups, final long seed) throws RocksDBException, InterruptedException {
+		final Result result = new Result();
+		final SplittableRandom random = new SplittableRandom(seed);
+		// Values are half random and half zeroes, so RocksDB compression has something to do
+		final byte[] value = new byte[valueSize];
+		try (final StorageProfile.Resources resources = profile.resources()) {
+			final List<ColumnFamilyDescriptor> cfDescriptors = Collections.singletonList(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, resources.columnFamilyOptions(CompressionType.LZ4_COMPRESSION)));
+			final List<ColumnFamilyHandle> handles = new ArrayList<>();
+			try (final RocksDB db = RocksDB.open(resources.dbOptions(), dir.toString(), cfDescriptors, handles); final ColumnFamilyHandle handle = handles.get(0)) {
+				// Revisions do not arrive in index order
+				final long[] keys = new long[n];
+				for (int i = 0; i < n; i++) keys[i] = 2L * i;
+				for (int i = n; i-- > 1;) {
+					final int j = random.nextInt(i + 1);
+					final long t = keys[i];
+					keys[i] = keys[j];
+					keys[j] = t;
+				}
+				long start = System.nanoTime();
+				try (final WriteOptions writeOptions = new WriteOptions()) {
+					for (int i = 0; i < n;) {
+						try (final WriteBatch batch = new WriteBatch()) {
+							for (final int end = Math.min(n, i + 100); i < end; i++) {
+								for (int j = 0; j < valueSize / 2; j++) value[j] = (byte)random.nextInt();
+								// Even keys only, so odd keys are missing
+								batch.put(handle, Longs.toByteArray(keys[i]), value);
+							}
+							db.write(writeOptions, batch);
+						}
+					}
+				}
+				result.writeSeconds = (System.nanoTime() - start) / 1E9;
+
+				start = System.nanoTime();
+				try (final FlushOptions flushOptions = new FlushOptions().setWaitForFlush(true)) {
+					db.flush(flushOptions, handle);
+				}
+				while (db.getLongProperty(handle, "rocksdb.compaction-pending") != 0 || db.getLongProperty(handle, "rocksdb.num-running-compactions") != 0) Thread.sleep(10);
+				result.compactSeconds = (System.nanoTime() - start) / 1E9;
+				result.sstFiles = db.getLiveFilesMetaData().size();
+
+				start = System.nanoTime();
+				for (int i = 0; i < lookups; i++) if (db.get(handle, Longs.toByteArray(2L * random.nextInt(n))) == null) throw new AssertionError();
+				result.hitSeconds = (System.nanoTime() - start) / 1E9;
+
+				start = System.nanoTime();
+				for (int i = 0; i < lookups; i++) if (db.get(handle, Longs.toByteArray(2L * random.nextInt(n) + 1)) != null) throw new AssertionError();
+				result.missSeconds = (System.nanoTime() - start) / 1E9;
+			}
+		}
+		return result;
+	}
+
+	public static void main(final String[] args) throws JSAPException, RocksDBException, IOException, InterruptedException {
+		final SimpleJSAP jsap = new SimpleJSAP(StorageProfileBenchmark.class.getName(),
+				"Compares RocksDB storage profiles on a synthetic workload.",
+				new Parameter[] {
+						new FlaggedOption("n", JSAP.INTEGER_PARSER, "100000", JSAP.NOT_REQUIRED, 'n', "n", "The number of values to store."),
+						new FlaggedOption("valueSize", JSAP.INTEGER_PARSER, "4096", JSAP.NOT_REQUIRED, 's', "value-size", "The size in bytes of each value."),
+						new FlaggedOption("lookups", JSAP.INTEGER_PARSER, "200000", JSAP.NOT_REQUIRED, 'l', "lookups", "The number of lookups of existing (and of missing) keys."),
+						new FlaggedOption("seed", JSAP.LONG_PARSER, "0", JSAP.NOT_REQUIRED, 'S', "seed", "The seed of the pseudorandom number generator."),
+						new FlaggedOption("tmp", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, 't', "tmp", "A directory where the databases will be created (default: the system temporary directory)."),
+						new UnflaggedOption("profile", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.GREEDY, "The profiles to compare (default: ingestion, balanced and query)."),
+		});
+
+		final JSAPResult jsapResult = jsap.parse(args);
+		if ( jsap.messagePrinted() ) return;
+
+		final int n = jsapResult.getInt("n");
+		final int valueSize = jsapResult.getInt("valueSize");
+		final int lookups = jsapResult.getInt("lookups");
+		final String[] specs = jsapResult.userSpecified("profile") ? jsapResult.getStringArray("profile") : new String[] { "ingestion", "balanced", "query" };
+
+		RocksDB.loadLibrary();
+		// Warm up the JVM and the native library
+		final File warmUp = Files.createTempDirectory("bench").toFile();
+		try {
+			run(StorageProfile.BALANCED, warmUp, Math.max(1, n / 10), valueSize, Math.max(1, lookups / 10), jsapResult.getLong("seed"));
+		} finally {
+			FileUtils.deleteDirectory(warmUp);
+		}
+
+		final StringBuilder report = new StringBuilder();
+		for (final String spec : specs) {
+			final StorageProfile profile = StorageProfile.parse(spec);
+			final File dir = jsapResult.userSpecified("tmp") ? Files.createTempDirectory(new File(jsapResult.getString("tmp")).toPath(), "bench").toFile() : Files.createTempDirectory("bench").toFile();
+			LOGGER.info("Benchmarking profile " + profile + "...");
+			try {
+				final Result result = run(profile, dir, n, valueSize, lookups, jsapResult.getLong("seed"));
+				report.append(String.format("%-10s ingestion: %8s/s (writes %.2fs + compaction %.2fs, %d SST files)  hit lookups: %8s/s  miss lookups: %8s/s%n",
+						profile.name,
+						Util.formatSize((long)(n * (double)valueSize / (result.writeSeconds + result.compactSeconds))) + "B",
+						result.writeSeconds,
+						result.compactSeconds,
+						result.sstFiles,
+						Util.formatSize((long)(lookups / result.hitSeconds)),
+						Util.formatSize((long)(lookups / result.missSeconds))));
+			} finally {
+				FileUtils.deleteDirectory(dir);
+			}
+		}
+		System.out.print(report);
+	}
+}
@@ -22,8 +22,29 @@ import java.util.Collection;
 
 import eu.fasten.core.data.FastenURI;
 import eu.fasten.core.data.KnowledgeBase;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import it.unimi.dsi.fastutil.objects.ObjectIterators;
 
 public interface Query {
 	public Collection<FastenURI> execute(final KnowledgeBase kb);
+
+	/**
+	 * Executes this query, returning its results lazily.
+	 *
+	 * <p>
+	 * The default implementation {@linkplain #execute(KnowledgeBase) executes} the query and skips
+	 * and limits the results; queries that can be evaluated incrementally should override this
+	 * method so that the cost of the evaluation depends on the number of results consumed.
+	 *
+	 * @param kb the knowledge base.
+	 * @param skip the number of results to skip.
+	 * @param limit the maximum number of results to return.
+	 * @return an iterator over the results, or <code>null</code> if the query cannot be evaluated.
+	 */
+	public default ObjectIterator<FastenURI> iterator(final KnowledgeBase kb, final long skip, final long limit) {
+		final Collection<FastenURI> result = execute(kb);
+		if (result == null) return null;
+		return ObjectIterators.asObjectIterator(result.stream().skip(skip).limit(limit).iterator());
+	}
 }
 
@@ -30,15 +30,19 @@ import org.rocksdb.RocksDBException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.martiansoftware.jsap.FlaggedOption;
 import com.martiansoftware.jsap.JSAP;
 import com.martiansoftware.jsap.JSAPException;
 import com.martiansoftware.jsap.JSAPResult;
 import com.martiansoftware.jsap.Parameter;
 import com.martiansoftware.jsap.SimpleJSAP;
+import com.martiansoftware.jsap.Switch;
 import com.martiansoftware.jsap.UnflaggedOption;
 
 import eu.fasten.core.data.FastenURI;
 import eu.fasten.core.data.KnowledgeBase;
+import eu.fasten.core.data.StorageProfile;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
 /** A sample in-memory indexer that reads, compresses and stores in memory
  *  graphs stored in JSON format and answers to impact queries.
  *
@@ -46,6 +50,8 @@ import eu.fasten.core.data.KnowledgeBase;
 public class QueryEngine {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(QueryEngine.class);
+	/** The maximum number of results printed for each query. */
+	private static final int MAX_RESULTS = 10;
 
 	public static class ReachabilityQuery implements Query {
 		private final FastenURI fastenURI;
@@ -58,6 +64,11 @@ public class QueryEngine {
 		public Collection<FastenURI> execute(final KnowledgeBase kb) {
 			return kb.reaches(fastenURI);
 		}
+
+		@Override
+		public ObjectIterator<FastenURI> iterator(final KnowledgeBase kb, final long skip, final long limit) {
+			return kb.reachesIterator(fastenURI, skip, limit);
+		}
 	}
 
 	public static class CoreachabilityQuery implements Query {
@@ -71,6 +82,31 @@ public class QueryEngine {
 		public Collection<FastenURI> execute(final KnowledgeBase kb) {
 			return kb.coreaches(fastenURI);
 		}
+
+		@Override
+		public ObjectIterator<FastenURI> iterator(final KnowledgeBase kb, final long skip, final long limit) {
+			return kb.coreachesIterator(fastenURI, skip, limit);
+		}
+	}
+
+	/**
+	 * A query returning a shortest call chain between two methods (see
+	 * {@link KnowledgeBase#shortestPath(FastenURI, FastenURI)}). The result is empty if there is no
+	 * such chain.
+	 */
+	public static class PathQuery implements Query {
+		private final FastenURI from;
+		private final FastenURI to;
+
+		public PathQuery(final FastenURI from, final FastenURI to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Collection<FastenURI> execute(final KnowledgeBase kb) {
+			return kb.shortestPath(from, to);
+		}
 	}
 
 	@SuppressWarnings("boxing")
@@ -78,6 +114,8 @@ public class QueryEngine {
 		final SimpleJSAP jsap = new SimpleJSAP( QueryEngine.class.getName(),
 				"Searches a given knowledge base (associated to a database)",
 				new Parameter[] {
+						new FlaggedOption("profile", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "profile", "The RocksDB storage profile (balanced, query or ingestion, optionally followed by a colon and overrides such as cache=4g); default: the value of the " + StorageProfile.PROFILE_PROPERTY + " system property, or balanced."),
+						new Switch("count", 'c', "count", "Count all results of each query, and report the visit throughput, even if only the first ones are printed."),
 						new UnflaggedOption("kb", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The directory of the RocksDB instance containing the knowledge base." ),
 						new UnflaggedOption("kbmeta", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NOT_GREEDY, "The file containing the knowledge base metadata." ),
 		});
@@ -88,7 +126,7 @@ public class QueryEngine {
 		final String kbDir = jsapResult.getString("kb");
 		final String kbMetadataFilename = jsapResult.getString("kbmeta");
 
-		final KnowledgeBase kb = KnowledgeBase.getInstance(kbDir, kbMetadataFilename, true);
+		final KnowledgeBase kb = KnowledgeBase.getInstance(kbDir, kbMetadataFilename, true, StorageProfile.parseOrDefault(jsapResult.getString("profile")));
 
 		final BufferedReader br = new BufferedReader( new InputStreamReader( jsapResult.userSpecified( "input" ) ? new FileInputStream( jsapResult.getString( "input") ) : System.in ) );
 
@@ -101,9 +139,12 @@ public class QueryEngine {
 			}
 			if ( q.length() == 0 ) continue;
 
-			final FastenURI uri;
+			// Path queries have a second URI, separated by whitespace
+			final String[] uris = q.substring(1).trim().split("\\s+");
+			final FastenURI uri, target;
 			try {
-				uri = FastenURI.create(q.substring(1));
+				uri = FastenURI.create(uris[0]);
+				target = uris.length > 1 ? FastenURI.create(uris[1]) : null;
 			}
 			catch(final Exception e) {
 				e.printStackTrace(System.err);
@@ -118,27 +159,40 @@ public class QueryEngine {
 			case '-':
 				query = new CoreachabilityQuery(uri);
 				break;
+			case '?':
+				if (target == null) {
+					System.err.println("Path queries need a target URI");
+					continue;
+				}
+				query = new PathQuery(uri, target);
+				break;
 			default:
 				System.err.println("Unknown query operator " + q.charAt(0));
 				continue;
 			}
+			final boolean count = jsapResult.getBoolean("count");
 			long elapsed = - System.nanoTime();
-			final Collection<FastenURI> result = query.execute(kb);
-			if (result == null) {
+			// Unless we count, just one more than we print, to know whether there are more results
+			final Iterator<FastenURI> iterator = query.iterator(kb, 0, count ? Long.MAX_VALUE : MAX_RESULTS + 1);
+			if (iterator == null) {
 				System.out.println("Method not indexed");
 				continue;
 			}
 
-			if (result.size() == 0) {
+			if (!iterator.hasNext()) {
 				System.out.println("Query returned no results");
 				continue;
 			}
 
+			long results;
+			for(results = 0; iterator.hasNext() && results < MAX_RESULTS; results++) System.out.println(iterator.next());
+			final boolean more = iterator.hasNext();
+			if (more) System.out.println("[...]");
+			if (count) for(; iterator.hasNext(); results++) iterator.next();
 			elapsed += System.nanoTime();
-			System.err.printf("Elapsed: %.3fs (%d results, %.3f nodes/s)\n", elapsed / 1E09, result.size(), 1E09 * result.size() / elapsed);
-			final Iterator<FastenURI> iterator = result.iterator();
-			for(int i = 0; iterator.hasNext() && i < 10; i++) System.out.println(iterator.next());
-			if (result.size() > 10) System.out.println("[...]");
+			// The total is known only if the iterator has been exhausted
+			if (count || !more) System.err.printf("Elapsed: %.3fs (%d results, %.3f nodes/s)\n", elapsed / 1E09, results, 1E09 * results / elapsed);
+			else System.err.printf("Elapsed: %.3fs (%d results printed; use --count for the total)\n", elapsed / 1E09, results);
 		}
 
 		kb.close();
@@ -0,0 +1,116 @@
+package eu.fasten.core.data;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import eu.fasten.core.data.KnowledgeBase.CallGraphData;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.webgraph.ArrayListMutableGraph;
+import it.unimi.dsi.webgraph.ImmutableGraph;
+
+public class CallGraphDataCacheTest {
+	private static CallGraphData callGraphData(final int size) {
+		final ImmutableGraph graph = new ArrayListMutableGraph(2, new int[][] { { 0, 1 } }).immutableView();
+		final ImmutableGraph transpose = new ArrayListMutableGraph(2, new int[][] { { 1, 0 } }).immutableView();
+		final Long2IntOpenHashMap GID2LID = new Long2IntOpenHashMap(new long[] { 0, 1 }, new int[] { 0, 1 });
+		return new CallGraphData(graph, transpose, new Properties(), new Properties(), new long[] { 0, 1 }, GID2LID, 1, size);
+	}
+
+	@Test
+	public void testLRU() {
+		final CallGraphDataCache cache = new CallGraphDataCache(30);
+		final CallGraphData a = callGraphData(10), b = callGraphData(10), c = callGraphData(10), d = callGraphData(10);
+		cache.put(0, a);
+		cache.put(1, b);
+		cache.put(2, c);
+		assertEquals(30, cache.usedBytes());
+		assertSame(a, cache.get(0));
+		// 1 is now the least recently used entry
+		cache.put(3, d);
+		assertNull(cache.get(1));
+		assertNotNull(cache.get(0));
+		assertEquals(3, cache.size());
+		assertEquals(30, cache.usedBytes());
+		assertEquals(2, cache.hits());
+		assertEquals(1, cache.misses());
+		assertEquals(1, cache.evictions());
+
+		// Too large
+		cache.put(4, callGraphData(31));
+		assertNull(cache.peek(4));
+
+		cache.budget(10);
+		assertEquals(1, cache.size());
+		assertNotNull(cache.peek(0));
+	}
+
+	@Test
+	public void testPinning() {
+		final CallGraphDataCache cache = new CallGraphDataCache(20);
+		cache.pin(0);
+		cache.put(0, callGraphData(10));
+		cache.put(1, callGraphData(10));
+		cache.get(1);
+		cache.put(2, callGraphData(10));
+		assertNotNull(cache.peek(0));
+		assertNull(cache.peek(1));
+		assertNotNull(cache.peek(2));
+
+		// Pinned entries are cached even if larger than the budget
+		cache.pin(3);
+		cache.put(3, callGraphData(30));
+		assertNotNull(cache.peek(3));
+		assertEquals(2, cache.size());
+		cache.unpin(3);
+		assertNull(cache.peek(3));
+		assertEquals(10, cache.usedBytes());
+	}
+
+	@Test
+	public void testSteadyState() {
+		final CallGraphDataCache cache = new CallGraphDataCache(100);
+		for (int index = 0; index < 10000; index++) {
+			assertNull(cache.get(index));
+			cache.put(index, callGraphData(10));
+			// Keep the first revision alive
+			assertNotNull(cache.get(0));
+		}
+		assertEquals(10, cache.size());
+		assertEquals(100, cache.usedBytes());
+		assertEquals(10000 - 10, cache.evictions());
+		assertNotNull(cache.peek(0));
+		for (int index = 10000 - 9; index < 10000; index++) assertNotNull(cache.peek(index));
+
+		// An unpinned revision becomes the most recently used one
+		cache.pin(0);
+		cache.put(10000, callGraphData(10));
+		cache.unpin(0);
+		cache.put(10001, callGraphData(10));
+		assertNotNull(cache.peek(0));
+		assertNull(cache.peek(10000 - 9));
+	}
+}
@@ -0,0 +1,107 @@
+package eu.fasten.core.data;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+import it.unimi.dsi.webgraph.ArrayListMutableGraph;
+import it.unimi.dsi.webgraph.ImmutableGraph;
+
+public class CondensationTest {
+	@Test
+	public void testCondensation() {
+		// 0 -> 1 -> 2 -> 0 form a cycle, which calls 3, which calls 4
+		final ImmutableGraph graph = new ArrayListMutableGraph(5, new int[][] { { 0, 1 }, { 1, 2 }, { 2, 0 }, { 2, 3 }, { 0, 3 }, { 3, 4 } }).immutableView();
+		final Condensation condensation = Condensation.compute(graph);
+		assertEquals(3, condensation.numComponents());
+		final int c = condensation.component[0];
+		assertEquals(c, condensation.component[1]);
+		assertEquals(c, condensation.component[2]);
+		assertNotEquals(c, condensation.component[3]);
+		assertEquals(3, condensation.size(c));
+		assertArrayEquals(new int[] { 0, 1, 2 }, new int[] { condensation.member(c, 0), condensation.member(c, 1), condensation.member(c, 2) });
+		// Duplicate arcs between components are collapsed
+		assertEquals(1, condensation.outdegree(c));
+		assertEquals(condensation.component[3], condensation.successor(c, 0));
+		assertEquals(0, condensation.indegree(c));
+		final int d = condensation.component[4];
+		assertEquals(1, condensation.indegree(d));
+		assertEquals(condensation.component[3], condensation.predecessor(d, 0));
+		assertEquals(0, condensation.outdegree(d));
+	}
+
+	@Test
+	public void testSerialization() {
+		final ImmutableGraph graph = new ArrayListMutableGraph(4, new int[][] { { 0, 1 }, { 1, 0 }, { 1, 2 }, { 2, 3 } }).immutableView();
+		final Condensation condensation = Condensation.compute(graph);
+		final Kryo kryo = new Kryo();
+		kryo.register(int[].class);
+		final FastByteArrayOutputStream fbaos = new FastByteArrayOutputStream();
+		final Output output = new Output(fbaos);
+		condensation.write(kryo, output);
+		output.flush();
+		final Input input = new Input(fbaos.array, 0, fbaos.length);
+		final Condensation read = Condensation.read(kryo, input);
+		assertArrayEquals(condensation.component, read.component);
+		for (int c = 0; c < condensation.numComponents(); c++) {
+			assertEquals(condensation.outdegree(c), read.outdegree(c));
+			assertEquals(condensation.indegree(c), read.indegree(c));
+			assertEquals(condensation.size(c), read.size(c));
+		}
+		// Data written without a condensation
+		assertNull(Condensation.read(kryo, input));
+	}
+
+	@Test
+	public void testInPlaceSerialization() throws IOException {
+		final ImmutableGraph graph = new ArrayListMutableGraph(4, new int[][] { { 0, 1 }, { 1, 0 }, { 1, 2 }, { 2, 3 } }).immutableView();
+		final Condensation condensation = Condensation.compute(graph);
+		final FastByteArrayOutputStream fbaos = new FastByteArrayOutputStream();
+		final DataOutputStream dos = new DataOutputStream(fbaos);
+		condensation.write(dos);
+		dos.writeInt(42);
+		dos.flush();
+		final ByteBuffer buffer = ByteBuffer.wrap(fbaos.array, 0, fbaos.length);
+		final Condensation read = Condensation.read(buffer);
+		assertEquals(42, buffer.getInt());
+		assertArrayEquals(condensation.component, read.component);
+		for (int c = 0; c < condensation.numComponents(); c++) {
+			assertEquals(condensation.outdegree(c), read.outdegree(c));
+			for (int i = 0; i < condensation.outdegree(c); i++) assertEquals(condensation.successor(c, i), read.successor(c, i));
+			assertEquals(condensation.indegree(c), read.indegree(c));
+			for (int i = 0; i < condensation.indegree(c); i++) assertEquals(condensation.predecessor(c, i), read.predecessor(c, i));
+			assertEquals(condensation.size(c), read.size(c));
+			for (int i = 0; i < condensation.size(c); i++) assertEquals(condensation.member(c, i), read.member(c, i));
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package eu.fasten.core.data;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.DBOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+import com.google.common.primitives.Longs;
+
+import it.unimi.dsi.fastutil.longs.LongIterators;
+
+public class GIDRevisionIndexTest {
+
+	@Test
+	public void testEncoding() {
+		for (final long[] revisions : new long[][] { {}, { 0 }, { 1, 2, 3 }, { 5, 1000, 1L << 40 }, { -3, 0, Long.MAX_VALUE } })
+			assertArrayEquals(revisions, LongIterators.unwrap(GIDRevisionIndex.decode(GIDRevisionIndex.encode(revisions))));
+	}
+
+	@Test
+	public void testMergedEncoding() {
+		// Values appended by the merge operator are sequences of lists separated by a zero byte
+		final byte[] first = GIDRevisionIndex.encode(new long[] { 1, 5, 9 }), second = GIDRevisionIndex.encode(new long[] { 3 }), third = GIDRevisionIndex.encode(new long[] { 5 });
+		final byte[] value = new byte[first.length + second.length + third.length + 2];
+		System.arraycopy(first, 0, value, 0, first.length);
+		System.arraycopy(second, 0, value, first.length + 1, second.length);
+		System.arraycopy(third, 0, value, first.length + second.length + 2, third.length);
+		assertArrayEquals(new long[] { 1, 3, 5, 9 }, LongIterators.unwrap(GIDRevisionIndex.decode(value)));
+	}
+
+	@Test
+	public void testIndex() throws IOException, RocksDBException {
+		final File dir = Files.createTempDirectory(GIDRevisionIndexTest.class.getSimpleName()).toFile();
+		RocksDB.loadLibrary();
+		final List<ColumnFamilyDescriptor> cfDescriptors = Arrays.asList(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, new ColumnFamilyOptions()), new ColumnFamilyDescriptor(KnowledgeBase.APPEARS_IN, new ColumnFamilyOptions().setMergeOperator(GIDRevisionIndex.MERGE_OPERATOR)));
+		final List<ColumnFamilyHandle> handles = new ArrayList<>();
+		try (final RocksDB db = RocksDB.open(new DBOptions().setCreateIfMissing(true).setCreateMissingColumnFamilies(true), dir.toString(), cfDescriptors, handles)) {
+			final GIDRevisionIndex index = new GIDRevisionIndex(db, handles.get(1));
+			assertTrue(index.isEmpty(7));
+			index.add(7, 10);
+			index.add(7, 3);
+			index.add(7, 20);
+			index.add(7, 10);
+			try (final WriteBatch batch = new WriteBatch(); final WriteOptions writeOptions = new WriteOptions()) {
+				index.add(batch, 8, 3);
+				index.add(batch, 7, 30);
+				db.write(writeOptions, batch);
+			}
+			assertFalse(index.isEmpty(7));
+			assertEquals(2, index.touched());
+			assertArrayEquals(new long[] { 3, 10, 20, 30 }, LongIterators.unwrap(index.revisions(7)));
+			assertArrayEquals(new long[] { 3 }, LongIterators.unwrap(index.revisions(8)));
+			assertArrayEquals(new long[] {}, LongIterators.unwrap(index.revisions(9)));
+
+			// Compaction rewrites values as single lists
+			index.compact();
+			assertEquals(0, index.touched());
+			assertArrayEquals(GIDRevisionIndex.encode(new long[] { 3, 10, 20, 30 }), db.get(handles.get(1), Longs.toByteArray(7)));
+			assertArrayEquals(GIDRevisionIndex.encode(new long[] { 3 }), db.get(handles.get(1), Longs.toByteArray(8)));
+			index.add(7, 5);
+			assertArrayEquals(new long[] { 3, 5, 10, 20, 30 }, LongIterators.unwrap(index.revisions(7)));
+			for (final ColumnFamilyHandle handle : handles) handle.close();
+		} finally {
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package eu.fasten.core.data;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+public class ReachabilityCacheTest {
+
+	@Test
+	public void testCache() {
+		final ReachabilityCache cache = new ReachabilityCache(1000);
+		final LongOpenHashSet forward = new LongOpenHashSet(new long[] { KnowledgeBase.signature(1, 0), KnowledgeBase.signature(2, 0), KnowledgeBase.signature(2, 5) });
+		final LongOpenHashSet backward = new LongOpenHashSet(new long[] { KnowledgeBase.signature(1, 0), KnowledgeBase.signature(7, 3) });
+		final long start = KnowledgeBase.signature(1, 0);
+		cache.put(start, true, forward);
+		cache.put(start, false, backward);
+		assertEquals(2, cache.size());
+		assertEquals(forward, cache.get(start, true));
+		assertEquals(backward, cache.get(start, false));
+		assertNull(cache.get(KnowledgeBase.signature(2, 0), true));
+		assertEquals(2, cache.hits());
+		assertEquals(1, cache.misses());
+
+		// Forward results are invalidated by revisions, backward results by GIDs
+		cache.invalidate(new LongOpenHashSet(new long[] { 3 }), new LongOpenHashSet(new long[] { 2 }));
+		assertEquals(2, cache.size());
+		cache.invalidate(new LongOpenHashSet(new long[] { 5 }), new LongOpenHashSet());
+		assertNull(cache.get(start, true));
+		assertEquals(backward, cache.get(start, false));
+		cache.invalidate(new LongOpenHashSet(), new LongOpenHashSet(new long[] { 7 }));
+		assertNull(cache.get(start, false));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.usedBytes());
+		assertEquals(2, cache.invalidations());
+	}
+
+	@Test
+	public void testOrder() {
+		final ReachabilityCache cache = new ReachabilityCache(1000);
+		// Results are returned in the order in which they were cached
+		final LongLinkedOpenHashSet result = new LongLinkedOpenHashSet(new long[] { KnowledgeBase.signature(5, 2), KnowledgeBase.signature(1, 0), KnowledgeBase.signature(7, 2), KnowledgeBase.signature(3, 1) });
+		cache.put(0, true, result);
+		assertEquals(new LongArrayList(result.iterator()), new LongArrayList(cache.get(0, true).iterator()));
+	}
+
+	@Test
+	public void testEviction() {
+		final ReachabilityCache cache = new ReachabilityCache(36);
+		final LongOpenHashSet result = new LongOpenHashSet(new long[] { 1, 2, 3 });
+		// Each result takes 4 bytes, plus 8 bytes for its summary (a single revision)
+		cache.put(0, true, result);
+		cache.put(1, true, result);
+		cache.put(2, true, result);
+		cache.get(0, true);
+		// 1 is now the least recently used entry
+		cache.put(3, true, result);
+		assertNull(cache.get(1, true));
+		assertEquals(result, cache.get(0, true));
+		assertEquals(1, cache.evictions());
+		assertEquals(3, cache.size());
+	}
+}
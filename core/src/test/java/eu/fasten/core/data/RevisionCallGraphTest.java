@@ -206,4 +206,26 @@ public class RevisionCallGraphTest {
         assertJsonEquals(new JSONObject(callGraph.replace(" ", "")), cg.toJSON());
 	}
 
+	@Test
+	public void testVersionMatching() throws JSONException {
+		assertEquals(0, Integer.signum(RevisionCallGraph.Constraint.compareVersions("1.0", "1.0")));
+		assertEquals(-1, Integer.signum(RevisionCallGraph.Constraint.compareVersions("1.2", "1.10")));
+		assertEquals(-1, Integer.signum(RevisionCallGraph.Constraint.compareVersions("1.0", "1.0.1")));
+		assertEquals(1, Integer.signum(RevisionCallGraph.Constraint.compareVersions("2.0.0", "2.0-rc1")));
+		assertEquals(-1, Integer.signum(RevisionCallGraph.Constraint.compareVersions("2.0-rc1", "2.0-rc2")));
+
+		final List<List<RevisionCallGraph.Dependency>> depset = RevisionCallGraph.Dependency.depset(new JSONArray("[[{ \"forge\": \"mvn\", \"product\": \"a\", \"constraints\": [\"[1.0..2.0]\", \"[4.2..]\"]}]]"));
+		final RevisionCallGraph.Dependency dependency = depset.get(0).get(0);
+		Assertions.assertTrue(dependency.matches("1.5"));
+		Assertions.assertTrue(dependency.matches("2.0"));
+		Assertions.assertFalse(dependency.matches("3.0"));
+		Assertions.assertTrue(dependency.matches("10.0"));
+
+		Assertions.assertTrue(RevisionCallGraph.Dependency.admits(depset, "mvn", "a", "1.1"));
+		Assertions.assertFalse(RevisionCallGraph.Dependency.admits(depset, "mvn", "a", "0.9"));
+		Assertions.assertFalse(RevisionCallGraph.Dependency.admits(depset, null, "a", "0.9"));
+		// Products or forges not in the depset are not constrained
+		Assertions.assertTrue(RevisionCallGraph.Dependency.admits(depset, "mvn", "b", "0.9"));
+		Assertions.assertTrue(RevisionCallGraph.Dependency.admits(depset, "other", "a", "0.9"));
+	}
 }
@@ -0,0 +1,90 @@
+package eu.fasten.core.data;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.CompactionStyle;
+import org.rocksdb.CompressionType;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+
+public class StorageProfileTest {
+
+	@Test
+	public void testParse() {
+		assertSame(StorageProfile.QUERY, StorageProfile.parse("query"));
+		assertSame(StorageProfile.INGESTION, StorageProfile.parse(" Ingestion "));
+		final StorageProfile profile = StorageProfile.parse("query:cache=64m, bloom=0,partitioned=false,compaction=universal,writebuffer=1g,writebuffers=3,jobs=5");
+		assertEquals("query", profile.name);
+		assertEquals(64L << 20, profile.blockCacheSize);
+		assertEquals(0, profile.bloomBitsPerKey);
+		assertFalse(profile.partitionedIndex);
+		assertEquals(CompactionStyle.UNIVERSAL, profile.compactionStyle);
+		assertEquals(1L << 30, profile.writeBufferSize);
+		assertEquals(3, profile.maxWriteBufferNumber);
+		assertEquals(5, profile.backgroundJobs);
+		assertTrue(StorageProfile.QUERY.partitionedIndex);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownProfile() {
+		StorageProfile.parse("fast");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownParameter() {
+		StorageProfile.parse("balanced:speed=11");
+	}
+
+	@Test
+	public void testOpen() throws IOException, RocksDBException {
+		RocksDB.loadLibrary();
+		final File dir = Files.createTempDirectory(StorageProfileTest.class.getSimpleName()).toFile();
+		try {
+			// The same database must be usable with all profiles
+			for (final StorageProfile profile : new StorageProfile[] { StorageProfile.INGESTION, StorageProfile.QUERY, StorageProfile.BALANCED, StorageProfile.parse("query:cache=1m,bloom=0") }) {
+				try (final StorageProfile.Resources resources = profile.resources()) {
+					final List<ColumnFamilyHandle> handles = new ArrayList<>();
+					try (final RocksDB db = RocksDB.open(resources.dbOptions(), dir.toString(), KnowledgeBase.columnFamilyDescriptors(resources.columnFamilyOptions(CompressionType.LZ4_COMPRESSION)), handles)) {
+						db.put(handles.get(3), profile.name.getBytes(), new byte[] { 1 });
+						assertArrayEquals(new byte[] { 1 }, db.get(handles.get(3), "ingestion".getBytes()));
+						assertEquals(null, db.get(handles.get(3), "missing".getBytes()));
+						for (final ColumnFamilyHandle handle : handles) handle.close();
+					}
+				}
+			}
+		} finally {
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+}
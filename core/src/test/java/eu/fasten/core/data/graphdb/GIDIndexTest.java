@@ -0,0 +1,95 @@
+package eu.fasten.core.data.graphdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import eu.fasten.core.data.GOV3LongFunction;
+import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+public class GIDIndexTest {
+
+    private static long[] LID2GID(final int n, final Random random, final boolean sequential) {
+        final LongOpenHashSet gids = new LongOpenHashSet();
+        while (gids.size() < n) gids.add(sequential ? 1000 + random.nextInt(4 * n) : random.nextLong() >>> 1);
+        final long[] LID2GID = gids.toLongArray();
+        // Shuffle, so that LIDs are not in GID order
+        for (int i = n; i-- > 1;) {
+            final int j = random.nextInt(i + 1);
+            final long t = LID2GID[i];
+            LID2GID[i] = LID2GID[j];
+            LID2GID[j] = t;
+        }
+        return LID2GID;
+    }
+
+    private static void check(final GIDIndex index, final long[] LID2GID, final Random random) {
+        final LongOpenHashSet gids = new LongOpenHashSet(LID2GID);
+        for (int lid = 0; lid < LID2GID.length; lid++) assertEquals(lid, index.get(LID2GID[lid]));
+        for (int i = 0; i < 1000; i++) {
+            final long gid = random.nextInt(2) == 0 ? random.nextLong() : random.nextInt(10 * LID2GID.length + 2000);
+            if (!gids.contains(gid)) assertEquals(-1, index.get(gid));
+        }
+        assertEquals(LID2GID.length, index.size());
+    }
+
+    private static void checkWrite(final GIDIndex index, final long[] LID2GID, final Random random) throws IOException {
+        final FastByteArrayOutputStream fbaos = new FastByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(fbaos);
+        dos.writeInt(42);
+        index.write(dos);
+        dos.writeInt(43);
+        dos.flush();
+        final ByteBuffer buffer = ByteBuffer.wrap(fbaos.array, 0, fbaos.length);
+        assertEquals(42, buffer.getInt());
+        check(GIDIndex.read(buffer, LID2GID), LID2GID, random);
+        assertEquals(43, buffer.getInt());
+    }
+
+    @Test
+    public void indexTest() throws IOException {
+        final Random random = new Random(0);
+        for (final int n : new int[] { 0, 1, 2, 10, 1000, GIDIndex.HASH_THRESHOLD - 1, GIDIndex.HASH_THRESHOLD, 50000 }) {
+            for (final boolean sequential : new boolean[] { true, false }) {
+                final long[] LID2GID = LID2GID(n, random, sequential);
+                final GIDIndex index = GIDIndex.build(LID2GID);
+                check(index, LID2GID, random);
+                checkWrite(index, LID2GID, random);
+            }
+        }
+    }
+
+    @Test
+    public void wrapTest() throws IOException {
+        final Random random = new Random(1);
+        final long[] LID2GID = LID2GID(100, random, false);
+        final GIDIndex index = GIDIndex.wrap(new GOV3LongFunction.Builder().keys(LongArrayList.wrap(LID2GID)).build(), LID2GID);
+        check(index, LID2GID, random);
+        checkWrite(index, LID2GID, random);
+    }
+
+    @Test
+    public void duplicateTest() throws IOException {
+        final Random random = new Random(2);
+        for (final int n : new int[] { 10, GIDIndex.HASH_THRESHOLD }) {
+            // The same GID as an internal and as an external node: the last LID wins
+            final long[] LID2GID = LID2GID(n, random, true);
+            LID2GID[n - 1] = LID2GID[0];
+            final GIDIndex index = GIDIndex.build(LID2GID);
+            assertEquals(n - 1, index.get(LID2GID[0]));
+            for (int lid = 1; lid < n; lid++) assertEquals(lid, index.get(LID2GID[lid]));
+            final FastByteArrayOutputStream fbaos = new FastByteArrayOutputStream();
+            final DataOutputStream dos = new DataOutputStream(fbaos);
+            index.write(dos);
+            dos.flush();
+            assertEquals(n - 1, GIDIndex.read(ByteBuffer.wrap(fbaos.array, 0, fbaos.length), LID2GID).get(LID2GID[0]));
+        }
+    }
+}
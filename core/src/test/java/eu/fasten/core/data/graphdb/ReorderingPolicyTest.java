@@ -0,0 +1,64 @@
+package eu.fasten.core.data.graphdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+import eu.fasten.core.index.DirectBVGraph;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.webgraph.ArrayListMutableGraph;
+import it.unimi.dsi.webgraph.ImmutableGraph;
+import it.unimi.dsi.webgraph.Transform;
+import it.unimi.dsi.webgraph.examples.ErdosRenyiGraph;
+
+public class ReorderingPolicyTest {
+
+    @Test
+    public void parseTest() {
+        final var policy = ReorderingPolicy.parse("identity:16, bfs:4096, llp");
+        assertSame(ReorderingPolicy.IDENTITY, policy.strategy(0));
+        assertSame(ReorderingPolicy.IDENTITY, policy.strategy(15));
+        assertSame(ReorderingPolicy.BFS, policy.strategy(16));
+        assertSame(ReorderingPolicy.BFS, policy.strategy(4095));
+        assertEquals("llp", policy.strategy(4096).name());
+        assertEquals("llp", policy.strategy(Integer.MAX_VALUE).name());
+
+        assertThrows(IllegalArgumentException.class, () -> ReorderingPolicy.parse("bfs:10,identity:5,llp"));
+        assertThrows(IllegalArgumentException.class, () -> ReorderingPolicy.parse("bfs,llp"));
+        assertThrows(IllegalArgumentException.class, () -> ReorderingPolicy.parse("foo"));
+    }
+
+    @Test
+    public void permutationTest() throws IOException {
+        final int numInternal = 150;
+        final var policy = ReorderingPolicy.parse("identity:10,bfs:100,llp").measureGain(true);
+        for (final ImmutableGraph g : new ImmutableGraph[] { random(5), random(50), random(200) }) {
+            final int n = g.numNodes();
+            final int internal = Math.min(numInternal, n);
+            final int[] perm = policy.permutation(g, internal);
+            // A permutation keeping internal nodes first
+            final IntOpenHashSet image = new IntOpenHashSet(perm);
+            assertEquals(n, image.size());
+            for (int x = 0; x < n; x++) assertTrue(perm[x] >= 0 && perm[x] < n && (x < internal) == (perm[x] < internal));
+
+            final Properties properties = new Properties();
+            DirectBVGraph.compress(Transform.map(g, perm), properties);
+            policy.record(g, properties);
+        }
+        final String report = policy.toString();
+        assertTrue(report.contains("identity (<10 nodes): 1 graphs"), report);
+        assertTrue(report.contains("bfs (<100 nodes): 1 graphs"), report);
+        assertTrue(report.contains("llp: 1 graphs, 200 nodes"), report);
+        assertTrue(report.contains("bits/link gained"), report);
+    }
+
+    private static ImmutableGraph random(final int n) {
+        return new ArrayListMutableGraph(new ErdosRenyiGraph(n, Math.min(.5, 10. / n), 0, false)).immutableView();
+    }
+}
@@ -18,17 +18,35 @@
 
 package eu.fasten.core.data.graphdb;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
+import com.google.common.primitives.Longs;
+import eu.fasten.core.data.Condensation;
+import eu.fasten.core.data.GOV3LongFunction;
+import eu.fasten.core.index.DirectBVGraph;
+import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.webgraph.ArrayListMutableGraph;
+import it.unimi.dsi.webgraph.BVGraph;
+import it.unimi.dsi.webgraph.Transform;
 import org.apache.commons.io.FileUtils;
 import org.json.JSONObject;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Properties;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class RocksDaoTest {
@@ -244,4 +262,183 @@ public class RocksDaoTest {
         assertEquals(graph2.getEdges().size(), graphData2.numArcs());
         assertEquals(new LongOpenHashSet(List.of(258L)), graphData2.externalNodes());
     }
+
+    @Test
+    public void lazyLoadingTest() throws IOException, RocksDBException {
+        rocksDao.saveToRocksDb(1, List.of(1L, 2L, 3L), 2, List.of(List.of(1L, 2L), List.of(2L, 3L), List.of(1L, 3L)));
+        var graphData = rocksDao.getGraphData(1);
+        assertEquals(0, graphData.size());
+        assertEquals(new LongOpenHashSet(List.of(2L, 3L)), new LongOpenHashSet(graphData.successors(1L)));
+        final int forwardSize = graphData.size();
+        assertTrue(forwardSize > 0);
+        assertEquals(new LongOpenHashSet(List.of(1L, 2L)), new LongOpenHashSet(graphData.predecessors(3L)));
+        assertTrue(graphData.size() > forwardSize);
+        assertThrows(IllegalArgumentException.class, () -> rocksDao.getGraphData(2).successors(1L));
+    }
+
+    @Test
+    public void reSaveWhileLoadingTest() throws IOException, RocksDBException {
+        rocksDao.saveToRocksDb(1, List.of(1L, 2L, 3L), 2, List.of(List.of(1L, 2L), List.of(2L, 3L)));
+        final var graphData = rocksDao.getGraphData(1);
+        graphData.graphPart();
+        rocksDao.saveToRocksDb(1, List.of(4L, 5L, 6L, 7L), 3, List.of(List.of(7L, 4L), List.of(4L, 6L)));
+        // The maps of the new save would number the nodes of the old graph incorrectly
+        assertThrows(IllegalStateException.class, graphData::mapsPart);
+        assertThrows(IllegalStateException.class, () -> graphData.successors(1L));
+        assertThrows(IllegalStateException.class, graphData::transposePart);
+        // Loading the graph again yields the new save
+        final var reloaded = rocksDao.getGraphData(1);
+        reloaded.graphPart();
+        assertEquals(new LongArrayList(List.of(6L)), reloaded.successors(4L));
+        assertEquals(new LongArrayList(List.of(7L)), reloaded.predecessors(4L));
+    }
+
+    @Test
+    public void bulkLoadTest() throws IOException, RocksDBException {
+        rocksDao.saveToRocksDb(5, List.of(1L, 2L), 1, List.of(List.of(1L, 2L)));
+        try (final BulkLoader loader = rocksDao.bulkLoader(null, 3)) {
+            // Indices out of order, beyond the sign bit, and repeated (the last addition wins)
+            loader.add(-1, List.of(7L, 8L), 2, List.of(List.of(8L, 7L)));
+            for (long index = 100; index > 0; index -= 10) {
+                loader.add(index, List.of(index, index + 1, index + 2), 2, List.of(List.of(index, index + 1), List.of(index + 1, index + 2)));
+            }
+            loader.add(50, List.of(3L, 4L), 1, List.of(List.of(3L, 4L)));
+            loader.add(5, List.of(9L, 10L, 11L), 3, List.of(List.of(9L, 11L)));
+            assertEquals(12, loader.finish());
+        }
+        for (long index = 100; index > 0; index -= 10) {
+            if (index == 50) continue;
+            var graphData = rocksDao.getGraphData(index);
+            assertEquals(new LongOpenHashSet(List.of(index, index + 1, index + 2)), graphData.nodes());
+            assertEquals(new LongArrayList(List.of(index + 1)), graphData.successors(index));
+            assertEquals(new LongArrayList(List.of(index)), graphData.predecessors(index + 1));
+        }
+        var graphData = rocksDao.getGraphData(50);
+        assertEquals(new LongOpenHashSet(List.of(3L, 4L)), graphData.nodes());
+        assertEquals(new LongArrayList(List.of(4L)), graphData.successors(3L));
+        graphData = rocksDao.getGraphData(5);
+        assertEquals(new LongOpenHashSet(List.of(9L, 10L, 11L)), graphData.nodes());
+        assertEquals(new LongArrayList(List.of(11L)), graphData.successors(9L));
+        graphData = rocksDao.getGraphData(-1);
+        assertEquals(new LongArrayList(List.of(7L)), graphData.successors(8L));
+    }
+
+    @Test
+    public void multiGetTest() throws IOException, RocksDBException {
+        final int n = 600;
+        for (long index = 0; index < n; index++) {
+            rocksDao.saveToRocksDb(index, List.of(2 * index, 2 * index + 1), 1, List.of(List.of(2 * index, 2 * index + 1)));
+        }
+        final LongArrayList indices = new LongArrayList();
+        for (long index = n + 10; index-- != 0;) indices.add(index);
+        final Long2ObjectOpenHashMap<CallGraphData> result = new Long2ObjectOpenHashMap<>();
+        for (final var iterator = rocksDao.getGraphData(indices); iterator.hasNext();) {
+            final var entry = iterator.next();
+            assertNull(result.put(entry.getLongKey(), entry.getValue()));
+        }
+        assertEquals(n, result.size());
+        for (long index = 0; index < n; index++) {
+            final CallGraphData graphData = result.get(index);
+            // All parts are already loaded
+            final var single = rocksDao.getGraphData(index);
+            single.successors(2 * index);
+            single.predecessors(2 * index);
+            assertEquals(single.size(), graphData.size());
+            assertEquals(new LongArrayList(List.of(2 * index + 1)), graphData.successors(2 * index));
+            assertEquals(new LongArrayList(List.of(2 * index)), graphData.predecessors(2 * index + 1));
+        }
+        assertFalse(rocksDao.getGraphData(new LongArrayList()).hasNext());
+    }
+
+    @Test
+    public void migrationTest() throws IOException, RocksDBException {
+        // Write a single-blob entry in the default column family, as previous versions did
+        final long[] LID2GID = {1, 2, 3, 4, 5};
+        final var mutableGraph = new ArrayListMutableGraph(LID2GID.length, new int[][] {{0, 2}, {0, 4}, {1, 3}, {2, 3}, {0, 1}, {3, 0}});
+        final var graph = mutableGraph.immutableView();
+        final FastByteArrayOutputStream fbaos = new FastByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(fbaos);
+        final Properties graphProperties = new Properties(), transposeProperties = new Properties();
+        dos.writeLong(RocksDao.MAGIC);
+        DirectBVGraph.write(DirectBVGraph.compress(graph, graphProperties), dos);
+        DirectBVGraph.write(DirectBVGraph.compress(Transform.transpose(graph), transposeProperties), dos);
+        dos.writeInt(3);
+        dos.writeInt(LID2GID.length);
+        for (final long gid : LID2GID) dos.writeLong(gid);
+        GIDIndex.build(LID2GID).write(dos);
+        dos.flush();
+        final Kryo kryo = new Kryo();
+        kryo.register(Properties.class);
+        kryo.register(int[].class);
+        final ByteBufferOutput bbo = new ByteBufferOutput(fbaos);
+        kryo.writeObject(bbo, graphProperties);
+        kryo.writeObject(bbo, transposeProperties);
+        Condensation.compute(graph).write(kryo, bbo);
+        bbo.flush();
+
+        rocksDao.close();
+        FileUtils.deleteDirectory(new File("graphDB"));
+        try (final Options options = new Options().setCreateIfMissing(true); final RocksDB db = RocksDB.open(options, "graphDB")) {
+            db.put(Longs.toByteArray(7), Arrays.copyOf(fbaos.array, fbaos.length));
+        }
+        rocksDao = new RocksDao("graphDB");
+
+        for (int pass = 0; pass < 2; pass++) {
+            var graphData = rocksDao.getGraphData(7);
+            assertEquals(new LongOpenHashSet(List.of(4L, 5L)), graphData.externalNodes());
+            assertEquals(new LongOpenHashSet(List.of(2L, 3L, 5L)), new LongOpenHashSet(graphData.successors(1L)));
+            assertEquals(new LongOpenHashSet(List.of(2L, 3L)), new LongOpenHashSet(graphData.predecessors(4L)));
+            assertEquals(6, graphData.numArcs());
+            assertEquals(pass == 0 ? 1 : 0, rocksDao.migrate(null));
+        }
+    }
+
+    @Test
+    public void kryoMigrationTest() throws IOException, RocksDBException {
+        // Write a Kryo single-blob entry in the default column family, as the first versions did
+        final long[] LID2GID = {1, 2, 3, 4, 5};
+        final var graph = new ArrayListMutableGraph(LID2GID.length, new int[][] {{0, 2}, {0, 4}, {1, 3}, {2, 3}, {0, 1}, {3, 0}}).immutableView();
+        final File tmpDir = Files.createTempDirectory("kryoMigration").toFile();
+        final String basename = new File(tmpDir, "graph").toString();
+        final Kryo kryo = RocksDao.createKryo();
+        final FastByteArrayOutputStream fbaos = new FastByteArrayOutputStream();
+        final ByteBufferOutput bbo = new ByteBufferOutput(fbaos);
+        kryo.writeObject(bbo, Boolean.TRUE);
+        final Properties[] properties = new Properties[2];
+        try {
+            for (int i = 0; i < 2; i++) {
+                BVGraph.store(i == 0 ? graph : Transform.transpose(graph), basename);
+                properties[i] = new Properties();
+                try (final FileInputStream propertyFile = new FileInputStream(basename + BVGraph.PROPERTIES_EXTENSION)) {
+                    properties[i].load(propertyFile);
+                }
+                kryo.writeObject(bbo, BVGraph.load(basename));
+            }
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+        kryo.writeObject(bbo, 3);
+        kryo.writeObject(bbo, properties[0]);
+        kryo.writeObject(bbo, properties[1]);
+        kryo.writeObject(bbo, LID2GID);
+        kryo.writeObject(bbo, new GOV3LongFunction.Builder().keys(LongArrayList.wrap(LID2GID)).build());
+        bbo.flush();
+
+        rocksDao.close();
+        FileUtils.deleteDirectory(new File("graphDB"));
+        try (final Options options = new Options().setCreateIfMissing(true); final RocksDB db = RocksDB.open(options, "graphDB")) {
+            db.put(Longs.toByteArray(7), Arrays.copyOf(fbaos.array, fbaos.length));
+        }
+        rocksDao = new RocksDao("graphDB");
+
+        // The first pass reads the Kryo entry and migrates it; the second pass reads the migrated entry
+        for (int pass = 0; pass < 2; pass++) {
+            var graphData = rocksDao.getGraphData(7);
+            assertEquals(new LongOpenHashSet(List.of(4L, 5L)), graphData.externalNodes());
+            assertEquals(new LongOpenHashSet(List.of(2L, 3L, 5L)), new LongOpenHashSet(graphData.successors(1L)));
+            assertEquals(new LongOpenHashSet(List.of(2L, 3L)), new LongOpenHashSet(graphData.predecessors(4L)));
+            assertEquals(6, graphData.numArcs());
+            assertEquals(pass == 0 ? 1 : 0, rocksDao.migrate(null));
+        }
+    }
 }
@@ -0,0 +1,127 @@
+package eu.fasten.core.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+import it.unimi.dsi.webgraph.ArrayListMutableGraph;
+import it.unimi.dsi.webgraph.BVGraph;
+import it.unimi.dsi.webgraph.ImmutableGraph;
+import it.unimi.dsi.webgraph.Transform;
+import it.unimi.dsi.webgraph.examples.ErdosRenyiGraph;
+
+public class DirectBVGraphTest {
+
+	@Test
+	public void testLayout() throws IOException {
+		final ImmutableGraph g = new ArrayListMutableGraph(new ErdosRenyiGraph(1000, .01, 0, false)).immutableView();
+		final File f = File.createTempFile(DirectBVGraphTest.class.getSimpleName(), ".tmpgraph");
+		try {
+			BVGraph.store(g, f.toString());
+			final BVGraph graph = BVGraph.load(f.toString());
+
+			final FastByteArrayOutputStream fbaos = new FastByteArrayOutputStream();
+			final DataOutputStream dos = new DataOutputStream(fbaos);
+			dos.writeInt(42);
+			DirectBVGraph.write(graph, dos);
+			DirectBVGraph.write(graph, dos);
+			dos.writeInt(43);
+			dos.flush();
+
+			final ByteBuffer buffer = ByteBuffer.wrap(fbaos.array, 0, fbaos.length);
+			assertEquals(42, buffer.getInt());
+			final BVGraph direct = DirectBVGraph.read(buffer);
+			final BVGraph second = DirectBVGraph.read(buffer);
+			assertEquals(43, buffer.getInt());
+
+			for (final ImmutableGraph h : new ImmutableGraph[] { direct, second, direct.copy() }) {
+				assertEquals(g.numNodes(), h.numNodes());
+				assertEquals(g.numArcs(), h.numArcs());
+				// Random access in reverse order
+				for (int x = g.numNodes(); x-- != 0;) {
+					assertEquals(g.outdegree(x), h.outdegree(x));
+					assertArrayEquals(g.successorArray(x), h.successorArray(x));
+				}
+			}
+		} finally {
+			new File(f + BVGraph.PROPERTIES_EXTENSION).delete();
+			new File(f + BVGraph.OFFSETS_EXTENSION).delete();
+			new File(f + BVGraph.GRAPH_EXTENSION).delete();
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testCompress() throws IOException {
+		final ImmutableGraph er = new ArrayListMutableGraph(new ErdosRenyiGraph(1000, .01, 0, false)).immutableView();
+		// A graph with many similar successor lists and intervals
+		final ArrayListMutableGraph mutable = new ArrayListMutableGraph(1000);
+		for (int x = 0; x < 1000; x++) {
+			for (int y = x / 10 * 10; y < x / 10 * 10 + 8; y++) if (y != x) mutable.addArc(x, y);
+			final int y = x * 7919 % 1000;
+			if (x % 3 == 0 && y / 10 != x / 10) mutable.addArc(x, y);
+		}
+		final ImmutableGraph empty = new ArrayListMutableGraph(5).immutableView();
+
+		for (final ImmutableGraph g : new ImmutableGraph[] { er, Transform.transpose(er), mutable.immutableView(), empty }) {
+			final File f = File.createTempFile(DirectBVGraphTest.class.getSimpleName(), ".tmpgraph");
+			try {
+				BVGraph.store(g, f.toString());
+				final Properties expectedProperties = new Properties();
+				try (final FileInputStream propertyFile = new FileInputStream(f + BVGraph.PROPERTIES_EXTENSION)) {
+					expectedProperties.load(propertyFile);
+				}
+				final FastByteArrayOutputStream expected = new FastByteArrayOutputStream();
+				final DataOutputStream dos = new DataOutputStream(expected);
+				DirectBVGraph.write(BVGraph.load(f.toString()), dos);
+				dos.flush();
+
+				final Properties properties = new Properties();
+				final BVGraph compressed = DirectBVGraph.compress(g, properties);
+				final FastByteArrayOutputStream actual = new FastByteArrayOutputStream();
+				final DataOutputStream actualDos = new DataOutputStream(actual);
+				DirectBVGraph.write(compressed, actualDos);
+				actualDos.flush();
+
+				assertArrayEquals(Arrays.copyOf(expected.array, expected.length), Arrays.copyOf(actual.array, actual.length));
+				for (final String key : properties.stringPropertyNames()) assertEquals(key, expectedProperties.getProperty(key), properties.getProperty(key));
+
+				assertEquals(g.numArcs(), compressed.numArcs());
+				for (int x = g.numNodes(); x-- != 0;) assertArrayEquals(g.successorArray(x), compressed.successorArray(x));
+			} finally {
+				new File(f + BVGraph.PROPERTIES_EXTENSION).delete();
+				new File(f + BVGraph.OFFSETS_EXTENSION).delete();
+				new File(f + BVGraph.GRAPH_EXTENSION).delete();
+				f.delete();
+			}
+		}
+	}
+}
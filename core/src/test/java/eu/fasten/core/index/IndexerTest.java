@@ -1,6 +1,12 @@
 package eu.fasten.core.index;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
@@ -8,19 +14,41 @@ import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.rocksdb.RocksDBException;
 
-import eu.fasten.core.data.RevisionCallGraph;
+import eu.fasten.core.data.Condensation;
+import eu.fasten.core.data.FastenURI;
 import eu.fasten.core.data.KnowledgeBase;
 import eu.fasten.core.data.KnowledgeBase.Node;
+import eu.fasten.core.data.RevisionCallGraph;
+import eu.fasten.core.data.VisitBudget;
+import eu.fasten.core.data.VisitResult;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
 import it.unimi.dsi.fastutil.objects.ObjectLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectList;
 
 public class IndexerTest {
 
@@ -156,16 +184,74 @@ public class IndexerTest {
 
 	};
 
-	public void testKnowledgeBase(final String[] jsonSpec) throws JSONException, IOException, RocksDBException, ClassNotFoundException {
-		final Path kbDir = Files.createTempDirectory(Indexer.class.getSimpleName());
-		final String meta = Files.createTempFile(Indexer.class.getSimpleName(), "meta").getFileName().toString();
+	/** The directory of {@link #kb}. */
+	private Path kbDir;
+	/** The metadata file of {@link #kb}. */
+	private String meta;
+	/** The knowledge base of the current test, initially empty. */
+	private KnowledgeBase kb;
+
+	@Before
+	public void setUp() throws IOException, RocksDBException, ClassNotFoundException {
+		kbDir = Files.createTempDirectory(Indexer.class.getSimpleName());
+		meta = Files.createTempFile(Indexer.class.getSimpleName(), "meta").getFileName().toString();
+		FileUtils.deleteDirectory(kbDir.toFile());
+		FileUtils.deleteQuietly(new File(meta));
+		kb = KnowledgeBase.getInstance(kbDir.toString(), meta, false);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		kb.close();
 		FileUtils.deleteDirectory(kbDir.toFile());
 		FileUtils.deleteQuietly(new File(meta));
+	}
+
+	/** Closes {@link #kb} and opens it again. */
+	private void reopen() throws RocksDBException, ClassNotFoundException, IOException {
+		kb.close();
+		kb = KnowledgeBase.getInstance(kbDir.toString(), meta, false);
+	}
+
+	/** Adds the given revisions to {@link #kb}, using their positions as indices. */
+	private void add(final String[] jsonSpecs) throws JSONException, IOException, RocksDBException {
+		for (int index = 0; index < jsonSpecs.length; index++) kb.add(new RevisionCallGraph(new JSONObject(jsonSpecs[index])), index);
+	}
+
+	/** Returns {@link #JSON_SPECS} at versions 1.0, 2.0, &hellip;, <code>n</code>.0, in this order. */
+	private String[] versions(final int n) {
+		final ObjectArrayList<String> jsonSpecs = new ObjectArrayList<>();
+		jsonSpecs.addAll(Arrays.asList(JSON_SPECS));
+		for(int i = 2; i <= n; i++)
+			for(final String s : JSON_SPECS) jsonSpecs.add(s.replaceAll("1\\.0", i + ".0"));
+		return jsonSpecs.toArray(new String[0]);
+	}
+
+	/** Returns the signatures of the internal nodes of {@link #kb}. */
+	private LongArrayList internalSignatures() {
+		final LongArrayList signatures = new LongArrayList();
+		for (final var entry : kb.callGraphs.long2ObjectEntrySet())
+			for (final long gid : entry.getValue().callGraphData().nodes())
+				if (entry.getValue().callGraphData().isInternal(gid)) signatures.add(KnowledgeBase.signature(gid, entry.getLongKey()));
+		return signatures;
+	}
 
-		KnowledgeBase kb = KnowledgeBase.getInstance(kbDir.toString(), meta, false);
+	/** Returns the signatures of the external nodes of {@link #kb}. */
+	private LongArrayList externalSignatures() {
+		final LongArrayList signatures = new LongArrayList();
+		for (final var entry : kb.callGraphs.long2ObjectEntrySet())
+			for (final long gid : entry.getValue().callGraphData().externalNodes()) signatures.add(KnowledgeBase.signature(gid, entry.getLongKey()));
+		return signatures;
+	}
 
-		for (int index = 0; index < jsonSpec.length; index++)
-			kb.add(new RevisionCallGraph(new JSONObject(jsonSpec[index])), index);
+	private static LongSet revisions(final LongSet signatures) {
+		final LongOpenHashSet revisions = new LongOpenHashSet();
+		for (final long signature : signatures) revisions.add(KnowledgeBase.index(signature));
+		return revisions;
+	}
+
+	public void testKnowledgeBase(final String[] jsonSpecs) throws JSONException, IOException, RocksDBException, ClassNotFoundException {
+		add(jsonSpecs);
 
 		for(int pass = 0; pass < 2; pass++) {
 			for(final var entry : kb.callGraphs.long2ObjectEntrySet()) {
@@ -203,12 +289,587 @@ public class IndexerTest {
 						}
 					}
 			}
-			kb.close();
-			kb = KnowledgeBase.getInstance(kbDir.toString(), meta, false);
+			reopen();
 		}
-		kb.close();
-		FileUtils.deleteDirectory(kbDir.toFile());
-		FileUtils.deleteQuietly(new File(meta));
+	}
+
+	/** Computes the distances from a node with a plain breadth-first visit. */
+	private static Long2IntOpenHashMap distances(final KnowledgeBase kb, final long startSig) {
+		final Long2IntOpenHashMap distance = new Long2IntOpenHashMap();
+		final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+		distance.put(startSig, 0);
+		queue.enqueue(startSig);
+		while (!queue.isEmpty()) {
+			final long x = queue.dequeueLong();
+			for (final long y : kb.successors(x)) if (!distance.containsKey(y)) {
+				distance.put(y, distance.get(x) + 1);
+				queue.enqueue(y);
+			}
+		}
+		return distance;
+	}
+
+	/** Returns the node with a given signature. */
+	private Node node(final long signature) {
+		return kb.new Node(KnowledgeBase.gid(signature), KnowledgeBase.index(signature));
+	}
+
+	/** Returns the internal node of a revision from which the largest number of nodes is reachable (or coreachable). */
+	private long widest(final long index, final boolean forward) {
+		long widest = -1;
+		int max = -1;
+		for (final long signature : internalSignatures()) {
+			if (KnowledgeBase.index(signature) != index) continue;
+			final int size = (forward ? kb.reaches(signature) : kb.coreaches(signature)).size();
+			if (size > max) {
+				max = size;
+				widest = signature;
+			}
+		}
+		return widest;
+	}
+
+	/** Checks that all variants of visits from a node agree with {@link KnowledgeBase#reaches(long)} and {@link KnowledgeBase#coreaches(long)}. */
+	private void assertVisitsAgree(final long signature) {
+		final LongSet reaches = kb.reaches(signature), coreaches = kb.coreaches(signature);
+		assertEquals(reaches, kb.reaches(signature, new VisitBudget()).nodes);
+		assertEquals(coreaches, kb.coreaches(signature, new VisitBudget()).nodes);
+		assertEquals(reaches, kb.parallelReaches(signature));
+		assertEquals(coreaches, kb.parallelCoreaches(signature));
+		assertEquals(reaches, KnowledgeBase.coalescedToSignatures(kb.reachesCoalesced(signature)));
+		assertEquals(coreaches, KnowledgeBase.coalescedToSignatures(kb.coreachesCoalesced(signature)));
+		if (kb.appearsIn(KnowledgeBase.gid(signature), KnowledgeBase.index(signature))) {
+			assertEquals(reaches, kb.toSignatures(kb.reachesBitmaps(signature)));
+			assertEquals(coreaches, kb.toSignatures(kb.coreachesBitmaps(signature)));
+		}
+	}
+
+	/** Checks that a visit throws an {@link IllegalArgumentException}. */
+	private static void assertIllegalArgument(final Runnable visit) {
+		try {
+			visit.run();
+			fail();
+		} catch (final IllegalArgumentException expected) {}
+	}
+
+	@Test
+	public void testBitmapVisitsThroughComponents() throws JSONException, IOException, RocksDBException {
+		// Additional arcs make the internal nodes of the first revision form the components {0, 1, 2} and {3, 5}
+		add(new String[] { JSON_SPECS[0].replace("\"internalCalls\": [", "\"internalCalls\": [[1, 2], [1, 0], [5, 3],"), JSON_SPECS[1] });
+		final Condensation condensation = kb.callGraphs.get(0).callGraphData().condensation;
+		final IntOpenHashSet sizes = new IntOpenHashSet();
+		for (int c = 0; c < condensation.numComponents(); c++) sizes.add(condensation.size(c));
+		assertTrue(sizes.contains(3));
+		assertTrue(sizes.contains(2));
+
+		for (final long signature : internalSignatures()) assertVisitsAgree(signature);
+		// Entering a component from the other revision marks all its members at once
+		final var bitmaps = kb.reachesBitmaps(widest(1, true));
+		assertEquals(3, bitmaps.get(0).count());
+		// Backward visits leave a component through the external nodes of all its members
+		assertTrue(revisions(kb.toSignatures(kb.coreachesBitmaps(widest(0, false)))).contains(1));
+	}
+
+	@Test
+	public void testVisitsFromExternalNodes() throws JSONException, IOException, RocksDBException {
+		add(versions(2));
+		for (final long signature : externalSignatures()) {
+			// External nodes have no successors in their revision, and visits do not cross to the revisions in which they are internal
+			assertEquals(LongSets.singleton(signature), kb.reaches(signature));
+			assertVisitsAgree(signature);
+			// Bitmaps represent only internal nodes
+			assertIllegalArgument(() -> kb.reachesBitmaps(signature));
+			assertIllegalArgument(() -> kb.coreachesBitmaps(signature));
+		}
+	}
+
+	@Test
+	public void testVisitsFromUnknownNodes() throws JSONException, IOException, RocksDBException {
+		add(JSON_SPECS);
+		// A GID of revision 0 that does not appear in revision 1
+		final LongOpenHashSet gids = new LongOpenHashSet(kb.callGraphs.get(0).callGraphData().LID2GID);
+		for (final long gid : kb.callGraphs.get(1).callGraphData().LID2GID) gids.remove(gid);
+		assertFalse(gids.isEmpty());
+		final long signature = KnowledgeBase.signature(gids.iterator().nextLong(), 1);
+		assertIllegalArgument(() -> kb.reaches(signature));
+		assertIllegalArgument(() -> kb.coreaches(signature));
+		assertIllegalArgument(() -> kb.reaches(signature, new VisitBudget()));
+		assertIllegalArgument(() -> kb.coreaches(signature, new VisitBudget()));
+		assertIllegalArgument(() -> kb.parallelReaches(signature));
+		assertIllegalArgument(() -> kb.parallelCoreaches(signature));
+		assertIllegalArgument(() -> kb.reachesCoalesced(signature));
+		assertIllegalArgument(() -> kb.coreachesCoalesced(signature));
+		assertIllegalArgument(() -> kb.reachesBitmaps(signature));
+		assertIllegalArgument(() -> kb.coreachesBitmaps(signature));
+		// A revision that does not exist
+		final long unknownRevision = KnowledgeBase.signature(KnowledgeBase.gid(signature), JSON_SPECS.length);
+		assertIllegalArgument(() -> kb.reachesBitmaps(unknownRevision));
+		assertIllegalArgument(() -> kb.coreachesCoalesced(unknownRevision));
+		// Unknown URIs are not resolved
+		final FastenURI uri = FastenURI.create("fasten://mvn!nonexistent$1.0/foo/Bar.baz()V");
+		assertNull(kb.reachesIterator(uri, 0, 1));
+		assertNull(kb.shortestPath(uri, node(internalSignatures().getLong(0)).toFastenURI()));
+	}
+
+	@Test
+	public void testParallelVisits() throws JSONException, IOException, RocksDBException {
+		// Each revision of the second product calls a method present in every revision of the first
+		// one, so frontiers get wider than the grain of frontier expansions, and tasks are forked
+		final int n = 100;
+		add(versions(n));
+		int wide = 0;
+		for (final long signature : internalSignatures()) {
+			if (KnowledgeBase.index(signature) >= 2) continue;
+			final LongSet reaches = kb.reaches(signature), coreaches = kb.coreaches(signature);
+			if (reaches.size() > n || coreaches.size() > n) wide++;
+			assertEquals(reaches, kb.parallelReaches(signature));
+			assertEquals(coreaches, kb.parallelCoreaches(signature));
+		}
+		assertTrue(wide > 0);
+	}
+
+	@Test
+	public void testReachabilityIterators() throws JSONException, IOException, RocksDBException {
+		final int n = 50;
+		add(versions(n));
+		final Node caller = node(widest(1, true)), callee = node(widest(0, false));
+		final ObjectArrayList<Node> reaches = new ObjectArrayList<>(kb.reaches(caller));
+		assertTrue(reaches.size() > n);
+		assertEquals(reaches, new ObjectArrayList<>(kb.reachesIterator(caller)));
+		assertEquals(new ObjectArrayList<>(kb.coreaches(callee)), new ObjectArrayList<>(kb.coreachesIterator(callee)));
+
+		// Consuming a prefix of the visit decodes at most the revisions of the nodes expanded so far
+		kb.callGraphDataCache().clear();
+		final long misses = kb.callGraphDataCache().misses();
+		final ObjectIterator<Node> iterator = kb.reachesIterator(caller);
+		for (int i = 0; i < 3; i++) assertEquals(reaches.get(i), iterator.next());
+		assertTrue(kb.callGraphDataCache().misses() - misses <= 2);
+
+		// Pages are slices of the result in visit order
+		final ObjectArrayList<FastenURI> uris = new ObjectArrayList<>(kb.reaches(caller.toFastenURI()));
+		assertEquals(uris.subList(10, 15), new ObjectArrayList<>(kb.reachesIterator(caller.toFastenURI(), 10, 5)));
+		assertEquals(uris.subList(uris.size() - 2, uris.size()), new ObjectArrayList<>(kb.reachesIterator(caller.toFastenURI(), uris.size() - 2, 5)));
+		assertFalse(kb.reachesIterator(caller.toFastenURI(), uris.size(), 5).hasNext());
+		assertFalse(kb.reachesIterator(caller.toFastenURI(), 0, 0).hasNext());
+		final ObjectArrayList<FastenURI> coreachesURIs = new ObjectArrayList<>(kb.coreaches(callee.toFastenURI()));
+		assertEquals(coreachesURIs.subList(1, 4), new ObjectArrayList<>(kb.coreachesIterator(callee.toFastenURI(), 1, 3)));
+		assertIllegalArgument(() -> kb.reachesIterator(caller.toFastenURI(), -1, 5));
+		assertIllegalArgument(() -> kb.coreachesIterator(callee.toFastenURI(), 0, -1));
+	}
+
+	@Test
+	public void testVisitBudgets() throws JSONException, IOException, RocksDBException {
+		final int n = 50;
+		add(versions(n));
+		// The caller reaches all versions of the callee, and the callee is coreached from all versions of the caller
+		final long caller = widest(1, true), callee = widest(0, false);
+		final LongSet reaches = kb.reaches(caller), coreaches = kb.coreaches(callee);
+		assertEquals(n + 1, revisions(reaches).size());
+		assertEquals(n + 1, revisions(coreaches).size());
+
+		VisitResult bounded = kb.reaches(caller, new VisitBudget());
+		assertEquals(reaches, bounded.nodes);
+		assertFalse(bounded.truncated);
+		assertEquals(n + 1, bounded.revisions);
+
+		bounded = kb.reaches(caller, new VisitBudget().maxNodes(n));
+		assertTrue(bounded.truncated);
+		assertEquals(n, bounded.nodes.size());
+		assertTrue(reaches.containsAll(bounded.nodes));
+
+		for (final boolean forward : new boolean[] { true, false }) {
+			final long start = forward ? caller : callee;
+			final LongSet all = forward ? reaches : coreaches;
+			// Revisions beyond the budget are not decoded
+			kb.callGraphDataCache().clear();
+			final long misses = kb.callGraphDataCache().misses();
+			bounded = forward ? kb.reaches(start, new VisitBudget().maxRevisions(10)) : kb.coreaches(start, new VisitBudget().maxRevisions(10));
+			assertTrue(bounded.truncated);
+			assertEquals(10, bounded.revisions);
+			assertTrue(revisions(bounded.nodes).size() <= 10);
+			assertTrue(kb.callGraphDataCache().misses() - misses <= 10);
+			assertTrue(all.containsAll(bounded.nodes));
+			// The revision of the starting node, and at most 5 revisions of the other product
+			bounded = forward ? kb.reaches(start, new VisitBudget().maxRevisionsPerProduct(5)) : kb.coreaches(start, new VisitBudget().maxRevisionsPerProduct(5));
+			assertTrue(bounded.truncated);
+			assertEquals(6, bounded.revisions);
+			assertTrue(all.containsAll(bounded.nodes));
+		}
+
+		// Nodes excluded by the filter do not truncate the visit
+		bounded = kb.reaches(caller, new VisitBudget(), s -> s == caller);
+		assertEquals(LongSets.singleton(caller), bounded.nodes);
+		assertFalse(bounded.truncated);
+		final VisitBudget cancelled = new VisitBudget();
+		cancelled.cancel();
+		bounded = kb.coreaches(callee, cancelled);
+		assertTrue(bounded.truncated);
+		assertEquals(LongSets.singleton(callee), bounded.nodes);
+		assertTrue(kb.reaches(caller, new VisitBudget().timeout(0, TimeUnit.NANOSECONDS)).truncated);
+	}
+
+	@Test
+	public void testShortestPaths() throws JSONException, IOException, RocksDBException {
+		final int n = 10;
+		add(versions(n));
+		final long caller = widest(1, true);
+		final Node from = node(caller);
+		assertEquals(Collections.singletonList(from), kb.shortestPath(from, from));
+
+		// Paths into all versions of the callee, as short as those of a plain breadth-first visit
+		final Long2IntOpenHashMap distance = distances(kb, caller);
+		int unreachable = 0;
+		for (final long signature : kb.reaches(caller)) {
+			final Node to = node(signature);
+			final ObjectList<Node> path = kb.shortestPath(from, to);
+			assertEquals(from, path.get(0));
+			assertEquals(to, path.get(path.size() - 1));
+			assertEquals(distance.get(signature), path.size() - 1);
+			for (int i = 1; i < path.size(); i++) assertTrue(kb.successors(path.get(i - 1)).contains(path.get(i)));
+			// The callee does not call back
+			if (KnowledgeBase.index(signature) % 2 == 0) {
+				assertNull(kb.shortestPath(to, from));
+				assertEquals(Collections.emptyList(), kb.shortestPath(to.toFastenURI(), from.toFastenURI()));
+				unreachable++;
+			}
+		}
+		assertTrue(unreachable >= n);
+	}
+
+	@Test
+	public void testCoalescedVisits() throws JSONException, IOException, RocksDBException {
+		final int n = 4;
+		add(versions(n));
+		// The caller reaches the callee in all its versions, and the callee is coreached from all versions of the caller
+		final long caller = widest(1, true), callee = widest(0, false);
+		final var reaches = kb.reachesCoalesced(caller);
+		final var coreaches = kb.coreachesCoalesced(callee);
+		assertEquals(kb.reaches(caller), KnowledgeBase.coalescedToSignatures(reaches));
+		assertEquals(kb.coreaches(callee), KnowledgeBase.coalescedToSignatures(coreaches));
+		// Each GID is returned once, with all the revisions in which it has been reached
+		assertTrue(reaches.values().stream().anyMatch(revisions -> revisions.size() == n));
+		assertTrue(coreaches.values().stream().anyMatch(revisions -> revisions.size() == n));
+		assertTrue(reaches.size() < kb.reaches(caller).size());
+	}
+
+	@Test
+	public void testURIResolution() throws JSONException, IOException, RocksDBException, ClassNotFoundException {
+		add(versions(4));
+		for (int pass = 0; pass < 2; pass++) {
+			final ObjectArrayList<Node> nodes = new ObjectArrayList<>();
+			final ObjectArrayList<FastenURI> uris = new ObjectArrayList<>();
+			for (final long signature : internalSignatures()) {
+				final Node node = kb.new Node(KnowledgeBase.gid(signature), KnowledgeBase.index(signature));
+				assertEquals(node, kb.fastenURI2Node(node.toFastenURI()));
+				nodes.add(node);
+				uris.add(node.toFastenURI());
+			}
+			uris.add(FastenURI.create("fasten://mvn!nonexistent$1.0/foo/Bar.baz()V"));
+			nodes.add(null);
+			// External nodes do not correspond to a node of their revision
+			for (final var entry : kb.callGraphs.long2ObjectEntrySet())
+				for (final long gid : entry.getValue().callGraphData().externalNodes()) {
+					final FastenURI uri = kb.new Node(gid, entry.getLongKey()).toFastenURI();
+					assertNull(kb.fastenURI2Node(uri));
+					uris.add(uri);
+					nodes.add(null);
+				}
+			// Resolution does not need the data of the revisions
+			kb.callGraphDataCache().clear();
+			final long misses = kb.callGraphDataCache().misses();
+			for (int i = 0; i < uris.size(); i++) assertEquals(nodes.get(i), kb.fastenURI2Node(uris.get(i)));
+			assertEquals(nodes, kb.fastenURI2Nodes(uris));
+			assertEquals(misses, kb.callGraphDataCache().misses());
+			// The second pass resolves URIs after reopening
+			reopen();
+		}
+	}
+
+	@Test
+	public void testURIResolutionAfterReAddition() throws JSONException, IOException, RocksDBException {
+		add(JSON_SPECS);
+		final Node old = kb.fastenURI2Node(FastenURI.create("fasten://mvn!org.slf4j.slf4j-api$1.0/org.slf4j.helpers/FormattingTuple.getThrowable()%2Fjava.lang%2FThrowable"));
+		assertNotNull(old);
+		// Replace revision 0 with the same product and version, in which getThrowable() has been renamed
+		kb.add(new RevisionCallGraph(new JSONObject(JSON_SPECS[0].replace("FormattingTuple.getThrowable()", "FormattingTuple.getThrowable2()"))), 0);
+		assertNull(kb.fastenURI2Node(old.toFastenURI()));
+		assertEquals(Collections.singletonList(null), kb.fastenURI2Nodes(Collections.singletonList(old.toFastenURI())));
+		assertFalse(kb.appearsIn(old.gid).hasNext());
+		final Node renamed = kb.fastenURI2Node(FastenURI.create("fasten://mvn!org.slf4j.slf4j-api$1.0/org.slf4j.helpers/FormattingTuple.getThrowable2()%2Fjava.lang%2FThrowable"));
+		assertNotNull(renamed);
+		assertEquals(0, renamed.index);
+		// The GIDs shared by the two call graphs are still internal to revision 0
+		for (final long signature : internalSignatures()) assertNotNull(kb.fastenURI2Node(kb.new Node(KnowledgeBase.gid(signature), KnowledgeBase.index(signature)).toFastenURI()));
+	}
+
+	/** Removes from a set of signatures those of a given revision. */
+	private static LongSet without(final LongSet signatures, final long index) {
+		final LongOpenHashSet result = new LongOpenHashSet();
+		for (final long signature : signatures) if (KnowledgeBase.index(signature) != index) result.add(signature);
+		return result;
+	}
+
+	@Test
+	public void testConstrainedVisits() throws JSONException, IOException, RocksDBException {
+		// Revisions 0, 1 and 2 are versions 1.0, 2.0 and 3.0 of the callee; revision 3 depends on versions from 2.0 on
+		final String[] callee = versions(3);
+		final String caller = JSON_SPECS[1].replace("\"depset\": []", "\"depset\": [[{\"forge\": \"mvn\", \"product\": \"org.slf4j.slf4j-api\", \"constraints\": [\"[2.0..]\"]}]]");
+		add(new String[] { callee[0], callee[2], callee[4], caller });
+
+		int prunedForward = 0, prunedBackward = 0;
+		for (final long signature : internalSignatures()) {
+			final long index = KnowledgeBase.index(signature);
+			final LongSet reaches = kb.reaches(signature), coreaches = kb.coreaches(signature);
+			final LongSet constrainedReaches = kb.reaches(signature, true), constrainedCoreaches = kb.coreaches(signature, true);
+			// Forward, only the excluded version of the callee is left out of visits from the caller
+			assertEquals(index == 3 ? without(reaches, 0) : reaches, constrainedReaches);
+			// Backward, only the caller is left out of visits from the excluded version of the callee
+			assertEquals(index == 0 ? without(coreaches, 3) : coreaches, constrainedCoreaches);
+			if (revisions(reaches).contains(0) && index == 3) {
+				assertTrue(constrainedReaches.size() < reaches.size());
+				assertEquals(new LongOpenHashSet(new long[] { 1, 2, 3 }), revisions(constrainedReaches));
+				prunedForward++;
+			}
+			if (revisions(coreaches).contains(3) && index == 0) {
+				assertTrue(constrainedCoreaches.size() < coreaches.size());
+				assertEquals(LongSets.singleton(0), revisions(constrainedCoreaches));
+				prunedBackward++;
+			}
+		}
+		assertTrue(prunedForward > 0);
+		assertTrue(prunedBackward > 0);
+	}
+
+	/**
+	 * Checks that the entries reached using summaries are consistent with a full visit; from an
+	 * external node, with the visits from the nodes with the same GID in the revisions in which it is
+	 * internal.
+	 */
+	private void assertReachedEntries(final ReachabilitySummaries summaries) {
+		final LongArrayList signatures = internalSignatures();
+		signatures.addAll(externalSignatures());
+		for (final long signature : signatures) {
+			final LongOpenHashSet reaches = new LongOpenHashSet(kb.reaches(signature));
+			if (!kb.appearsIn(KnowledgeBase.gid(signature), KnowledgeBase.index(signature)))
+				for (final LongIterator revisions = kb.appearsIn(KnowledgeBase.gid(signature)); revisions.hasNext();) reaches.addAll(kb.reaches(KnowledgeBase.signature(KnowledgeBase.gid(signature), revisions.nextLong())));
+			final LongSet entries = summaries.reachedEntries(kb, signature);
+			assertTrue(entries.contains(signature));
+			assertTrue(reaches.containsAll(entries));
+			assertEquals(revisions(reaches), revisions(entries));
+		}
+	}
+
+	@Test
+	public void testReachabilitySummaries() throws JSONException, IOException, RocksDBException, ClassNotFoundException {
+		add(versions(4));
+		for (int pass = 0; pass < 2; pass++) {
+			final ReachabilitySummaries summaries = ReachabilitySummaries.build(kb);
+			for (final var entry : kb.callGraphs.long2ObjectEntrySet()) assertTrue(summaries.summary(entry.getLongKey()).matches(entry.getValue()));
+			assertReachedEntries(summaries);
+			// Only the revision of the starting node, which might not be an entry node, is decoded
+			for (final long signature : internalSignatures()) {
+				kb.callGraphDataCache().clear();
+				final long misses = kb.callGraphDataCache().misses();
+				summaries.reachedEntries(kb, signature);
+				assertTrue(kb.callGraphDataCache().misses() - misses <= 1);
+			}
+			// An external starting node leads to the revisions in which its GID is internal
+			int external = 0;
+			for (final long signature : externalSignatures()) {
+				final LongSet entries = summaries.reachedEntries(kb, signature);
+				if (kb.appearsIn(KnowledgeBase.gid(signature)).hasNext()) {
+					assertTrue(entries.size() > 1);
+					external++;
+				}
+			}
+			assertTrue(external > 0);
+			reopen();
+		}
+	}
+
+	@Test
+	public void testReachabilitySummariesAfterReAddition() throws JSONException, IOException, RocksDBException {
+		// Revisions 1 and 2 call revision 0
+		add(new String[] { JSON_SPECS[0], JSON_SPECS[1], JSON_SPECS[1].replace("slf4j2", "slf4j3") });
+		final ReachabilitySummaries summaries = ReachabilitySummaries.build(kb);
+		// Replace revision 0 with a graph in which getThrowable() calls into revision 2: its summary is stale
+		final String append = "\"0\",\n                \"///java.lang/StringBuilder.append(String)StringBuilder\"";
+		assertTrue(JSON_SPECS[0].contains(append));
+		kb.add(new RevisionCallGraph(new JSONObject(JSON_SPECS[0].replace(append, "\"0\",\n                \"///org.slf4j3.helpers/FormattingTuple.getThrowable()%2Fjava.lang%2FThrowable\""))), 0);
+		assertFalse(summaries.summary(0).matches(kb.callGraphs.get(0)));
+		assertTrue(summaries.summary(1).matches(kb.callGraphs.get(1)));
+		assertReachedEntries(summaries);
+		assertReachedEntries(ReachabilitySummaries.build(kb));
+	}
+
+	@Test
+	public void testConcurrentVisits() throws JSONException, IOException, RocksDBException, InterruptedException, ExecutionException {
+		add(versions(2));
+		final LongArrayList signatures = internalSignatures();
+
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for (int pass = 0; pass < 8; pass++) {
+				final ObjectArrayList<Future<LongSet[]>> futures = new ObjectArrayList<>();
+				for (final long signature : signatures) futures.add(executor.submit(() -> new LongSet[] { kb.reaches(signature), kb.coreaches(signature) }));
+				for (int i = 0; i < signatures.size(); i++) {
+					final LongSet[] result = futures.get(i).get();
+					assertEquals(kb.reaches(signatures.getLong(i)), result[0]);
+					assertEquals(kb.coreaches(signatures.getLong(i)), result[1]);
+					if (pass == 0) {
+						assertEquals(result[0], KnowledgeBase.coalescedToSignatures(kb.reachesCoalesced(signatures.getLong(i))));
+						assertEquals(result[1], KnowledgeBase.coalescedToSignatures(kb.coreachesCoalesced(signatures.getLong(i))));
+					}
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testMultiSourceVisits() throws JSONException, IOException, RocksDBException {
+		add(JSON_SPECS);
+		final LongArrayList signatures = internalSignatures();
+		// More than 64 sources (with repetitions), so that masks span several words
+		final LongArrayList sources = new LongArrayList();
+		while (sources.size() <= 2 * Long.SIZE) sources.addAll(signatures);
+
+		final LongOpenHashSet reaches = new LongOpenHashSet(), coreaches = new LongOpenHashSet();
+		for (final long signature : signatures) {
+			reaches.addAll(kb.reaches(signature));
+			coreaches.addAll(kb.coreaches(signature));
+		}
+		assertEquals(reaches, kb.reaches(sources));
+		assertEquals(coreaches, kb.coreaches(sources));
+
+		final var reachesMasks = kb.reachesBySource(sources);
+		final var coreachesMasks = kb.coreachesBySource(sources);
+		assertEquals(reaches, reachesMasks.keySet());
+		assertEquals(coreaches, coreachesMasks.keySet());
+		for (int i = 0; i < sources.size(); i++) {
+			final LongSet r = kb.reaches(sources.getLong(i)), c = kb.coreaches(sources.getLong(i));
+			for (final long x : reaches) assertEquals(r.contains(x), (reachesMasks.get(x)[i / Long.SIZE] & 1L << i) != 0);
+			for (final long x : coreaches) assertEquals(c.contains(x), (coreachesMasks.get(x)[i / Long.SIZE] & 1L << i) != 0);
+		}
+	}
+
+	@Test
+	public void testReachabilityCacheOrder() throws JSONException, IOException, RocksDBException {
+		add(versions(4));
+		kb.reachabilityCache().budget(1 << 20);
+		for (final long signature : internalSignatures()) {
+			final Node node = kb.new Node(KnowledgeBase.gid(signature), KnowledgeBase.index(signature));
+			// Cached and uncached results are returned in the same (visit) order
+			final LongArrayList visitOrder = new LongArrayList();
+			for (final Node n : kb.reaches(node)) visitOrder.add(n.signature());
+			assertEquals(visitOrder, new LongArrayList(kb.reaches(signature).iterator()));
+			final ObjectArrayList<FastenURI> page = new ObjectArrayList<>(kb.reachesIterator(node.toFastenURI(), 1, 3));
+			kb.reachabilityCache().clear();
+			assertEquals(page, new ObjectArrayList<>(kb.reachesIterator(node.toFastenURI(), 1, 3)));
+			assertEquals(visitOrder, new LongArrayList(kb.reaches(signature).iterator()));
+			assertEquals(visitOrder, new LongArrayList(kb.reaches(signature).iterator()));
+			kb.reachabilityCache().clear();
+			final ObjectArrayList<FastenURI> coreachesURIs = new ObjectArrayList<>(kb.coreaches(node.toFastenURI()));
+			assertEquals(coreachesURIs, new ObjectArrayList<>(kb.coreaches(node.toFastenURI())));
+		}
+		assertTrue(kb.reachabilityCache().hits() > 0);
+	}
+
+	@Test
+	public void testReachabilityCacheDisabledByDefault() throws JSONException, IOException, RocksDBException {
+		add(versions(2));
+		for (final long signature : internalSignatures()) assertEquals(kb.reaches(signature, false), kb.reaches(signature));
+		assertEquals(0, kb.reachabilityCache().size());
+		assertEquals(0, kb.reachabilityCache().hits());
+	}
+
+	@Test
+	public void testReachabilityCacheInvalidation() throws JSONException, IOException, RocksDBException {
+		kb.reachabilityCache().budget(1 << 20);
+		// Add revisions in reverse order, so that later revisions are called by earlier ones
+		for (int index = JSON_SPECS.length; index-- != 0;) {
+			kb.add(new RevisionCallGraph(new JSONObject(JSON_SPECS[index])), index);
+			for (final long signature : internalSignatures()) {
+				assertEquals(kb.reaches(signature, false), kb.reaches(signature));
+				assertEquals(kb.coreaches(signature, false), kb.coreaches(signature));
+			}
+		}
+		assertTrue(kb.reachabilityCache().hits() > 0);
+	}
+
+	@Test
+	public void testReAddition() throws JSONException, IOException, RocksDBException {
+		add(JSON_SPECS);
+		kb.reachabilityCache().budget(1 << 20);
+		// Fill the caches
+		for (final long signature : internalSignatures()) kb.reaches(signature);
+
+		// Replace revision 0 with a different graph
+		final long[] oldLID2GID = kb.callGraphs.get(0).callGraphData().LID2GID;
+		kb.add(new RevisionCallGraph(new JSONObject(JSON_SPECS[1].replace("org.slf4j2.slf4j-api", "org.slf4j3.slf4j-api"))), 0);
+		final long[] LID2GID = kb.callGraphs.get(0).callGraphData().LID2GID;
+		assertFalse(Arrays.equals(oldLID2GID, LID2GID));
+
+		final Long2ObjectOpenHashMap<LongSet> reaches = new Long2ObjectOpenHashMap<>();
+		for (final long signature : internalSignatures()) reaches.put(signature, kb.reaches(signature));
+		for (final long gid : LID2GID) assertTrue(reaches.containsKey(KnowledgeBase.signature(gid, 0)) || kb.callGraphs.get(0).callGraphData().isExternal(gid));
+
+		// Results must not depend on the content of the caches
+		kb.callGraphDataCache().clear();
+		kb.reachabilityCache().clear();
+		assertArrayEquals(LID2GID, kb.callGraphs.get(0).callGraphData().LID2GID);
+		for (final var entry : reaches.long2ObjectEntrySet()) assertEquals(entry.getValue(), kb.reaches(entry.getLongKey()));
+	}
+
+	@Test
+	public void testPipelinedIngestion() throws JSONException, IOException, RocksDBException, ClassNotFoundException {
+		final String[] jsonSpecs = versions(2);
+		add(jsonSpecs);
+		final Long2ObjectOpenHashMap<long[]> LID2GIDs = new Long2ObjectOpenHashMap<>();
+		for (final var entry : kb.callGraphs.long2ObjectEntrySet()) LID2GIDs.put(entry.getLongKey(), entry.getValue().callGraphData().LID2GID);
+		final LongArrayList signatures = internalSignatures();
+		final ObjectArrayList<LongSet> reaches = new ObjectArrayList<>(), coreaches = new ObjectArrayList<>();
+		for (final long signature : signatures) {
+			reaches.add(kb.reaches(signature));
+			coreaches.add(kb.coreaches(signature));
+		}
+
+		// Start again from an empty knowledge base
+		tearDown();
+		setUp();
+		try (final KnowledgeBase.Ingestion ingestion = kb.ingestion(2)) {
+			for (int index = 0; index < jsonSpecs.length; index++) ingestion.add(new RevisionCallGraph(new JSONObject(jsonSpecs[index])), index);
+		}
+
+		// Graphs are committed in submission order, so GIDs must be the same
+		assertEquals(LID2GIDs.keySet(), kb.callGraphs.keySet());
+		for (final var entry : LID2GIDs.long2ObjectEntrySet()) assertArrayEquals(entry.getValue(), kb.callGraphs.get(entry.getLongKey()).callGraphData().LID2GID);
+		assertEquals(signatures, internalSignatures());
+		for (int i = 0; i < signatures.size(); i++) {
+			assertEquals(reaches.get(i), kb.reaches(signatures.getLong(i)));
+			assertEquals(coreaches.get(i), kb.coreaches(signatures.getLong(i)));
+		}
+	}
+
+	@Test
+	public void testFailedPipelinedIngestion() throws JSONException, IOException, RocksDBException {
+		final String[] jsonSpecs = versions(2);
+		final KnowledgeBase.Ingestion ingestion = kb.ingestion(1);
+		try (ingestion) {
+			ingestion.add(new RevisionCallGraph(new JSONObject(jsonSpecs[0])), 0);
+			// A graph that cannot be built
+			ingestion.add(null, 1);
+			for (int index = 2; index < jsonSpecs.length; index++) ingestion.add(new RevisionCallGraph(new JSONObject(jsonSpecs[index])), index);
+			fail();
+		} catch (final NullPointerException expected) {}
+
+		// Graphs after the failing one must not have been committed by close()
+		assertEquals(new LongOpenHashSet(new long[] { 0 }), kb.callGraphs.keySet());
+		try {
+			ingestion.add(new RevisionCallGraph(new JSONObject(jsonSpecs[1])), 1);
+			fail();
+		} catch (final IllegalStateException expected) {}
 	}
 
 	@Test
@@ -218,21 +879,11 @@ public class IndexerTest {
 
 	@Test
 	public void testMediumIndex() throws JSONException, IOException, RocksDBException, URISyntaxException, ClassNotFoundException {
-		final ObjectArrayList<String> jsonSpecs = new ObjectArrayList<>();
-		jsonSpecs.addAll(Arrays.asList(JSON_SPECS));
-		for(final String s : JSON_SPECS) jsonSpecs.add(s.replaceAll("1\\.0", "2.0"));
-		for(final String s : JSON_SPECS) jsonSpecs.add(s.replaceAll("1\\.0", "3.0"));
-		for(final String s : JSON_SPECS) jsonSpecs.add(s.replaceAll("1\\.0", "4.0"));
-		testKnowledgeBase(jsonSpecs.toArray(new String[0]));
+		testKnowledgeBase(versions(4));
 	}
 
 	@Test
 	public void testLargeIndex() throws JSONException, IOException, RocksDBException, URISyntaxException, ClassNotFoundException {
-		final ObjectArrayList<String> jsonSpecs = new ObjectArrayList<>();
-		jsonSpecs.addAll(Arrays.asList(JSON_SPECS));
-		for(int i = 2; i < 10; i++)
-			for(final String s : JSON_SPECS) jsonSpecs.add(s.replaceAll("1\\.0", i + ".0"));
-
-		testKnowledgeBase(jsonSpecs.toArray(new String[0]));
+		testKnowledgeBase(versions(9));
 	}
 }
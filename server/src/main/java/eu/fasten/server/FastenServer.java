@@ -105,6 +105,12 @@ public class FastenServer implements Runnable {
             description = "Path to directory with RocksDB database")
     String graphDbDir;
 
+    @Option(names = {"-gp", "--graphdb_profile"},
+            paramLabel = "profile",
+            description = "RocksDB storage profile of the graph database: balanced, query or "
+                    + "ingestion, optionally followed by overrides (e.g., query:cache=4g)")
+    String graphDbProfile;
+
     @Option(names = {"-b", "--base_dir"},
             paramLabel = "PATH",
             description = "Path to base directory to which data will be written")
@@ -247,7 +253,7 @@ public class FastenServer implements Runnable {
         graphDbPlugins.forEach((p) -> {
             if (ObjectUtils.allNotNull(graphDbDir)) {
                 try {
-                    p.setRocksDao(RocksDBConnector.createRocksDBAccessObject(graphDbDir));
+                    p.setRocksDao(RocksDBConnector.createRocksDBAccessObject(graphDbDir, graphDbProfile));
                     logger.debug("Set Graph DB connection successfully for plug-in {}",
                             p.getClass().getSimpleName());
                 } catch (RuntimeException e) {
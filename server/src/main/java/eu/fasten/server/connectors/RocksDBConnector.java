@@ -18,6 +18,7 @@
 
 package eu.fasten.server.connectors;
 
+import eu.fasten.core.data.StorageProfile;
 import eu.fasten.core.data.graphdb.RocksDao;
 import org.rocksdb.RocksDBException;
 
@@ -31,8 +32,21 @@ public class RocksDBConnector {
      * @throws RuntimeException if there was a problem opening connection to RocksDB
      */
     public static RocksDao createRocksDBAccessObject(String dbDir) throws RuntimeException {
+        return createRocksDBAccessObject(dbDir, null);
+    }
+
+    /**
+     * Creates Database Access Object for RocksDB using a given storage profile.
+     *
+     * @param dbDir   Directory where the database is stored
+     * @param profile Specification of the storage profile (see {@link StorageProfile#parse(String)}),
+     *                or null for the default profile
+     * @return RocksDao instance
+     * @throws RuntimeException if there was a problem opening connection to RocksDB
+     */
+    public static RocksDao createRocksDBAccessObject(String dbDir, String profile) throws RuntimeException {
         try {
-            return new RocksDao(dbDir);
+            return new RocksDao(dbDir, StorageProfile.parseOrDefault(profile));
         } catch (RocksDBException e) {
             throw new RuntimeException(e);
         }